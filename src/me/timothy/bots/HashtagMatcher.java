@@ -0,0 +1,206 @@
+package me.timothy.bots;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeSet;
+
+import me.timothy.bots.models.Hashtag;
+
+/**
+ * <p>Finds which hashtags appear in a piece of text, such as a ban description, in a single
+ * pass over the text regardless of how many hashtags there are.</p>
+ *
+ * <p>This is an Aho-Corasick automaton compiled into a table, so scanning a description is
+ * one table lookup per character and does not allocate unless something matches. Matching
+ * ignores case the same way {@link Character#toLowerCase(char)} does.</p>
+ *
+ * <p>A matcher never changes after it's built. Use {@link #rebuildIfChanged(HashtagMatcher, List)}
+ * to keep one up to date with the hashtags table.</p>
+ *
+ * @author Timothy
+ */
+public class HashtagMatcher {
+	/** The hashtags in the order they were given to us, which is also the order we return them in */
+	private final List<Hashtag> tags;
+	/** The characters that appear in any tag, lowercase and sorted */
+	private final char[] alphabet;
+	/** For characters below 128, the index in alphabet plus one, or 0 if it's not in any tag */
+	private final int[] asciiClasses;
+	/** Number of columns in transitions; one per character in the alphabet plus one for everything else */
+	private final int width;
+	/** The state to go to from state s on character class c is at s * width + c */
+	private final int[] transitions;
+	/** For each state, the indexes in tags that have been matched when we reach it, or null if none */
+	private final int[][] outputs;
+	
+	/**
+	 * Compile a matcher for the given hashtags
+	 *
+	 * @param tags the hashtags to look for
+	 */
+	public HashtagMatcher(List<Hashtag> tags) {
+		this.tags = tags;
+		
+		TreeSet<Character> chars = new TreeSet<>();
+		for(Hashtag tag : tags) {
+			for(int i = 0; i < tag.tag.length(); i++) {
+				chars.add(Character.toLowerCase(tag.tag.charAt(i)));
+			}
+		}
+		alphabet = new char[chars.size()];
+		int nextClass = 0;
+		for(char c : chars) {
+			alphabet[nextClass++] = c;
+		}
+		asciiClasses = new int[128];
+		for(int i = 0; i < alphabet.length && alphabet[i] < 128; i++) {
+			asciiClasses[alphabet[i]] = i + 1;
+		}
+		width = alphabet.length + 1;
+		
+		// Build the trie
+		List<Map<Integer, Integer>> children = new ArrayList<>();
+		List<List<Integer>> ending = new ArrayList<>();
+		children.add(new HashMap<>());
+		ending.add(new ArrayList<>());
+		for(int tagIndex = 0; tagIndex < tags.size(); tagIndex++) {
+			String tag = tags.get(tagIndex).tag;
+			int state = 0;
+			for(int i = 0; i < tag.length(); i++) {
+				int cls = classOf(Character.toLowerCase(tag.charAt(i)));
+				Integer next = children.get(state).get(cls);
+				if(next == null) {
+					next = children.size();
+					children.add(new HashMap<>());
+					ending.add(new ArrayList<>());
+					children.get(state).put(cls, next);
+				}
+				state = next;
+			}
+			ending.get(state).add(tagIndex);
+		}
+		
+		// Fill in every transition, following failure links where the trie has no child
+		int numStates = children.size();
+		transitions = new int[numStates * width];
+		outputs = new int[numStates][];
+		int[] failure = new int[numStates];
+		Queue<Integer> queue = new ArrayDeque<>();
+		
+		outputs[0] = toArray(ending.get(0));
+		for(Map.Entry<Integer, Integer> child : children.get(0).entrySet()) {
+			transitions[child.getKey()] = child.getValue();
+			queue.add(child.getValue());
+		}
+		while(!queue.isEmpty()) {
+			int state = queue.poll();
+			List<Integer> matched = new ArrayList<>(ending.get(state));
+			if(outputs[failure[state]] != null) {
+				for(int tagIndex : outputs[failure[state]]) {
+					matched.add(tagIndex);
+				}
+			}
+			outputs[state] = toArray(matched);
+			
+			for(int cls = 1; cls < width; cls++) {
+				Integer child = children.get(state).get(cls);
+				int viaFailure = transitions[failure[state] * width + cls];
+				if(child == null) {
+					transitions[state * width + cls] = viaFailure;
+				}else {
+					transitions[state * width + cls] = child;
+					failure[child] = viaFailure;
+					queue.add(child);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Get the hashtags this matcher was built from
+	 *
+	 * @return the hashtags
+	 */
+	public List<Hashtag> getTags() {
+		return tags;
+	}
+	
+	/**
+	 * Find every hashtag which appears in the given text, ignoring case.
+	 *
+	 * @param text the text to search, such as a ban description
+	 * @return the hashtags found, in the order they were given to the matcher
+	 */
+	public List<Hashtag> findAll(CharSequence text) {
+		long[] found = mark(null, outputs[0]);
+		int state = 0;
+		for(int i = 0, len = text.length(); i < len; i++) {
+			state = transitions[state * width + classOf(Character.toLowerCase(text.charAt(i)))];
+			if(outputs[state] != null) {
+				found = mark(found, outputs[state]);
+			}
+		}
+		
+		if(found == null)
+			return Collections.emptyList();
+		
+		List<Hashtag> result = new ArrayList<>();
+		for(int tagIndex = 0; tagIndex < tags.size(); tagIndex++) {
+			if((found[tagIndex >> 6] & (1L << tagIndex)) != 0) {
+				result.add(tags.get(tagIndex));
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Get a matcher for the given hashtags, reusing the old matcher if it was built from the
+	 * same hashtags.
+	 *
+	 * @param old the matcher we have now, or null
+	 * @param tags the hashtags as they are now
+	 * @return a matcher for tags
+	 */
+	public static HashtagMatcher rebuildIfChanged(HashtagMatcher old, List<Hashtag> tags) {
+		if(old != null && old.tags.equals(tags))
+			return old;
+		return new HashtagMatcher(tags);
+	}
+	
+	private int classOf(char c) {
+		if(c < 128)
+			return asciiClasses[c];
+		
+		int index = Arrays.binarySearch(alphabet, c);
+		return index < 0 ? 0 : index + 1;
+	}
+	
+	private long[] mark(long[] found, int[] tagIndexes) {
+		if(tagIndexes == null)
+			return found;
+		
+		if(found == null)
+			found = new long[(tags.size() + 63) >> 6];
+		for(int tagIndex : tagIndexes) {
+			found[tagIndex >> 6] |= 1L << tagIndex;
+		}
+		return found;
+	}
+	
+	private static int[] toArray(List<Integer> list) {
+		if(list.isEmpty())
+			return null;
+		
+		int[] result = new int[list.size()];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = list.get(i);
+		}
+		return result;
+	}
+}
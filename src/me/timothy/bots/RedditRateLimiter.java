@@ -0,0 +1,124 @@
+package me.timothy.bots;
+
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * <p>A token bucket which decides when we are allowed to make the next request to reddit. It
+ * can be shared between threads; each request takes one token, and tokens come back at a steady
+ * rate up to a small burst.</p>
+ *
+ * <p>The rate is fixed at whatever was configured (scanning.requests_per_minute). The reddit
+ * client does not give us the response headers, so we can't pace ourselves to the budget reddit
+ * reports; instead the configured rate should sit comfortably under reddit's limit, and the only
+ * time we slow down is after reddit answers with a 429, when we stop making requests for a
+ * while.</p>
+ *
+ * @author Timothy
+ */
+public class RedditRateLimiter {
+	private static final Logger logger = LogManager.getLogger();
+	
+	/** How long we stop making requests after a 429 */
+	private static final long BACKOFF_MS = 60000;
+	
+	private final LongSupplier clock;
+	private final double capacity;
+	private final double refillPerMs;
+	
+	private double tokens;
+	private long lastRefill;
+	private long pausedUntil;
+	
+	/**
+	 * Create a rate limiter which starts full and refills at the given rate.
+	 *
+	 * @param burst the most requests that can be made back-to-back
+	 * @param requestsPerMinute how many requests we make each minute
+	 */
+	public RedditRateLimiter(int burst, double requestsPerMinute) {
+		this(burst, requestsPerMinute, System::currentTimeMillis);
+	}
+	
+	/**
+	 * Create a rate limiter with the given clock, which is useful for testing.
+	 *
+	 * @param burst the most requests that can be made back-to-back
+	 * @param requestsPerMinute how many requests we make each minute
+	 * @param clock returns the current time in milliseconds
+	 */
+	public RedditRateLimiter(int burst, double requestsPerMinute, LongSupplier clock) {
+		if(burst <= 0)
+			throw new IllegalArgumentException("burst must be positive (got " + burst + ")");
+		if(requestsPerMinute <= 0)
+			throw new IllegalArgumentException("requestsPerMinute must be positive (got " + requestsPerMinute + ")");
+		
+		this.clock = clock;
+		this.capacity = burst;
+		this.refillPerMs = requestsPerMinute / 60000.0;
+		this.tokens = burst;
+		this.lastRefill = clock.getAsLong();
+	}
+	
+	/**
+	 * Wait until we are allowed to make a request, then take a token for it.
+	 */
+	public synchronized void acquire() {
+		while(true) {
+			long wait = tryAcquire();
+			if(wait == 0)
+				return;
+			
+			try {
+				logger.printf(Level.TRACE, "Waiting %d ms for the reddit rate limit", wait);
+				wait(wait);
+			}catch(InterruptedException e) {
+				logger.throwing(e);
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Take a token if one is available.
+	 *
+	 * @return 0 if a token was taken, otherwise how many milliseconds until one might be available
+	 */
+	public synchronized long tryAcquire() {
+		long now = clock.getAsLong();
+		refill(now);
+		
+		if(now < pausedUntil)
+			return pausedUntil - now;
+		
+		if(tokens >= 1) {
+			tokens -= 1;
+			return 0;
+		}
+		
+		return Math.max(1, (long)Math.ceil((1 - tokens) / refillPerMs));
+	}
+	
+	/**
+	 * Called when reddit answered with a 429. Nothing else goes out for a minute.
+	 */
+	public synchronized void onRateLimited() {
+		long now = clock.getAsLong();
+		refill(now);
+		
+		tokens = 0;
+		pausedUntil = now + BACKOFF_MS;
+		logger.printf(Level.WARN, "Reddit rate limited us; pausing requests for %d ms", pausedUntil - now);
+		notifyAll();
+	}
+	
+	private void refill(long now) {
+		if(now > lastRefill) {
+			tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerMs);
+			lastRefill = now;
+		}
+	}
+}
@@ -1,8 +1,10 @@
 package me.timothy.bots;
 
 import java.io.IOException;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -27,9 +29,9 @@ import me.timothy.bots.memory.UserPMInformation;
 import me.timothy.bots.memory.UserUnbanInformation;
 import me.timothy.bots.models.AcceptModeratorInviteRequest;
 import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.OutboundAction;
 import me.timothy.bots.models.Person;
 import me.timothy.bots.models.RepropagationRequest;
-import me.timothy.bots.models.SubredditModqueueProgress;
 import me.timothy.bots.models.SubredditTraditionalListStatus;
 import me.timothy.bots.models.TraditionalScammer;
 import me.timothy.bots.models.UnbanRequest;
@@ -52,6 +54,12 @@ import me.timothy.jreddit.info.ModeratorUserInfo;
 public class USLBotDriver extends BotDriver {
 	private static final Logger logger = LogManager.getLogger();
 	
+	/** 
+	 * How many dirty persons are planned at once if propagator.planning_threads is not set. Each
+	 * planner is another mysql connection, so this is kept small.
+	 */
+	private static final int DEFAULT_PLANNING_THREADS = 4;
+	
 	/**
 	 * It's quite painful to pass this around. This simply calls
 	 * maybeLoginAgain on the singleton of USLBotDriver
@@ -70,6 +78,9 @@ public class USLBotDriver extends BotDriver {
 	protected DeletedPersonManager deletedPersonManager;
 	protected USLRepropagationRequestManager repropManager;
 	protected HardwareSwapManager hwsManager;
+	protected USLScanScheduler scanScheduler;
+	protected USLOutboundQueue outboundQueue;
+	protected USLModeratorPermissionCache moderatorPermissions;
 	/** The id of the bot user, without the t2_ prefix */
 	protected String botUserId;
 	/** If we are going to dump the database in RegexrTech mode the next loop */
@@ -105,8 +116,8 @@ public class USLBotDriver extends BotDriver {
 		
 		backupManager = new USLDatabaseBackupManager(database, config);
 		propagator = new USLPropagator(database, config);
-		propagatorManager = new USLPropagatorManager(database, config, propagator,
-				new USLRedditToMeaningProcessor(database, config),
+		propagatorManager = new USLPropagatorManager(database, config, propagator, createPropagationPlanners(database, config),
+				createPrefetchDatabase(database, config), new USLRedditToMeaningProcessor(database, config),
 				new USLValidUnbanRequestToMeaningProcessor(database, config),
 				(result) -> handlePropagateResult(result));
 		unbanRequestHandler = new USLUnbanRequestHandler(database, config, isMod);
@@ -118,6 +129,9 @@ public class USLBotDriver extends BotDriver {
 		repropManager = new USLRepropagationRequestManager(database, config, backupManager, 
 				(info) -> handleModmailPMs(Collections.singletonList(info)), (pmInfo) -> handleUserPMs(Collections.singletonList(pmInfo)));
 		hwsManager = new HardwareSwapManager(database, config, new Bot("hardwareswap"), deletedPersonManager);
+		scanScheduler = new USLScanScheduler(database, config, bot, maybeLoginAgainRunnable, (sub) -> moderatorPermissions.invalidate(sub));
+		moderatorPermissions = new USLModeratorPermissionCache(config, scanScheduler.getRateLimiter(), (sub) -> checkForSufficientPerms(sub));
+		outboundQueue = new USLOutboundQueue(database, config, scanScheduler.getRateLimiter(), (action) -> sendOutboundAction(action));
 		dumpRegexrTech = false;
 		
 		unbanRequestHandler.verifyHaveResponses();
@@ -199,6 +213,10 @@ public class USLBotDriver extends BotDriver {
 		logger.trace("Propagating bans..");
 		propagateBans();
 		
+		al.append("Sending queued bans, unbans and messages..");
+		logger.trace("Sending queued bans, unbans and messages..");
+		dispatchOutboundActions();
+		
 		hwsManager.doLoop();
 		
 		al.append("Considering backing up database..");
@@ -283,13 +301,15 @@ public class USLBotDriver extends BotDriver {
 			req.fulfilledAt = new Timestamp(System.currentTimeMillis());
 			req.success = success;
 			db.getAcceptModeratorInviteRequestMapping().save(req);
+			moderatorPermissions.invalidate(req.subreddit);
 			
 			logger.printf(Level.INFO, "Mod invite request done. Result: %s", req.prettyToString(db));
 		}
 	}
 	
 	/**
-	 * Update the list of tracked subreddits from the database.
+	 * Update the list of tracked subreddits from the database. Whether or not we moderate
+	 * each subreddit usually comes from the moderatorPermissions cache.
 	 */
 	protected void updateTrackedSubreddits() {
 		USLDatabase db = (USLDatabase) database;
@@ -300,7 +320,7 @@ public class USLBotDriver extends BotDriver {
 			if(ms.readOnly && ms.writeOnly) {
 				logger.printf(Level.TRACE, "Removed /r/%s from tracked subreddits in memory (write + read only)", ms.subreddit);
 				monitoredSubreddits.remove(i);
-			}else if(!this.checkForSufficientPerms(ms.subreddit)) {
+			}else if(!moderatorPermissions.isModerator(ms.subreddit)) {
 				logger.printf(Level.TRACE, "Flagging /r/%s as read+write only and removing from tracked subreddits in memory (we are not a moderator there)", ms.subreddit);
 				ms.readOnly = true;
 				ms.writeOnly = true;
@@ -377,6 +397,7 @@ public class USLBotDriver extends BotDriver {
 		request.invalid = result.invalid;
 		request.handledAt = new Timestamp(System.currentTimeMillis());
 		db.getUnbanRequestMapping().save(request);
+		db.getHistoryCache().invalidate(request.bannedPersonID);
 		
 		return didSomething;
 	}
@@ -442,157 +463,129 @@ public class USLBotDriver extends BotDriver {
 	}
 	
 	/**
-	 * Do what needs to be done as specified in the handler result
+	 * Queue what needs to be done as specified in the handler result
 	 * @param scammer the scammer that was handled
 	 * @param sub the subreddit it was handled on
 	 * @param result what to do
-	 * @return if a reddit interaction was required
+	 * @return if anything was queued
 	 */
 	protected boolean handleTraditionalScammerHandlerResult(TraditionalScammer scammer, MonitoredSubreddit sub,
 			TraditionalScammerHandlerResult result) {
 		logger.printf(Level.TRACE, "Handling a TradScamRes with %d bans, %d modmail pms, and %d user pms", result.bans.size(), result.modmailPMs.size(), result.userPMs.size());
 		
-		boolean didSomething = false;
-		didSomething = handleBans(result.bans) || didSomething;
-		didSomething = handleModmailPMs(result.modmailPMs) || didSomething;
-		didSomething = handleUserPMs(result.userPMs) || didSomething;
-		return didSomething;
+		String source = "traditional:" + scammer.id + "@" + scammer.createdAt.getTime();
+		int queued = 0;
+		queued += outboundQueue.enqueueBans(source, result.bans);
+		queued += outboundQueue.enqueueModmailPMs(source, result.modmailPMs);
+		queued += outboundQueue.enqueueUserPMs(source, result.userPMs);
+		return queued > 0;
 	}
 	
 
 	/**
-	 * Loops through the subreddits and scans them for bans
-	 * @see #scanSubForBans(MonitoredSubreddit)
+	 * Scans the monitored subreddits that are due for bans, a few at a time. Busier
+	 * subreddits are scanned more often than quiet ones.
+	 * @see USLScanScheduler
+	 * @see USLScanPlanner
 	 */
 	protected void scanForBans() {
-		ActionLogMapping al = ((USLDatabase)database).getActionLogMapping();
-		for(MonitoredSubreddit sub : monitoredSubreddits) {
-			al.append(String.format("Scanning {link subreddit %d} for any new mod actions..", sub.id));
-			logger.trace("Scanning " + sub.subreddit + " for any new bans..");
-			scanSubForBans(sub);
-		}
+		scanScheduler.scan(monitoredSubreddits);
 	}
 	
 	/**
-	 * Scans a particular moderated subreddits moderation log for any bans. Uses
-	 * the SubredditModqueueProgressMapping in order to ensure no work is duplicated
-	 * and that the subreddit is completely scanned.
+	 * Propagates bans that were scanned by scanForBans. Uses the SubredditPropagateStatusMapping
+	 * in order to ensure that no work is duplicated and that all bans are propagated to all subreddits.
 	 * 
-	 * @param sub the subreddit to scan
-	 * @return true if we have the entire current history of the subreddit, false otherwise
+	 * Uses the USLBanHistoryPropagator to decide how to propagate for each subreddit.
 	 */
-	protected void scanSubForBans(MonitoredSubreddit sub) {
-		USLDatabase db = (USLDatabase) database;
-		USLFileConfiguration cfg = (USLFileConfiguration) config;
-		
-		SubredditModqueueProgress progress = db.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id);
-		
-		if(progress == null) {
-			logger.warn("SubredditModqueueProgress was not found for subreddit " + sub.subreddit + ", autogenerating!");
-			progress = new SubredditModqueueProgress(-1, sub.id, true, null, null, null, null);
-			db.getSubredditModqueueProgressMapping().save(progress);
-		}
-		
-		if(progress.searchForward) {
-			boolean result = USLForwardSubScanner.scan(bot, db, cfg, sub);
-			progress = db.getSubredditModqueueProgressMapping().fetchByID(progress.id);
-			if(result == USLForwardSubScanner.FINISHED) {
-				progress.searchForward = false;
-				db.getSubredditModqueueProgressMapping().save(progress);
-			}
-		}else {
-			boolean result = USLReverseSubScanner.scan(bot, db, cfg, sub);
-			progress = db.getSubredditModqueueProgressMapping().fetchByID(progress.id);
-			if(result == USLReverseSubScanner.FINISHED) {
-				progress.lastTimeHadFullHistory = new Timestamp(System.currentTimeMillis());
-			}else {
-				progress.lastTimeHadFullHistory = null;
-			}
-			db.getSubredditModqueueProgressMapping().save(progress);
-		}
+	protected void propagateBans() {
+		propagatorManager.managePropagating(monitoredSubreddits);
 	}
 	
 	/**
-	 * Propagates bans that were scanned by scanSubForBans. Uses the SubredditPropagateStatusMapping
-	 * in order to ensure that no work is duplicated and that all bans are propagated to all subreddits.
+	 * Sends as many of the queued bans, unbans and messages as we can for now.
 	 * 
-	 * Uses the USLBanHistoryPropagator to decide how to propagate for each subreddit.
+	 * @see USLOutboundQueue
 	 */
-	protected void propagateBans() {
-		propagatorManager.managePropagating(monitoredSubreddits);
+	protected void dispatchOutboundActions() {
+		outboundQueue.dispatch();
 	}
 	
 	/**
-	 * Do the things that the result says to do.
+	 * Queue the things that the result says to do. The USL action together with when it
+	 * was created identifies the result, so propagating the same action again does not
+	 * queue it twice.
 	 * 
 	 * @param result the result
-	 * @return if any reddit requests were done
+	 * @return if anything was queued
 	 */
 	protected boolean handlePropagateResult(PropagateResult result) {
-		boolean didSomething = false;
 		for(TraditionalScammer scammer : result.scammersToRemove) {
 			((USLDatabase)database).getTraditionalScammerMapping().deleteByPersonID(scammer.personID);
 		}
-		if(result.bans.size() > 0) {
-			didSomething = handleBans(result.bans) || didSomething;
-		}
-		if(result.unbans.size() > 0) {
-			didSomething = handleUnbans(result.unbans) || didSomething;
-		}
-		didSomething = handleModmailPMs(result.modmailPMs) || didSomething;
-		didSomething = handleUserPMs(result.userPMs) || didSomething;
-		return didSomething;
+		
+		String source = "propagate:" + result.action.id + "@" + result.action.createdAt.getTime();
+		int queued = 0;
+		queued += outboundQueue.enqueueBans(source, result.bans);
+		queued += outboundQueue.enqueueUnbans(source, result.unbans);
+		queued += outboundQueue.enqueueModmailPMs(source, result.modmailPMs);
+		queued += outboundQueue.enqueueUserPMs(source, result.userPMs);
+		return queued > 0;
 	}
 	
 	/**
-	 * Do the things the resutl says to do.
+	 * Queue the things the result says to do.
 	 * 
 	 * @param result the result
-	 * @return if any reddit requests were done
+	 * @return if anything was queued
 	 */
 	protected boolean handleTempAuthResult(TemporaryAuthGranterResult result) {
-		boolean didSomething = false;
-		didSomething = handleModmailPMs(result.subredditPMs) || didSomething;
-		didSomething = handleUserPMs(result.userPMs) || didSomething;
-		return didSomething;
+		String source = "tempauth:" + result.request.id + "@" + result.request.createdAt.getTime();
+		int queued = 0;
+		queued += outboundQueue.enqueueModmailPMs(source, result.subredditPMs);
+		queued += outboundQueue.enqueueUserPMs(source, result.userPMs);
+		return queued > 0;
 	}
 	
 	/**
-	 * Handle the list of bans that need to be done
+	 * Does the given queued action on reddit. This is what the outbound queue
+	 * uses to send each action.
 	 * 
-	 * @param bans the bans to do
-	 * @return if we did something with reddit
+	 * @param action the action to do
+	 * @return true if it was done or no longer needs to be, false to try again later
 	 */
-	protected boolean handleBans(List<UserBanInformation> bans) {
-		ActionLogMapping al = ((USLDatabase)database).getActionLogMapping();
-		boolean didSomething = false;
-		for(UserBanInformation ban : bans) {
-			al.append(String.format("Banning {link person %d} on {link subreddit %d}..", ban.person.id, ban.subreddit.id));
-			logger.printf(Level.INFO, "Banning %s on %s..", ban.person.username, ban.subreddit.subreddit);
-			handleBanUser(ban);
+	protected boolean sendOutboundAction(OutboundAction action) {
+		USLDatabase db = (USLDatabase) database;
+		ActionLogMapping al = db.getActionLogMapping();
+		Person person = action.personID == null ? null : db.getPersonMapping().fetchByID(action.personID);
+		MonitoredSubreddit sub = action.monitoredSubredditID == null ? null : db.getMonitoredSubredditMapping().fetchByID(action.monitoredSubredditID);
 			
-			didSomething = true;
-		}
-		return didSomething;
-	}
+		switch(action.actionType) {
+		case OutboundAction.BAN:
+			al.append(String.format("Banning {link person %d} on {link subreddit %d}..", person.id, sub.id));
+			logger.printf(Level.INFO, "Banning %s on %s..", person.username, sub.subreddit);
+			return handleBanUser(new UserBanInformation(person, sub, action.body, action.banReason, action.banNote));
+		case OutboundAction.UNBAN:
+			al.append(String.format("Unbanning {link person %d} on {link subreddit %d}..", person.id, sub.id));
+			logger.printf(Level.INFO, "Unbanning %s on %s..", person.username, sub.subreddit);
+			return handleUnbanUser(new UserUnbanInformation(person, sub));
+		case OutboundAction.MODMAIL:
+			logger.printf(Level.INFO, "Sending some modmail to %s (title=%s)", sub.subreddit, action.title);
+			logger.trace("body=" + action.body);
+			return sendModmail(sub.subreddit, action.title, action.body);
+		case OutboundAction.USER_PM:
+			if(deletedPersonManager.isDeleted(person.username)) {
+				logger.printf(Level.INFO, "sendOutboundAction suppressing message to /u/%s - /u/%s deleted his account", person.username, person.username);
+				return true;
+			}
 	
-	/**
-	 * Handle the list of unbans that need to be done
-	 * 
-	 * @param unbans the unbans to do
-	 * @return if we did something with reddit
-	 */
-	protected boolean handleUnbans(List<UserUnbanInformation> unbans) {
-		ActionLogMapping al = ((USLDatabase)database).getActionLogMapping();
-		boolean didSomething = false;
-		for(UserUnbanInformation unban : unbans) {
-			al.append(String.format("Unbanning {link person %d} on {link subreddit %d}..", unban.person.id, unban.subreddit.id));
-			logger.printf(Level.INFO, "Unbanning %s on %s..", unban.person.username, unban.subreddit.subreddit);
-			
-			handleUnbanUser(unban);
-			didSomething = true;
+			logger.printf(Level.INFO, "Sending some mail to %s (title=%s)", person.username, action.title);
+			al.append(String.format("Sending a personal message to {link user %d} (the title is %s)..", person.id, action.title));
+			Boolean succ = sendMessage(person.username, action.title, action.body);
+			return succ != null && succ.booleanValue();
+		default:
+			throw new IllegalArgumentException("Unknown outbound action type " + action.actionType);
 		}
-		return didSomething;
 	}
 	
 	/**
@@ -647,14 +640,16 @@ public class USLBotDriver extends BotDriver {
 	 * a wrapper around handleBanUser(subreddit, username, message, reason, note)
 	 * 
 	 * @param banInfo the information regarding the ban
+	 * @return true once the base driver has made the ban, or if there was nothing to do
 	 */
-	protected void handleBanUser(UserBanInformation banInfo) {
+	protected boolean handleBanUser(UserBanInformation banInfo) {
 		if(deletedPersonManager.isDeleted(banInfo.person.username)) {
 			logger.printf(Level.INFO, "handleBanUser suppressing ban for /u/%s on /r/%s - /u/%s deleted his account", banInfo.person.username, banInfo.subreddit.subreddit, banInfo.person.username);
-			return;
+			return true;
 		}
 		
 		super.handleBanUser(banInfo.subreddit.subreddit, banInfo.person.username, banInfo.banMessage, banInfo.banReason, banInfo.banNote);
+		return true;
 	}
 	
 	/**
@@ -662,14 +657,16 @@ public class USLBotDriver extends BotDriver {
 	 * This is just a wrapper around handleUnbanUser(suberddit, username)
 	 * 
 	 * @param unbanInfo the information regarding the unban
+	 * @return true once the base driver has made the unban, or if there was nothing to do
 	 */
-	protected void handleUnbanUser(UserUnbanInformation unbanInfo) {
+	protected boolean handleUnbanUser(UserUnbanInformation unbanInfo) {
 		if(deletedPersonManager.isDeleted(unbanInfo.person.username)) {
 			logger.printf(Level.INFO, "handleUnbanUser suppressing unban for /u/%s on /r/%s - /u/%s deleted his account", unbanInfo.person.username, unbanInfo.subreddit.subreddit, unbanInfo.person.username);
-			return;
+			return true;
 		}
 		
 		super.handleUnbanUser(unbanInfo.subreddit.subreddit, unbanInfo.person.username);
+		return true;
 	}
 	/**
 	 * Sends modmail to the specified subreddit. This will look up the subreddit to redirect from the modmail
@@ -678,29 +675,37 @@ public class USLBotDriver extends BotDriver {
 	 * @param sub subreddit to message
 	 * @param title the title of the message
 	 * @param body the body of the message
+	 * @return true if every message or post went through, false if any failed
 	 */
-	protected void sendModmail(String sub, String title, String body) {
+	protected boolean sendModmail(String sub, String title, String body) {
 		USLDatabase db = (USLDatabase) database;
 		
 		MonitoredSubreddit monSub = db.getMonitoredSubredditMapping().fetchByName(sub);
 		if(monSub != null) {
 			List<String> altSubs = db.getMonitoredSubredditAltModMailMapping().fetchForSubreddit(monSub.id);
 			if(!altSubs.isEmpty()) {
+				boolean allSucceeded = true;
 				for(String str : altSubs) {
+					Boolean succ;
 					if(str.equalsIgnoreCase(sub)) {
-						sendMessage("/r/" + sub, title, body);
+						succ = sendMessage("/r/" + sub, title, body);
 					}else {
-						submitSelf(str, title, body);
+						succ = submitSelf(str, title, body);
 					}
+					if(succ == null || !succ.booleanValue())
+						allSucceeded = false;
 				}
-				return;
+				return allSucceeded;
 			}
 		}
-		sendMessage("/r/" + sub, title, body);
+		Boolean succ = sendMessage("/r/" + sub, title, body);
+		return succ != null && succ.booleanValue();
 	}
 	
 	/**
-	 * Determines if the bot has sufficient permissions to work with the given subreddit
+	 * Determines if the bot has sufficient permissions to work with the given subreddit. This
+	 * always asks reddit and may be called from the moderatorPermissions refresh thread; the
+	 * caller is responsible for going through the rate limiter.
 	 * @param sub the subreddit to check
 	 * @return true if the bot has sufficient permissions for the subreddit, false otherwise
 	 */
@@ -726,7 +731,6 @@ public class USLBotDriver extends BotDriver {
 			}
 			
 		}.run();
-		sleepFor(BRIEF_PAUSE_MS);
 		
 		for(int i = 0, len = mods.numChildren(); i < len; i++) {
 			ModeratorUserInfo info = mods.getModerator(i);
@@ -740,6 +744,59 @@ public class USLBotDriver extends BotDriver {
 		return false;
 	}
 	
+	/**
+	 * Open the read-only connection that the propagator manager reads mod actions and unban requests
+	 * from while it turns them into actions. If we can't connect, they are read on the main thread.
+	 * 
+	 * @param database the primary database
+	 * @param config the file configuration
+	 * @return the database to prefetch from, or null
+	 */
+	protected static USLDatabase createPrefetchDatabase(USLDatabase database, USLFileConfiguration config) {
+		USLDatabase prefetchDatabase = new USLDatabase();
+		try {
+			prefetchDatabase.connectReadOnly(config.getProperty("database.username"), config.getProperty("database.password"), 
+					config.getProperty("database.url"), database);
+		} catch (SQLException e) {
+			logger.catching(e);
+			logger.warn("Could not open a connection to prefetch mod actions with; they will be fetched on the main thread");
+			return null;
+		}
+		return prefetchDatabase;
+	}
+	
+	/**
+	 * Create the propagators that the propagator manager plans dirty persons with, each on its
+	 * own read-only connection. How many comes from the optional propagator.planning_threads
+	 * property, or DEFAULT_PLANNING_THREADS if that is not set. If it is 1 or less, or we can't
+	 * connect, there are none and everyone is planned on the main thread.
+	 * 
+	 * @param database the primary database
+	 * @param config the file configuration
+	 * @return the planners
+	 */
+	protected static List<USLPropagator> createPropagationPlanners(USLDatabase database, USLFileConfiguration config) {
+		int numPlanners = config.getIntProperty("propagator.planning_threads", DEFAULT_PLANNING_THREADS);
+		
+		List<USLPropagator> planners = new ArrayList<>();
+		if(numPlanners <= 1)
+			return planners;
+		
+		for(int i = 0; i < numPlanners; i++) {
+			USLDatabase planningDatabase = new USLDatabase();
+			try {
+				planningDatabase.connectReadOnly(config.getProperty("database.username"), config.getProperty("database.password"), 
+						config.getProperty("database.url"), database);
+			} catch (SQLException e) {
+				logger.catching(e);
+				break;
+			}
+			planners.add(new USLPropagator(planningDatabase, config));
+		}
+		logger.printf(Level.INFO, "Planning propagation with %d read-only connections", planners.size());
+		return planners;
+	}
+	
 	/**
 	 * Consider backing up the database. Delegates to USLDatabaseBackup
 	 */
@@ -28,7 +28,9 @@ import me.timothy.bots.database.LastInfoPMMapping;
 import me.timothy.bots.database.MappingDatabase;
 import me.timothy.bots.database.MonitoredSubredditAltModMailMapping;
 import me.timothy.bots.database.MonitoredSubredditMapping;
+import me.timothy.bots.database.OutboundActionMapping;
 import me.timothy.bots.database.ObjectMapping;
+import me.timothy.bots.database.PersonHistoryLoader;
 import me.timothy.bots.database.PersonMapping;
 import me.timothy.bots.database.PropagatorSettingMapping;
 import me.timothy.bots.database.RedditToMeaningProgressMapping;
@@ -52,6 +54,10 @@ import me.timothy.bots.database.USLActionMapping;
 import me.timothy.bots.database.USLActionUnbanHistoryMapping;
 import me.timothy.bots.database.UnbanHistoryMapping;
 import me.timothy.bots.database.UnbanRequestMapping;
+import me.timothy.bots.database.cache.CachingMapping;
+import me.timothy.bots.database.cache.CachingMonitoredSubredditMapping;
+import me.timothy.bots.database.cache.CachingPersonMapping;
+import me.timothy.bots.database.custom.AppendOnlyLog;
 import me.timothy.bots.database.custom.CustomDirtyPersonMapping;
 import me.timothy.bots.database.custom.CustomHandledAtTimestampMapping;
 import me.timothy.bots.database.custom.CustomMapping;
@@ -68,7 +74,9 @@ import me.timothy.bots.database.mysql.MysqlHashtagMapping;
 import me.timothy.bots.database.mysql.MysqlLastInfoPMMapping;
 import me.timothy.bots.database.mysql.MysqlMonitoredSubredditAltModMailMapping;
 import me.timothy.bots.database.mysql.MysqlMonitoredSubredditMapping;
+import me.timothy.bots.database.mysql.MysqlOutboundActionMapping;
 import me.timothy.bots.database.mysql.MysqlObjectMapping;
+import me.timothy.bots.database.mysql.MysqlPersonHistoryLoader;
 import me.timothy.bots.database.mysql.MysqlPersonMapping;
 import me.timothy.bots.database.mysql.MysqlPropagatorSettingMapping;
 import me.timothy.bots.database.mysql.MysqlRegisterAccountRequestMapping;
@@ -90,6 +98,7 @@ import me.timothy.bots.database.mysql.MysqlUSLActionMapping;
 import me.timothy.bots.database.mysql.MysqlUSLActionUnbanHistoryMapping;
 import me.timothy.bots.database.mysql.MysqlUnbanHistoryMapping;
 import me.timothy.bots.database.mysql.MysqlUnbanRequestMapping;
+import me.timothy.bots.memory.HistoryMarkupCache;
 import me.timothy.bots.models.AcceptModeratorInviteRequest;
 import me.timothy.bots.models.ActionLog;
 import me.timothy.bots.models.BanHistory;
@@ -104,6 +113,7 @@ import me.timothy.bots.models.Hashtag;
 import me.timothy.bots.models.LastInfoPM;
 import me.timothy.bots.models.MonitoredSubreddit;
 import me.timothy.bots.models.MonitoredSubredditAltModMail;
+import me.timothy.bots.models.OutboundAction;
 import me.timothy.bots.models.Person;
 import me.timothy.bots.models.PropagatorSetting;
 import me.timothy.bots.models.RedditToMeaningProgress;
@@ -140,6 +150,13 @@ public class USLDatabase extends Database implements MappingDatabase {
 	private List<ObjectMapping<?>> mysqlMappings;
 	private List<CustomMapping<?>> customMappings;
 	private Map<Class<?>, ObjectMapping<?>> mappingsDict;
+	private List<CachingMapping> cachingMappings;
+	private HistoryMarkupCache historyCache;
+	private int transactionDepth;
+	private boolean transactionRollbackOnly;
+	private PersonHistoryLoader personHistoryLoader;
+	/** The database whose custom mappings this uses, if this was connected read-only; otherwise null */
+	private USLDatabase primary;
 	
 	
 	/**
@@ -159,20 +176,103 @@ public class USLDatabase extends Database implements MappingDatabase {
 	 */
 	public void connect(String username, String password, String url, File flatFileFolder) 
 			throws SQLException {
+		connect(username, password, url, flatFileFolder, AppendOnlyLog.SyncPolicy.DEFAULT);
+	}
+	
+	/**
+	 * Connects to the specified database. If there is an active connection
+	 * already, the active connection is explicitly closed.
+	 * 
+	 * @param username
+	 *            the username
+	 * @param password
+	 *            the password
+	 * @param url
+	 *            the url
+	 * @param flatFileFolder
+	 * 			  the folder where flat files should be saved
+	 * @param flatFileSyncPolicy
+	 *            how often writes to the flat files are forced to disk (see {@link #syncCustom()})
+	 * @throws SQLException
+	 *             if a sql-related exception occurs
+	 */
+	public void connect(String username, String password, String url, File flatFileFolder, AppendOnlyLog.SyncPolicy flatFileSyncPolicy) 
+			throws SQLException {
 		if (connection != null) {
 			disconnect();
 		}
 		
 		connection = DriverManager.getConnection(url, username, password);
 		connection.setAutoCommit(true);
+		transactionDepth = 0;
+		transactionRollbackOnly = false;
+		primary = null;
 
+		addMysqlMappings();
+		
+		// Handling an event is only recorded after the people it dirtied, and progress is only recorded
+		// after what was handled, so each log is made to write after the one before it. They are also 
+		// added (and so synced) in that order.
+		CustomDirtyPersonMapping dirtyPersonMapping = new CustomDirtyPersonMapping(Paths.get(flatFileFolder.getPath(), "dirty_persons.dat").toFile(), flatFileSyncPolicy);
+		CustomHandledAtTimestampMapping handledAtTimestampMapping = new CustomHandledAtTimestampMapping(this, Paths.get(flatFileFolder.getPath(), "handled_at_timestamps.dat").toFile(), flatFileSyncPolicy);
+		CustomRedditToMeaningProgressMapping redditToMeaningMapping = new CustomRedditToMeaningProgressMapping(Paths.get(flatFileFolder.getPath(), "reddit_to_meaning.dat").toFile(), flatFileSyncPolicy);
+		handledAtTimestampMapping.getLog().writeAfter(dirtyPersonMapping.getLog());
+		redditToMeaningMapping.getLog().writeAfter(handledAtTimestampMapping.getLog());
+		addCustomMapping(DirtyPerson.class, dirtyPersonMapping);
+		addCustomMapping(HandledAtTimestamp.class, handledAtTimestampMapping);
+		addCustomMapping(RedditToMeaningProgress.class, redditToMeaningMapping);
+	}
+	
+	/**
+	 * <p>Connects to the specified database for reading only, alongside the primary database that
+	 * was connected with {@link #connect(String, String, String, File)}. This gets its own connection,
+	 * so it can be used on a different thread than the primary, and the connection is marked read-only.</p>
+	 * 
+	 * <p>The custom (flat-file) mappings may only be opened once, so the only one available here is
+	 * the primary's reddit to meaning progress, which must not be written through this database. It is
+	 * looked up on the primary every time, so this keeps working if the primary reconnects, and this
+	 * never syncs or closes it. The other custom mappings are null.</p>
+	 * 
+	 * @param username
+	 *            the username
+	 * @param password
+	 *            the password
+	 * @param url
+	 *            the url
+	 * @param primary
+	 *            the database that owns the custom mappings
+	 * @throws SQLException
+	 *             if a sql-related exception occurs
+	 */
+	public void connectReadOnly(String username, String password, String url, USLDatabase primary) 
+			throws SQLException {
+		if (connection != null) {
+			disconnect();
+		}
+		
+		connection = DriverManager.getConnection(url, username, password);
+		connection.setAutoCommit(true);
+		connection.setReadOnly(true);
+		transactionDepth = 0;
+		transactionRollbackOnly = false;
+		
+		this.primary = primary;
+		addMysqlMappings();
+	}
+	
+	private void addMysqlMappings() {
 		mysqlMappings = new ArrayList<>();
 		customMappings = new ArrayList<>();
+		cachingMappings = new ArrayList<>();
 		mappingsDict = new HashMap<>();
+		historyCache = new HistoryMarkupCache();
+		personHistoryLoader = new MysqlPersonHistoryLoader(connection);
 		addMapping(Fullname.class, new MysqlFullnameMapping(this, connection));
-		addMapping(MonitoredSubreddit.class, new MysqlMonitoredSubredditMapping(this, connection));
+		MysqlMonitoredSubredditMapping monitoredSubredditMapping = new MysqlMonitoredSubredditMapping(this, connection);
+		addMapping(MonitoredSubreddit.class, monitoredSubredditMapping, new CachingMonitoredSubredditMapping(monitoredSubredditMapping));
 		addMapping(MonitoredSubredditAltModMail.class, new MysqlMonitoredSubredditAltModMailMapping(this, connection));
-		addMapping(Person.class, new MysqlPersonMapping(this, connection));
+		MysqlPersonMapping personMapping = new MysqlPersonMapping(this, connection);
+		addMapping(Person.class, personMapping, new CachingPersonMapping(personMapping));
 		addMapping(DeletedPerson.class, new MysqlDeletedPersonMapping(this, connection));
 		addMapping(HandledModAction.class, new MysqlHandledModActionMapping(this, connection));
 		addMapping(BanHistory.class, new MysqlBanHistoryMapping(this, connection));
@@ -202,10 +302,18 @@ public class USLDatabase extends Database implements MappingDatabase {
 		addMapping(SubredditPersonBannedRelease.class, new MysqlSubredditPersonBannedReleaseMapping(this, connection));
 		addMapping(HardwareSwapBan.class, new MysqlHardwareSwapBanMapping(this, connection));
 		addMapping(HardwareSwapAction.class, new MysqlHardwareSwapActionMapping(this, connection));
-		
-		addCustomMapping(HandledAtTimestamp.class, new CustomHandledAtTimestampMapping(this, Paths.get(flatFileFolder.getPath(), "handled_at_timestamps.dat").toFile()));
-		addCustomMapping(DirtyPerson.class, new CustomDirtyPersonMapping(Paths.get(flatFileFolder.getPath(), "dirty_persons.dat").toFile()));
-		addCustomMapping(RedditToMeaningProgress.class, new CustomRedditToMeaningProgressMapping(Paths.get(flatFileFolder.getPath(), "reddit_to_meaning.dat").toFile()));
+		addMapping(OutboundAction.class, new MysqlOutboundActionMapping(this, connection));
+	}
+	
+	/**
+	 * Force everything written to the custom (flat-file) mappings so far to disk. Those mappings
+	 * group their writes together and only sync every so often, so anything which relies on them
+	 * surviving a crash - such as moving on to work which assumes they did - should call this first.
+	 */
+	public void syncCustom() {
+		for(CustomMapping<?> map : customMappings) {
+			map.sync();
+		}
 	}
 	
 	/**
@@ -216,12 +324,154 @@ public class USLDatabase extends Database implements MappingDatabase {
 	public Connection getConnection() {
 		return connection;
 	}
+	
+	/**
+	 * Get the cache of rendered person histories. This is cleared whenever
+	 * the database is truncated or purged.
+	 * 
+	 * @return the history cache
+	 * @see USLHistoryMarkupFormatter#formatCached(USLDatabase, FileConfiguration, int, boolean)
+	 */
+	public HistoryMarkupCache getHistoryCache() {
+		return historyCache;
+	}
 
 	private <A> void addMapping(Class<A> cl, ObjectMapping<A> mapping) {
 		mysqlMappings.add(mapping);
 		mappingsDict.put(cl, mapping);
 	}
 	
+	/**
+	 * Adds a mysql mapping which is accessed through a caching mapping in front of it. The
+	 * mysql mapping is still what gets validated and truncated, but everything else goes
+	 * through the cache.
+	 * 
+	 * @param cl the class the mappings are for
+	 * @param mapping the mysql mapping
+	 * @param cached the caching mapping in front of it
+	 */
+	private <A, M extends ObjectMapping<A> & CachingMapping> void addMapping(Class<A> cl, ObjectMapping<A> mapping, M cached) {
+		mysqlMappings.add(mapping);
+		cachingMappings.add(cached);
+		mappingsDict.put(cl, cached);
+	}
+	
+	/**
+	 * Clears every in-memory cache in front of the database. This must be called
+	 * if the database is modified without going through this object.
+	 */
+	public void clearCaches() {
+		historyCache.clear();
+		for(CachingMapping mapping : cachingMappings) {
+			mapping.clearCache();
+		}
+	}
+	
+	/**
+	 * <p>Begins a unit of work on the mysql mappings. Nothing done through them until the
+	 * matching {@link #commitTransaction()} is visible elsewhere or survives a crash, and it
+	 * is all committed at once.</p>
+	 * 
+	 * <p>Units of work nest: only the outermost commit actually commits, and rolling back any
+	 * of them causes the outermost one to roll back. Every begin must be paired with exactly
+	 * one commit or rollback.</p>
+	 * 
+	 * <p>The custom (flat-file) mappings are not part of the transaction. Anything written to
+	 * them that must agree with mysql should be written after the outermost commit.</p>
+	 */
+	public void beginTransaction() {
+		try {
+			if(transactionDepth == 0) {
+				connection.setAutoCommit(false);
+				transactionRollbackOnly = false;
+			}
+			transactionDepth++;
+		}catch(SQLException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Ends the current unit of work. If this is the outermost one, everything done since
+	 * the matching {@link #beginTransaction()} is committed.
+	 * 
+	 * @throws IllegalStateException if there is no unit of work, or if a nested unit of work
+	 *                               was rolled back (in which case this is rolled back instead)
+	 */
+	public void commitTransaction() {
+		if(transactionDepth <= 0)
+			throw new IllegalStateException("commitTransaction without beginTransaction");
+		
+		transactionDepth--;
+		if(transactionDepth > 0)
+			return;
+		
+		if(transactionRollbackOnly) {
+			finishTransaction(false);
+			throw new IllegalStateException("a nested unit of work was rolled back; rolled back instead of committing");
+		}
+		finishTransaction(true);
+	}
+	
+	/**
+	 * Ends the current unit of work without committing it. If this is the outermost one,
+	 * everything done since the matching {@link #beginTransaction()} is discarded. Otherwise
+	 * the outermost unit of work will be rolled back when it ends.
+	 * 
+	 * @throws IllegalStateException if there is no unit of work
+	 */
+	public void rollbackTransaction() {
+		if(transactionDepth <= 0)
+			throw new IllegalStateException("rollbackTransaction without beginTransaction");
+		
+		transactionDepth--;
+		if(transactionDepth > 0) {
+			transactionRollbackOnly = true;
+			return;
+		}
+		finishTransaction(false);
+	}
+	
+	/**
+	 * @return true if there is a unit of work in progress, false otherwise
+	 */
+	public boolean isInTransaction() {
+		return transactionDepth > 0;
+	}
+	
+	private void finishTransaction(boolean commit) {
+		try {
+			if(commit) {
+				connection.commit();
+			}else {
+				connection.rollback();
+				
+				// The caches may have seen writes that never happened
+				clearCaches();
+			}
+		}catch(SQLException e) {
+			if(commit) {
+				// Don't let turning autocommit back on commit whatever is left
+				try {
+					connection.rollback();
+				}catch(SQLException e2) {
+					logger.throwing(e2);
+				}
+				clearCaches();
+			}
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}finally {
+			transactionRollbackOnly = false;
+			try {
+				connection.setAutoCommit(true);
+			}catch(SQLException e) {
+				logger.throwing(e);
+			}
+		}
+	}
+	
 	private <A> void addCustomMapping(Class<A> cl, CustomMapping<A> mapping) {
 		mapping.recover();
 		customMappings.add(mapping);
@@ -239,12 +489,15 @@ public class USLDatabase extends Database implements MappingDatabase {
 		for(int i = mysqlMappings.size() - 1; i >= 0; i--) {
 			((SchemaValidator)mysqlMappings.get(i)).purgeSchema();
 		}
+		clearCaches();
 	}
 	
 	/**
 	 * Truncates everything from mysql. Scary stuff.
 	 */
 	public void truncateMySQL() {
+		clearCaches();
+		
 		try (Statement statement = connection.createStatement()) {
 			statement.execute("SET FOREIGN_KEY_CHECKS = 0");
 		}catch(SQLException e) {
@@ -270,6 +523,8 @@ public class USLDatabase extends Database implements MappingDatabase {
 	 * @see me.timothy.bots.database.SchemaValidator#purgeSchema()
 	 */
 	public void purgeCustom() {
+		clearCaches();
+		
 		for(int i = customMappings.size() - 1; i >= 0; i--) {
 			((SchemaValidator)customMappings.get(i)).purgeSchema();
 		}
@@ -301,6 +556,10 @@ public class USLDatabase extends Database implements MappingDatabase {
 		if(connection == null)
 			return;
 		
+		for(ObjectMapping<?> mapping : mysqlMappings) {
+			((MysqlObjectMapping<?>)mapping).closeStatements();
+		}
+		
 		try {
 			connection.close();
 			connection = null;
@@ -314,7 +573,10 @@ public class USLDatabase extends Database implements MappingDatabase {
 		
 		mysqlMappings = null;
 		customMappings = null;
+		cachingMappings = null;
 		mappingsDict = null;
+		historyCache = null;
+		personHistoryLoader = null;
 	}
 	
 	@Override 
@@ -459,6 +721,8 @@ public class USLDatabase extends Database implements MappingDatabase {
 	
 	@Override
 	public RedditToMeaningProgressMapping getRedditToMeaningProgressMapping() {
+		if(primary != null)
+			return primary.getRedditToMeaningProgressMapping();
 		return (RedditToMeaningProgressMapping) mappingsDict.get(RedditToMeaningProgress.class);
 	}
 	
@@ -496,6 +760,16 @@ public class USLDatabase extends Database implements MappingDatabase {
 	public HardwareSwapActionMapping getHardwareSwapActionMapping() {
 		return (HardwareSwapActionMapping) mappingsDict.get(HardwareSwapAction.class);
 	}
+	
+	@Override
+	public OutboundActionMapping getOutboundActionMapping() {
+		return (OutboundActionMapping) mappingsDict.get(OutboundAction.class);
+	}
+	
+	@Override
+	public PersonHistoryLoader getPersonHistoryLoader() {
+		return personHistoryLoader;
+	}
 
 	/**
 	 * Adds a fullname to the database
@@ -3,6 +3,9 @@ package me.timothy.bots;
 import java.io.IOException;
 import java.nio.file.Path;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 /**
  * Loads the necessary file-level configuration for the universal
  * scammer list. This doesn't contain the actual loading code, but 
@@ -11,6 +14,7 @@ import java.nio.file.Path;
  * @author Timothy Moore
  */
 public class USLFileConfiguration extends FileConfiguration {
+	private static final Logger logger = LogManager.getLogger();
 	
 	/**
 	 * Initialize the file configuration at the current folder
@@ -47,6 +51,51 @@ public class USLFileConfiguration extends FileConfiguration {
 		addProperties("hwswapuser", true, "username", "password", "appClientID", "appClientSecret");
 		addProperties("hwswap", true, "savepath", "max_bans_per_loop", "bansub");
 		addProperties("register_account_requests", false, "limit_per_loop");
+		addProperties("scanning", false, "threads", "requests_per_minute", "max_latency_ms", "subreddit_max_latency_ms");
+		addProperties("outbound", false, "max_dispatch_ms", "max_attempts", "digest_window_ms");
+		addProperties("moderator_perms", false, "ttl_ms");
+		addProperties("propagator", false, "planning_threads", "urgent_window_ms", "max_loop_ms");
+	}
+	
+	/**
+	 * Get an optional property as a long, falling back to the default if it
+	 * is not set or is not a number.
+	 * 
+	 * @param key the key, e.g. "scanning.max_latency_ms"
+	 * @param def the value if the property is missing or malformed
+	 * @return the value of the property or def
+	 */
+	public long getLongProperty(String key, long def) {
+		String prop = getProperty(key);
+		if(prop == null)
+			return def;
+		
+		try {
+			return Long.parseLong(prop.trim());
+		}catch(NumberFormatException e) {
+			logger.catching(e);
+			return def;
+		}
 	}
 	
+	/**
+	 * Get an optional property as an int, falling back to the default if it
+	 * is not set or is not a number.
+	 * 
+	 * @param key the key, e.g. "scanning.threads"
+	 * @param def the value if the property is missing or malformed
+	 * @return the value of the property or def
+	 */
+	public int getIntProperty(String key, int def) {
+		String prop = getProperty(key);
+		if(prop == null)
+			return def;
+		
+		try {
+			return Integer.parseInt(prop.trim());
+		}catch(NumberFormatException e) {
+			logger.catching(e);
+			return def;
+		}
+	}
 }
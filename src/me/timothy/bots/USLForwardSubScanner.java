@@ -1,20 +1,23 @@
 package me.timothy.bots;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import me.timothy.bots.models.MonitoredSubreddit;
 import me.timothy.bots.models.SubredditModqueueProgress;
+import me.timothy.jreddit.HttpUnexpectedStatusCodeException;
 import me.timothy.jreddit.RedditUtils;
 import me.timothy.jreddit.info.Listing;
 import me.timothy.jreddit.info.ModAction;
 import me.timothy.jreddit.info.Thing;
 
 /**
- * <p>One public function that forward-scans a single subreddit.</p>
+ * <p>One public function that forward-scans a single type of action on a single subreddit.</p>
  * 
  * <p>The goal of this class is to take a subreddit
- * then go to its mod action history page. We then keep clicking "next page" ("next" is where the idea
+ * then go to its mod action history page, filtered to one type of action (bans or unbans).
+ * We then keep clicking "next page" ("next" is where the idea
  * of this being a "forward" search comes from) until reddit says there's no more stuff.</p>
  * 
  * <p>We might have to interrupt this process to do other stuff, since we can't spend too
@@ -32,7 +35,7 @@ public class USLForwardSubScanner {
 	 * 
 	 * Our goal is only to:
 	 *   1) Get the pagination mod action id
-	 *   2) Get the page from reddit
+	 *   2) Get the page from reddit, once the rate limiter lets us
 	 *   3) Send all the mod actions to the mod action processor
 	 *   4) 
 	 *     a) Update the oldest pagination id
@@ -47,6 +50,10 @@ public class USLForwardSubScanner {
 	 *   - Determine if we SHOULD do a forward search
 	 *   - Update from forward search to reverse search
 	 *   - Check if the subreddit is read/write only
+	 *   
+	 * Steps 3 and 4 touch the database, so they are handed to the ingest executor
+	 * rather than run here. The next page only depends on the page we just got, so 
+	 * we can fetch it while the ingest executor is still storing the last one.
 	 */
 	
 	/**
@@ -59,75 +66,93 @@ public class USLForwardSubScanner {
 	 */
 	public static final boolean FINISHED = false;
 	
-	private static final Logger logger = LogManager.getLogger();
 	private static final int MAX_PAGES_PER_SCAN = 3;
 	
 	
 	/**
-	 * Starts or continues a forward scan of the given subreddits mod action history.
+	 * Starts or continues a forward scan of the given subreddits mod action history, only 
+	 * asking reddit for actions of the given type. The database is only used from tasks 
+	 * given to the ingest executor, which must run them in the order they were given.
 	 * 
 	 * @param bot The bot, used for authenticating with reddit
 	 * @param database The database, used for saving state information and the mod actions we find
 	 * @param config The configuration, used for fetching user-controlled variables
 	 * @param subreddit The subreddit to perform a forward search on.
+	 * @param type The type of mod action to scan for, one of SubredditModqueueProgress.TYPES
+	 * @param progress The progress on the subreddit as of the start of the scan
+	 * @param limiter Decides when we can make each request to reddit
+	 * @param maybeLoginAgain Called when a request to reddit fails
+	 * @param onForbidden Called when reddit says we can't see the mod log of the subreddit
+	 * @param ingest Runs everything that touches the database
 	 * @return CONTINUE if we have not finished our forward search, FINISHED if we have
 	 */
-	public static boolean scan(Bot bot, USLDatabase database, USLFileConfiguration config, MonitoredSubreddit subreddit) {
+	public static boolean scan(Bot bot, USLDatabase database, USLFileConfiguration config, MonitoredSubreddit subreddit, String type,
+			SubredditModqueueProgress progress, RedditRateLimiter limiter, Runnable maybeLoginAgain, Runnable onForbidden, Executor ingest) {
+		String paginationID = progress.getLatestModActionID(type);
+		boolean initializeNewest = progress.getNewestModActionID(type) == null;
 		for(int i = 0; i < MAX_PAGES_PER_SCAN; i++) {
-			boolean result = scanPage(bot, database, config, subreddit);
+			paginationID = scanPage(bot, database, config, subreddit, type, paginationID, initializeNewest, limiter, maybeLoginAgain, onForbidden, ingest);
 			
-			if(result == FINISHED)
+			if(paginationID == null)
 				return FINISHED;
+			
+			initializeNewest = false;
 		}
 		
 		return CONTINUE;
 	}
 	
-	private static boolean scanPage(Bot bot, USLDatabase database, USLFileConfiguration config, MonitoredSubreddit subreddit) {
-		String paginationID = getPaginationModActionID(database, subreddit);
-		Listing page = getPageFollowing(bot, subreddit, paginationID);
-		sleepFor(USLBotDriver.BRIEF_PAUSE_MS);
-		sendPageToProcessor(bot, database, config, page);
+	private static String scanPage(Bot bot, USLDatabase database, USLFileConfiguration config, MonitoredSubreddit subreddit, String type,
+			String paginationID, boolean initializeNewest, RedditRateLimiter limiter, Runnable maybeLoginAgain, Runnable onForbidden, Executor ingest) {
+		Listing page = getPageFollowing(bot, subreddit, type, paginationID, limiter, maybeLoginAgain, onForbidden);
 		
-		if(isPageLastPage(page))
-			return FINISHED;
+		final boolean lastPage = isPageLastPage(page);
+		final String newPaginationID = lastPage ? null : getNewPaginationModActionID(page);
+		final String reversePaginationID = (!lastPage && initializeNewest) ? getReversePaginationModActionID(page) : null;
+		ingest.execute(() -> {
+			sendPageToProcessor(bot, database, config, page);
 		
-		String newPaginationID = getNewPaginationModActionID(page);
-		updatePaginationModActionID(database, subreddit, newPaginationID);
+			if(newPaginationID != null)
+				updatePaginationModActionID(database, subreddit, type, newPaginationID);
 		
-		if(needToInitializeNewestPaginationID(database, subreddit)) {
-			newPaginationID = getReversePaginationModActionID(page);
-			initializeReversePaginationModActionID(database, subreddit, newPaginationID);
-		}
+			if(reversePaginationID != null)
+				initializeReversePaginationModActionID(database, subreddit, type, reversePaginationID);
+		});
 		
-		return CONTINUE;
+		return newPaginationID;
 	}
-	
-	private static String getPaginationModActionID(USLDatabase database, MonitoredSubreddit sub) {
-		SubredditModqueueProgress progress = database.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id);
 		
-		return progress.latestModActionID;
-	}
-	
-	private static Listing getPageFollowing(Bot bot, MonitoredSubreddit subreddit, String modActionID) {
-		return new Retryable<Listing>("getPageFollowing", USLBotDriver.sMaybeLoginAgainRunnable) {
+	private static Listing getPageFollowing(Bot bot, MonitoredSubreddit subreddit, String type, String modActionID, RedditRateLimiter limiter, Runnable maybeLoginAgain, Runnable onForbidden) {
+		return new Retryable<Listing>("getPageFollowing", maybeLoginAgain) {
 
 			@Override
 			protected Listing runImpl() throws Exception {
-				return RedditUtils.getModeratorLog(subreddit.subreddit, null, null, null, modActionID, 500, bot.getUser());
+				limiter.acquire();
+				try {
+					return RedditUtils.getModeratorLog(subreddit.subreddit, null, type, null, modActionID, 500, bot.getUser());
+				}catch(HttpUnexpectedStatusCodeException e) {
+					if(e.statusCode == 429)
+						limiter.onRateLimited();
+					else if(e.statusCode == 403)
+						onForbidden.run();
+					throw e;
+				}
 			}
 			
 		}.run();
 	}
 	
 	private static void sendPageToProcessor(Bot bot, USLDatabase database, USLFileConfiguration config, Listing listing) {
+		List<ModAction> actions = new ArrayList<>(listing.numChildren());
 		for(int i = 0; i < listing.numChildren(); i++) {
 			Thing child = listing.getChild(i);
 			
 			if(child instanceof ModAction) {
-				USLModActionProcessor.processModAction(bot, database, config, (ModAction)child);
+				actions.add((ModAction)child);
 			}
 		}
+		
+		USLModActionProcessor.processModActions(bot, database, config, actions);
 	}
 	
 	private static boolean isPageLastPage(Listing listing) {
@@ -157,11 +182,6 @@ public class USLForwardSubScanner {
 		return oldest.id();
 	}
 	
-	private static boolean needToInitializeNewestPaginationID(USLDatabase database, MonitoredSubreddit subreddit) {
-		SubredditModqueueProgress progress = database.getSubredditModqueueProgressMapping().fetchForSubreddit(subreddit.id);
-		return progress.newestModActionID == null;
-	}
-	
 	private static String getReversePaginationModActionID(Listing listing) {
 		ModAction newest = null;
 		
@@ -180,26 +200,17 @@ public class USLForwardSubScanner {
 		return newest.id();
 	}
 	
-	private static void updatePaginationModActionID(USLDatabase database, MonitoredSubreddit sub, String newID) {
+	private static void updatePaginationModActionID(USLDatabase database, MonitoredSubreddit sub, String type, String newID) {
 		SubredditModqueueProgress progress = database.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id);
-		progress.latestModActionID = newID;
+		progress.setLatestModActionID(type, newID);
 		database.getSubredditModqueueProgressMapping().save(progress);
 	}
 	
-	private static void initializeReversePaginationModActionID(USLDatabase database, MonitoredSubreddit sub, String newID) {
+	private static void initializeReversePaginationModActionID(USLDatabase database, MonitoredSubreddit sub, String type, String newID) {
 		SubredditModqueueProgress progress = database.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id);
-		progress.newestModActionID = newID;
+		progress.setNewestModActionID(type, newID);
 		database.getSubredditModqueueProgressMapping().save(progress);
 	}
 	
-	private static void sleepFor(long ms) {
-		try {
-			logger.trace("Sleeping for " + ms + " milliseconds");
-			Thread.sleep(ms);
-		} catch (InterruptedException ex) {
-			logger.error(ex);
-			throw new RuntimeException(ex);
-		}
-	}
-	
 }
+	
\ No newline at end of file
@@ -3,19 +3,11 @@ package me.timothy.bots;
 import java.sql.Timestamp;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.List;
-import java.util.PriorityQueue;
 
 import me.timothy.bots.database.MappingDatabase;
-import me.timothy.bots.models.BanHistory;
-import me.timothy.bots.models.HandledModAction;
-import me.timothy.bots.models.Hashtag;
-import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.memory.HistoryMarkupCache;
+import me.timothy.bots.memory.PersonHistoryRow;
 import me.timothy.bots.models.Person;
-import me.timothy.bots.models.USLAction;
-import me.timothy.bots.models.USLActionHashtag;
-import me.timothy.bots.models.UnbanHistory;
-import me.timothy.bots.models.UnbanRequest;
 
 /**
  * This class produces the history of a person on the USL in a reddit-markup way.
@@ -23,116 +15,73 @@ import me.timothy.bots.models.UnbanRequest;
  * @author Timothy
  */
 public class USLHistoryMarkupFormatter {
-	private static class HistoryItem implements Comparable<HistoryItem> {
-		public HandledModAction hma;
-		public BanHistory ban;
-		public UnbanHistory unban;
-		public UnbanRequest request;
-		
-		public USLAction action;
-		
-		public HistoryItem(HandledModAction hma, BanHistory ban) {
-			this.ban = ban;
-			this.hma = hma;
-		}
-		
-		public HistoryItem(HandledModAction hma, UnbanHistory unban) {
-			this.hma = hma;
-			this.unban = unban;
-		}
-		
-		public HistoryItem(USLAction action) {
-			this.action = action;
-		}
-		
-		public HistoryItem(UnbanRequest request) {
-			this.request = request;
-		}
+	/**
+	 * Append the given row of a persons history to the report, as a row in the table.
+	 * 
+	 * @param report the report to append to
+	 * @param formatter the formatter for the time column
+	 * @param row the row to append
+	 */
+	private static void appendToTable(StringBuilder report, DateFormat formatter, PersonHistoryRow row) {
+		report.append(formatter.format(row.time));
+		report.append('|');
 		
-		public Timestamp getTime() {
-			if(hma != null)
-				return hma.occurredAt;
-			
-			if(action != null)
-				return action.createdAt;
-			
-			if(request != null)
-				return request.handledAt;
-			
-			throw new AssertionError();
-		}
-
-		@Override
-		public int compareTo(HistoryItem other) {
-			Timestamp mine = getTime();
-			Timestamp his = other.getTime();
+		switch(row.type) {
+		case BAN:
+			report.append("BAN|");
+			report.append("/u/").append(row.modUsername).append(" banned with note '").append(row.banDescription).append("' on /r/");
+			report.append(row.subreddit);
+			break;
+		case UNBAN:
+			report.append("UNBAN|");
+			report.append("/u/").append(row.modUsername).append(" unbanned ").append(" on /r/").append(row.subreddit);
+			break;
+		case UNBAN_REQUEST:
+			report.append("UNBAN REQUEST|");
+			if(row.invalid) {
+				report.append("/u/").append(row.modUsername).append(" requested that I unban but was denied");
+			}else {
+				report.append("/u/").append(row.modUsername).append(" requested that I unban and was approved");
+			}
+			break;
+		case LIST_UPDATE:
+			report.append("LIST UPDATE|");
 			
-			if(mine.equals(his)) {
-				if(request != null) {
-					if(other.request == null)
-						return -1;
-					return 0;
-				}else if(other.request != null) {
-					return 1;
+			report.append("New list tags: ");
+			for(int i = 0; i < row.tags.size(); i++) {
+				if(i != 0) {
+					report.append(", ");
 				}
-				
-				if(unban != null) {
-					if(other.unban == null)
-						return -1;
-					return 0;
-				}else if(other.unban != null) {
-					return 1;
-				}
-				
-				return 0;
+				report.append('\'').append(row.tags.get(i)).append('\'');
 			}
-			
-			return mine.compareTo(his);
+			break;
 		}
+		report.append("\n");
+	}
+	
+	/**
+	 * Produces the same report as {@link #format(MappingDatabase, FileConfiguration, int, boolean)},
+	 * but reuses the last report generated for the person if nothing has happened to them since.
+	 * Callers that render the same person many times (such as the propagator, which includes the
+	 * history in the message to every subreddit) should prefer this.
+	 * 
+	 * @param database the database
+	 * @param config the file configuration
+	 * @param personId the id of the person to generate a report on
+	 * @param includeBotActivity true if we suspect the bot's activity is unexpected, false otherwise
+	 * @return the report.
+	 * @see HistoryMarkupCache
+	 */
+	public static String formatCached(USLDatabase database, FileConfiguration config, int personId, boolean includeBotActivity) {
+		HistoryMarkupCache cache = database.getHistoryCache();
+		Timestamp latestHandled = database.getRedditToMeaningProgressMapping().fetch();
 		
-		public void appendToTable(StringBuilder report, MappingDatabase database) {
-			Timestamp time = getTime();
-			
-			DateFormat formatter = SimpleDateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
-			report.append(formatter.format(time));
-			report.append('|');
-			
-			if(ban != null) {
-				report.append("BAN|");
-				
-				MonitoredSubreddit sub = database.getMonitoredSubredditMapping().fetchByID(hma.monitoredSubredditID);
-				Person mod = database.getPersonMapping().fetchByID(ban.modPersonID);
-				report.append("/u/").append(mod.username).append(" banned with note '").append(ban.banDescription).append("' on /r/");
-				report.append(sub.subreddit);
-			}else if(unban != null) {
-				report.append("UNBAN|");
-
-				MonitoredSubreddit sub = database.getMonitoredSubredditMapping().fetchByID(hma.monitoredSubredditID);
-				Person mod = database.getPersonMapping().fetchByID(unban.modPersonID);
-				report.append("/u/").append(mod.username).append(" unbanned ").append(" on /r/").append(sub.subreddit);
-			}else if(request != null) {
-				report.append("UNBAN REQUEST|");
-				Person mod = database.getPersonMapping().fetchByID(request.modPersonID);
-				if(request.invalid) {
-					report.append("/u/").append(mod.username).append(" requested that I unban but was denied");
-				}else {
-					report.append("/u/").append(mod.username).append(" requested that I unban and was approved");
-				}
-			}else {
-				report.append("LIST UPDATE|");
-
-				report.append("New list tags: ");
-				List<USLActionHashtag> actTags = database.getUSLActionHashtagMapping().fetchByUSLActionID(action.id);
-				for(int i = 0; i < actTags.size(); i++) {
-					Hashtag tag = database.getHashtagMapping().fetchByID(actTags.get(i).hashtagID);
-					
-					if(i != 0) {
-						report.append(", ");
-					}
-					report.append('\'').append(tag.tag).append('\'');
-				}
-			}
+		String result = cache.get(personId, includeBotActivity, latestHandled);
+		if(result == null) {
+			result = format(database, config, personId, includeBotActivity);
+			cache.put(personId, includeBotActivity, latestHandled, result);
 		}
+		return result;
 	}
 	
 	/**
@@ -154,37 +103,15 @@ public class USLHistoryMarkupFormatter {
 	 * @return the report.
 	 */
 	public static String format(MappingDatabase database, FileConfiguration config, int personId, boolean includeBotActivity) {
-		Person bot = database.getPersonMapping().fetchByUsername(config.getProperty("user.username"));
 		Person person = database.getPersonMapping().fetchByID(personId);
 		
-		List<BanHistory> bansOnPerson = database.getBanHistoryMapping().fetchBanHistoriesByPerson(personId);
-		List<UnbanHistory> unbansOnPerson = database.getUnbanHistoryMapping().fetchByPerson(personId);
-		List<USLAction> actionsOnPerson = database.getUSLActionMapping().fetchByPerson(personId);
-		List<UnbanRequest> requestsOnPerson = database.getUnbanRequestMapping().fetchHandledByBannedPerson(personId);
-		
-		PriorityQueue<HistoryItem> sortedHistory = new PriorityQueue<HistoryItem>();
-		for(BanHistory bh : bansOnPerson) {
-			if(includeBotActivity || bh.modPersonID != bot.id) {
-				HandledModAction hma = database.getHandledModActionMapping().fetchByID(bh.handledModActionID);
-				sortedHistory.offer(new HistoryItem(hma, bh));
-			}
-		}
-		
-		for(UnbanHistory ubh : unbansOnPerson) {
-			if(includeBotActivity || ubh.modPersonID != bot.id) { 
-				HandledModAction hma = database.getHandledModActionMapping().fetchByID(ubh.handledModActionID);
-				sortedHistory.offer(new HistoryItem(hma, ubh));
-			}
-		}
-		
-		for(USLAction action : actionsOnPerson) {
-			sortedHistory.offer(new HistoryItem(action));
+		int excludeModPersonID = -1;
+		if(!includeBotActivity) {
+			Person bot = database.getPersonMapping().fetchByUsername(config.getProperty("user.username"));
+			if(bot != null)
+				excludeModPersonID = bot.id;
 		}
 		
-		for(UnbanRequest req : requestsOnPerson) {
-			sortedHistory.offer(new HistoryItem(req));
-		}
-
 		StringBuilder result = new StringBuilder();
 		result.append("# USL Generated Report: /u/").append(person.username);
 		result.append(" (Bot Activity: ").append(includeBotActivity ? "Included" : "Not included").append(")\n\n");
@@ -192,11 +119,8 @@ public class USLHistoryMarkupFormatter {
 		result.append("Time|Action|Description\n");
 		result.append(":--|:--|:--\n");
 		
-		while(!sortedHistory.isEmpty()) {
-			HistoryItem item = sortedHistory.poll();
-			item.appendToTable(result, database);
-			result.append("\n");
-		}
+		final DateFormat formatter = SimpleDateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+		database.getPersonHistoryLoader().loadHistory(personId, excludeModPersonID, (row) -> appendToTable(result, formatter, row));
 		
 		return result.toString();
 	}
@@ -1,7 +1,14 @@
 package me.timothy.bots;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -15,7 +22,7 @@ import me.timothy.bots.models.UnbanHistory;
 import me.timothy.jreddit.info.ModAction;
 
 /**
- * The goal of this class is to take in a single handled mod action and determine
+ * The goal of this class is to take in handled mod actions and determine
  * what we should do with it. This must be able to handle recieving the same mod
  * action multiple times in a row without duplicating database rows. This handles
  * the conversion from an arbitrary mod action to a handled mod action + ban history/
@@ -41,55 +48,125 @@ public class USLModActionProcessor {
 	 * @param ma the action to process
 	 */
 	public static void processModAction(Bot bot, USLDatabase database, USLFileConfiguration config, ModAction ma) {
+		processModActions(bot, database, config, Collections.singletonList(ma));
+	}
+	
+	/**
+	 * Takes a page of mod actions and stores the ones we have not seen yet in the database, 
+	 * the same as calling processModAction on each of them. Rather than a handful of statements
+	 * per mod action, this checks which actions have been seen with one query, finds or creates
+	 * everyone involved together, and inserts the handled mod actions and histories with 
+	 * multi-row inserts, all in a single transaction.
+	 * 
+	 * @param bot the bot
+	 * @param database the database
+	 * @param config file config / settings
+	 * @param page the actions to process
+	 */
+	public static void processModActions(Bot bot, USLDatabase database, USLFileConfiguration config, List<ModAction> page) {
 		// only update extreme trace at the start
 		extremeTrace = config.getProperty("general.ma_processor_extreme_trace").equals("true");
 		
-		extremeTraceLog("start");
-		extremeTraceLog("  ma = [ModAction id=%s, action=%s, desc=%s, det=%s, utc=%d]", ma.id(), ma.action(), ma.description(), ma.details(), ma.createdUTC());
-		realProcessModAction(bot, database, config, ma);
+		extremeTraceLog("start page of %d", page.size());
+		realProcessModActions(bot, database, config, page);
 		extremeTraceLog("end");
-		
 	}
 	
-	private static void realProcessModAction(Bot bot, USLDatabase database, USLFileConfiguration config, ModAction ma) {
-		if(haveSeen(database, ma)) {
-			extremeTraceLog("  already in database = already seen");
-			return;
-		}
-		
-		extremeTraceLog("  switching on ma.action()=\"%s\"", ma.action());
-		switch(ma.action()) {
-		case "banuser":
-			processBanUser(bot, database, config, ma);
-			break;
-		case "unbanuser":
-			processUnbanUser(bot, database, config, ma);
-			break;
+	private static void realProcessModActions(Bot bot, USLDatabase database, USLFileConfiguration config, List<ModAction> page) {
+		// a page can overlap the previous one, so the same action may show up more than once
+		Map<String, ModAction> unseen = new LinkedHashMap<>();
+		for(ModAction ma : page) {
+			extremeTraceLog("  ma = [ModAction id=%s, action=%s, desc=%s, det=%s, utc=%d]", ma.id(), ma.action(), ma.description(), ma.details(), ma.createdUTC());
+			if(ma.action().equals("banuser") || ma.action().equals("unbanuser")) {
+				unseen.putIfAbsent(ma.id(), ma);
+			}
 		}
-	}
 	
-	private static void processBanUser(Bot bot, USLDatabase database, USLFileConfiguration config, ModAction ma) {
-		extremeTraceLog("  detected this is a new ban by %s on %s", ma.mod(), ma.targetAuthor());
+		if(unseen.isEmpty())
+			return;
 		
-		HandledModAction hma = saveModActionToDB(database, ma);
+		for(HandledModAction seen : database.getHandledModActionMapping().fetchByModActionIDs(unseen.keySet())) {
+			extremeTraceLog("  %s already in database = already seen", seen.modActionID);
+			unseen.remove(seen.modActionID);
+		}
 
-		Person mod = database.getPersonMapping().fetchOrCreateByUsername(ma.mod());
-		Person banned = database.getPersonMapping().fetchOrCreateByUsername(ma.targetAuthor());
+		if(unseen.isEmpty())
+			return;
+		
+		List<ModAction> actions = new ArrayList<>(unseen.values());
+		List<HandledModAction> hmas = new ArrayList<>(actions.size());
+		Map<String, MonitoredSubreddit> subredditsByName = new HashMap<>();
+		Map<Integer, MonitoredSubreddit> subreddits = new HashMap<>();
+		Set<String> usernames = new HashSet<>();
+		for(ModAction ma : actions) {
+			HandledModAction hma = toHandledModAction(database, ma, subredditsByName);
+			hmas.add(hma);
+			usernames.add(ma.mod());
+			usernames.add(ma.targetAuthor());
+		}
+		for(MonitoredSubreddit ms : subredditsByName.values()) {
+			subreddits.put(ms.id, ms);
+		}
 		
+		List<BanHistory> bans = new ArrayList<>();
+		List<UnbanHistory> unbans = new ArrayList<>();
+		Map<String, Person> persons;
+		database.beginTransaction();
+		try {
+			persons = database.getPersonMapping().fetchOrCreateByUsernames(usernames);
+			database.getHandledModActionMapping().saveAll(hmas);
+		
+			for(int i = 0; i < actions.size(); i++) {
+				ModAction ma = actions.get(i);
+				HandledModAction hma = hmas.get(i);
+				Person mod = persons.get(ma.mod().toLowerCase());
+				Person target = persons.get(ma.targetAuthor().toLowerCase());
+		
+				if(ma.action().equals("banuser")) {
+					bans.add(new BanHistory(-1, mod.id, target.id, hma.id, ma.description(), ma.details()));
+				}else {
+					unbans.add(new UnbanHistory(-1, mod.id, target.id, hma.id));
+				}
+			}
 		
-		BanHistory history = new BanHistory(-1, mod.id, banned.id, hma.id, ma.description(), ma.details());
-		database.getBanHistoryMapping().save(history);
+			database.getBanHistoryMapping().saveAll(bans);
+			database.getUnbanHistoryMapping().saveAll(unbans);
+			database.commitTransaction();
+		}catch(RuntimeException e) {
+			database.rollbackTransaction();
+			throw e;
+		}
 		
+		Map<Integer, HandledModAction> hmasByID = new HashMap<>();
+		for(HandledModAction hma : hmas) {
+			hmasByID.put(hma.id, hma);
+		}
 		
+		for(BanHistory history : bans) {
+			database.getHistoryCache().invalidate(history.bannedPersonID);
+			logBan(database, history, hmasByID.get(history.handledModActionID), subreddits);
+		}
 		
-		// THE REST IS JUST LOGGING
+		for(UnbanHistory history : unbans) {
+			database.getHistoryCache().invalidate(history.unbannedPersonID);
+			logUnban(database, history, hmasByID.get(history.handledModActionID), subreddits);
+		}
+	}
+	
+	private static void logBan(USLDatabase database, BanHistory history, HandledModAction hma, Map<Integer, MonitoredSubreddit> subreddits) {
+		Person mod = database.getPersonMapping().fetchByID(history.modPersonID);
+		Person banned = database.getPersonMapping().fetchByID(history.bannedPersonID);
 		
 		extremeTraceLog("  saved %s", history.toString());
 		
 		logger.printf(Level.INFO, "Detected that %s (id=%d) banned %s (id=%d) on subreddit %s (id=%d); description=\"%s\", details=\"%s\"",
-				mod.username, mod.id, banned.username, banned.id, database.getMonitoredSubredditMapping().fetchByID(hma.monitoredSubredditID).subreddit,
+				mod.username, mod.id, banned.username, banned.id, subreddits.get(hma.monitoredSubredditID).subreddit,
 				hma.monitoredSubredditID, history.banDescription, history.banDetails);
 		
+		// the rest is only informational and costs a few queries per action
+		if(!logger.isTraceEnabled())
+			return;
+		
 		extremeTraceLog("  scanning for matching unbans...");
 		List<UnbanHistory> matching = database.getUnbanHistoryMapping().fetchUnbanHistoriesByPersonAndSubreddit(banned.id, hma.monitoredSubredditID);
 		for(UnbanHistory ubh : matching) {
@@ -97,7 +174,7 @@ public class USLModActionProcessor {
 			
 			if(ubhHma.occurredAt.after(hma.occurredAt)) {
 				extremeTraceLog("    found matching: %s (hma=%s)", ubh.toString(), ubhHma.toString());
-				logger.printf(Level.INFO, "  Note: %s was unbanned by %s on %s so this ban is not in effect",
+				logger.printf(Level.TRACE, "  Note: %s was unbanned by %s on %s so this ban is not in effect",
 						database.getPersonMapping().fetchByID(ubh.unbannedPersonID).username, 
 						database.getPersonMapping().fetchByID(ubh.modPersonID).username, 
 						ubhHma.occurredAt.toString());
@@ -109,26 +186,19 @@ public class USLModActionProcessor {
 		}
 	}
 	
-	private static void processUnbanUser(Bot bot, USLDatabase database, USLFileConfiguration config, ModAction ma) {
-		extremeTraceLog("  detected this is %s unbanning %s", ma.mod(), ma.targetAuthor());
-		
-		HandledModAction hma = saveModActionToDB(database, ma);
-
-		Person mod = database.getPersonMapping().fetchOrCreateByUsername(ma.mod());
-		Person unbanned = database.getPersonMapping().fetchOrCreateByUsername(ma.targetAuthor());
-		
-		UnbanHistory history = new UnbanHistory(-1, mod.id, unbanned.id, hma.id);
-		database.getUnbanHistoryMapping().save(history);
-		
-		// THE REST IS JUST LOGGING
+	private static void logUnban(USLDatabase database, UnbanHistory history, HandledModAction hma, Map<Integer, MonitoredSubreddit> subreddits) {
+		Person mod = database.getPersonMapping().fetchByID(history.modPersonID);
+		Person unbanned = database.getPersonMapping().fetchByID(history.unbannedPersonID);
 		
 		extremeTraceLog("  saved %s", history.toString());
 		
 		logger.printf(Level.INFO, "Detected that %s (id=%d) unbanned %s (id=%d) on subreddit %s (id=%d)", 
 				mod.username, mod.id, unbanned.username, unbanned.id, 
-				database.getMonitoredSubredditMapping().fetchByID(hma.monitoredSubredditID).subreddit, 
-				hma.monitoredSubredditID);
+				subreddits.get(hma.monitoredSubredditID).subreddit, hma.monitoredSubredditID);
 		
+		// the rest is only informational and costs a few queries per action
+		if(!logger.isTraceEnabled())
+			return;
 		
 		extremeTraceLog("  scanning for matching bans...");
 		List<BanHistory> matching = database.getBanHistoryMapping().fetchBanHistoriesByPersonAndSubreddit(unbanned.id, hma.monitoredSubredditID);
@@ -137,7 +207,7 @@ public class USLModActionProcessor {
 			
 			if(bhHma.occurredAt.before(hma.occurredAt)) {
 				extremeTraceLog("    found matching: %s (hma = %s)", bh.toString(), bhHma.toString());
-				logger.printf(Level.INFO, "  This could be related to %s banning %s at %s - desc: \"%s\", details: \"%s\"",
+				logger.printf(Level.TRACE, "  This could be related to %s banning %s at %s - desc: \"%s\", details: \"%s\"",
 						database.getPersonMapping().fetchByID(bh.modPersonID).username, database.getPersonMapping().fetchByID(bh.bannedPersonID).username,
 						bhHma.occurredAt.toString(), bh.banDescription, bh.banDetails);
 			}
@@ -145,24 +215,25 @@ public class USLModActionProcessor {
 		
 		if(matching.size() == 0) {
 			extremeTraceLog("  no matching bans!");
-			logger.printf(Level.INFO, "  There are no bans that we know of that might correspond with this.");
+			logger.printf(Level.TRACE, "  There are no bans that we know of that might correspond with this.");
 		}
 	}
 	
-	private static HandledModAction saveModActionToDB(USLDatabase database, ModAction ma) {
+	private static HandledModAction toHandledModAction(USLDatabase database, ModAction ma, Map<String, MonitoredSubreddit> subredditsByName) {
 		Timestamp occurredAt = new Timestamp((long)(ma.createdUTC() * 1000));
 		extremeTraceLog("  saving mod action to file; subreddit = %s, occurredAt=%s", ma.subreddit(), occurredAt.toString());
 		
-		MonitoredSubreddit ms = database.getMonitoredSubredditMapping().fetchByName(ma.subreddit());
+		MonitoredSubreddit ms = subredditsByName.get(ma.subreddit().toLowerCase());
+		if(ms == null)
+			ms = database.getMonitoredSubredditMapping().fetchByName(ma.subreddit());
 		if(ms == null)
 		{
 			extremeTraceLog("That's strange... we got a mod action on a non monitored subreddit?");
 			logger.printf(Level.ERROR, "saveModActionToDB with mod action id=%s on subreddit %s is NOT monitored", ma.id(), ma.subreddit());
 			throw new RuntimeException("subreddit " + ma.subreddit() + " is not monitored");
 		}
-		HandledModAction hma = new HandledModAction(-1, ms.id, ma.id(), occurredAt);
-		database.getHandledModActionMapping().save(hma);
-		return hma;
+		subredditsByName.put(ma.subreddit().toLowerCase(), ms);
+		return new HandledModAction(-1, ms.id, ma.id(), occurredAt);
 	}
 	
 	private static void extremeTraceLog(String msg, Object... args) {
@@ -170,8 +241,4 @@ public class USLModActionProcessor {
 			logger.printf(Level.TRACE, msg, args);
 		}
 	}
-	
-	private static boolean haveSeen(USLDatabase db, ModAction ma) {
-		return db.getHandledModActionMapping().fetchByModActionID(ma.id()) != null;
-	}
 }
@@ -0,0 +1,165 @@
+package me.timothy.bots;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * <p>Remembers which subreddits we moderate, so we don't have to ask reddit about every
+ * monitored subreddit on every loop.</p>
+ *
+ * <p>The first time we're asked about a subreddit, or after it was invalidated, we check with
+ * reddit right away. After that we answer from what we remember, and once that is older than
+ * moderator_perms.ttl_ms we still answer from it but check again on a background thread. Every
+ * check goes through the RedditRateLimiter rather than pausing after each one.</p>
+ *
+ * <p>A subreddit should be invalidated whenever we have reason to think the answer changed,
+ * such as when we accept an invite to moderate it or when reddit says we can't see its mod
+ * log.</p>
+ *
+ * @author Timothy
+ */
+public class USLModeratorPermissionCache {
+	private static final Logger logger = LogManager.getLogger();
+	
+	/** How long an answer is used before it is checked again if moderator_perms.ttl_ms is not set */
+	private static final long DEFAULT_TTL_MS = 1000 * 60 * 60;
+	/** How long the background thread stays alive between checks */
+	private static final long IDLE_THREAD_TIMEOUT_SECONDS = 60;
+	
+	private static class Entry {
+		final boolean isModerator;
+		final long checkedAt;
+		
+		Entry(boolean isModerator, long checkedAt) {
+			this.isModerator = isModerator;
+			this.checkedAt = checkedAt;
+		}
+	}
+	
+	private final Predicate<String> checker;
+	private final RedditRateLimiter limiter;
+	private final Executor refresher;
+	private final LongSupplier clock;
+	private final long ttlMs;
+	private final Map<String, Entry> entries;
+	private final AtomicLong generation;
+	private final Map<String, Long> invalidatedAt;
+	private final Set<String> refreshing;
+	
+	/**
+	 * Create a cache which reads how long to use each answer from the optional moderator_perms.ttl_ms
+	 * property and refreshes answers on its own background thread.
+	 *
+	 * @param config the file configuration
+	 * @param limiter decides when we can make each request to reddit
+	 * @param checker asks reddit if we moderate the given subreddit
+	 */
+	public USLModeratorPermissionCache(USLFileConfiguration config, RedditRateLimiter limiter, Predicate<String> checker) {
+		this(config, limiter, checker, createRefresher(), System::currentTimeMillis);
+	}
+	
+	/**
+	 * Create a cache with the given executor for refreshing and the given clock, which is useful for testing.
+	 *
+	 * @param config the file configuration
+	 * @param limiter decides when we can make each request to reddit
+	 * @param checker asks reddit if we moderate the given subreddit
+	 * @param refresher runs the background checks
+	 * @param clock returns the current time in milliseconds
+	 */
+	public USLModeratorPermissionCache(USLFileConfiguration config, RedditRateLimiter limiter, Predicate<String> checker,
+			Executor refresher, LongSupplier clock) {
+		this.checker = checker;
+		this.limiter = limiter;
+		this.refresher = refresher;
+		this.clock = clock;
+		this.ttlMs = config.getLongProperty("moderator_perms.ttl_ms", DEFAULT_TTL_MS);
+		this.entries = new ConcurrentHashMap<>();
+		this.generation = new AtomicLong();
+		this.invalidatedAt = new ConcurrentHashMap<>();
+		this.refreshing = ConcurrentHashMap.newKeySet();
+	}
+	
+	/**
+	 * Determine if we moderate the given subreddit. This only waits on reddit if we don't
+	 * remember the answer.
+	 *
+	 * @param subreddit the subreddit
+	 * @return true if we moderate it, false otherwise
+	 */
+	public boolean isModerator(String subreddit) {
+		String key = subreddit.toLowerCase(Locale.ROOT);
+		Entry entry = entries.get(key);
+		if(entry == null)
+			return check(subreddit, key);
+		
+		if(entry.checkedAt + ttlMs <= clock.getAsLong() && refreshing.add(key)) {
+			try {
+				refresher.execute(() -> {
+					try {
+						check(subreddit, key);
+					}catch(RuntimeException e) {
+						logger.catching(e);
+					}finally {
+						refreshing.remove(key);
+					}
+				});
+			}catch(RejectedExecutionException e) {
+				refreshing.remove(key);
+				logger.catching(e);
+			}
+		}
+		return entry.isModerator;
+	}
+	
+	/**
+	 * Forget what we know about the given subreddit, so the next time we're asked we check
+	 * with reddit right away.
+	 *
+	 * @param subreddit the subreddit
+	 */
+	public void invalidate(String subreddit) {
+		String key = subreddit.toLowerCase(Locale.ROOT);
+		logger.printf(Level.DEBUG, "Forgetting if we moderate /r/%s", subreddit);
+		invalidatedAt.put(key, generation.incrementAndGet());
+		entries.remove(key);
+	}
+	
+	private boolean check(String subreddit, String key) {
+		long startedGeneration = generation.get();
+		long startedAt = clock.getAsLong();
+		limiter.acquire();
+		boolean isModerator = checker.test(subreddit);
+		
+		// If the subreddit was invalidated while we were checking, the answer may already be out of date
+		Long invalidated = invalidatedAt.get(key);
+		if(invalidated == null || invalidated <= startedGeneration) {
+			entries.put(key, new Entry(isModerator, startedAt));
+		}
+		return isModerator;
+	}
+	
+	private static Executor createRefresher() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r) -> {
+			Thread thread = new Thread(r, "USLModeratorPermissionCache refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
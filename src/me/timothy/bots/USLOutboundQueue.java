@@ -0,0 +1,428 @@
+package me.timothy.bots;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import me.timothy.bots.database.OutboundActionMapping;
+import me.timothy.bots.functions.SendOutboundActionFunction;
+import me.timothy.bots.memory.ModmailPMInformation;
+import me.timothy.bots.memory.UserBanInformation;
+import me.timothy.bots.memory.UserPMInformation;
+import me.timothy.bots.memory.UserUnbanInformation;
+import me.timothy.bots.models.OutboundAction;
+
+/**
+ * <p>The bans, unbans and messages that we need to send to reddit, stored in the database
+ * until they are sent. The propagator, the traditional scammer handler and the temporary
+ * auth granter add to this as they decide what needs to be done, which is quick since nothing
+ * is sent yet. Later in the loop {@link #dispatch()} sends as much as it can in the time it
+ * is given, going through the same RedditRateLimiter as scanning.</p>
+ *
+ * <p>Every action has an idempotency key made from what caused it (such as the USL action that
+ * was propagated) and what it does, so if the same work is done twice - such as after stopping
+ * in the middle of propagating - the action is only queued once.</p>
+ *
+ * <p>Subreddits take turns; each round sends one action for every subreddit that has actions
+ * due, with personal messages taking a turn as if they were one more subreddit. So propagating
+ * to one subreddit with a lot of bans does not hold up the others.</p>
+ *
+ * <p>An attempt is saved before the action is sent. If sending fails the action is tried again
+ * later, waiting longer each time, until it has failed outbound.max_attempts times. If we stop
+ * after sending but before saving that it was sent, it will be sent again.</p>
+ *
+ * <p>Subreddits which have opted into a modmail digest don't get one message for each thing
+ * we tell them. Their modmail waits until outbound.digest_window_ms has passed since the
+ * oldest of it was queued (by default, until the next dispatch) and is then combined into
+ * as few messages as reddit's length limit allows.</p>
+ *
+ * @author Timothy
+ */
+public class USLOutboundQueue {
+	private static final Logger logger = LogManager.getLogger();
+	
+	/** How long each call to dispatch may run if outbound.max_dispatch_ms is not set */
+	private static final long DEFAULT_MAX_DISPATCH_MS = 1000 * 60 * 5;
+	/** How many times we try to send an action if outbound.max_attempts is not set */
+	private static final int DEFAULT_MAX_ATTEMPTS = 5;
+	/** How long we wait before the first retry; this doubles each time */
+	private static final long FIRST_RETRY_DELAY_MS = 1000 * 60;
+	/** The longest we wait between retries */
+	private static final long MAX_RETRY_DELAY_MS = 1000 * 60 * 60;
+	/** How many due actions are fetched for each subreddit at a time */
+	private static final int ACTIONS_PER_FETCH = 10;
+	/** The longest source that can go in an idempotency key */
+	private static final int MAX_SOURCE_LENGTH = 100;
+	/** The longest message body reddit accepts */
+	private static final int MAX_MESSAGE_BODY_LENGTH = 10000;
+	/** The longest message title reddit accepts */
+	private static final int MAX_MESSAGE_TITLE_LENGTH = 100;
+	/** Goes between the messages combined into a digest */
+	private static final String DIGEST_SEPARATOR = "\n\n---\n\n";
+	
+	private final USLDatabase database;
+	private final OutboundActionMapping mapping;
+	private final RedditRateLimiter limiter;
+	private final SendOutboundActionFunction sender;
+	private final LongSupplier clock;
+	private final long maxDispatchMs;
+	private final int maxAttempts;
+	private final long digestWindowMs;
+	
+	/**
+	 * Create a queue which reads how long to dispatch for, how many attempts to make and how
+	 * long to collect modmail digests from the optional outbound.max_dispatch_ms,
+	 * outbound.max_attempts and outbound.digest_window_ms properties.
+	 *
+	 * @param database the database
+	 * @param config the file configuration
+	 * @param limiter decides when we can make each request to reddit
+	 * @param sender does the actions on reddit
+	 */
+	public USLOutboundQueue(USLDatabase database, USLFileConfiguration config, RedditRateLimiter limiter, SendOutboundActionFunction sender) {
+		this(database, config, limiter, sender, System::currentTimeMillis);
+	}
+	
+	/**
+	 * Create a queue with the given clock, which is useful for testing.
+	 *
+	 * @param database the database
+	 * @param config the file configuration
+	 * @param limiter decides when we can make each request to reddit
+	 * @param sender does the actions on reddit
+	 * @param clock returns the current time in milliseconds
+	 */
+	public USLOutboundQueue(USLDatabase database, USLFileConfiguration config, RedditRateLimiter limiter, SendOutboundActionFunction sender,
+			LongSupplier clock) {
+		this.database = database;
+		this.mapping = database.getOutboundActionMapping();
+		this.limiter = limiter;
+		this.sender = sender;
+		this.clock = clock;
+		this.maxDispatchMs = config.getLongProperty("outbound.max_dispatch_ms", DEFAULT_MAX_DISPATCH_MS);
+		this.maxAttempts = (int) Math.max(1, config.getLongProperty("outbound.max_attempts", DEFAULT_MAX_ATTEMPTS));
+		this.digestWindowMs = config.getLongProperty("outbound.digest_window_ms", 0);
+	}
+	
+	/**
+	 * Queue the given bans.
+	 *
+	 * @param source what caused the bans, such as "propagate:5@1500000000000". Together with what each
+	 *               ban does this must be different from anything else which should be sent.
+	 * @param bans the bans
+	 * @return how many bans were queued; the rest were already queued
+	 */
+	public int enqueueBans(String source, List<UserBanInformation> bans) {
+		int queued = 0;
+		for(UserBanInformation ban : bans) {
+			String key = idempotencyKey(source, OutboundAction.BAN, "s" + ban.subreddit.id + "p" + ban.person.id,
+					ban.banMessage, ban.banReason, ban.banNote);
+			if(enqueue(new OutboundAction(-1, key, OutboundAction.BAN, ban.subreddit.id, ban.person.id, null,
+					ban.banMessage, ban.banReason, ban.banNote, 0, null, null, null, null)))
+				queued++;
+		}
+		return queued;
+	}
+	
+	/**
+	 * Queue the given unbans.
+	 *
+	 * @param source what caused the unbans
+	 * @param unbans the unbans
+	 * @return how many unbans were queued; the rest were already queued
+	 * @see #enqueueBans(String, List)
+	 */
+	public int enqueueUnbans(String source, List<UserUnbanInformation> unbans) {
+		int queued = 0;
+		for(UserUnbanInformation unban : unbans) {
+			String key = idempotencyKey(source, OutboundAction.UNBAN, "s" + unban.subreddit.id + "p" + unban.person.id);
+			if(enqueue(new OutboundAction(-1, key, OutboundAction.UNBAN, unban.subreddit.id, unban.person.id, null,
+					null, null, null, 0, null, null, null, null)))
+				queued++;
+		}
+		return queued;
+	}
+	
+	/**
+	 * Queue the given modmail. Modmail to subreddits that want a digest is held back and
+	 * combined with the rest of their modmail before it is sent.
+	 *
+	 * @param source what caused the modmail
+	 * @param modmailPMs the modmail
+	 * @return how many were queued; the rest were already queued
+	 * @see #enqueueBans(String, List)
+	 */
+	public int enqueueModmailPMs(String source, List<ModmailPMInformation> modmailPMs) {
+		int queued = 0;
+		for(ModmailPMInformation pm : modmailPMs) {
+			String key = idempotencyKey(source, OutboundAction.MODMAIL, "s" + pm.subreddit.id, pm.title, pm.body);
+			String actionType = pm.subreddit.modmailDigest ? OutboundAction.MODMAIL_DIGEST : OutboundAction.MODMAIL;
+			if(enqueue(new OutboundAction(-1, key, actionType, pm.subreddit.id, null, pm.title,
+					pm.body, null, null, 0, null, null, null, null)))
+				queued++;
+		}
+		return queued;
+	}
+	
+	/**
+	 * Queue the given personal messages. Callbacks can't be saved, so these must not have any.
+	 *
+	 * @param source what caused the messages
+	 * @param userPMs the messages
+	 * @return how many were queued; the rest were already queued
+	 * @throws IllegalArgumentException if any of the messages have callbacks
+	 * @see #enqueueBans(String, List)
+	 */
+	public int enqueueUserPMs(String source, List<UserPMInformation> userPMs) {
+		int queued = 0;
+		for(UserPMInformation pm : userPMs) {
+			if(!pm.callbacks.isEmpty())
+				throw new IllegalArgumentException("Can't queue " + pm + " since it has callbacks");
+			
+			String key = idempotencyKey(source, OutboundAction.USER_PM, "p" + pm.person.id, pm.title, pm.body);
+			if(enqueue(new OutboundAction(-1, key, OutboundAction.USER_PM, null, pm.person.id, pm.title,
+					pm.body, null, null, 0, null, null, null, null)))
+				queued++;
+		}
+		return queued;
+	}
+	
+	/**
+	 * @return how many actions are waiting to be sent
+	 */
+	public int countPending() {
+		return mapping.countPending();
+	}
+	
+	/**
+	 * Combine the modmail digests which are ready, then send the actions which are due, taking
+	 * turns between subreddits, until there are none left or we run out of time.
+	 *
+	 * @return how many actions were sent
+	 */
+	public int dispatch() {
+		long stopAt = clock.getAsLong() + maxDispatchMs;
+		int sent = 0;
+		
+		combineDigests();
+		
+		while(clock.getAsLong() < stopAt) {
+			Timestamp now = new Timestamp(clock.getAsLong());
+			List<Integer> subredditIDs = mapping.fetchDueSubredditIDs(now);
+			if(subredditIDs.isEmpty())
+				break;
+			
+			List<Deque<OutboundAction>> turns = new ArrayList<>(subredditIDs.size());
+			for(Integer subredditID : subredditIDs) {
+				turns.add(new ArrayDeque<>(mapping.fetchDue(subredditID, now, ACTIONS_PER_FETCH)));
+			}
+			
+			boolean sentAny = true;
+			while(sentAny && clock.getAsLong() < stopAt) {
+				sentAny = false;
+				for(Deque<OutboundAction> turn : turns) {
+					OutboundAction action = turn.pollFirst();
+					if(action == null)
+						continue;
+					
+					sentAny = true;
+					if(attempt(action))
+						sent++;
+					
+					if(clock.getAsLong() >= stopAt)
+						break;
+				}
+			}
+		}
+		
+		int pending = mapping.countPending();
+		if(pending > 0)
+			logger.printf(Level.DEBUG, "Sent %d queued actions; %d are still waiting", sent, pending);
+		return sent;
+	}
+	
+	/**
+	 * Replace the modmail waiting for a digest with the digest for each subreddit whose oldest
+	 * waiting modmail has waited for the digest window. The digest is queued and the modmail it
+	 * replaces is marked sent together, so each message ends up in exactly one digest.
+	 */
+	private void combineDigests() {
+		Map<Integer, List<OutboundAction>> bySubreddit = new LinkedHashMap<>();
+		for(OutboundAction part : mapping.fetchPendingDigests()) {
+			bySubreddit.computeIfAbsent(part.monitoredSubredditID, (id) -> new ArrayList<>()).add(part);
+		}
+		
+		long now = clock.getAsLong();
+		for(List<OutboundAction> parts : bySubreddit.values()) {
+			long oldest = Long.MAX_VALUE;
+			for(OutboundAction part : parts) {
+				oldest = Math.min(oldest, part.createdAt.getTime());
+			}
+			if(oldest + digestWindowMs > now)
+				continue;
+			
+			List<OutboundAction> digests = buildDigests(parts);
+			logger.printf(Level.DEBUG, "Combining %d modmail into %d digests for subreddit %d", parts.size(), digests.size(), parts.get(0).monitoredSubredditID);
+			
+			database.beginTransaction();
+			try {
+				for(OutboundAction digest : digests) {
+					enqueue(digest);
+				}
+				Timestamp sentAt = new Timestamp(now);
+				for(OutboundAction part : parts) {
+					part.sentAt = sentAt;
+					mapping.save(part);
+				}
+				database.commitTransaction();
+			}catch(RuntimeException e) {
+				database.rollbackTransaction();
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * Combine the given modmail to one subreddit into as few messages as will fit. Each message
+	 * is kept whole, so one which is too long by itself is sent by itself.
+	 * 
+	 * @param parts the modmail, in the order to send it
+	 * @return the MODMAIL actions to queue instead
+	 */
+	private static List<OutboundAction> buildDigests(List<OutboundAction> parts) {
+		List<List<OutboundAction>> groups = new ArrayList<>();
+		List<OutboundAction> group = new ArrayList<>();
+		int length = 0;
+		for(OutboundAction part : parts) {
+			int partLength = digestEntry(part).length();
+			if(!group.isEmpty() && length + DIGEST_SEPARATOR.length() + partLength > MAX_MESSAGE_BODY_LENGTH) {
+				groups.add(group);
+				group = new ArrayList<>();
+				length = 0;
+			}
+			length += (group.isEmpty() ? 0 : DIGEST_SEPARATOR.length()) + partLength;
+			group.add(part);
+		}
+		groups.add(group);
+		
+		List<OutboundAction> digests = new ArrayList<>(groups.size());
+		for(int i = 0; i < groups.size(); i++) {
+			List<OutboundAction> g = groups.get(i);
+			OutboundAction first = g.get(0);
+			String title, body;
+			if(g.size() == 1) {
+				title = first.title;
+				body = first.body;
+			}else {
+				String suffix = " (and " + (g.size() - 1) + " more)";
+				title = first.title;
+				if(title.length() + suffix.length() > MAX_MESSAGE_TITLE_LENGTH)
+					title = title.substring(0, Math.max(0, MAX_MESSAGE_TITLE_LENGTH - suffix.length()));
+				title += suffix;
+				
+				StringBuilder bodyBuilder = new StringBuilder();
+				for(OutboundAction part : g) {
+					if(bodyBuilder.length() > 0)
+						bodyBuilder.append(DIGEST_SEPARATOR);
+					bodyBuilder.append(digestEntry(part));
+				}
+				body = bodyBuilder.toString();
+			}
+			
+			String key = "digest:" + first.id + "-" + g.get(g.size() - 1).id + ":" + OutboundAction.MODMAIL + ":" + (i + 1);
+			digests.add(new OutboundAction(-1, key, OutboundAction.MODMAIL, first.monitoredSubredditID, null, title,
+					body, null, null, 0, null, null, null, null));
+		}
+		return digests;
+	}
+	
+	private static String digestEntry(OutboundAction part) {
+		return "**" + part.title + "**\n\n" + part.body;
+	}
+	
+	private boolean enqueue(OutboundAction action) {
+		Timestamp now = new Timestamp(clock.getAsLong());
+		action.createdAt = now;
+		action.nextAttemptAt = now;
+		boolean queued = mapping.enqueue(action);
+		if(!queued)
+			logger.printf(Level.DEBUG, "Not queueing %s; it was already queued", action.idempotencyKey);
+		return queued;
+	}
+	
+	private boolean attempt(OutboundAction action) {
+		action.attempts++;
+		action.nextAttemptAt = new Timestamp(clock.getAsLong() + getRetryDelay(action.attempts));
+		mapping.save(action);
+		
+		boolean success;
+		try {
+			limiter.acquire();
+			success = sender.send(action);
+		}catch(RuntimeException e) {
+			logger.catching(e);
+			success = false;
+		}
+		
+		if(success) {
+			action.sentAt = new Timestamp(clock.getAsLong());
+		}else if(action.attempts >= maxAttempts) {
+			logger.printf(Level.ERROR, "Giving up on %s after %d attempts", action.idempotencyKey, action.attempts);
+			action.failedAt = new Timestamp(clock.getAsLong());
+		}else {
+			logger.printf(Level.WARN, "Failed to send %s; trying again at %s", action.idempotencyKey, action.nextAttemptAt);
+		}
+		mapping.save(action);
+		return success;
+	}
+	
+	private static long getRetryDelay(int attempts) {
+		long delay = FIRST_RETRY_DELAY_MS;
+		for(int i = 1; i < attempts && delay < MAX_RETRY_DELAY_MS; i++) {
+			delay *= 2;
+		}
+		return Math.min(delay, MAX_RETRY_DELAY_MS);
+	}
+	
+	/**
+	 * Make an idempotency key out of what caused an action, what kind of action it is, who it is
+	 * for, and a hash of what it says.
+	 */
+	private static String idempotencyKey(String source, String actionType, String target, String... content) {
+		if(source == null || source.length() > MAX_SOURCE_LENGTH)
+			throw new IllegalArgumentException("source must be at most " + MAX_SOURCE_LENGTH + " characters (got " + source + ")");
+		
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}catch(NoSuchAlgorithmException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+		
+		for(String part : content) {
+			if(part != null)
+				digest.update(part.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+		
+		StringBuilder key = new StringBuilder(source).append(':').append(actionType).append(':').append(target).append(':');
+		byte[] hash = digest.digest();
+		for(int i = 0; i < 12; i++) {
+			key.append(String.format("%02x", hash[i]));
+		}
+		return key.toString();
+	}
+}
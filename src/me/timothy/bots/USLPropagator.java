@@ -5,11 +5,10 @@ import static me.timothy.bots.ResponseUtils.verifyFormat;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -19,6 +18,8 @@ import org.apache.logging.log4j.Logger;
 
 import me.timothy.bots.memory.ModmailPMInformation;
 import me.timothy.bots.memory.PropagateResult;
+import me.timothy.bots.memory.PropagationContext;
+import me.timothy.bots.memory.USLActionBundle;
 import me.timothy.bots.memory.UserBanInformation;
 import me.timothy.bots.memory.UserUnbanInformation;
 import me.timothy.bots.models.BanHistory;
@@ -26,8 +27,6 @@ import me.timothy.bots.models.HandledModAction;
 import me.timothy.bots.models.Hashtag;
 import me.timothy.bots.models.MonitoredSubreddit;
 import me.timothy.bots.models.Person;
-import me.timothy.bots.models.PropagatorSetting.PropagatorSettingKey;
-import me.timothy.bots.models.SubscribedHashtag;
 import me.timothy.bots.models.TraditionalScammer;
 import me.timothy.bots.models.USLAction;
 import me.timothy.bots.models.USLActionHashtag;
@@ -179,68 +178,67 @@ public class USLPropagator {
 	 *  
 	 * @param action the action to propagate
 	 * @return what needs to be done.
-	 * @see #propagateAction(List, USLAction)
+	 * @see #propagateAction(PropagationContext, USLAction)
 	 */
 	public PropagateResult propagateAction(USLAction action) {
-		List<MonitoredSubreddit> subs = database.getMonitoredSubredditMapping().fetchAll();
-		HashMap<Integer, MonitoredSubreddit> mapSubs = new HashMap<>();
-		
-		for(MonitoredSubreddit sub : subs) {
-			if(!sub.writeOnly) {
-				mapSubs.put(sub.id, sub);
-			}
-		}
-		
-		return propagateAction(mapSubs, action);
+		return propagateAction(PropagationContext.load(database, config), action);
 	}
 	
 	/**
-	 * Propagates the given action to the given reading subreddits.
+	 * Propagates the given action using the given context.
 	 * 
-	 * @param readingSubreddits the subreddits which are receiving bans. The keys are the ids of the subreddits.
-	 * This avoids having to repeatedly query the database for monitored subreddits.
+	 * @param context the subreddits, settings, responses and subscriptions to propagate with. This avoids having
+	 * to repeatedly query the database for things that do not change between actions.
 	 * @param action the action which you are interested in propagating.
 	 * @return the action by the bot that needs to take place.
+	 * @see #propagateAction(PropagationContext, USLActionBundle)
 	 */
-	public PropagateResult propagateAction(HashMap<Integer, MonitoredSubreddit> readingSubreddits, USLAction action) {
+	public PropagateResult propagateAction(PropagationContext context, USLAction action) {
+		return propagateAction(context, USLActionBundle.load(database, Collections.singletonList(action)).get(0));
+	}
+	
+	/**
+	 * Propagates the action in the given bundle using the given context. The bundle has everything
+	 * about the action that would otherwise be queried for each subreddit, so this only goes to the
+	 * database for history markup and in the rare case that we override someone else's unban.
+	 * 
+	 * @param context the subreddits, settings, responses and subscriptions to propagate with.
+	 * @param bundle the action which you are interested in propagating, with its person, tags and histories
+	 * @return the action by the bot that needs to take place.
+	 * @see USLActionBundle#load(me.timothy.bots.database.MappingDatabase, List)
+	 */
+	public PropagateResult propagateAction(PropagationContext context, USLActionBundle bundle) {
+		USLAction action = bundle.action;
 		PropagateResult result = new PropagateResult(action);
 		
-		String suppressNoOpMessVal = database.getPropagatorSettingMapping().get(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES);
-		boolean suppressNoOpMess = false;
-		if(suppressNoOpMessVal == null) {
-			database.getPropagatorSettingMapping().put(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES, "false");
-		}else if(suppressNoOpMessVal.equals("true")) {
-			suppressNoOpMess = true;
-		}
-		
-		Person pers = database.getPersonMapping().fetchByID(action.personID);
+		Person pers = bundle.person;
 		if(pers.username.equals("[deleted]"))
 			return result; // not a real user
 		if(pers.username.equalsIgnoreCase("automoderator"))
 			return result; // automoderator is protected to avoid abuse
 
+		List<USLActionHashtag> actionTags = bundle.tags;
 		
-		TraditionalScammer tradScammer = database.getTraditionalScammerMapping().fetchByPersonID(action.personID);
+		TraditionalScammer tradScammer = bundle.traditionalScammer;
 		if(tradScammer != null) {
 			if(tradScammer.createdAt.after(action.createdAt))
 				return result;
 			
-			List<USLActionHashtag> actionTags = database.getUSLActionHashtagMapping().fetchByUSLActionID(action.id);
 			if(actionTags.size() == 0)
 				return result;
 			
 			List<Hashtag> actionHashtags = new ArrayList<>();
 			for(USLActionHashtag actionTag : actionTags) {
-				actionHashtags.add(database.getHashtagMapping().fetchByID(actionTag.hashtagID));
+				actionHashtags.add(context.getHashtag(actionTag.hashtagID));
 			}
 			
 			// We supersede the traditional list when the action is newer than the traditional list and includes tags
-			String titleFormat = database.getResponseMapping().fetchByName("propagate_ban_on_traditional_title").responseBody;
-			String bodyFormat = database.getResponseMapping().fetchByName("propagate_ban_on_traditional_body").responseBody;
+			String titleFormat = context.getResponse("propagate_ban_on_traditional_title");
+			String bodyFormat = context.getResponse("propagate_ban_on_traditional_body");
 			
 			ResponseInfo respInfo = new ResponseInfo(ResponseInfoFactory.base);
 			respInfo.addLongtermString("banned user", pers.username);
-			respInfo.addTemporaryString("user history", USLHistoryMarkupFormatter.format(database, config, action.personID, false));
+			respInfo.addTemporaryString("user history", USLHistoryMarkupFormatter.formatCached(database, config, action.personID, false));
 			respInfo.addTemporaryString("old ban note", tradScammer.reason);
 			respInfo.addTemporaryString("new tags", actionHashtags.stream().map((a) -> a.tag).collect(Collectors.joining(", ")));
 			
@@ -251,7 +249,7 @@ public class USLPropagator {
 			result = result.merge(new PropagateResult(action, 
 					Collections.emptyList(), Collections.emptyList(),
 					Collections.singletonList(new ModmailPMInformation(
-							database.getMonitoredSubredditMapping().fetchByName(config.getProperty("general.notifications_sub")),
+							context.notificationsSubreddit,
 							title,
 							body
 							)), Collections.emptyList(), Collections.singletonList(tradScammer)
@@ -259,11 +257,14 @@ public class USLPropagator {
 					));
 		}
 		
-		Person bot = database.getPersonMapping().fetchByUsername(config.getProperty("user.username"));
-		List<Integer> expBanOnIDs = database.getMonitoredSubredditMapping().fetchReadableIDsThatFollowActionsTags(action.id);
+		List<Integer> actionTagIDs = new ArrayList<>(actionTags.size());
+		for(USLActionHashtag actionTag : actionTags) {
+			actionTagIDs.add(actionTag.hashtagID);
+		}
+		List<Integer> expBanOnIDs = context.getReadingSubredditsFollowingAny(actionTagIDs);
 		
-		if(!suppressNoOpMess) {
-			String expBanOnSubs = expBanOnIDs.stream().map((banId) -> database.getMonitoredSubredditMapping().fetchByID(banId).subreddit).collect(Collectors.joining(", "));
+		if(!context.suppressNoOpMessages) {
+			String expBanOnSubs = expBanOnIDs.stream().map((banId) -> context.readingSubreddits.get(banId).subreddit).collect(Collectors.joining(", "));
 			
 			logger.printf(Level.TRACE, "For /u/%s we expect him to be banned on %s", pers.username, expBanOnSubs);
 		}
@@ -271,47 +272,47 @@ public class USLPropagator {
 		// We locate the subreddit which we will classify as the source of this ban. We will only identify it as a single
 		// subreddit IF there is EXACTLY one ban on the person attached to the action which was not done by the bot. In
 		// all other cases, the original subreddit is just "(ambiguous)"
-		String originalSubreddit = getOriginatingSubredditFast(action, readingSubreddits, bot, expBanOnIDs);
-		originalSubreddit = (originalSubreddit == null ? getOriginatingSubredditSlow(action, readingSubreddits, bot, expBanOnIDs) : originalSubreddit);
+		String originalSubreddit = getOriginatingSubredditFast(context, bundle, expBanOnIDs);
+		originalSubreddit = (originalSubreddit == null ? getOriginatingSubredditSlow(context, bundle, expBanOnIDs) : originalSubreddit);
 		if(originalSubreddit == null) {
 			originalSubreddit = "(ambiguous)";
 		}
 		
 		Set<Integer> subredditsNotYetHandled = new HashSet<Integer>();
-		subredditsNotYetHandled.addAll(readingSubreddits.keySet());
+		subredditsNotYetHandled.addAll(context.readingSubreddits.keySet());
 		
 		for(int expBanOn : expBanOnIDs) {
-			MonitoredSubreddit sub = readingSubreddits.get(expBanOn);
+			MonitoredSubreddit sub = context.readingSubreddits.get(expBanOn);
 			subredditsNotYetHandled.remove(expBanOn);
 			
-			result = propagateWhenExpectBan(action, sub, originalSubreddit, suppressNoOpMess).merge(result);
+			result = propagateWhenExpectBan(context, bundle, sub, originalSubreddit).merge(result);
 		}
 		
 		for(int missed : subredditsNotYetHandled) {
-			MonitoredSubreddit sub = readingSubreddits.get(missed);
+			MonitoredSubreddit sub = context.readingSubreddits.get(missed);
 			
-			result = propagateWhenExpectUnbanned(action, sub, suppressNoOpMess).merge(result);
+			result = propagateWhenExpectUnbanned(context, bundle, sub).merge(result);
 		}
 		
 		return result;
 	}
 	
-	private PropagateResult propagateWhenExpectBan(USLAction action, final MonitoredSubreddit subreddit, String originalSubreddit,
-			boolean suppressNoOpMess) {
-		Person bot = database.getPersonMapping().fetchByUsername(config.getProperty("user.username"));
-		final Person toBan = database.getPersonMapping().fetchByID(action.personID);
-		
-		BanHistory ban = database.getBanHistoryMapping().fetchByActionAndSubreddit(action.id, subreddit.id);
+	private PropagateResult propagateWhenExpectBan(PropagationContext context, USLActionBundle bundle, 
+			final MonitoredSubreddit subreddit, String originalSubreddit) {
+		final USLAction action = bundle.action;
+		final Person toBan = bundle.person;
+		final List<USLActionHashtag> actionTags = bundle.tags;
+		BanHistory ban = bundle.getBan(subreddit.id);
 		if(ban != null) {
 			// We definitely don't need to ban, since the person is already banned on the recipient subreddit. However,
 			// we might need to send some messages out.
 			
-			if(ban.modPersonID == bot.id) {
+			if(ban.modPersonID == context.bot.id) {
 				// The ban is from the bot; nothing to do
 				return new PropagateResult(action);
 			}
 			
-			HandledModAction hma = database.getHandledModActionMapping().fetchByID(ban.handledModActionID);
+			HandledModAction hma = bundle.getHandledModAction(ban.handledModActionID);
 			if(hma.occurredAt.after(action.createdAt)) {
 				// The ban is from the future! Nothing to do
 				return new PropagateResult(action);
@@ -335,11 +336,11 @@ public class USLPropagator {
 			// Note: It's possible subreddit B doesn't know about the ban from subreddit A
 			
 			// We're going to notify subreddit A unless were not sending no-op messages right now
-			if(suppressNoOpMess)
+			if(context.suppressNoOpMessages)
 				return new PropagateResult(action);
 			
-			String titleFormat = database.getResponseMapping().fetchByName("propagate_ban_to_subreddit_ban_collision_to_collider_title").responseBody;
-			String bodyFormat = database.getResponseMapping().fetchByName("propagate_ban_to_subreddit_ban_collision_to_collider_body").responseBody;
+			String titleFormat = context.getResponse("propagate_ban_to_subreddit_ban_collision_to_collider_title");
+			String bodyFormat = context.getResponse("propagate_ban_to_subreddit_ban_collision_to_collider_body");
 			
 			ResponseInfo respInfo = new ResponseInfo(ResponseInfoFactory.base);
 			respInfo.addLongtermString("banned user", toBan.username);
@@ -349,8 +350,8 @@ public class USLPropagator {
 			
 			respInfo.clearTemporary();
 			
-			respInfo.addLongtermString("user history", USLHistoryMarkupFormatter.format(database, config, action.personID, false));
-			respInfo.addLongtermString("triggering tags", getPrettyTriggeringTags(action, subreddit));
+			respInfo.addLongtermString("user history", USLHistoryMarkupFormatter.formatCached(database, config, action.personID, false));
+			respInfo.addLongtermString("triggering tags", getPrettyTriggeringTags(context, actionTags, subreddit));
 			
 			String body = new ResponseFormatter(bodyFormat, respInfo).getFormattedResponse(config, database);
 			
@@ -358,21 +359,21 @@ public class USLPropagator {
 					Collections.singletonList(new ModmailPMInformation(subreddit, title, body)), Collections.emptyList());
 		}
 		
-		UnbanHistory unban = database.getUnbanHistoryMapping().fetchByActionAndSubreddit(action.id, subreddit.id);
+		UnbanHistory unban = bundle.getUnban(subreddit.id);
 		List<ModmailPMInformation> pms = new ArrayList<>();
 		if(unban != null) {
-			HandledModAction unbanHMA = database.getHandledModActionMapping().fetchByID(unban.handledModActionID);
+			HandledModAction unbanHMA = bundle.getHandledModAction(unban.handledModActionID);
 			if(unbanHMA.occurredAt.after(action.createdAt)) {
 				// They were unbanned after this action. Nothing needs to be done.
 				return new PropagateResult(action);
 			}
 			
 			// We are overriding an unban, we might need to send a message
-			if(unban.modPersonID != bot.id) {
+			if(unban.modPersonID != context.bot.id) {
 				// We are overriding someone else's unban, we need to inform them about this regardless of their
 				// silent status.
-				String titleFormat = database.getResponseMapping().fetchByName("propagate_ban_to_subreddit_override_unban_title").responseBody;
-				String bodyFormat = database.getResponseMapping().fetchByName("propagate_ban_to_subreddit_override_unban_body").responseBody;
+				String titleFormat = context.getResponse("propagate_ban_to_subreddit_override_unban_title");
+				String bodyFormat = context.getResponse("propagate_ban_to_subreddit_override_unban_body");
 				
 				ResponseInfo responseInfo = new ResponseInfo(ResponseInfoFactory.base);
 				responseInfo.addLongtermString("banned user", toBan.username);
@@ -382,10 +383,10 @@ public class USLPropagator {
 				
 				responseInfo.clearTemporary();
 				
-				responseInfo.addTemporaryString("user history", USLHistoryMarkupFormatter.format(database, config, action.personID, false));
-				responseInfo.addTemporaryString("triggering tags", getPrettyTriggeringTags(action, subreddit));
+				responseInfo.addTemporaryString("user history", USLHistoryMarkupFormatter.formatCached(database, config, action.personID, false));
+				responseInfo.addTemporaryString("triggering tags", getPrettyTriggeringTags(context, actionTags, subreddit));
 				
-				BanHistory matched = matchUnban(subreddit, unban);
+				BanHistory matched = matchUnban(subreddit, unban, unbanHMA);
 				if(matched == null)
 					responseInfo.addTemporaryString("matched ban", "none found");
 				else 
@@ -400,8 +401,8 @@ public class USLPropagator {
 		if(!subreddit.silent && pms.isEmpty()) {
 			// They are not silent mode and we're about to ban them without a message! We'll just send them a
 			// courteous message
-			String titleFormat = database.getResponseMapping().fetchByName("propagated_ban_modmail_title").responseBody;
-			String bodyFormat = database.getResponseMapping().fetchByName("propagated_ban_modmail_body").responseBody;
+			String titleFormat = context.getResponse("propagated_ban_modmail_title");
+			String bodyFormat = context.getResponse("propagated_ban_modmail_body");
 			
 			ResponseInfo responseInfo = new ResponseInfo(ResponseInfoFactory.base);
 			responseInfo.addLongtermString("banned user", toBan.username);
@@ -410,22 +411,22 @@ public class USLPropagator {
 			String title = new ResponseFormatter(titleFormat, responseInfo).getFormattedResponse(config, database);
 			
 			responseInfo.clearTemporary();
-			responseInfo.addTemporaryString("user history", USLHistoryMarkupFormatter.format(database, config, action.personID, false));
-			responseInfo.addTemporaryString("triggering tags", getPrettyTriggeringTags(action, subreddit));
+			responseInfo.addTemporaryString("user history", USLHistoryMarkupFormatter.formatCached(database, config, action.personID, false));
+			responseInfo.addTemporaryString("triggering tags", getPrettyTriggeringTags(context, actionTags, subreddit));
 			
 			String body = new ResponseFormatter(bodyFormat, responseInfo).getFormattedResponse(config, database);
 			pms.add(new ModmailPMInformation(subreddit, title, body));
 		}
 		
 		// Actually ban them
-		String noteFormat = database.getResponseMapping().fetchByName("propagated_ban_note").responseBody;
-		String msgFormat = database.getResponseMapping().fetchByName("propagated_ban_message").responseBody;
+		String noteFormat = context.getResponse("propagated_ban_note");
+		String msgFormat = context.getResponse("propagated_ban_message");
 		
 		ResponseInfo responseInfo = new ResponseInfo(ResponseInfoFactory.base);
 		responseInfo.addLongtermString("banned user", toBan.username);
 		responseInfo.addLongtermString("original subreddit", originalSubreddit);
 		responseInfo.addLongtermString("new subreddit", subreddit.subreddit);
-		responseInfo.addLongtermString("triggering tags", getPrettyTriggeringTags(action, subreddit));
+		responseInfo.addLongtermString("triggering tags", getPrettyTriggeringTags(context, actionTags, subreddit));
 		
 		String message = new ResponseFormatter(msgFormat, responseInfo).getFormattedResponse(config, database);
 		
@@ -438,18 +439,17 @@ public class USLPropagator {
 				Collections.emptyList());
 	}
 	
-	private PropagateResult propagateWhenExpectUnbanned(USLAction action, MonitoredSubreddit subreddit,
-			boolean suppressNoOpMess) {
-		Person bot = database.getPersonMapping().fetchByUsername(config.getProperty("user.username"));
-		Person toBan = database.getPersonMapping().fetchByID(action.personID);
-		
-		UnbanHistory unban = database.getUnbanHistoryMapping().fetchByActionAndSubreddit(action.id, subreddit.id);
+	private PropagateResult propagateWhenExpectUnbanned(PropagationContext context, USLActionBundle bundle,
+			MonitoredSubreddit subreddit) {
+		USLAction action = bundle.action;
+		Person toBan = bundle.person;
+		UnbanHistory unban = bundle.getUnban(subreddit.id);
 		if(unban != null) {
 			// The user is already unbanned there! There is nothing to do.
 			return new PropagateResult(action);
 		}
 		
-		BanHistory ban = database.getBanHistoryMapping().fetchByActionAndSubreddit(action.id, subreddit.id);
+		BanHistory ban = bundle.getBan(subreddit.id);
 
 		if(ban == null) {
 			// In the earlier implementations we would do an unban here just in case they were banned before,
@@ -458,20 +458,19 @@ public class USLPropagator {
 			return new PropagateResult(action);
 		}
 		
-		HandledModAction hma = database.getHandledModActionMapping().fetchByID(ban.handledModActionID);
+		HandledModAction hma = bundle.getHandledModAction(ban.handledModActionID);
 		if(hma.occurredAt.after(action.createdAt)) {
 			// We don't override bans from the future!
 			return new PropagateResult(action);
 		}
 		
 		List<ModmailPMInformation> pms = new ArrayList<>();
-		if(ban.modPersonID != bot.id) {
+		if(ban.modPersonID != context.bot.id) {
 			// If there's a tag on this ban that is followed by the issuing subreddit then we will override
 			// it. Otherwise, we will just send them a message but not override it.
 			
 			
-			List<SubscribedHashtag> subTagsForSubreddit = database.getSubscribedHashtagMapping().fetchForSubreddit(subreddit.id, false);
-			List<Hashtag> tagsForSubreddit = database.getHashtagMapping().fetchForSubscribed(subTagsForSubreddit);
+			List<Hashtag> tagsForSubreddit = context.getSubscribedHashtags(subreddit.id);
 			
 			String banNoteLower = ban.banDescription.toLowerCase();
 			
@@ -489,8 +488,8 @@ public class USLPropagator {
 			
 			if(override) {
 				// When overriding a ban on a subreddit done by a person, we notify the subreddit regardless of their settings.
-				String titleFormat = database.getResponseMapping().fetchByName("propagate_unban_primary_modmail_title").responseBody;
-				String bodyFormat = database.getResponseMapping().fetchByName("propagate_unban_primary_modmail_body").responseBody;
+				String titleFormat = context.getResponse("propagate_unban_primary_modmail_title");
+				String bodyFormat = context.getResponse("propagate_unban_primary_modmail_body");
 				
 				ResponseInfo respInfo = new ResponseInfo(ResponseInfoFactory.base);
 				respInfo.addLongtermString("unbanned user", toBan.username);
@@ -502,7 +501,7 @@ public class USLPropagator {
 				
 				respInfo.addLongtermString("banned at", SimpleDateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT).format(hma.occurredAt));
 				respInfo.addLongtermString("ban note", ban.banDescription);
-				respInfo.addLongtermString("user history", USLHistoryMarkupFormatter.format(database, config, toBan.id, false));
+				respInfo.addLongtermString("user history", USLHistoryMarkupFormatter.formatCached(database, config, toBan.id, false));
 				
 				String body = new ResponseFormatter(bodyFormat, respInfo).getFormattedResponse(config, database);
 				
@@ -511,11 +510,11 @@ public class USLPropagator {
 				// We will not override this ban since we can't relate it to a tag relevant to the subreddit. We will notify
 				// them about the situation unless we are not sending no op messages
 
-				if(suppressNoOpMess)
+				if(context.suppressNoOpMessages)
 					return new PropagateResult(action);
 				
-				String titleFormat = database.getResponseMapping().fetchByName("propagate_unban_failed_modmail_title").responseBody;
-				String bodyFormat = database.getResponseMapping().fetchByName("propagate_unban_failed_modmail_body").responseBody;
+				String titleFormat = context.getResponse("propagate_unban_failed_modmail_title");
+				String bodyFormat = context.getResponse("propagate_unban_failed_modmail_body");
 				
 				ResponseInfo respInfo = new ResponseInfo(ResponseInfoFactory.base);
 				respInfo.addLongtermString("unbanned user", toBan.username);
@@ -527,7 +526,7 @@ public class USLPropagator {
 				
 				respInfo.addLongtermString("banned at", SimpleDateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT).format(hma.occurredAt));
 				respInfo.addLongtermString("ban note", ban.banDescription);
-				respInfo.addLongtermString("user history", USLHistoryMarkupFormatter.format(database, config, toBan.id, false));
+				respInfo.addLongtermString("user history", USLHistoryMarkupFormatter.formatCached(database, config, toBan.id, false));
 				
 				String body = new ResponseFormatter(bodyFormat, respInfo).getFormattedResponse(config, database);
 				
@@ -538,8 +537,8 @@ public class USLPropagator {
 		
 		if(!subreddit.silent && pms.isEmpty()) {
 			// When not in silent mode we *must* send a message when we take actions on the subreddit.
-			String titleFormat = database.getResponseMapping().fetchByName("propagate_unban_std_modmail_title").responseBody;
-			String bodyFormat = database.getResponseMapping().fetchByName("propagate_unban_std_modmail_body").responseBody;
+			String titleFormat = context.getResponse("propagate_unban_std_modmail_title");
+			String bodyFormat = context.getResponse("propagate_unban_std_modmail_body");
 
 			ResponseInfo respInfo = new ResponseInfo(ResponseInfoFactory.base);
 			respInfo.addLongtermString("unbanned user", toBan.username);
@@ -551,7 +550,7 @@ public class USLPropagator {
 			
 			respInfo.addLongtermString("banned at", SimpleDateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT).format(hma.occurredAt));
 			respInfo.addLongtermString("ban note", ban.banDescription);
-			respInfo.addLongtermString("user history", USLHistoryMarkupFormatter.format(database, config, toBan.id, false));
+			respInfo.addLongtermString("user history", USLHistoryMarkupFormatter.formatCached(database, config, toBan.id, false));
 			
 			String body = new ResponseFormatter(bodyFormat, respInfo).getFormattedResponse(config, database);
 			
@@ -565,28 +564,22 @@ public class USLPropagator {
 				pms, Collections.emptyList());
 	}
 	
-	private List<Hashtag> getTriggeringTags(USLAction action, MonitoredSubreddit subreddit) {
-		List<USLActionHashtag> tagsForAction = database.getUSLActionHashtagMapping().fetchByUSLActionID(action.id);
-		List<SubscribedHashtag> subscribed = database.getSubscribedHashtagMapping().fetchForSubreddit(subreddit.id, false);
-		
+	private List<Hashtag> getTriggeringTags(PropagationContext context, List<USLActionHashtag> tagsForAction, MonitoredSubreddit subreddit) {
 		List<Hashtag> triggering = new ArrayList<>();
-		for(SubscribedHashtag sh : subscribed) {
-			// linear search faster than hash search at fewer than 3 elements, which is pretty likely here
-			if(tagsForAction.stream().anyMatch((ta) -> ta.hashtagID == sh.hashtagID)) {
-				triggering.add(database.getHashtagMapping().fetchByID(sh.hashtagID));
+		for(USLActionHashtag ta : tagsForAction) {
+			if(context.isSubscribed(subreddit.id, ta.hashtagID)) {
+				triggering.add(context.getHashtag(ta.hashtagID));
 			}
 		}
 		
 		return triggering;
 	}
 	
-	private String getPrettyTriggeringTags(USLAction action, MonitoredSubreddit subreddit) {
-		return getTriggeringTags(action, subreddit).stream().map((tag) -> tag.tag).collect(Collectors.joining(", "));
+	private String getPrettyTriggeringTags(PropagationContext context, List<USLActionHashtag> tagsForAction, MonitoredSubreddit subreddit) {
+		return getTriggeringTags(context, tagsForAction, subreddit).stream().map((tag) -> tag.tag).collect(Collectors.joining(", "));
 	}
 	
-	private BanHistory matchUnban(MonitoredSubreddit sub, UnbanHistory unban) {
-		HandledModAction unbanHma = database.getHandledModActionMapping().fetchByID(unban.handledModActionID);
-		
+	private BanHistory matchUnban(MonitoredSubreddit sub, UnbanHistory unban, HandledModAction unbanHma) {
 		List<BanHistory> allBans = database.getBanHistoryMapping().fetchBanHistoriesByPersonAndSubreddit(unban.unbannedPersonID, sub.id);
 		
 		BanHistory best = null;
@@ -605,13 +598,13 @@ public class USLPropagator {
 		return best;
 	}
 	
-	private String getOriginatingSubredditFast(USLAction action, Map<Integer, MonitoredSubreddit> readingSubreddits, Person bot, List<Integer> expBanOnIDs) {
+	private String getOriginatingSubredditFast(PropagationContext context, USLActionBundle bundle, List<Integer> expBanOnIDs) {
 		String originalSubreddit = null;
 		for(int subId : expBanOnIDs) {
-			MonitoredSubreddit sub = readingSubreddits.get(subId);
-			BanHistory ban = database.getBanHistoryMapping().fetchByActionAndSubreddit(action.id, sub.id);
+			MonitoredSubreddit sub = context.readingSubreddits.get(subId);
+			BanHistory ban = bundle.getBan(sub.id);
 			
-			if(ban != null && ban.modPersonID != bot.id) {
+			if(ban != null && ban.modPersonID != context.bot.id) {
 				if(originalSubreddit != null) {
 					return null;
 				}else {
@@ -622,15 +615,15 @@ public class USLPropagator {
 		return originalSubreddit;
 	}
 	
-	private String getOriginatingSubredditSlow(USLAction action, Map<Integer, MonitoredSubreddit> readingSubreddits, Person bot, List<Integer> expBanOnIDs) {
-		List<Hashtag> allTags = database.getHashtagMapping().fetchAll();
+	private String getOriginatingSubredditSlow(PropagationContext context, USLActionBundle bundle, List<Integer> expBanOnIDs) {
+		Collection<Hashtag> allTags = context.getHashtags();
 		
 		String originalSubreddit = null;
 		for(int subId : expBanOnIDs) {
-			MonitoredSubreddit sub = readingSubreddits.get(subId);
-			BanHistory ban = database.getBanHistoryMapping().fetchByActionAndSubreddit(action.id, sub.id);
+			MonitoredSubreddit sub = context.readingSubreddits.get(subId);
+			BanHistory ban = bundle.getBan(sub.id);
 			
-			if(ban != null && ban.modPersonID != bot.id) {
+			if(ban != null && ban.modPersonID != context.bot.id) {
 				String descLower = ban.banDescription.toLowerCase();
 				boolean matchesTag = false;
 				for(Hashtag tg : allTags) {
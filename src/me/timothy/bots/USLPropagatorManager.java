@@ -1,285 +1,598 @@
-package me.timothy.bots;
-
-import java.sql.Timestamp;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-import org.apache.logging.log4j.Level;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
-import me.timothy.bots.database.ActionLogMapping;
-import me.timothy.bots.database.DirtyPersonMapping;
-import me.timothy.bots.database.HandledAtTimestampMapping;
-import me.timothy.bots.database.PersonMapping;
-import me.timothy.bots.database.RedditToMeaningProgressMapping;
-import me.timothy.bots.database.USLActionMapping;
-import me.timothy.bots.functions.PropagateResultHandlerFunction;
-import me.timothy.bots.memory.BufferedHandledModActionJoinHistoryIter;
-import me.timothy.bots.memory.BufferedUnbanRequestIter;
-import me.timothy.bots.memory.HandledModActionJoinHistory;
-import me.timothy.bots.memory.PropagateResult;
-import me.timothy.bots.models.DirtyPerson;
-import me.timothy.bots.models.Hashtag;
-import me.timothy.bots.models.MonitoredSubreddit;
-import me.timothy.bots.models.Person;
-import me.timothy.bots.models.SubredditModqueueProgress;
-import me.timothy.bots.models.USLAction;
-import me.timothy.bots.models.UnbanRequest;
-import me.timothy.bots.models.PropagatorSetting.PropagatorSettingKey;
-
-/**
- * This class decides which and when to propagate bans using
- * the USLPropagator.
- * 
- * @author Timothy
- */
-public class USLPropagatorManager {
-	/*
-	 * Originally, the propagation status to subreddits was deciding by the following
-	 * model: (id, monitored_subreddit_id, latest_propagated_action_time, updated_at)
-	 * 
-	 * In combination with a helper table that would keep track of the action(s) that
-	 * have latest_propagated_action_time as their timestamp. 
-	 * 
-	 * With that method, the USLBot could guarantee it propagated each action exactly
-	 * once, which is the idea. However, when a new subreddit was added to the list,
-	 * new handled mod actions would be added that were *in the past*, and there was
-	 * no way to distinguish which ones the propagater handled already. The only choice,
-	 * then, was to repropagate every single action AFTER the new subreddit had been
-	 * completely parsed. This process would take longer and longer every time a new
-	 * subreddit was added.
-	 * 
-	 * ---
-	 * 
-	 * The next method solves this by splitting up each monitored subreddits propagation
-	 * status based on the subreddit. The new propagate status model became:
-	 * 
-	 *   id, 
-	 *   major_subreddit_id, 
-	 *   minor_subreddit_id,
-	 *   latest_propagated_action_time,
-	 *   updated_at
-	 *   
-	 * It is still necessary to avoid repropagating the same action over and over in quick
-	 * succession, so the helper table became:
-	 * 
-	 *   id,
-	 *   major_subreddit_id,
-	 *   minor_subreddit_id,
-	 *   action_id
-	 *   
-	 * ---
-	 * 
-	 * However with *that* method it was still too slow. This is partly because of how much
-	 * work is being repeated by the bot during the propagation step using the previous
-	 * technique - looking at every ban would trigger a full propagation step, which required
-	 * many database lookups. So the new plan is a two-phase processing step;
-	 * the first phase converts the handled mod actions, ban histories, and unban histories
-	 * in time-order into USLAction's. This step only requires the expensive ban/unban matching
-	 * step one time per user, and only if they are actually "interesting". This table is 
-	 * reconstructed when we need to refresh our logic, and then reswept by the propagator.
-	 * 
-	 * From a propagation step we do the following:
-	 * 
-	 * Process the mod actions in time order. As before, we have a 1-second "repeat" step that is
-	 * deduplicated manually. Once they have been sorted, the mod actions can be sent to the 
-	 * reddit-to-meaning processor for conversion into actions. Once they are setup as an action
-	 * and we have the full history of all the relevant subreddits, there is no risk in sending 
-	 * these actions to the propagator multiple times.
-	 * 
-	 * So to recap, this new technique is 3-stage processing:
-	 * 
-	 * Stage 1: From Reddit to Local
-	 * 	Go through each subreddit and fetch their history in any order and save it as HandledModActions,
-	 * 	BanHistory's, and UnbanHistory's.
-	 * 
-	 * (Do not proceed until we have a timestamp T that we KNOW we have all the history before, and T 
-	 * is "fairly recent")
-	 * 
-	 * Stage 2: From Reddit Actions to USLActions:
-	 * 	Go through every mod action in order up to time T, and send it to the RedditToMeaningProcessor
-	 *  to produce USLAction's. This ultimately produces a list of tags for every user which forms the
-	 *  "list", along with any exceptions to the users staus on the subreddits. Whenever we change the
-	 *  action for a persion, we flag that person as "dirty" so we know to send them to the propagator.
-	 *  
-	 * (Do not proceed until we have processed all of the mod actions up to time T into usl actions)
-	 * 
-	 * Stage 3:	From USLActions back to Reddit Actions:
-	 * 	Go through every "dirty" user and clean them by sending them through the propagator. This tells
-	 * 	us what actions, if any, we should take. Once we've taken those actions we mark the user clean.
-	 */
-	private static final Logger logger = LogManager.getLogger();
-	
-	protected USLDatabase database;
-	protected USLFileConfiguration config;
-	protected USLPropagator propagator;
-	protected USLRedditToMeaningProcessor meaning;
-	protected USLValidUnbanRequestToMeaningProcessor unbanRequestMeaning;
-	protected PropagateResultHandlerFunction resultHandler;
-	
-	/**
-	 * Create a new propagator manager
-	 * 
-	 * @param database database
-	 * @param config configuration
-	 * @param propagator the thing to manage
-	 * @param resultHandler how propagate results are handled
-	 */
-	public USLPropagatorManager(USLDatabase database, USLFileConfiguration config, USLPropagator propagator,
-			USLRedditToMeaningProcessor meaning, USLValidUnbanRequestToMeaningProcessor unbanRequestMeaning,
-			PropagateResultHandlerFunction resultHandler) {
-		this.database = database;
-		this.config = config;
-		this.propagator = propagator;
-		this.meaning = meaning;
-		this.unbanRequestMeaning = unbanRequestMeaning;
-		this.resultHandler = resultHandler;
-	}
-	/**
-	 * Determine what actions to propagate to which subreddits to avoid
-	 * repetition, and handle their results using the result consumer
-	 * specified in the constructor.
-	 */
-	public void managePropagating(List<MonitoredSubreddit> tracked) {
-		Timestamp latestHistory = findLatestHistory(tracked);
-		if(latestHistory == null) {
-			return;
-		}
-		
-		redditEventsToActions(tracked, latestHistory);
-		dirtyPeopleToPropagator(tracked);
-	}
-	
-	private Timestamp findLatestHistory(List<MonitoredSubreddit> tracked) {
-		ActionLogMapping al = database.getActionLogMapping();
-		Timestamp latestHistory = null;
-		for(MonitoredSubreddit sub : tracked) {
-			SubredditModqueueProgress modqueueProg = database.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id);
-			if(modqueueProg == null || modqueueProg.lastTimeHadFullHistory == null) {
-				al.append("Cannot propagate - waiting on history for /r/" + sub.subreddit);
-				logger.printf(Level.DEBUG, "Cannot propagate - waiting on history for /r/" + sub.subreddit);
-				return null;
-			}
-			
-			if(latestHistory == null || modqueueProg.lastTimeHadFullHistory.after(latestHistory)) {
-				latestHistory = modqueueProg.lastTimeHadFullHistory;
-			}
-		}
-		return latestHistory;
-	}
-	
-	
-	private void redditEventsToActions(List<MonitoredSubreddit> tracked, Timestamp latestHistory) {
-		List<Hashtag> tags = database.getHashtagMapping().fetchAll();
-		
-		RedditToMeaningProgressMapping rtmpMap = database.getRedditToMeaningProgressMapping();
-		HandledAtTimestampMapping hatMap = database.getHandledAtTimestampMapping();
-		DirtyPersonMapping dirtMap = database.getDirtyPersonMapping();
-		
-		Timestamp timeBeforeWhichEverythingDone = rtmpMap.fetch();
-		if(timeBeforeWhichEverythingDone == null) {
-			timeBeforeWhichEverythingDone = new Timestamp(1000);
-			hatMap.clear(timeBeforeWhichEverythingDone);
-			rtmpMap.set(timeBeforeWhichEverythingDone);
-		}
-		
-		BufferedHandledModActionJoinHistoryIter histIter = new BufferedHandledModActionJoinHistoryIter(database, timeBeforeWhichEverythingDone, latestHistory);
-		BufferedUnbanRequestIter urIter = new BufferedUnbanRequestIter(database, timeBeforeWhichEverythingDone, latestHistory);
-		
-		HandledModActionJoinHistory hist = histIter.next();
-		UnbanRequest ur = urIter.next();
-		
-		while(hist != null || ur != null) {
-			if(hist == null || (ur != null && hist.handledModAction.occurredAt.after(ur.handledAt))) {
-				unbanRequestMeaning.processUnbanRequest(ur);
-				dirtMap.save(new DirtyPerson(ur.bannedPersonID));
-				
-				Timestamp time = ur.handledAt;
-				
-				if(time.after(timeBeforeWhichEverythingDone)) {
-					timeBeforeWhichEverythingDone = new Timestamp(time.getTime());
-					hatMap.clear(timeBeforeWhichEverythingDone);
-					rtmpMap.set(timeBeforeWhichEverythingDone);
-				}
-				
-				hatMap.addUnbanRequest(ur.id);
-				
-				ur = urIter.next();
-			}else {
-				Set<Integer> dirtied;
-				if(hist.isBan()) {
-					dirtied = meaning.processBan(tags, hist.handledModAction, hist.banHistory);
-				}else {
-					dirtied = meaning.processUnban(tags, hist.handledModAction, hist.unbanHistory);
-				}
-				
-				for(int id : dirtied) {
-					dirtMap.save(new DirtyPerson(id));
-				}
-				
-				Timestamp time = hist.handledModAction.occurredAt;
-
-				if(time.after(timeBeforeWhichEverythingDone)) {
-					timeBeforeWhichEverythingDone = new Timestamp(time.getTime());
-					hatMap.clear(timeBeforeWhichEverythingDone);
-					rtmpMap.set(timeBeforeWhichEverythingDone);
-				}
-				
-				if(hist.isBan())
-					 hatMap.addBanHistory(hist.banHistory.id);
-				else
-					hatMap.addUnbanHistory(hist.unbanHistory.id);
-				
-				
-				hist = histIter.next();
-			}
-		}
-	}
-	
-	private void dirtyPeopleToPropagator(List<MonitoredSubreddit> tracked) {
-		Map<Integer, MonitoredSubreddit> readingSubs = new HashMap<>();
-		for(MonitoredSubreddit sub : tracked) {
-			if(!sub.writeOnly)
-				readingSubs.put(sub.id, sub);
-		}
-		
-		DirtyPersonMapping dirtMap = database.getDirtyPersonMapping();
-		PersonMapping persMap = database.getPersonMapping();
-		USLActionMapping actMap = database.getUSLActionMapping();
-		
-		long start = System.currentTimeMillis();
-		
-		long finishTime = start + (1000 * 60 * 60 * 3);
-		
-		List<DirtyPerson> dirtyList = new ArrayList<>();
-		while(!(dirtyList = dirtMap.fetch(10)).isEmpty()) {
-			for(DirtyPerson dirty : dirtyList) {
-				Person pers = persMap.fetchByID(dirty.personID);
-				logger.printf(Level.DEBUG, "Sending /u/%s to the propagator", pers.username);
-				
-				USLAction act = actMap.fetchLatest(dirty.personID);
-				if(act != null) {
-					PropagateResult result = propagator.propagateAction(act);
-					resultHandler.handleResult(result);
-				}
-				
-				dirtMap.delete(dirty.personID);
-				
-				if(System.currentTimeMillis() >= finishTime) {
-					logger.printf(Level.INFO, "Propagator reached maximum actions per loop restriction. There are %d more persons to be sent", dirtMap.count());
-					return;
-				}
-			}
-		}
-		
-		String suppressNoOpMessVal = database.getPropagatorSettingMapping().get(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES);
-		if(suppressNoOpMessVal == null || !suppressNoOpMessVal.equals("false")) {
-			logger.printf(Level.INFO, "Propagator finished loop with no more work to do, unsuppressing no-op messages");
-			database.getPropagatorSettingMapping().put(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES, "false");
-		}
-	}
-}
+package me.timothy.bots;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import me.timothy.bots.database.ActionLogMapping;
+import me.timothy.bots.database.DirtyPersonMapping;
+import me.timothy.bots.database.HandledAtTimestampMapping;
+import me.timothy.bots.database.PropagatorSettingMapping;
+import me.timothy.bots.database.RedditToMeaningProgressMapping;
+import me.timothy.bots.database.USLActionMapping;
+import me.timothy.bots.functions.PropagateResultHandlerFunction;
+import me.timothy.bots.memory.BufferedHandledModActionJoinHistoryIter;
+import me.timothy.bots.memory.BufferedUnbanRequestIter;
+import me.timothy.bots.memory.HandledModActionJoinHistory;
+import me.timothy.bots.memory.HistoryMarkupCache;
+import me.timothy.bots.memory.PropagateResult;
+import me.timothy.bots.memory.PropagationContext;
+import me.timothy.bots.memory.USLActionBundle;
+import me.timothy.bots.models.DirtyPerson;
+import me.timothy.bots.models.Hashtag;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.SubredditModqueueProgress;
+import me.timothy.bots.models.UnbanRequest;
+import me.timothy.bots.models.PropagatorSetting.PropagatorSettingKey;
+
+/**
+ * This class decides which and when to propagate bans using
+ * the USLPropagator.
+ * 
+ * @author Timothy
+ */
+public class USLPropagatorManager {
+	/*
+	 * Originally, the propagation status to subreddits was deciding by the following
+	 * model: (id, monitored_subreddit_id, latest_propagated_action_time, updated_at)
+	 * 
+	 * In combination with a helper table that would keep track of the action(s) that
+	 * have latest_propagated_action_time as their timestamp. 
+	 * 
+	 * With that method, the USLBot could guarantee it propagated each action exactly
+	 * once, which is the idea. However, when a new subreddit was added to the list,
+	 * new handled mod actions would be added that were *in the past*, and there was
+	 * no way to distinguish which ones the propagater handled already. The only choice,
+	 * then, was to repropagate every single action AFTER the new subreddit had been
+	 * completely parsed. This process would take longer and longer every time a new
+	 * subreddit was added.
+	 * 
+	 * ---
+	 * 
+	 * The next method solves this by splitting up each monitored subreddits propagation
+	 * status based on the subreddit. The new propagate status model became:
+	 * 
+	 *   id, 
+	 *   major_subreddit_id, 
+	 *   minor_subreddit_id,
+	 *   latest_propagated_action_time,
+	 *   updated_at
+	 *   
+	 * It is still necessary to avoid repropagating the same action over and over in quick
+	 * succession, so the helper table became:
+	 * 
+	 *   id,
+	 *   major_subreddit_id,
+	 *   minor_subreddit_id,
+	 *   action_id
+	 *   
+	 * ---
+	 * 
+	 * However with *that* method it was still too slow. This is partly because of how much
+	 * work is being repeated by the bot during the propagation step using the previous
+	 * technique - looking at every ban would trigger a full propagation step, which required
+	 * many database lookups. So the new plan is a two-phase processing step;
+	 * the first phase converts the handled mod actions, ban histories, and unban histories
+	 * in time-order into USLAction's. This step only requires the expensive ban/unban matching
+	 * step one time per user, and only if they are actually "interesting". This table is 
+	 * reconstructed when we need to refresh our logic, and then reswept by the propagator.
+	 * 
+	 * From a propagation step we do the following:
+	 * 
+	 * Process the mod actions in time order. As before, we have a 1-second "repeat" step that is
+	 * deduplicated manually. Once they have been sorted, the mod actions can be sent to the 
+	 * reddit-to-meaning processor for conversion into actions. Once they are setup as an action
+	 * and we have the full history of all the relevant subreddits, there is no risk in sending 
+	 * these actions to the propagator multiple times.
+	 * 
+	 * So to recap, this new technique is 3-stage processing:
+	 * 
+	 * Stage 1: From Reddit to Local
+	 * 	Go through each subreddit and fetch their history in any order and save it as HandledModActions,
+	 * 	BanHistory's, and UnbanHistory's.
+	 * 
+	 * (Do not proceed until we have a timestamp T that we KNOW we have all the history before, and T 
+	 * is "fairly recent")
+	 * 
+	 * Stage 2: From Reddit Actions to USLActions:
+	 * 	Go through every mod action in order up to time T, and send it to the RedditToMeaningProcessor
+	 *  to produce USLAction's. This ultimately produces a list of tags for every user which forms the
+	 *  "list", along with any exceptions to the users staus on the subreddits. Whenever we change the
+	 *  action for a persion, we flag that person as "dirty" so we know to send them to the propagator.
+	 *  
+	 * (Do not proceed until we have processed all of the mod actions up to time T into usl actions)
+	 * 
+	 * Stage 3:	From USLActions back to Reddit Actions:
+	 * 	Go through every "dirty" user and clean them by sending them through the propagator. This tells
+	 * 	us what actions, if any, we should take. Once we've taken those actions we mark the user clean.
+	 * 
+	 * Sending a user through the propagator only reads from the database, so in stage 3 several users
+	 * are planned at once by planners with their own read-only connections. The results are still
+	 * handled one at a time on this thread, in the order the dirty users were fetched, and a user is
+	 * only marked clean after their result has been handled. Before they are planned, the latest action
+	 * of every user in the batch is loaded along with its person, tags and histories in a handful of
+	 * queries for the whole batch, rather than several queries for every user and subreddit.
+	 * 
+	 * Dirty users are cleaned newest action first, and users dirtied by something that happened on
+	 * reddit recently are urgent and go before everyone else. Stage 3 also gives up after a while so
+	 * the rest of the loop can run and find new bans. Together these mean a new ban is propagated
+	 * within a loop or two even while a large backlog (such as from a repropagation) drains.
+	 */
+	private static final Logger logger = LogManager.getLogger();
+	
+	/** Events from handled mod actions; these come first when they happen at the same time as an unban request */
+	private static final long EVENT_SOURCE_MOD_ACTION = 0;
+	/** Events from handled unban requests */
+	private static final long EVENT_SOURCE_UNBAN_REQUEST = 1;
+	/** The fewest dirty persons that are fetched at once */
+	private static final int MIN_DIRTY_PER_FETCH = 100;
+	/** How many dirty persons are fetched at once for each planner */
+	private static final int DIRTY_PER_FETCH_PER_PLANNER = 25;
+	/** How long the planning threads stay alive between loops */
+	private static final long IDLE_THREAD_TIMEOUT_SECONDS = 60;
+	/** How recent an event must be to make the persons it dirties urgent, if propagator.urgent_window_ms is not set */
+	private static final long DEFAULT_URGENT_WINDOW_MS = 1000 * 60 * 60 * 24;
+	/** How long stage 3 runs before returning to the rest of the loop, if propagator.max_loop_ms is not set */
+	private static final long DEFAULT_MAX_LOOP_MS = 1000 * 60 * 15;
+	
+	protected USLDatabase database;
+	protected USLFileConfiguration config;
+	protected USLPropagator propagator;
+	protected USLRedditToMeaningProcessor meaning;
+	protected USLValidUnbanRequestToMeaningProcessor unbanRequestMeaning;
+	protected PropagateResultHandlerFunction resultHandler;
+	
+	/** The propagators that aren't planning anyone right now */
+	private final BlockingQueue<USLPropagator> idlePlanners;
+	/** How many dirty persons are fetched and planned at once */
+	private final int dirtyPerFetch;
+	/** Runs the planners, or null if everyone is planned on the calling thread */
+	private final ThreadPoolExecutor planningPool;
+	/** Persons dirtied by events less than this many milliseconds old are urgent */
+	private final long urgentWindowMs;
+	/** How many milliseconds stage 3 may run for in one loop */
+	private final long maxLoopMs;
+	/** Where events are read from on a background thread in stage 2, or null to read them on this thread */
+	private final USLDatabase prefetchDatabase;
+	
+	/**
+	 * Create a new propagator manager which plans each dirty person one at a time
+	 * using the given propagator.
+	 * 
+	 * @param database database
+	 * @param config configuration
+	 * @param propagator the thing to manage
+	 * @param resultHandler how propagate results are handled
+	 */
+	public USLPropagatorManager(USLDatabase database, USLFileConfiguration config, USLPropagator propagator,
+			USLRedditToMeaningProcessor meaning, USLValidUnbanRequestToMeaningProcessor unbanRequestMeaning,
+			PropagateResultHandlerFunction resultHandler) {
+		this(database, config, propagator, Collections.emptyList(), meaning, unbanRequestMeaning, resultHandler);
+	}
+	
+	/**
+	 * Create a new propagator manager which plans dirty persons on a thread for each of the
+	 * given planners. Each planner must have its own database connection (see
+	 * {@link USLDatabase#connectReadOnly(String, String, String, USLDatabase)}), and they
+	 * are only ever read from. If there are no planners, the propagator is used on the calling
+	 * thread instead.
+	 * 
+	 * The optional properties propagator.urgent_window_ms and propagator.max_loop_ms decide how
+	 * recent an event has to be for the persons it dirties to skip the queue, and how long 
+	 * to spend sending dirty persons to the propagator each loop.
+	 * 
+	 * @param database database
+	 * @param config configuration
+	 * @param propagator the thing to manage
+	 * @param planners propagators that can be used from other threads
+	 * @param resultHandler how propagate results are handled
+	 */
+	public USLPropagatorManager(USLDatabase database, USLFileConfiguration config, USLPropagator propagator,
+			List<USLPropagator> planners, USLRedditToMeaningProcessor meaning, 
+			USLValidUnbanRequestToMeaningProcessor unbanRequestMeaning, PropagateResultHandlerFunction resultHandler) {
+		this(database, config, propagator, planners, null, meaning, unbanRequestMeaning, resultHandler);
+	}
+	
+	/**
+	 * Create a new propagator manager which plans dirty persons on the given planners, and
+	 * which reads the mod actions and unban requests to turn into actions from prefetchDatabase
+	 * on a background thread while it works through them. prefetchDatabase must have its own
+	 * read-only connection, just like a planner. If it is null, they are read on the calling
+	 * thread instead.
+	 * 
+	 * @param database database
+	 * @param config configuration
+	 * @param propagator the thing to manage
+	 * @param planners propagators that can be used from other threads
+	 * @param prefetchDatabase a read-only database to read mod actions and unban requests from, or null
+	 * @param resultHandler how propagate results are handled
+	 */
+	public USLPropagatorManager(USLDatabase database, USLFileConfiguration config, USLPropagator propagator,
+			List<USLPropagator> planners, USLDatabase prefetchDatabase, USLRedditToMeaningProcessor meaning, 
+			USLValidUnbanRequestToMeaningProcessor unbanRequestMeaning, PropagateResultHandlerFunction resultHandler) {
+		this.database = database;
+		this.config = config;
+		this.propagator = propagator;
+		this.prefetchDatabase = prefetchDatabase;
+		this.meaning = meaning;
+		this.unbanRequestMeaning = unbanRequestMeaning;
+		this.resultHandler = resultHandler;
+		this.urgentWindowMs = config.getLongProperty("propagator.urgent_window_ms", DEFAULT_URGENT_WINDOW_MS);
+		this.maxLoopMs = config.getLongProperty("propagator.max_loop_ms", DEFAULT_MAX_LOOP_MS);
+		
+		if(planners.isEmpty()) {
+			idlePlanners = new LinkedBlockingQueue<>(Collections.singletonList(propagator));
+			dirtyPerFetch = MIN_DIRTY_PER_FETCH;
+			planningPool = null;
+		}else {
+			idlePlanners = new LinkedBlockingQueue<>(planners);
+			dirtyPerFetch = Math.max(MIN_DIRTY_PER_FETCH, planners.size() * DIRTY_PER_FETCH_PER_PLANNER);
+			
+			AtomicInteger plannerCounter = new AtomicInteger();
+			planningPool = new ThreadPoolExecutor(planners.size(), planners.size(), IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r) -> {
+				Thread thread = new Thread(r, "USLPropagatorManager plan " + plannerCounter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			planningPool.allowCoreThreadTimeOut(true);
+		}
+	}
+	
+	/**
+	 * Determine what actions to propagate to which subreddits to avoid
+	 * repetition, and handle their results using the result consumer
+	 * specified in the constructor.
+	 */
+	public void managePropagating(List<MonitoredSubreddit> tracked) {
+		Timestamp fullHistoryBefore = findEarliestFullHistory(tracked);
+		if(fullHistoryBefore == null) {
+			return;
+		}
+		
+		redditEventsToActions(tracked, fullHistoryBefore);
+		dirtyPeopleToPropagator();
+	}
+	
+	/**
+	 * Find the time before which we have every subreddits history. Quiet subreddits are scanned
+	 * less often than busy ones, so this is the earliest of the times each subreddit last had its
+	 * full history; going past that would skip a quiet subreddits bans that we just haven't seen yet.
+	 * The USLScanPlanner scans any subreddit that is holding back a ban or unban we already have, so 
+	 * this keeps up with the busy subreddits rather than waiting for the quiet ones to come up again.
+	 * 
+	 * @param tracked the subreddits
+	 * @return the time before which we have all their history, or null if we are still waiting on one
+	 */
+	private Timestamp findEarliestFullHistory(List<MonitoredSubreddit> tracked) {
+		ActionLogMapping al = database.getActionLogMapping();
+		Timestamp earliest = null;
+		for(MonitoredSubreddit sub : tracked) {
+			SubredditModqueueProgress modqueueProg = database.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id);
+			if(modqueueProg == null || modqueueProg.lastTimeHadFullHistory == null) {
+				al.append("Cannot propagate - waiting on history for /r/" + sub.subreddit);
+				logger.printf(Level.DEBUG, "Cannot propagate - waiting on history for /r/" + sub.subreddit);
+				return null;
+			}
+			
+			if(earliest == null || modqueueProg.lastTimeHadFullHistory.before(earliest)) {
+				earliest = modqueueProg.lastTimeHadFullHistory;
+			}
+		}
+		return earliest;
+	}
+	
+	
+	private void redditEventsToActions(List<MonitoredSubreddit> tracked, Timestamp latestHistory) {
+		List<Hashtag> tags = database.getHashtagMapping().fetchAll();
+		
+		RedditToMeaningProgressMapping rtmpMap = database.getRedditToMeaningProgressMapping();
+		HandledAtTimestampMapping hatMap = database.getHandledAtTimestampMapping();
+		PropagatorSettingMapping settings = database.getPropagatorSettingMapping();
+		
+		Timestamp timeBeforeWhichEverythingDone = rtmpMap.fetch();
+		if(timeBeforeWhichEverythingDone == null) {
+			// We are starting over (first run, repropagating, or the flat files were purged), so
+			// every event has to be replayed no matter what the last committed one was
+			database.beginTransaction();
+			try {
+				settings.remove(PropagatorSettingKey.LAST_MEANING_EVENT);
+				database.commitTransaction();
+			}catch(RuntimeException e) {
+				database.rollbackTransaction();
+				throw e;
+			}
+			
+			timeBeforeWhichEverythingDone = new Timestamp(1000);
+			hatMap.clear(timeBeforeWhichEverythingDone);
+			rtmpMap.set(timeBeforeWhichEverythingDone);
+		}
+		
+		BufferedHandledModActionJoinHistoryIter histIter = new BufferedHandledModActionJoinHistoryIter(database, prefetchDatabase, timeBeforeWhichEverythingDone, latestHistory);
+		BufferedUnbanRequestIter urIter = new BufferedUnbanRequestIter(database, prefetchDatabase, timeBeforeWhichEverythingDone, latestHistory);
+		try {
+			redditEventsToActions(histIter, urIter, tags, timeBeforeWhichEverythingDone);
+		}finally {
+			histIter.close();
+			urIter.close();
+		}
+		
+		database.syncCustom();
+	}
+	
+	private void redditEventsToActions(BufferedHandledModActionJoinHistoryIter histIter, BufferedUnbanRequestIter urIter, 
+			List<Hashtag> tags, Timestamp timeBeforeWhichEverythingDone) {
+		RedditToMeaningProgressMapping rtmpMap = database.getRedditToMeaningProgressMapping();
+		HandledAtTimestampMapping hatMap = database.getHandledAtTimestampMapping();
+		DirtyPersonMapping dirtMap = database.getDirtyPersonMapping();
+		HistoryMarkupCache historyCache = database.getHistoryCache();
+		PropagatorSettingMapping settings = database.getPropagatorSettingMapping();
+		
+		HandledModActionJoinHistory hist = histIter.next();
+		UnbanRequest ur = urIter.next();
+		
+		/*
+		 * Each event is processed in its own unit of work, and only once that has been committed
+		 * is the event appended to the handled at timestamp mapping. Those appends are only forced
+		 * to disk every so often, so if we crash we may see a run of events again even though their
+		 * effects are already there. To detect that, the unit of work also records which event it was
+		 * for, in a form that can be ordered the same way as we visit events; anything we see that
+		 * is not after the last committed event was already done.
+		 */
+		long[] lastCommitted = parseEventKey(settings.get(PropagatorSettingKey.LAST_MEANING_EVENT));
+		long urgentAfter = System.currentTimeMillis() - urgentWindowMs;
+		while(hist != null || ur != null) {
+			if(hist == null || (ur != null && hist.handledModAction.occurredAt.after(ur.handledAt))) {
+				long[] eventKey = new long[] { ur.handledAt.getTime(), EVENT_SOURCE_UNBAN_REQUEST, ur.id };
+				database.beginTransaction();
+				try {
+					if(isAtOrBefore(eventKey, lastCommitted)) {
+						logger.printf(Level.INFO, "Unban request %d was already applied; recovering from a crash", ur.id);
+					}else {
+						unbanRequestMeaning.processUnbanRequest(ur);
+						settings.put(PropagatorSettingKey.LAST_MEANING_EVENT, formatEventKey(eventKey));
+					}
+					database.commitTransaction();
+				}catch(RuntimeException e) {
+					database.rollbackTransaction();
+					throw e;
+				}
+				
+				Timestamp time = ur.handledAt;
+				
+				dirtMap.save(new DirtyPerson(ur.bannedPersonID, time.getTime(), time.getTime() >= urgentAfter));
+				historyCache.invalidate(ur.bannedPersonID);
+				
+				if(time.after(timeBeforeWhichEverythingDone)) {
+					timeBeforeWhichEverythingDone = new Timestamp(time.getTime());
+					hatMap.clear(timeBeforeWhichEverythingDone);
+					rtmpMap.set(timeBeforeWhichEverythingDone);
+				}
+				
+				hatMap.addUnbanRequest(ur.id);
+				
+				ur = urIter.next();
+			}else {
+				long[] eventKey = new long[] { hist.handledModAction.occurredAt.getTime(), EVENT_SOURCE_MOD_ACTION, hist.handledModAction.id };
+				Set<Integer> dirtied;
+				database.beginTransaction();
+				try {
+					if(isAtOrBefore(eventKey, lastCommitted)) {
+						logger.printf(Level.INFO, "Mod action %s was already applied; recovering from a crash", hist.handledModAction.modActionID);
+						dirtied = Collections.singleton(hist.isBan() ? hist.banHistory.bannedPersonID : hist.unbanHistory.unbannedPersonID);
+					}else {
+						if(hist.isBan()) {
+							dirtied = meaning.processBan(tags, hist.handledModAction, hist.banHistory);
+						}else {
+							dirtied = meaning.processUnban(tags, hist.handledModAction, hist.unbanHistory);
+						}
+						settings.put(PropagatorSettingKey.LAST_MEANING_EVENT, formatEventKey(eventKey));
+					}
+					database.commitTransaction();
+				}catch(RuntimeException e) {
+					database.rollbackTransaction();
+					throw e;
+				}
+				
+				// the actions this makes are created at the time of the mod action
+				Timestamp time = hist.handledModAction.occurredAt;
+				
+				for(int id : dirtied) {
+					dirtMap.save(new DirtyPerson(id, time.getTime(), time.getTime() >= urgentAfter));
+					historyCache.invalidate(id);
+				}
+
+				if(time.after(timeBeforeWhichEverythingDone)) {
+					timeBeforeWhichEverythingDone = new Timestamp(time.getTime());
+					hatMap.clear(timeBeforeWhichEverythingDone);
+					rtmpMap.set(timeBeforeWhichEverythingDone);
+				}
+				
+				if(hist.isBan())
+					 hatMap.addBanHistory(hist.banHistory.id);
+				else
+					hatMap.addUnbanHistory(hist.unbanHistory.id);
+				
+				
+				hist = histIter.next();
+			}
+		}
+	}
+	
+	/**
+	 * Parse an event key written by formatEventKey
+	 * 
+	 * @param key the key or null
+	 * @return the event (time, source, id) or null if key is null or not an event key
+	 */
+	private static long[] parseEventKey(String key) {
+		if(key == null)
+			return null;
+		
+		String[] parts = key.split(":");
+		if(parts.length != 3) {
+			logger.printf(Level.WARN, "Ignoring unrecognized meaning event key '%s'", key);
+			return null;
+		}
+		
+		try {
+			return new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]) };
+		}catch(NumberFormatException e) {
+			logger.printf(Level.WARN, "Ignoring unrecognized meaning event key '%s'", key);
+			return null;
+		}
+	}
+	
+	private static String formatEventKey(long[] event) {
+		return event[0] + ":" + event[1] + ":" + event[2];
+	}
+	
+	/**
+	 * Determine if the given event comes at or before the other event in the order that 
+	 * redditEventsToActions visits them in; by time, then mod actions before unban requests,
+	 * then by id.
+	 * 
+	 * @param event the event (time, source, id)
+	 * @param other the other event, or null
+	 * @return true if other is not null and event is not after it
+	 */
+	private static boolean isAtOrBefore(long[] event, long[] other) {
+		if(other == null)
+			return false;
+		
+		for(int i = 0; i < event.length; i++) {
+			if(event[i] != other[i])
+				return event[i] < other[i];
+		}
+		return true;
+	}
+	
+	private void dirtyPeopleToPropagator() {
+		PropagationContext context = PropagationContext.load(database, config);
+		
+		DirtyPersonMapping dirtMap = database.getDirtyPersonMapping();
+		
+		// Histories and people may have changed through our database since the planners last looked
+		for(USLPropagator planner : idlePlanners) {
+			if(planner.database != database) {
+				planner.database.clearCaches();
+			}
+		}
+		
+		long start = System.currentTimeMillis();
+		
+		long finishTime = start + maxLoopMs;
+		
+		List<DirtyPerson> dirtyList = new ArrayList<>();
+		while(!(dirtyList = dirtMap.fetch(dirtyPerFetch)).isEmpty()) {
+			List<Integer> personIDs = new ArrayList<>(dirtyList.size());
+			for(DirtyPerson dirty : dirtyList) {
+				personIDs.add(dirty.personID);
+			}
+			Map<Integer, USLActionBundle> bundles = USLActionBundle.loadLatest(database, personIDs);
+			
+			List<FutureTask<PropagateResult>> plans = new ArrayList<>(dirtyList.size());
+			for(DirtyPerson dirty : dirtyList) {
+				USLActionBundle bundle = bundles.get(dirty.personID);
+				FutureTask<PropagateResult> plan = new FutureTask<>(() -> planPropagation(context, bundle));
+				plans.add(plan);
+				if(planningPool != null) {
+					planningPool.execute(plan);
+				}
+			}
+			
+			try {
+				for(int i = 0; i < dirtyList.size(); i++) {
+					DirtyPerson dirty = dirtyList.get(i);
+					USLActionBundle bundle = bundles.get(dirty.personID);
+					if(bundle != null) {
+						logger.printf(Level.DEBUG, "Sending /u/%s to the propagator", bundle.person.username);
+					}
+				
+					PropagateResult result = await(plans.get(i));
+					if(result != null) {
+						resultHandler.handleResult(result);
+					}
+				
+					dirtMap.delete(dirty.personID);
+				
+					if(System.currentTimeMillis() >= finishTime) {
+						logger.printf(Level.INFO, "Propagator reached maximum actions per loop restriction. There are %d more persons to be sent", dirtMap.count());
+						database.syncCustom();
+						return;
+					}
+				}
+			}finally {
+				for(FutureTask<PropagateResult> plan : plans) {
+					plan.cancel(false);
+				}
+			}
+		}
+		
+		database.syncCustom();
+		
+		String suppressNoOpMessVal = database.getPropagatorSettingMapping().get(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES);
+		if(suppressNoOpMessVal == null || !suppressNoOpMessVal.equals("false")) {
+			logger.printf(Level.INFO, "Propagator finished loop with no more work to do, unsuppressing no-op messages");
+			database.getPropagatorSettingMapping().put(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES, "false");
+		}
+	}
+	
+	/**
+	 * Decide what to do about the given action with whichever planner is free. This only
+	 * reads from the planners database, so it's safe to call from any thread.
+	 * 
+	 * @param context the propagation context
+	 * @param bundle the dirty persons latest action, or null if they have none
+	 * @return what to do about them, or null if they have no action
+	 * @throws InterruptedException if interrupted waiting for a free planner
+	 */
+	private PropagateResult planPropagation(PropagationContext context, USLActionBundle bundle) throws InterruptedException {
+		if(bundle == null)
+			return null;
+		
+		USLPropagator planner = idlePlanners.take();
+		try {
+			return planner.propagateAction(context, bundle);
+		}finally {
+			idlePlanners.add(planner);
+		}
+	}
+
+	/**
+	 * Wait for the given plan to finish, planning it on this thread if no planner has
+	 * started on it yet.
+	 * 
+	 * @param plan the plan
+	 * @return the result of the plan
+	 */
+	private static PropagateResult await(FutureTask<PropagateResult> plan) {
+		plan.run();
+		try {
+			return plan.get();
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+}
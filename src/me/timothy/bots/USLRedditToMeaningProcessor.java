@@ -34,6 +34,7 @@ public class USLRedditToMeaningProcessor {
 	private USLDatabase database;
 	private USLFileConfiguration config;
 	private final boolean extremeTrace;
+	private HashtagMatcher matcher;
 	
 	public USLRedditToMeaningProcessor(USLDatabase database, USLFileConfiguration config) {
 		this.database = database;
@@ -41,16 +42,9 @@ public class USLRedditToMeaningProcessor {
 		this.extremeTrace = this.config.getProperty("reddit_to_meaning.extreme_trace").equals("true");
 	}
 	
-	private static List<Hashtag> getRelevant(List<Hashtag> tags, BanHistory ban) {
-		String descLower = ban.banDescription.toLowerCase();
-		List<Hashtag> result = null;
-		for(Hashtag tag : tags) {
-			if(descLower.contains(tag.tag.toLowerCase())) {
-				if(result == null) { result = new ArrayList<>(); }
-				result.add(tag);
-			}
-		}
-		return (result == null ? Collections.emptyList() : result);
+	private List<Hashtag> getRelevant(List<Hashtag> tags, BanHistory ban) {
+		matcher = HashtagMatcher.rebuildIfChanged(matcher, tags);
+		return matcher.findAll(ban.banDescription);
 	}
 	
 	private static boolean allOverlap(List<Hashtag> relevant, List<USLActionHashtag> existing) {
@@ -111,38 +105,44 @@ public class USLRedditToMeaningProcessor {
 		USLAction action = database.getUSLActionMapping().create(true, ban.bannedPersonID, modAction.occurredAt);
 		
 		Set<Integer> addedTagIds = new HashSet<Integer>();
+		List<USLActionHashtag> newTags = new ArrayList<>();
 		for(Hashtag tag : relevant) {
 			if(extremeTrace) { logger.printf(Level.TRACE, "Adding tag %s", tag.tag); }
 			addedTagIds.add(tag.id);
-			database.getUSLActionHashtagMapping().save(new USLActionHashtag(action.id, tag.id));
+			newTags.add(new USLActionHashtag(action.id, tag.id));
 		}
 		
 		for(USLActionHashtag old : latestTags) {
 			if(!addedTagIds.contains(old.hashtagID)) {
 				if(extremeTrace) { logger.printf(Level.TRACE, "Adding tag %s", database.getHashtagMapping().fetchByID(old.hashtagID).tag); }
-				database.getUSLActionHashtagMapping().save(new USLActionHashtag(action.id, old.hashtagID));
+				newTags.add(new USLActionHashtag(action.id, old.hashtagID));
 			}
 		}
+		database.getUSLActionHashtagMapping().saveAll(newTags);
 		
 		UnbanHistory unbanToNotMoveForward = database.getUnbanHistoryMapping().fetchByActionAndSubreddit(latest.id, modAction.monitoredSubredditID);
 		int idNotToMoveForward = unbanToNotMoveForward != null ? unbanToNotMoveForward.id : -1;
 		
 		List<USLActionUnbanHistory> unbanMaps = database.getUSLActionUnbanHistoryMapping().fetchByUSLActionID(latest.id);
+		List<USLActionUnbanHistory> newUnbanMaps = new ArrayList<>(unbanMaps.size());
 		for(USLActionUnbanHistory unban : unbanMaps) {
 			if(unban.unbanHistoryID != idNotToMoveForward) {
 				if(extremeTrace) { logger.printf(Level.TRACE, "Moving unban forward; was %s", unban.toPrettyString(database)); }
-				database.getUSLActionUnbanHistoryMapping().save(new USLActionUnbanHistory(action.id, unban.unbanHistoryID));
+				newUnbanMaps.add(new USLActionUnbanHistory(action.id, unban.unbanHistoryID));
 			}
 		}
+		database.getUSLActionUnbanHistoryMapping().saveAll(newUnbanMaps);
 		
 		List<USLActionBanHistory> banMaps = database.getUSLActionBanHistoryMapping().fetchByUSLActionID(latest.id);
+		List<USLActionBanHistory> newBanMaps = new ArrayList<>(banMaps.size() + 1);
 		for(USLActionBanHistory banToMove : banMaps) {
 			if(extremeTrace) { logger.printf(Level.TRACE, "Moving ban forward; was %s", banToMove.toPrettyString(database)); }
-			database.getUSLActionBanHistoryMapping().save(new USLActionBanHistory(action.id, banToMove.banHistoryID));
+			newBanMaps.add(new USLActionBanHistory(action.id, banToMove.banHistoryID));
 		}
 		
 		if(extremeTrace) { logger.printf(Level.TRACE, "Adding new ban"); }
-		database.getUSLActionBanHistoryMapping().save(new USLActionBanHistory(action.id, ban.id));
+		newBanMaps.add(new USLActionBanHistory(action.id, ban.id));
+		database.getUSLActionBanHistoryMapping().saveAll(newBanMaps);
 		return Collections.singleton(action.personID);
 	}
 	
@@ -211,15 +211,19 @@ public class USLRedditToMeaningProcessor {
 		
 		Person bot = database.getPersonMapping().fetchByUsername(config.getProperty("user.username"));
 		if(ban.modPersonID != bot.id) { 
+			List<USLActionHashtag> newTags = new ArrayList<>(relevant.size());
 			for(Hashtag tag : relevant) {
 				if(extremeTrace) { logger.printf(Level.TRACE, "Attaching tag %s", tag.tag); }
-				database.getUSLActionHashtagMapping().save(new USLActionHashtag(action.id, tag.id));
+				newTags.add(new USLActionHashtag(action.id, tag.id));
 			}
+			database.getUSLActionHashtagMapping().saveAll(newTags);
 		}else {
 			if(extremeTrace) { logger.printf(Level.TRACE, "Not attaching any tags since this was done by the bot"); }
 		}
 		
 		List<MonitoredSubreddit> subreddits = database.getMonitoredSubredditMapping().fetchAll();
+		List<USLActionBanHistory> newBanMaps = new ArrayList<>();
+		List<USLActionUnbanHistory> newUnbanMaps = new ArrayList<>();
 		for(MonitoredSubreddit sub : subreddits) {
 			List<BanHistory> bansOnSub = database.getBanHistoryMapping().fetchBanHistoriesByPersonAndSubreddit(ban.bannedPersonID, sub.id);
 			BanHistory bestBan = null;
@@ -253,12 +257,14 @@ public class USLRedditToMeaningProcessor {
 			
 			if(bestUnban == null || (bestBan != null && bestTime.after(bestUnbanTime))) { // here we give the benefit of the doubt to unbans
 				if(extremeTrace) { logger.printf(Level.TRACE, "Attaching ban %s", bestBan.toPrettyString(database)); }
-				database.getUSLActionBanHistoryMapping().save(new USLActionBanHistory(action.id, bestBan.id));
+				newBanMaps.add(new USLActionBanHistory(action.id, bestBan.id));
 			}else {
 				if(extremeTrace) { logger.printf(Level.TRACE, "Attaching unban %s", bestUnban.toPrettyString(database)); }
-				database.getUSLActionUnbanHistoryMapping().save(new USLActionUnbanHistory(action.id, bestUnban.id));
+				newUnbanMaps.add(new USLActionUnbanHistory(action.id, bestUnban.id));
 			}
 		}
+		database.getUSLActionBanHistoryMapping().saveAll(newBanMaps);
+		database.getUSLActionUnbanHistoryMapping().saveAll(newUnbanMaps);
 		
 		return Collections.singleton(action.personID);
 	}
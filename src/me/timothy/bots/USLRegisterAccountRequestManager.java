@@ -67,7 +67,7 @@ public class USLRegisterAccountRequestManager {
 			
 			Timestamp oldestAllowed = new Timestamp(System.currentTimeMillis() - 1000 * 60 * 60 * 24 * 7);
 			for(RegisterAccountRequest req : requests) {
-				Person person = database.getPersonMapping().fetchByID(req.personID);
+				Person person = database.getPersonMapping().fetchByIDUncached(req.personID);
 				
 				if(req.createdAt.before(oldestAllowed)) {
 					logger.printf(Level.INFO, "Skipping register account request from /u/%s - did not get to it in time", person.username);
@@ -171,6 +171,7 @@ public class USLRepropagationRequestManager {
 		CustomRedditToMeaningProgressMapping custRtmpMap = (CustomRedditToMeaningProgressMapping)database.getRedditToMeaningProgressMapping();
 		custRtmpMap.purgeSchema();
 		
+		database.getPropagatorSettingMapping().remove(PropagatorSettingKey.LAST_MEANING_EVENT);
 		database.getPropagatorSettingMapping().put(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES, "true");
 		
 		backupManager.forceBackup();
@@ -38,7 +38,7 @@ public class USLResetPasswordRequestManager {
 		List<UserPMInformation> res = new ArrayList<>();
 		
 		for(ResetPasswordRequest req : resetPassReqs) {
-			Person person = database.getPersonMapping().fetchByID(req.personID);
+			Person person = database.getPersonMapping().fetchByIDUncached(req.personID);
 			
 			if(person.passwordHash == null) {
 				res.add(getPMForUnclaimed(req, person));
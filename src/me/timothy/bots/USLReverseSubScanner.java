@@ -1,7 +1,10 @@
 package me.timothy.bots;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -9,16 +12,18 @@ import org.apache.logging.log4j.Logger;
 
 import me.timothy.bots.models.MonitoredSubreddit;
 import me.timothy.bots.models.SubredditModqueueProgress;
+import me.timothy.jreddit.HttpUnexpectedStatusCodeException;
 import me.timothy.jreddit.RedditUtils;
 import me.timothy.jreddit.info.Listing;
 import me.timothy.jreddit.info.ModAction;
 import me.timothy.jreddit.info.Thing;
 
 /**
- * <p>A single public function that reverse-scans a given subreddit.</p>
+ * <p>A single public function that reverse-scans a single type of action on a given subreddit.</p>
  * 
- * <p>The goal of this class is to go to a subreddits mod history page, then 
- * ask for all of the stuff newer than the last thing we've seen. In effect,
+ * <p>The goal of this class is to go to a subreddits mod history page, filtered to one 
+ * type of action (bans or unbans), then ask for all of the stuff newer than the last 
+ * thing we've seen. In effect,
  * we keep hitting the "back" button, hence the name "reverse" scanner. We 
  * do this until reddit says theres no more stuff.</p>
  * 
@@ -37,7 +42,7 @@ public class USLReverseSubScanner {
 	 * 
 	 * Our goal is only to:
 	 *   1) Get the pagination mod action id
-	 *   2) Get the page from reddit
+	 *   2) Get the page from reddit, once the rate limiter lets us
 	 *   3) Send all the mod actions to the mod action processor
 	 *   4) Update the newest pagination id
 	 *   5)
@@ -49,6 +54,9 @@ public class USLReverseSubScanner {
 	 *   - Determine if we SHOULD do reverse search
 	 *   - Check if the subreddit is read/write only
 	 *   - Initialize or modify the oldest pagination id
+	 * 
+	 * Steps 3 and 4 touch the database, so they are handed to the ingest executor
+	 * rather than run here.
 	 */
 
 	
@@ -68,57 +76,72 @@ public class USLReverseSubScanner {
 	
 	
 	/**
-	 * Starts or continues a reverse scan of the given subreddits mod action history.
+	 * Starts or continues a reverse scan of the given subreddits mod action history, only
+	 * asking reddit for actions of the given type. The database is only used from tasks 
+	 * given to the ingest executor, which must run them in the order they were given.
 	 * 
 	 * @param bot The bot, used for authenticating with reddit
 	 * @param database The database, used for saving state information and the mod actions we find
 	 * @param config The configuration, used for fetching user-controlled variables
 	 * @param subreddit The subreddit to perform a forward search on.
+	 * @param type The type of mod action to scan for, one of SubredditModqueueProgress.TYPES
+	 * @param progress The progress on the subreddit as of the start of the scan
+	 * @param limiter Decides when we can make each request to reddit
+	 * @param maybeLoginAgain Called when a request to reddit fails
+	 * @param onForbidden Called when reddit says we can't see the mod log of the subreddit
+	 * @param ingest Runs everything that touches the database
 	 * @return CONTINUE if we have not finished our forward search, FINISHED if we have
 	 */
-	public static boolean scan(Bot bot, USLDatabase database, USLFileConfiguration config, MonitoredSubreddit subreddit) {
+	public static boolean scan(Bot bot, USLDatabase database, USLFileConfiguration config, MonitoredSubreddit subreddit, String type,
+			SubredditModqueueProgress progress, RedditRateLimiter limiter, Runnable maybeLoginAgain, Runnable onForbidden, Executor ingest) {
+		String paginationID = progress.getNewestModActionID(type);
 		for(int i = 0; i < MAX_PAGES_PER_SCAN; i++) {
-			boolean result = scanPage(bot, database, config, subreddit);
-			if(result == FINISHED)
+			paginationID = scanPage(bot, database, config, subreddit, type, paginationID, limiter, maybeLoginAgain, onForbidden, ingest);
+			if(paginationID == null)
 				return FINISHED;
 		}
 		
 		return CONTINUE;
 	}
 
-	private static boolean scanPage(Bot bot, USLDatabase database, USLFileConfiguration config, MonitoredSubreddit subreddit) {
-		String paginationID = getPaginationModActionID(database, subreddit);
-		Listing page = getPagePreceeding(bot, subreddit, paginationID);
+	private static String scanPage(Bot bot, USLDatabase database, USLFileConfiguration config, MonitoredSubreddit subreddit, String type,
+			String paginationID, RedditRateLimiter limiter, Runnable maybeLoginAgain, Runnable onForbidden, Executor ingest) {
+		Listing page = getPagePreceeding(bot, subreddit, type, paginationID, limiter, maybeLoginAgain, onForbidden);
 		printInformationAboutPage(subreddit, page, paginationID);
-		sleepFor(USLBotDriver.BRIEF_PAUSE_MS);
-		sendPageToProcessor(bot, database, config, page);
 		
-		if(isPageLastPage(page))
-			return FINISHED;
+		if(isPageLastPage(page)) {
+			ingest.execute(() -> sendPageToProcessor(bot, database, config, page));
+			return null;
+		}
 		
-		String newPaginationID = getNewPaginationModActionID(page, paginationID);
+		final String newPaginationID = getNewPaginationModActionID(page, paginationID);
 		if(newPaginationID.equals(paginationID))
 			logger.printf(Level.ERROR, "Pagination id did not change even though not the last page? Still is %s", newPaginationID);
 		else
 			logger.printf(Level.TRACE, "Determined new pag id for sub %s (id=%d) should be %s", subreddit.subreddit, subreddit.id, newPaginationID);
 		
-		updatePaginationModActionID(database, subreddit, newPaginationID);
-		return CONTINUE;
+		ingest.execute(() -> {
+			sendPageToProcessor(bot, database, config, page);
+			updatePaginationModActionID(database, subreddit, type, newPaginationID);
+		});
+		return newPaginationID;
 	}
 
-	
-	private static String getPaginationModActionID(USLDatabase database, MonitoredSubreddit sub) {
-		SubredditModqueueProgress progress = database.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id);
-		
-		return progress.newestModActionID;
-	}
-
-	private static Listing getPagePreceeding(Bot bot, MonitoredSubreddit subreddit, String modActionID) {
-		return new Retryable<Listing>("getPagePreceeding", USLBotDriver.sMaybeLoginAgainRunnable) {
+	private static Listing getPagePreceeding(Bot bot, MonitoredSubreddit subreddit, String type, String modActionID, RedditRateLimiter limiter, Runnable maybeLoginAgain, Runnable onForbidden) {
+		return new Retryable<Listing>("getPagePreceeding", maybeLoginAgain) {
 
 			@Override
 			protected Listing runImpl() throws Exception {
-				 return RedditUtils.getModeratorLog(subreddit.subreddit, null, null, modActionID, null, ACTIONS_PER_PAGE, bot.getUser());
+				limiter.acquire();
+				try {
+					return RedditUtils.getModeratorLog(subreddit.subreddit, null, type, modActionID, null, ACTIONS_PER_PAGE, bot.getUser());
+				}catch(HttpUnexpectedStatusCodeException e) {
+					if(e.statusCode == 429)
+						limiter.onRateLimited();
+					else if(e.statusCode == 403)
+						onForbidden.run();
+					throw e;
+				}
 			}
 			
 		}.run();
@@ -172,13 +195,16 @@ public class USLReverseSubScanner {
 	}
 
 	private static void sendPageToProcessor(Bot bot, USLDatabase database, USLFileConfiguration config, Listing listing) {
+		List<ModAction> actions = new ArrayList<>(listing.numChildren());
 		for(int i = 0; i < listing.numChildren(); i++) {
 			Thing child = listing.getChild(i);
 			
 			if(child instanceof ModAction) {
-				USLModActionProcessor.processModAction(bot, database, config, (ModAction)child);
+				actions.add((ModAction)child);
 			}
 		}
+		
+		USLModActionProcessor.processModActions(bot, database, config, actions);
 	}
 	
 	private static boolean isPageLastPage(Listing listing) {
@@ -216,22 +242,12 @@ public class USLReverseSubScanner {
 		return newest.id();
 	}
 
-	private static void updatePaginationModActionID(USLDatabase database, MonitoredSubreddit sub, String newID) {
+	private static void updatePaginationModActionID(USLDatabase database, MonitoredSubreddit sub, String type, String newID) {
 		SubredditModqueueProgress progress = database.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id);
 		if(progress.monitoredSubredditID != sub.id)
 			throw new RuntimeException("SubredditModqueueProgressMapping : progress.monitoredSubredditID = " + progress.monitoredSubredditID + "; sub.id = " + sub.id);
 		
-		progress.newestModActionID = newID;
+		progress.setNewestModActionID(type, newID);
 		database.getSubredditModqueueProgressMapping().save(progress);
 	}
-	
-	private static void sleepFor(long ms) {
-		try {
-			logger.trace("Sleeping for " + ms + " milliseconds");
-			Thread.sleep(ms);
-		} catch (InterruptedException ex) {
-			logger.error(ex);
-			throw new RuntimeException(ex);
-		}
-	}
 }
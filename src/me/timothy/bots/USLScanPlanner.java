@@ -0,0 +1,286 @@
+package me.timothy.bots;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import me.timothy.bots.memory.HandledModActionJoinHistory;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.SubredditModqueueProgress;
+
+/**
+ * <p>Decides which monitored subreddits are worth scanning on a given loop. Rather than scanning
+ * every subreddit every loop, each subreddit is scanned about as often as it gets new bans and
+ * unbans, but never less often than its maximum latency. Each subreddit can be given its own maximum
+ * latency with scanning.subreddit_max_latency_ms, otherwise it gets scanning.max_latency_ms.</p>
+ *
+ * <p>How busy a subreddit is comes from how many handled mod actions it had recently. A subreddit
+ * which is still going through its history (a forward search, or a reverse search which did not
+ * reach the newest action last time) is scanned every loop until it catches up.</p>
+ *
+ * <p>The propagator only turns events into actions up to the earliest time every subreddit had its
+ * full history. So that a ban found on a busy subreddit doesn't wait for the quiet ones to come up
+ * again, any subreddit whose full history is from before the oldest ban or unban that is waiting on
+ * it is scanned right away. A ban is then propagated about as soon as the subreddit it happened on
+ * is scanned, and at worst within that subreddits maximum latency and a loop.</p>
+ *
+ * <p>Nothing here is saved; after a restart every subreddit is scanned once and then spaced out
+ * again.</p>
+ *
+ * @author Timothy
+ */
+public class USLScanPlanner {
+	private static final Logger logger = LogManager.getLogger();
+	
+	/** The longest we go without scanning a subreddit if scanning.max_latency_ms is not set */
+	private static final long DEFAULT_MAX_LATENCY_MS = 1000 * 60 * 15;
+	/** How far back we look to decide how busy a subreddit is */
+	private static final long RATE_WINDOW_MS = 1000L * 60 * 60 * 24 * 7;
+	/** How often we recount the recent handled mod actions */
+	private static final long RATE_REFRESH_MS = 1000 * 60 * 60;
+	/** How many new actions we expect to find, on average, each time we scan a subreddit */
+	private static final double TARGET_ACTIONS_PER_SCAN = 1;
+	
+	/**
+	 * When a subreddit is next going to be scanned, and why.
+	 */
+	public static class PlannedScan {
+		/** The id of the monitored subreddit */
+		public final int monitoredSubredditID;
+		/** The name of the subreddit */
+		public final String subreddit;
+		/** When the subreddit should next be scanned, in milliseconds since the epoch */
+		public final long nextScanAt;
+		/** How many bans and unbans the subreddit had per hour recently */
+		public final double actionsPerHour;
+		/** If the subreddit is scanned every loop until it has its whole history */
+		public final boolean catchingUp;
+		/** The longest we go without scanning the subreddit, in milliseconds */
+		public final long maxLatencyMs;
+		
+		/**
+		 * @param monitoredSubredditID the id of the monitored subreddit
+		 * @param subreddit the name of the subreddit
+		 * @param nextScanAt when the subreddit should next be scanned
+		 * @param actionsPerHour how many bans and unbans the subreddit had per hour recently
+		 * @param catchingUp if the subreddit is scanned every loop until it has its whole history
+		 * @param maxLatencyMs the longest we go without scanning the subreddit
+		 */
+		public PlannedScan(int monitoredSubredditID, String subreddit, long nextScanAt, double actionsPerHour, boolean catchingUp, long maxLatencyMs) {
+			this.monitoredSubredditID = monitoredSubredditID;
+			this.subreddit = subreddit;
+			this.nextScanAt = nextScanAt;
+			this.actionsPerHour = actionsPerHour;
+			this.catchingUp = catchingUp;
+			this.maxLatencyMs = maxLatencyMs;
+		}
+		
+		@Override
+		public String toString() {
+			return "PlannedScan [monitoredSubredditID=" + monitoredSubredditID + ", subreddit=" + subreddit + ", nextScanAt="
+					+ new Timestamp(nextScanAt) + ", actionsPerHour=" + actionsPerHour + ", catchingUp=" + catchingUp + ", maxLatencyMs="
+					+ maxLatencyMs + "]";
+		}
+	}
+	
+	private final USLDatabase database;
+	private final long maxLatencyMs;
+	private final Map<String, Long> subredditMaxLatencyMs;
+	private Map<Integer, PlannedScan> planned;
+	private Map<Integer, Integer> recentCounts;
+	private long countedAt;
+	
+	/**
+	 * Create a planner which reads the maximum latency from the optional scanning.max_latency_ms
+	 * property. The optional scanning.subreddit_max_latency_ms property overrides it for some
+	 * subreddits, as comma-separated subreddit=milliseconds pairs (e.g. "sub1=60000,sub2=300000").
+	 *
+	 * @param database the database
+	 * @param config the file configuration
+	 */
+	public USLScanPlanner(USLDatabase database, USLFileConfiguration config) {
+		this.database = database;
+		
+		this.maxLatencyMs = config.getLongProperty("scanning.max_latency_ms", DEFAULT_MAX_LATENCY_MS);
+		this.subredditMaxLatencyMs = parseSubredditMaxLatencies(config.getProperty("scanning.subreddit_max_latency_ms"));
+		this.planned = new HashMap<>();
+	}
+	
+	/**
+	 * Decide which of the subreddits should be scanned now. Subreddits we have never planned,
+	 * which are catching up, or which are holding back a ban or unban from being propagated 
+	 * are always due.
+	 *
+	 * @param subreddits the monitored subreddits
+	 * @param progress the progress on each subreddit by monitored subreddit id
+	 * @param now the current time in milliseconds since the epoch
+	 * @return the subreddits to scan now, the longest overdue first
+	 */
+	public List<MonitoredSubreddit> selectDue(List<MonitoredSubreddit> subreddits, Map<Integer, SubredditModqueueProgress> progress, long now) {
+		Timestamp waitingSince = findOldestWaitingEvent(subreddits, progress, now);
+		
+		List<MonitoredSubreddit> due = new ArrayList<>();
+		Map<Integer, PlannedScan> stillMonitored = new HashMap<>();
+		for(MonitoredSubreddit sub : subreddits) {
+			PlannedScan plan = planned.get(sub.id);
+			if(plan != null)
+				stillMonitored.put(sub.id, plan);
+			
+			SubredditModqueueProgress prog = progress.get(sub.id);
+			if(plan == null || isCatchingUp(prog) || plan.nextScanAt <= now) {
+				due.add(sub);
+			}else if(waitingSince != null && !prog.lastTimeHadFullHistory.after(waitingSince)) {
+				logger.printf(Level.DEBUG, "Scanning %s early; events since %s are waiting on it", sub.subreddit, waitingSince);
+				due.add(sub);
+			}
+		}
+		planned = stillMonitored;
+		
+		Collections.sort(due, Comparator.comparingLong((sub) -> {
+			PlannedScan plan = planned.get(sub.id);
+			return plan == null ? Long.MIN_VALUE : plan.nextScanAt;
+		}));
+		return due;
+	}
+	
+	/**
+	 * Plan the next scan of a subreddit which was just scanned.
+	 *
+	 * @param sub the subreddit
+	 * @param caughtUp true if the scan reached the newest mod action, false if it failed or there is more to scan
+	 * @param now the current time in milliseconds since the epoch
+	 */
+	public void scanned(MonitoredSubreddit sub, boolean caughtUp, long now) {
+		refreshCounts(now);
+		
+		double actionsPerHour = recentCounts.getOrDefault(sub.id, 0) / (RATE_WINDOW_MS / (1000.0 * 60 * 60));
+		boolean catchingUp = !caughtUp;
+		long subMaxLatencyMs = getMaxLatencyMs(sub);
+		
+		long nextScanAt;
+		if(catchingUp) {
+			nextScanAt = now;
+		}else if(actionsPerHour <= 0) {
+			nextScanAt = now + subMaxLatencyMs;
+		}else {
+			long interval = (long)(TARGET_ACTIONS_PER_SCAN * 1000 * 60 * 60 / actionsPerHour);
+			nextScanAt = now + Math.min(interval, subMaxLatencyMs);
+		}
+		
+		planned.put(sub.id, new PlannedScan(sub.id, sub.subreddit, nextScanAt, actionsPerHour, catchingUp, subMaxLatencyMs));
+	}
+	
+	/**
+	 * Get the longest we go without scanning the given subreddit
+	 * 
+	 * @param sub the subreddit
+	 * @return its maximum latency in milliseconds
+	 */
+	public long getMaxLatencyMs(MonitoredSubreddit sub) {
+		return subredditMaxLatencyMs.getOrDefault(sub.subreddit.toLowerCase(), maxLatencyMs);
+	}
+	
+	/**
+	 * Get when each subreddit we know about will next be scanned.
+	 *
+	 * @return the planned scans, soonest first
+	 */
+	public List<PlannedScan> getQueue() {
+		List<PlannedScan> queue = new ArrayList<>(planned.values());
+		Collections.sort(queue, Comparator.comparingLong((plan) -> plan.nextScanAt));
+		return queue;
+	}
+	
+	/**
+	 * Log the queue of planned scans at DEBUG.
+	 *
+	 * @param now the current time in milliseconds since the epoch
+	 */
+	public void logQueue(long now) {
+		if(!logger.isDebugEnabled())
+			return;
+		
+		StringBuilder summary = new StringBuilder();
+		for(PlannedScan plan : getQueue()) {
+			if(summary.length() > 0)
+				summary.append(", ");
+			summary.append(plan.subreddit).append(" in ").append(Math.max(0, plan.nextScanAt - now) / 1000).append("s");
+			if(plan.catchingUp)
+				summary.append(" (catching up)");
+			else
+				summary.append(String.format(" (%.2f/h)", plan.actionsPerHour));
+		}
+		logger.printf(Level.DEBUG, "Planned scans: %s", summary.toString());
+	}
+	
+	/**
+	 * Find the oldest ban or unban we have stored which the propagator can't get to yet, because
+	 * it is not before the time every subreddit had its full history.
+	 * 
+	 * @param subreddits the monitored subreddits
+	 * @param progress the progress on each subreddit by monitored subreddit id
+	 * @param now the current time in milliseconds since the epoch
+	 * @return when the oldest waiting event occurred, or null if nothing is waiting
+	 */
+	private Timestamp findOldestWaitingEvent(List<MonitoredSubreddit> subreddits, Map<Integer, SubredditModqueueProgress> progress, long now) {
+		Timestamp earliest = null;
+		for(MonitoredSubreddit sub : subreddits) {
+			SubredditModqueueProgress prog = progress.get(sub.id);
+			if(isCatchingUp(prog))
+				continue;
+			
+			if(earliest == null || prog.lastTimeHadFullHistory.before(earliest))
+				earliest = prog.lastTimeHadFullHistory;
+		}
+		
+		if(earliest == null)
+			return null;
+		
+		List<HandledModActionJoinHistory> waiting = database.getHandledModActionMapping().fetchLatestJoined(earliest, new Timestamp(now), 1);
+		return waiting.isEmpty() ? null : waiting.get(0).handledModAction.occurredAt;
+	}
+	
+	private void refreshCounts(long now) {
+		if(recentCounts != null && now - countedAt < RATE_REFRESH_MS)
+			return;
+		
+		recentCounts = database.getHandledModActionMapping().countBySubredditSince(new Timestamp(now - RATE_WINDOW_MS));
+		countedAt = now;
+	}
+	
+	private static Map<String, Long> parseSubredditMaxLatencies(String prop) {
+		Map<String, Long> result = new HashMap<>();
+		if(prop == null)
+			return result;
+		
+		for(String pair : prop.split(",")) {
+			if(pair.trim().isEmpty())
+				continue;
+			
+			String[] parts = pair.split("=");
+			if(parts.length != 2) {
+				logger.printf(Level.WARN, "Ignoring malformed scanning.subreddit_max_latency_ms entry '%s'", pair);
+				continue;
+			}
+			
+			try {
+				result.put(parts[0].trim().toLowerCase(), Long.parseLong(parts[1].trim()));
+			}catch(NumberFormatException e) {
+				logger.catching(e);
+			}
+		}
+		return result;
+	}
+	
+	private static boolean isCatchingUp(SubredditModqueueProgress progress) {
+		return progress == null || progress.searchForward || progress.lastTimeHadFullHistory == null;
+	}
+}
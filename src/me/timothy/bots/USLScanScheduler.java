@@ -0,0 +1,309 @@
+package me.timothy.bots;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import me.timothy.bots.database.ActionLogMapping;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.SubredditModqueueProgress;
+
+/**
+ * <p>Scans the mod logs of many subreddits at once, using the USLForwardSubScanner and
+ * USLReverseSubScanner for each subreddit. Bans and unbans are scanned separately, asking reddit
+ * for only that type of action, so we don't page through every other thing the moderators did.</p>
+ *
+ * <p>Pages are fetched from reddit on a small pool of threads, each working on one subreddit at
+ * a time, and every request goes through the same RedditRateLimiter. So how long a scan takes
+ * depends on how many requests reddit lets us make, rather than on a fixed pause after every
+ * page of every subreddit.</p>
+ *
+ * <p>Everything that touches the database (storing the mod actions and moving the pagination ids
+ * forward) is handed to a single ingest thread in the order it was fetched. The pagination ids
+ * for a subreddit only move past a page once that page has been stored, so stopping in the middle
+ * of a scan is no different than before.</p>
+ *
+ * @author Timothy
+ */
+public class USLScanScheduler {
+	private static final Logger logger = LogManager.getLogger();
+	
+	/** How many subreddits are scanned at once if scanning.threads is not set */
+	private static final int DEFAULT_THREADS = 4;
+	/** How many requests we make each minute if scanning.requests_per_minute is not set */
+	private static final int DEFAULT_REQUESTS_PER_MINUTE = 60;
+	/** How many requests can go out back-to-back after being idle */
+	private static final int BURST = 5;
+	/** How many pages can be waiting on the ingest thread, per fetch thread, before fetching pauses */
+	private static final int PENDING_PAGES_PER_THREAD = 2;
+	/** How long the threads stay alive between scans */
+	private static final long IDLE_THREAD_TIMEOUT_SECONDS = 60;
+	
+	private final USLDatabase database;
+	private final USLFileConfiguration config;
+	private final Bot bot;
+	private final Runnable maybeLoginAgain;
+	private final Consumer<String> onForbidden;
+	private final RedditRateLimiter limiter;
+	private final USLScanPlanner planner;
+	private final int numThreads;
+	private final ThreadPoolExecutor fetchers;
+	private final ThreadPoolExecutor ingester;
+	private final Semaphore pendingPages;
+	
+	/**
+	 * Create a new scheduler. The number of threads and requests per minute come from
+	 * the optional scanning.threads and scanning.requests_per_minute properties.
+	 *
+	 * @param database the database
+	 * @param config the file configuration
+	 * @param bot the bot, used for authenticating with reddit
+	 * @param maybeLoginAgain called when a request to reddit fails; this is never called from two threads at once
+	 */
+	public USLScanScheduler(USLDatabase database, USLFileConfiguration config, Bot bot, Runnable maybeLoginAgain) {
+		this(database, config, bot, maybeLoginAgain, (subreddit) -> {});
+	}
+	
+	/**
+	 * Create a new scheduler which tells onForbidden about any subreddit whose mod log
+	 * reddit won't let us see.
+	 *
+	 * @param database the database
+	 * @param config the file configuration
+	 * @param bot the bot, used for authenticating with reddit
+	 * @param maybeLoginAgain called when a request to reddit fails; this is never called from two threads at once
+	 * @param onForbidden called with the name of a subreddit when reddit responds 403 to a request for its mod
+	 *                    log; this may be called from any of the fetch threads
+	 */
+	public USLScanScheduler(USLDatabase database, USLFileConfiguration config, Bot bot, Runnable maybeLoginAgain,
+			Consumer<String> onForbidden) {
+		this.database = database;
+		this.config = config;
+		this.bot = bot;
+		this.onForbidden = onForbidden;
+		
+		Object loginLock = new Object();
+		this.maybeLoginAgain = () -> {
+			synchronized(loginLock) {
+				maybeLoginAgain.run();
+			}
+		};
+		
+		numThreads = Math.max(1, config.getIntProperty("scanning.threads", DEFAULT_THREADS));
+		limiter = new RedditRateLimiter(BURST, Math.max(1, config.getIntProperty("scanning.requests_per_minute", DEFAULT_REQUESTS_PER_MINUTE)));
+		
+		AtomicInteger fetcherCounter = new AtomicInteger();
+		fetchers = new ThreadPoolExecutor(numThreads, numThreads, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r) -> {
+			Thread thread = new Thread(r, "USLScanScheduler fetch " + fetcherCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		fetchers.allowCoreThreadTimeOut(true);
+		
+		ingester = new ThreadPoolExecutor(1, 1, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r) -> {
+			Thread thread = new Thread(r, "USLScanScheduler ingest");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ingester.allowCoreThreadTimeOut(true);
+		
+		pendingPages = new Semaphore(numThreads * PENDING_PAGES_PER_THREAD);
+		planner = new USLScanPlanner(database, config);
+	}
+	
+	/**
+	 * @return the rate limiter that every mod log request goes through
+	 */
+	public RedditRateLimiter getRateLimiter() {
+		return limiter;
+	}
+	
+	/**
+	 * Get when each monitored subreddit is next going to be scanned.
+	 * 
+	 * @return the planned scans, soonest first
+	 */
+	public List<USLScanPlanner.PlannedScan> getQueue() {
+		return planner.getQueue();
+	}
+	
+	/**
+	 * Scan the given subreddits which are due for new mod actions, a few at a time, and wait for
+	 * everything that was found to be stored. The calling thread should not use the database
+	 * until this returns. The USLScanPlanner decides which subreddits are due.
+	 *
+	 * If scanning any subreddit fails the others are still scanned, and then the first failure
+	 * is thrown.
+	 *
+	 * @param subreddits the monitored subreddits
+	 */
+	public void scan(List<MonitoredSubreddit> subreddits) {
+		ActionLogMapping al = database.getActionLogMapping();
+		
+		Map<Integer, SubredditModqueueProgress> progress = new HashMap<>();
+		for(MonitoredSubreddit sub : subreddits) {
+			progress.put(sub.id, fetchOrCreateProgress(sub));
+		}
+		
+		List<MonitoredSubreddit> due = planner.selectDue(subreddits, progress, System.currentTimeMillis());
+		al.append(String.format("%d of %d monitored subreddits are due to be scanned..", due.size(), subreddits.size()));
+		
+		List<SubredditScan> scans = new ArrayList<>(due.size());
+		for(MonitoredSubreddit sub : due) {
+			al.append(String.format("Scanning {link subreddit %d} for any new mod actions..", sub.id));
+			logger.trace("Scanning " + sub.subreddit + " for any new bans..");
+			scans.add(new SubredditScan(sub, progress.get(sub.id)));
+		}
+		
+		List<Future<?>> fetches = new ArrayList<>(scans.size());
+		for(SubredditScan scan : scans) {
+			fetches.add(fetchers.submit(() -> runScan(scan)));
+		}
+		
+		for(Future<?> fetch : fetches) {
+			await(fetch);
+		}
+		
+		// the ingest thread runs tasks in order, so once this is done everything before it is too
+		await(ingester.submit(() -> {}));
+		
+		long now = System.currentTimeMillis();
+		RuntimeException first = null;
+		for(SubredditScan scan : scans) {
+			planner.scanned(scan.subreddit, scan.error == null && scan.caughtUp, now);
+			if(scan.error != null) {
+				logger.printf(Level.ERROR, "Failed to scan %s", scan.subreddit.subreddit);
+				logger.catching(scan.error);
+				if(first == null)
+					first = scan.error;
+			}
+		}
+		
+		planner.logQueue(now);
+		
+		if(first != null)
+			throw first;
+	}
+	
+	/**
+	 * Scan each type of mod action on the subreddit with its own pagination ids. We only
+	 * say we have the full history of the subreddit when every type caught up in this scan,
+	 * and only as of when the scan started, so propagation never gets ahead of a type that
+	 * is behind.
+	 * 
+	 * @param scan the subreddit to scan
+	 */
+	private void runScan(SubredditScan scan) {
+		try {
+			final Timestamp startedAt = new Timestamp(System.currentTimeMillis());
+			final Runnable onForbiddenHere = () -> onForbidden.accept(scan.subreddit.subreddit);
+			boolean caughtUp = true;
+			for(String type : SubredditModqueueProgress.TYPES) {
+				if(scan.progress.isSearchingForward(type)) {
+					caughtUp = false;
+					boolean result = USLForwardSubScanner.scan(bot, database, config, scan.subreddit, type, scan.progress, limiter, maybeLoginAgain, onForbiddenHere, scan);
+					if(result == USLForwardSubScanner.FINISHED) {
+						scan.execute(() -> {
+							SubredditModqueueProgress progress = database.getSubredditModqueueProgressMapping().fetchByID(scan.progress.id);
+							progress.setSearchingForward(type, false);
+							database.getSubredditModqueueProgressMapping().save(progress);
+						});
+					}
+				}else {
+					boolean result = USLReverseSubScanner.scan(bot, database, config, scan.subreddit, type, scan.progress, limiter, maybeLoginAgain, onForbiddenHere, scan);
+					if(result != USLReverseSubScanner.FINISHED)
+						caughtUp = false;
+				}
+			}
+			
+			scan.caughtUp = caughtUp;
+			final Timestamp lastTimeHadFullHistory = caughtUp ? startedAt : null;
+			scan.execute(() -> {
+				SubredditModqueueProgress progress = database.getSubredditModqueueProgressMapping().fetchByID(scan.progress.id);
+				progress.lastTimeHadFullHistory = lastTimeHadFullHistory;
+				database.getSubredditModqueueProgressMapping().save(progress);
+			});
+		}catch(RuntimeException e) {
+			if(scan.error == null)
+				scan.error = e;
+		}
+	}
+	
+	private SubredditModqueueProgress fetchOrCreateProgress(MonitoredSubreddit sub) {
+		SubredditModqueueProgress progress = database.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id);
+		
+		if(progress == null) {
+			logger.warn("SubredditModqueueProgress was not found for subreddit " + sub.subreddit + ", autogenerating!");
+			progress = new SubredditModqueueProgress(-1, sub.id, true, null, null, null, null);
+			database.getSubredditModqueueProgressMapping().save(progress);
+		}
+		
+		return progress;
+	}
+	
+	private static void await(Future<?> future) {
+		try {
+			future.get();
+		}catch(InterruptedException | ExecutionException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * The state of scanning one subreddit. This is also the executor the scanners hand their
+	 * database work to; it passes the work on to the ingest thread, and once any of it fails
+	 * the rest of the work for this subreddit is skipped and no more is accepted.
+	 */
+	private class SubredditScan implements Executor {
+		final MonitoredSubreddit subreddit;
+		final SubredditModqueueProgress progress;
+		volatile RuntimeException error;
+		volatile boolean caughtUp;
+		
+		SubredditScan(MonitoredSubreddit subreddit, SubredditModqueueProgress progress) {
+			this.subreddit = subreddit;
+			this.progress = progress;
+		}
+		
+		@Override
+		public void execute(Runnable task) {
+			if(error != null)
+				throw new RejectedExecutionException("an earlier page of " + subreddit.subreddit + " failed to be stored");
+			
+			pendingPages.acquireUninterruptibly();
+			try {
+				ingester.execute(() -> {
+					try {
+						if(error == null)
+							task.run();
+					}catch(RuntimeException e) {
+						if(error == null)
+							error = e;
+					}finally {
+						pendingPages.release();
+					}
+				});
+			}catch(RuntimeException e) {
+				pendingPages.release();
+				throw e;
+			}
+		}
+	}
+}
@@ -121,7 +121,7 @@ public class USLTemporaryAuthGranter {
 						requester.username, dateFormat.format(currentLevel.createdAt),
 						dateFormat.format(new Timestamp(currentLevel.createdAt.getTime() + minRetryElapsedMs)));
 				
-				return new TemporaryAuthGranterResult(requester, verified, userPms, subPms);
+				return new TemporaryAuthGranterResult(request, requester, verified, userPms, subPms);
 			}
 			database.getTemporaryAuthLevelMapping().deleteById(currentLevel.id);
 			currentLevel = null;
@@ -155,7 +155,7 @@ public class USLTemporaryAuthGranter {
 			logger.printf(Level.INFO, "Authorization Request for %s APPROVED: Granted level %d authorization until %s",
 					requester.username, level.authLevel, dateFormat.format(expires));
 			
-			return new TemporaryAuthGranterResult(requester, verified, userPms, subPms);
+			return new TemporaryAuthGranterResult(request, requester, verified, userPms, subPms);
 		}
 		
 		{ // this indent is potentially not useful but helps reusing variable names / show that this can be refactored later
@@ -188,7 +188,7 @@ public class USLTemporaryAuthGranter {
 
 			logger.printf(Level.INFO, "Authorization Request for %s DENIED: Set level %d authorization until %s",
 					requester.username, level.authLevel, dateFormat.format(nextRetryTime));
-			return new TemporaryAuthGranterResult(requester, verified, userPms, subPms);
+			return new TemporaryAuthGranterResult(request, requester, verified, userPms, subPms);
 		}
 	}
 }
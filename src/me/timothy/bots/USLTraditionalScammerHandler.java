@@ -30,6 +30,9 @@ public class USLTraditionalScammerHandler {
 	/** All the simple configuration that's saved in flatfile formats */
 	protected USLFileConfiguration config;
 	
+	/** Finds hashtags in scammer descriptions; rebuilt whenever the hashtags change */
+	protected HashtagMatcher matcher;
+	
 	/**
 	 * Create a new traditional scammer handler tied to the specified relational
 	 * database and flat-file configuration
@@ -58,7 +61,8 @@ public class USLTraditionalScammerHandler {
 		if(!USLUtils.potentiallyNotBannedOnSubreddit(database, scammer.personID, subreddit)) // don't ban if he's definitely already banned
 			return new TraditionalScammerHandlerResult(scammer, subreddit, bans, modmailPMs, userPMs);
 		
-		List<SubscribedHashtag> relevant = USLUtils.getRelevantTags(database, config, subreddit, scammer.description.toLowerCase());
+		matcher = HashtagMatcher.rebuildIfChanged(matcher, database.getHashtagMapping().fetchAll());
+		List<SubscribedHashtag> relevant = USLUtils.getRelevantTags(database, matcher, subreddit, scammer.description);
 		if(relevant.isEmpty())
 			return new TraditionalScammerHandlerResult(scammer, subreddit, bans, modmailPMs, userPMs);
 		
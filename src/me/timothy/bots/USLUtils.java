@@ -1,7 +1,9 @@
 package me.timothy.bots;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import me.timothy.bots.models.BanHistory;
@@ -23,18 +25,26 @@ public class USLUtils {
 	 * the specified description
 	 * 
 	 * @param database database
-	 * @param config config
+	 * @param matcher matcher for all the hashtags
 	 * @param subreddit subreddit
-	 * @param descriptionLower description on ban, lowercase
+	 * @param description description on ban
 	 * @return the relevant hashtags
 	 */
-	public static List<SubscribedHashtag> getRelevantTags(USLDatabase database, USLFileConfiguration config,
-			MonitoredSubreddit subreddit, String descriptionLower) {
+	public static List<SubscribedHashtag> getRelevantTags(USLDatabase database, HashtagMatcher matcher,
+			MonitoredSubreddit subreddit, String description) {
+		List<Hashtag> found = matcher.findAll(description);
+		if(found.isEmpty())
+			return new ArrayList<>();
+		
+		Set<Integer> foundIDs = new HashSet<>();
+		for(Hashtag tag : found) {
+			foundIDs.add(tag.id);
+		}
+		
 		List<SubscribedHashtag> relevant = new ArrayList<>();
 		List<SubscribedHashtag> hashtags = database.getSubscribedHashtagMapping().fetchForSubreddit(subreddit.id, false);
 		for(SubscribedHashtag tag : hashtags) {
-			Hashtag realTag = database.getHashtagMapping().fetchByID(tag.hashtagID);
-			if(descriptionLower.contains(realTag.tag.toLowerCase())) {
+			if(foundIDs.contains(tag.hashtagID)) {
 				relevant.add(tag);
 			}
 		}
@@ -1,6 +1,7 @@
 package me.timothy.bots;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 
 import me.timothy.bots.database.MappingDatabase;
@@ -44,13 +45,17 @@ public class USLValidUnbanRequestToMeaningProcessor {
 		USLAction newAct = database.getUSLActionMapping().create(false, unbanRequest.bannedPersonID, new Timestamp(System.currentTimeMillis()));
 		
 		List<USLActionBanHistory> bans = database.getUSLActionBanHistoryMapping().fetchByUSLActionID(latest.id);
+		List<USLActionBanHistory> newBans = new ArrayList<>(bans.size());
 		for(USLActionBanHistory bh : bans) {
-			database.getUSLActionBanHistoryMapping().save(new USLActionBanHistory(newAct.id, bh.banHistoryID));
+			newBans.add(new USLActionBanHistory(newAct.id, bh.banHistoryID));
 		}
+		database.getUSLActionBanHistoryMapping().saveAll(newBans);
 		
 		List<USLActionUnbanHistory> unbans = database.getUSLActionUnbanHistoryMapping().fetchByUSLActionID(latest.id);
+		List<USLActionUnbanHistory> newUnbans = new ArrayList<>(unbans.size());
 		for(USLActionUnbanHistory ubh : unbans) {
-			database.getUSLActionUnbanHistoryMapping().save(new USLActionUnbanHistory(newAct.id, ubh.unbanHistoryID));
+			newUnbans.add(new USLActionUnbanHistory(newAct.id, ubh.unbanHistoryID));
 		}
+		database.getUSLActionUnbanHistoryMapping().saveAll(newUnbans);
 	}
 }
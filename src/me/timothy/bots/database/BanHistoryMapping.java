@@ -1,5 +1,6 @@
 package me.timothy.bots.database;
 
+import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.List;
 
@@ -13,6 +14,15 @@ public interface BanHistoryMapping extends ObjectMapping<BanHistory> {
 	 */
 	public BanHistory fetchByID(int id);
 	
+	/**
+	 * Fetch every ban history whose id is in the given collection. This is a single
+	 * query no matter how many ids are given.
+	 * 
+	 * @param ids the ids
+	 * @return the ban histories with those ids, in no particular order
+	 */
+	public List<BanHistory> fetchByIDs(Collection<Integer> ids);
+	
 	/**
 	 * Fetch the ban history with the specified handled mod action id
 	 * @param handledModActionID the id of the handled mod action
@@ -29,6 +39,17 @@ public interface BanHistoryMapping extends ObjectMapping<BanHistory> {
 	 */
 	public List<BanHistory> fetchByHandledModActionIDs(Collection<Integer> handledModActionIDs);
 	
+	/**
+	 * Determine which of the given ban histories still exist and belong to a handled mod
+	 * action that occurred at exactly the given time. This is a single query no matter how
+	 * many ids are given.
+	 * 
+	 * @param ids the ids of the ban histories to check
+	 * @param occurredAt the time the handled mod action must have occurred at
+	 * @return the ids which matched, in no particular order
+	 */
+	public List<Integer> fetchIDsOccurredAt(Collection<Integer> ids, Timestamp occurredAt);
+	
 	/**
 	 * Fetches the ban history of a user on a specific subreddit. Useful for determining 
 	 * if we already know that a user is banned on a subreddit. This operation requires
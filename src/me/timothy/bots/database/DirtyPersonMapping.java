@@ -5,17 +5,21 @@ import java.util.List;
 import me.timothy.bots.models.DirtyPerson;
 
 /**
- * This acts as a giant pile of dirty people with no enforced ordering whatsoever. Every entry
- * in this mapping needs to get sent to the propagator, and the order does not matter.
+ * This acts as a priority queue of dirty people. Every entry in this mapping needs to get sent
+ * to the propagator, but while there is a backlog the people who were dirtied by something that
+ * just happened should not have to wait behind it. So urgent people come first, then the rest
+ * by priority, highest first.
+ * 
+ * Saving a person who is already dirty never lowers their priority or makes them not urgent.
  * 
  * @author Timothy
  */
 public interface DirtyPersonMapping extends ObjectMapping<DirtyPerson> {
 	/**
-	 * Fetch up to the specified limit number of entries in the mapping.
+	 * Fetch up to the specified limit number of entries in the mapping, without removing them.
 	 * 
 	 * @param limit the maximum number of entries to return
-	 * @return up to limit dirty persons, with no respect to insertion order
+	 * @return up to limit dirty persons; urgent ones first, then by priority, highest first
 	 */
 	public List<DirtyPerson> fetch(int limit);
 	
@@ -1,7 +1,9 @@
 package me.timothy.bots.database;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import me.timothy.bots.memory.HandledModActionJoinHistory;
 import me.timothy.bots.models.HandledModAction;
@@ -19,12 +21,30 @@ public interface HandledModActionMapping extends ObjectMapping<HandledModAction>
 	 */
 	public HandledModAction fetchByID(int id);
 	
+	/**
+	 * Fetch every HandledModAction whose id is in the given collection. This is a single
+	 * query no matter how many ids are given.
+	 * 
+	 * @param ids the ids
+	 * @return the handled mod actions with those ids, in no particular order
+	 */
+	public List<HandledModAction> fetchByIDs(Collection<Integer> ids);
+	
 	/**
 	 * Fetch the HandledModAction by the mod action id
 	 * @param modActionID the mod action id
 	 * @return the handled mod action with the specified modAction id or null
 	 */
 	public HandledModAction fetchByModActionID(String modActionID);
+	
+	/**
+	 * Fetch every HandledModAction whose mod action id is in the given collection. This is 
+	 * a single query no matter how many ids are given.
+	 * 
+	 * @param modActionIDs the mod action ids
+	 * @return the handled mod actions with those mod action ids, in no particular order
+	 */
+	public List<HandledModAction> fetchByModActionIDs(Collection<String> modActionIDs);
 
 	/**
 	 * Fetch handled mod actions by timestamp
@@ -78,4 +98,26 @@ public interface HandledModActionMapping extends ObjectMapping<HandledModAction>
 	 */
 	public List<HandledModActionJoinHistory> fetchLatestJoined(Timestamp after, Timestamp before, int num);
 	
+	/**
+	 * Fetch handled mod actions which are paired with either a ban or unban, ordered by when they occurred
+	 * and then by id, which come strictly after the handled mod action that occurred at afterTime with id 
+	 * afterID, and occurred strictly before before. To page through the results, pass the occurred at and
+	 * id of the last handled mod action in the previous page.
+	 * 
+	 * @param afterTime the time which all returned results will have occurred at or after
+	 * @param afterID results which occurred at exactly afterTime must have an id strictly greater than this
+	 * @param before the time which all returned results will have occurred at strictly before
+	 * @param num the maximum number of results to return
+	 * @return the handled mod actions which have a ban or unban, and the corresponding ban or unban
+	 */
+	public List<HandledModActionJoinHistory> fetchLatestJoinedAfter(Timestamp afterTime, int afterID, Timestamp before, int num);
+	
+	/**
+	 * Count the handled mod actions on each subreddit which occurred at or after the given time.
+	 * 
+	 * @param after the earliest time to count
+	 * @return the number of handled mod actions by monitored subreddit id; subreddits without any are left out
+	 */
+	public Map<Integer, Integer> countBySubredditSince(Timestamp after);
+	
 }
@@ -43,4 +43,6 @@ public interface MappingDatabase {
 	public SubredditPersonBannedReleaseMapping getSubredditPersonBannedReleaseMapping();
 	public HardwareSwapBanMapping getHardwareSwapBanMapping();
 	public HardwareSwapActionMapping getHardwareSwapActionMapping();
+	public OutboundActionMapping getOutboundActionMapping();
+	public PersonHistoryLoader getPersonHistoryLoader();
 }
@@ -1,5 +1,6 @@
 package me.timothy.bots.database;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -49,6 +50,24 @@ public interface ObjectMapping<A> {
 	 */
 	public void save(A a) throws IllegalArgumentException;
 	
+	/**
+	 * <p>Saves/updates each of the objects as if by {@link #save(Object)}, including updating
+	 * the objects to reflect their state in the mapping. By default this just calls save on 
+	 * each object; mappings that can save many objects in fewer round trips (such as with a
+	 * single multi-row insert) should override this.</p>
+	 * 
+	 * <p>If an exception is thrown, some of the objects may have been saved.</p>
+	 * 
+	 * @param as the objects to save
+	 * @throws IllegalArgumentException if any of the objects are not ready to be mapped
+	 * @throws RuntimeException if a database exception or other environmental exception occurs
+	 */
+	public default void saveAll(Collection<A> as) throws IllegalArgumentException {
+		for(A a : as) {
+			save(a);
+		}
+	}
+	
 	/**
 	 * Fetches all of the {@code A}'s in the mapping, or an empty list. 
 	 * 
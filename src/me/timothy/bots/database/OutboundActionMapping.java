@@ -0,0 +1,66 @@
+package me.timothy.bots.database;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import me.timothy.bots.models.OutboundAction;
+
+/**
+ * Maps the outbound queue of reddit actions to/from the database
+ *
+ * @author Timothy
+ */
+public interface OutboundActionMapping extends ObjectMapping<OutboundAction> {
+	/**
+	 * Save the new action unless there is already an action with the same idempotency
+	 * key, whether or not that one has been sent yet.
+	 *
+	 * @param action the action to queue, which must not be in the database yet
+	 * @return true if the action was saved, false if it was already queued
+	 */
+	public boolean enqueue(OutboundAction action);
+
+	/**
+	 * Fetch the action with the given idempotency key.
+	 *
+	 * @param idempotencyKey the key
+	 * @return the action with that key or null
+	 */
+	public OutboundAction fetchByIdempotencyKey(String idempotencyKey);
+
+	/**
+	 * Fetch which subreddits have actions that are due to be sent. Personal messages are
+	 * not on a subreddit, so if any of those are due the list contains null. Modmail waiting
+	 * to go in a digest is not sent by itself, so it is not included.
+	 *
+	 * @param now the current time
+	 * @return the monitored subreddit ids with actions due, and null if personal messages are due
+	 */
+	public List<Integer> fetchDueSubredditIDs(Timestamp now);
+
+	/**
+	 * Fetch the actions on the given subreddit that are due to be sent, the ones which have
+	 * been due the longest first. Modmail waiting to go in a digest is not included.
+	 *
+	 * @param monitoredSubredditID the subreddit, or null for personal messages
+	 * @param now the current time
+	 * @param limit the maximum number of actions to fetch
+	 * @return the due actions on that subreddit
+	 */
+	public List<OutboundAction> fetchDue(Integer monitoredSubredditID, Timestamp now, int limit);
+
+	/**
+	 * Fetch the modmail which is waiting to go in a digest, by subreddit and then in the
+	 * order it was queued.
+	 * 
+	 * @return the pending MODMAIL_DIGEST actions
+	 */
+	public List<OutboundAction> fetchPendingDigests();
+	
+	/**
+	 * Count how many actions have not been sent yet and have not been given up on.
+	 *
+	 * @return the number of pending actions
+	 */
+	public int countPending();
+}
@@ -0,0 +1,25 @@
+package me.timothy.bots.database;
+
+import me.timothy.bots.functions.PersonHistoryRowHandlerFunction;
+
+/**
+ * Loads the complete timeline of a person on the USL (bans, unbans, handled unban
+ * requests and list updates) along with the usernames, subreddits and tags needed to
+ * display it. This does not correspond to any one table; it is a read-only view across
+ * several of them, and is loaded in a constant number of queries regardless of how long
+ * the persons history is.
+ * 
+ * @author Timothy
+ */
+public interface PersonHistoryLoader {
+	/**
+	 * Load the history of the given person and pass each row to the handler in
+	 * time order. When two rows happened at the same time, unban requests come first,
+	 * then unbans, then bans, then list updates.
+	 * 
+	 * @param personID the person whose history should be loaded
+	 * @param excludeModPersonID bans and unbans by this person are skipped; use -1 to include everything
+	 * @param handler the function that receives each row
+	 */
+	public void loadHistory(int personID, int excludeModPersonID, PersonHistoryRowHandlerFunction handler);
+}
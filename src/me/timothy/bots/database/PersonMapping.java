@@ -1,5 +1,9 @@
 package me.timothy.bots.database;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 import me.timothy.bots.models.Person;
 
 /**
@@ -21,6 +25,16 @@ public interface PersonMapping extends ObjectMapping<Person> {
 	 */
 	public Person fetchOrCreateByUsername(String username);
 	
+	/**
+	 * Get the persons with each of the specified usernames, creating any that do 
+	 * not exist yet as if by {@link #fetchOrCreateByUsername(String)}. The existing 
+	 * persons are found with a single query and the new ones are created together.
+	 * 
+	 * @param usernames the usernames
+	 * @return the persons, keyed by their username in lower case
+	 */
+	public Map<String, Person> fetchOrCreateByUsernames(Collection<String> usernames);
+	
 	/**
 	 * Get the person with the specified username in the database, or 
 	 * return null if no such person exists.
@@ -47,4 +61,24 @@ public interface PersonMapping extends ObjectMapping<Person> {
 	 * @return the person with that id
 	 */
 	public Person fetchByID(int id);
+	
+	/**
+	 * Get every person whose id is in the given collection. This is a single
+	 * query no matter how many ids are given.
+	 * 
+	 * @param ids the ids to search for
+	 * @return the persons that exist with those ids, in no particular order
+	 */
+	public List<Person> fetchByIDs(Collection<Integer> ids);
+	
+	/**
+	 * Get the person with the specified id directly from the database, skipping
+	 * any caches. The password hash, email, and auth level of a person are changed
+	 * by the website rather than the bot, so anything that reads those should use
+	 * this instead of fetchByID.
+	 * 
+	 * @param id the id to search for
+	 * @return the person with that id as it is in the database right now
+	 */
+	public Person fetchByIDUncached(int id);
 }
@@ -22,4 +22,12 @@ public interface PropagatorSettingMapping extends ObjectMapping<PropagatorSettin
 	 * @return the value for that key or null if there is not one
 	 */
 	public String get(PropagatorSetting.PropagatorSettingKey key);
+	
+	/**
+	 * Removes the value associated with the given key, if there is one. Afterward get
+	 * returns null for that key until it is put again.
+	 * 
+	 * @param key the key for the setting to remove
+	 */
+	public void remove(PropagatorSetting.PropagatorSettingKey key);
 }
@@ -20,6 +20,8 @@ public interface SchemaValidator {
 	 * <li>That the fields/columns exist and are of the right type</li>
 	 * <li>That fields that <i>must</i> have certain behavior (e.g. default to null, autoincrement)
 	 * in order for the mapper to function correctly do.</li>
+	 * <li>That indexes the mapper depends on for performance exist. Since adding an index
+	 * is always safe, missing indexes should be created rather than treated as an error.</li>
 	 * </ul>
 	 * 
 	 * <p>Things that should <i>not</i> be verified:</p>
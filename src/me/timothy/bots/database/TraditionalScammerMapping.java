@@ -1,5 +1,6 @@
 package me.timothy.bots.database;
 
+import java.util.Collection;
 import java.util.List;
 
 import me.timothy.bots.models.TraditionalScammer;
@@ -12,6 +13,15 @@ public interface TraditionalScammerMapping extends ObjectMapping<TraditionalScam
 	 * @return the entry with that bannedPersonID, if one exists
 	 */
 	public TraditionalScammer fetchByPersonID(int personID);
+	
+	/**
+	 * Fetch the entries for each of the specified banned person ids that have one,
+	 * in a single query.
+	 * 
+	 * @param personIDs the ids of the persons to search for
+	 * @return the entries with those bannedPersonIDs, in no particular order
+	 */
+	public List<TraditionalScammer> fetchByPersonIDs(Collection<Integer> personIDs);
 
 	/**
 	 * Remove the entry with the specified banned person id from the database,
@@ -1,5 +1,6 @@
 package me.timothy.bots.database;
 
+import java.util.Collection;
 import java.util.List;
 
 import me.timothy.bots.models.USLActionBanHistory;
@@ -19,6 +20,14 @@ public interface USLActionBanHistoryMapping extends ObjectMapping<USLActionBanHi
 	 */
 	public List<USLActionBanHistory> fetchByUSLActionID(int uslActionId);
 	
+	/**
+	 * Fetch all of the maps for any of the given usl action ids, in a single query.
+	 * 
+	 * @param uslActionIds the ids of the USLActions
+	 * @return the mapping to the bans for those actions, in no particular order
+	 */
+	public List<USLActionBanHistory> fetchByUSLActionIDs(Collection<Integer> uslActionIds);
+	
 	/**
 	 * Fetch all of the maps where we have the given ban history.
 	 * 
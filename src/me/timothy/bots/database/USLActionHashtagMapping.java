@@ -1,5 +1,6 @@
 package me.timothy.bots.database;
 
+import java.util.Collection;
 import java.util.List;
 
 import me.timothy.bots.models.USLActionHashtag;
@@ -22,4 +23,13 @@ public interface USLActionHashtagMapping extends ObjectMapping<USLActionHashtag>
 	 * @return the active tags for that action
 	 */
 	public List<USLActionHashtag> fetchByUSLActionID(int actionID); 
+	
+	/**
+	 * Fetch all the active banned hashtags for each of the given action ids, in a 
+	 * single query.
+	 * 
+	 * @param actionIDs the action ids you are interested in
+	 * @return the active tags for those actions, in no particular order
+	 */
+	public List<USLActionHashtag> fetchByUSLActionIDs(Collection<Integer> actionIDs);
 }
@@ -1,6 +1,7 @@
 package me.timothy.bots.database;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 
 import me.timothy.bots.models.USLAction;
@@ -28,6 +29,15 @@ public interface USLActionMapping extends ObjectMapping<USLAction> {
 	 */
 	public USLAction fetchLatest(int personId);
 	
+	/**
+	 * Get the latest action for each of the given persons. This is a single query
+	 * no matter how many persons are given.
+	 * 
+	 * @param personIds the persons
+	 * @return the latest action of each person that has one, in no particular order
+	 */
+	public List<USLAction> fetchLatestByPersons(Collection<Integer> personIds);
+	
 	/**
 	 * Fetch the action with the given id.
 	 * @param id the id of the row you want
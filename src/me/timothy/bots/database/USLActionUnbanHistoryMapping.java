@@ -1,5 +1,6 @@
 package me.timothy.bots.database;
 
+import java.util.Collection;
 import java.util.List;
 
 import me.timothy.bots.models.USLActionUnbanHistory;
@@ -25,6 +26,14 @@ public interface USLActionUnbanHistoryMapping extends ObjectMapping<USLActionUnb
 	 */
 	public List<USLActionUnbanHistory> fetchByUSLActionID(int uslActionId);
 	
+	/**
+	 * Fetch all of the maps for any of the given usl action ids, in a single query.
+	 * 
+	 * @param uslActionIds the ids of the USLActions
+	 * @return the mapping to the unbans for those actions, in no particular order
+	 */
+	public List<USLActionUnbanHistory> fetchByUSLActionIDs(Collection<Integer> uslActionIds);
+	
 	/**
 	 * Fetch all of the maps where we have the given unban history.
 	 * 
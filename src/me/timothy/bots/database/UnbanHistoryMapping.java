@@ -1,5 +1,6 @@
 package me.timothy.bots.database;
 
+import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.List;
 
@@ -20,6 +21,15 @@ public interface UnbanHistoryMapping extends ObjectMapping<UnbanHistory> {
 	 */
 	public UnbanHistory fetchByID(int id);
 	
+	/**
+	 * Fetch every unban history whose id is in the given collection. This is a single
+	 * query no matter how many ids are given.
+	 * 
+	 * @param ids the ids
+	 * @return the unban histories with those ids, in no particular order
+	 */
+	public List<UnbanHistory> fetchByIDs(Collection<Integer> ids);
+	
 	/**
 	 * Fetch the unban history with the specified handled mod action id
 	 * 
@@ -37,6 +47,17 @@ public interface UnbanHistoryMapping extends ObjectMapping<UnbanHistory> {
 	 */
 	public List<UnbanHistory> fetchByHandledModActionIDS(Collection<Integer> handledModActionIDs);
 	
+	/**
+	 * Determine which of the given unban histories still exist and belong to a handled mod
+	 * action that occurred at exactly the given time. This is a single query no matter how
+	 * many ids are given.
+	 * 
+	 * @param ids the ids of the unban histories to check
+	 * @param occurredAt the time the handled mod action must have occurred at
+	 * @return the ids which matched, in no particular order
+	 */
+	public List<Integer> fetchIDsOccurredAt(Collection<Integer> ids, Timestamp occurredAt);
+	
 	/**
 	 * Fetches the unban history of a user on a specific subreddit. Useful for determining 
 	 * if we already know that a user is banned/unbanned on a subreddit by comparing 
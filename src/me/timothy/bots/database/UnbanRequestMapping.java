@@ -1,6 +1,7 @@
 package me.timothy.bots.database;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 
 import me.timothy.bots.models.UnbanRequest;
@@ -50,6 +51,20 @@ public interface UnbanRequestMapping extends ObjectMapping<UnbanRequest> {
 	 */
 	public List<UnbanRequest> fetchLatestValid(Timestamp after, Timestamp before, int num);
 	
+	/**
+	 * Fetch UnbanRequests that have been handled and are valid, ordered by when they were
+	 * handled and then by id, which come strictly after the request handled at afterTime with
+	 * id afterID and were handled strictly before before. To page through the results, pass the
+	 * handled at and id of the last request in the previous page.
+	 * 
+	 * @param afterTime the time which all returned results were handled at or after
+	 * @param afterID results which were handled at exactly afterTime must have an id strictly greater than this
+	 * @param before the time which all returned results were handled strictly before
+	 * @param num the maximum number of results to return
+	 * @return the valid handled unban requests in that range
+	 */
+	public List<UnbanRequest> fetchLatestValidAfter(Timestamp afterTime, int afterID, Timestamp before, int num);
+	
 	/**
 	 * Fetch the unban request with the given id.
 	 * 
@@ -57,4 +72,14 @@ public interface UnbanRequestMapping extends ObjectMapping<UnbanRequest> {
 	 * @return the request with that id
 	 */
 	public UnbanRequest fetchByID(int id);
+	
+	/**
+	 * Determine which of the given unban requests still exist and were handled at exactly 
+	 * the given time. This is a single query no matter how many ids are given.
+	 * 
+	 * @param ids the ids of the unban requests to check
+	 * @param handledAt the time the request must have been handled at
+	 * @return the ids which matched, in no particular order
+	 */
+	public List<Integer> fetchIDsHandledAt(Collection<Integer> ids, Timestamp handledAt);
 }
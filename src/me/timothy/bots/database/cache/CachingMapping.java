@@ -0,0 +1,17 @@
+package me.timothy.bots.database.cache;
+
+/**
+ * Describes a mapping which keeps some of what it has seen in memory in front of
+ * another mapping. The database uses this to drop everything that is cached when
+ * the underlying tables are changed out from under it (such as when they are
+ * truncated).
+ * 
+ * @author Timothy
+ */
+public interface CachingMapping {
+	/**
+	 * Forget everything that is cached. The next lookups will all go to the
+	 * underlying mapping.
+	 */
+	public void clearCache();
+}
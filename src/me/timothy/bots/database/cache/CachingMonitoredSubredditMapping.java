@@ -0,0 +1,124 @@
+package me.timothy.bots.database.cache;
+
+import java.util.List;
+
+import me.timothy.bots.database.MonitoredSubredditMapping;
+import me.timothy.bots.models.MonitoredSubreddit;
+
+/**
+ * A write-through cache in front of another monitored subreddit mapping. There are
+ * only a few hundred monitored subreddits and they are looked up by id or name for
+ * nearly every row the bot handles.
+ * 
+ * Subreddits can be changed outside of the bot, so fetchAll always goes to the
+ * underlying mapping and refreshes the cache with whatever it finds. The bot does this
+ * every loop. Lookups of which subreddits follow which tags are never cached.
+ * 
+ * @author Timothy
+ */
+public class CachingMonitoredSubredditMapping implements MonitoredSubredditMapping, CachingMapping {
+	/** The default maximum number of subreddits to keep in memory */
+	public static final int DEFAULT_MAX_SIZE = 1000;
+	
+	private MonitoredSubredditMapping delegate;
+	private LruEntityCache<MonitoredSubreddit> cache;
+	
+	/**
+	 * Create a new caching mapping in front of the given mapping with the default size
+	 * 
+	 * @param delegate the mapping that actually stores monitored subreddits
+	 */
+	public CachingMonitoredSubredditMapping(MonitoredSubredditMapping delegate) {
+		this(delegate, DEFAULT_MAX_SIZE);
+	}
+	
+	/**
+	 * Create a new caching mapping in front of the given mapping
+	 * 
+	 * @param delegate the mapping that actually stores monitored subreddits
+	 * @param maxSize the maximum number of subreddits to keep in memory
+	 */
+	public CachingMonitoredSubredditMapping(MonitoredSubredditMapping delegate, int maxSize) {
+		this.delegate = delegate;
+		this.cache = new LruEntityCache<>(maxSize, (s) -> s.id, (s) -> s.subreddit, CachingMonitoredSubredditMapping::copy);
+	}
+	
+	@Override
+	public void save(MonitoredSubreddit a) throws IllegalArgumentException {
+		try {
+			delegate.save(a);
+		}catch(RuntimeException e) {
+			if(a.id > 0)
+				cache.invalidate(a.id);
+			throw e;
+		}
+		cache.put(a);
+	}
+	
+	@Override
+	public List<MonitoredSubreddit> fetchAll() {
+		List<MonitoredSubreddit> result = delegate.fetchAll();
+		cache.clear();
+		for(MonitoredSubreddit sub : result) {
+			cache.put(sub);
+		}
+		return result;
+	}
+	
+	@Override
+	public String fetchAllAndConcatenate() {
+		return delegate.fetchAllAndConcatenate();
+	}
+	
+	@Override
+	public MonitoredSubreddit fetchByID(int id) {
+		MonitoredSubreddit result = cache.getByID(id);
+		if(result != null)
+			return result;
+		
+		result = delegate.fetchByID(id);
+		if(result != null)
+			cache.put(result);
+		return result;
+	}
+	
+	@Override
+	public MonitoredSubreddit fetchByName(String name) {
+		MonitoredSubreddit result = cache.getByName(name);
+		if(result != null)
+			return result;
+		
+		result = delegate.fetchByName(name);
+		if(result != null)
+			cache.put(result);
+		return result;
+	}
+	
+	@Override
+	public List<Integer> fetchIDsThatFollow(int hashtagID) {
+		return delegate.fetchIDsThatFollow(hashtagID);
+	}
+	
+	@Override
+	public List<Integer> fetchReadableIDsThatFollowActionsTags(int actionID) {
+		return delegate.fetchReadableIDsThatFollowActionsTags(actionID);
+	}
+	
+	@Override
+	public void clearCache() {
+		cache.clear();
+	}
+	
+	/**
+	 * Get the cache this is using, mainly for its statistics
+	 * 
+	 * @return the cache
+	 */
+	public LruEntityCache<MonitoredSubreddit> getCache() {
+		return cache;
+	}
+	
+	private static MonitoredSubreddit copy(MonitoredSubreddit s) {
+		return new MonitoredSubreddit(s.id, s.subreddit, s.silent, s.readOnly, s.writeOnly, s.modmailDigest);
+	}
+}
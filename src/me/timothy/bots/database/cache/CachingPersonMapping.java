@@ -0,0 +1,189 @@
+package me.timothy.bots.database.cache;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.timothy.bots.database.PersonMapping;
+import me.timothy.bots.models.Person;
+
+/**
+ * A write-through cache in front of another person mapping. Persons are looked up
+ * constantly by id and by username, but other than the fields the website manages
+ * (password hash, email, auth level) they never change, so almost every lookup can be
+ * served from memory.
+ * 
+ * Lookups by email and fetchByIDUncached always go to the underlying mapping (and
+ * refresh the cache with what they find), so anything that cares about the fields the
+ * website manages should use those.
+ * 
+ * @author Timothy
+ */
+public class CachingPersonMapping implements PersonMapping, CachingMapping {
+	/** The default maximum number of persons to keep in memory */
+	public static final int DEFAULT_MAX_SIZE = 10000;
+	
+	private PersonMapping delegate;
+	private LruEntityCache<Person> cache;
+	
+	/**
+	 * Create a new caching mapping in front of the given mapping with the default size
+	 * 
+	 * @param delegate the mapping that actually stores persons
+	 */
+	public CachingPersonMapping(PersonMapping delegate) {
+		this(delegate, DEFAULT_MAX_SIZE);
+	}
+	
+	/**
+	 * Create a new caching mapping in front of the given mapping
+	 * 
+	 * @param delegate the mapping that actually stores persons
+	 * @param maxSize the maximum number of persons to keep in memory
+	 */
+	public CachingPersonMapping(PersonMapping delegate, int maxSize) {
+		this.delegate = delegate;
+		this.cache = new LruEntityCache<>(maxSize, (p) -> p.id, (p) -> p.username, CachingPersonMapping::copy);
+	}
+	
+	@Override
+	public void save(Person a) throws IllegalArgumentException {
+		try {
+			delegate.save(a);
+		}catch(RuntimeException e) {
+			if(a.id > 0)
+				cache.invalidate(a.id);
+			throw e;
+		}
+		cache.put(a);
+	}
+	
+	@Override
+	public List<Person> fetchAll() {
+		List<Person> result = delegate.fetchAll();
+		for(Person p : result) {
+			cache.put(p);
+		}
+		return result;
+	}
+	
+	@Override
+	public Person fetchOrCreateByUsername(String username) {
+		Person result = cache.getByName(username);
+		if(result != null)
+			return result;
+		
+		result = delegate.fetchOrCreateByUsername(username);
+		cache.put(result);
+		return result;
+	}
+	
+	@Override
+	public Map<String, Person> fetchOrCreateByUsernames(Collection<String> usernames) {
+		Map<String, Person> result = new HashMap<>();
+		List<String> missing = new ArrayList<>();
+		for(String username : usernames) {
+			Person cached = cache.getByName(username);
+			if(cached != null)
+				result.put(username.toLowerCase(), cached);
+			else
+				missing.add(username);
+		}
+		
+		if(!missing.isEmpty()) {
+			Map<String, Person> fetched = delegate.fetchOrCreateByUsernames(missing);
+			for(Person person : fetched.values()) {
+				cache.put(person);
+			}
+			result.putAll(fetched);
+		}
+		return result;
+	}
+	
+	@Override
+	public Person fetchByUsername(String username) {
+		Person result = cache.getByName(username);
+		if(result != null)
+			return result;
+		
+		result = delegate.fetchByUsername(username);
+		if(result != null)
+			cache.put(result);
+		return result;
+	}
+	
+	@Override
+	public Person fetchByEmail(String email) {
+		Person result = delegate.fetchByEmail(email);
+		if(result != null)
+			cache.put(result);
+		return result;
+	}
+	
+	@Override
+	public Person fetchByID(int id) {
+		Person result = cache.getByID(id);
+		if(result != null)
+			return result;
+		
+		result = delegate.fetchByID(id);
+		if(result != null)
+			cache.put(result);
+		return result;
+	}
+	
+	@Override
+	public List<Person> fetchByIDs(Collection<Integer> ids) {
+		List<Person> result = new ArrayList<>(ids.size());
+		List<Integer> missing = new ArrayList<>();
+		for(int id : ids) {
+			Person cached = cache.getByID(id);
+			if(cached != null)
+				result.add(cached);
+			else
+				missing.add(id);
+		}
+		
+		if(!missing.isEmpty()) {
+			List<Person> fetched = delegate.fetchByIDs(missing);
+			for(Person person : fetched) {
+				cache.put(person);
+			}
+			result.addAll(fetched);
+		}
+		return result;
+	}
+	
+	@Override
+	public Person fetchByIDUncached(int id) {
+		Person result = delegate.fetchByIDUncached(id);
+		if(result != null)
+			cache.put(result);
+		else
+			cache.invalidate(id);
+		return result;
+	}
+	
+	@Override
+	public void clearCache() {
+		cache.clear();
+	}
+	
+	/**
+	 * Get the cache this is using, mainly for its statistics
+	 * 
+	 * @return the cache
+	 */
+	public LruEntityCache<Person> getCache() {
+		return cache;
+	}
+	
+	private static Person copy(Person p) {
+		return new Person(p.id, p.username, p.passwordHash, p.email, p.authLevel, 
+				p.createdAt == null ? null : new Timestamp(p.createdAt.getTime()),
+				p.updatedAt == null ? null : new Timestamp(p.updatedAt.getTime()));
+	}
+}
@@ -0,0 +1,168 @@
+package me.timothy.bots.database.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * A bounded, least-recently-used cache of entities which can be looked up either by
+ * their id or by their (case insensitive) name. The name index always agrees with the
+ * id index - when an entity is evicted or replaced its old name is forgotten too.
+ *
+ * Entities are copied on the way in and on the way out, so callers are free to modify
+ * what they get back without corrupting the cache.
+ *
+ * @author Timothy
+ *
+ * @param <A> the type of entity
+ */
+public class LruEntityCache<A> {
+	private final int maxSize;
+	private final ToIntFunction<A> idOf;
+	private final Function<A, String> nameOf;
+	private final UnaryOperator<A> copier;
+	
+	private final LinkedHashMap<Integer, A> byID;
+	private final Map<String, Integer> idsByName;
+	
+	private long hits;
+	private long misses;
+	
+	/**
+	 * Create a new cache that holds up to maxSize entities
+	 *
+	 * @param maxSize the maximum number of entities to hold
+	 * @param idOf gets the id of an entity
+	 * @param nameOf gets the name of an entity
+	 * @param copier creates a deep copy of an entity
+	 */
+	public LruEntityCache(final int maxSize, ToIntFunction<A> idOf, Function<A, String> nameOf, UnaryOperator<A> copier) {
+		if(maxSize <= 0)
+			throw new IllegalArgumentException("maxSize must be positive (got " + maxSize + ")");
+		
+		this.maxSize = maxSize;
+		this.idOf = idOf;
+		this.nameOf = nameOf;
+		this.copier = copier;
+		this.idsByName = new HashMap<>();
+		this.byID = new LinkedHashMap<Integer, A>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, A> eldest) {
+				if(size() > LruEntityCache.this.maxSize) {
+					idsByName.remove(normalize(nameOf.apply(eldest.getValue())));
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	
+	/**
+	 * Get a copy of the entity with the given id, if it is cached
+	 *
+	 * @param id the id of the entity
+	 * @return a copy of the entity or null
+	 */
+	public synchronized A getByID(int id) {
+		A result = byID.get(id);
+		if(result == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return copier.apply(result);
+	}
+	
+	/**
+	 * Get a copy of the entity with the given name (case insensitive), if it is cached
+	 *
+	 * @param name the name of the entity
+	 * @return a copy of the entity or null
+	 */
+	public synchronized A getByName(String name) {
+		Integer id = name == null ? null : idsByName.get(normalize(name));
+		A result = id == null ? null : byID.get(id);
+		if(result == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return copier.apply(result);
+	}
+	
+	/**
+	 * Store a copy of the given entity, replacing anything cached with the same id.
+	 * Entities without an id (id &lt;= 0) are ignored.
+	 *
+	 * @param entity the entity to cache
+	 */
+	public synchronized void put(A entity) {
+		int id = idOf.applyAsInt(entity);
+		if(id <= 0)
+			return;
+		
+		A copy = copier.apply(entity);
+		A old = byID.put(id, copy);
+		if(old != null) {
+			idsByName.remove(normalize(nameOf.apply(old)));
+		}
+		
+		String name = nameOf.apply(copy);
+		if(name != null) {
+			Integer previousOwner = idsByName.put(normalize(name), id);
+			if(previousOwner != null && previousOwner != id) {
+				byID.remove(previousOwner);
+			}
+		}
+	}
+	
+	/**
+	 * Forget the entity with the given id, if it is cached
+	 *
+	 * @param id the id of the entity
+	 */
+	public synchronized void invalidate(int id) {
+		A old = byID.remove(id);
+		if(old != null) {
+			idsByName.remove(normalize(nameOf.apply(old)));
+		}
+	}
+	
+	/**
+	 * Forget everything
+	 */
+	public synchronized void clear() {
+		byID.clear();
+		idsByName.clear();
+	}
+	
+	/**
+	 * @return the number of entities currently cached
+	 */
+	public synchronized int size() {
+		return byID.size();
+	}
+	
+	/**
+	 * @return the number of lookups that were served from memory
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * @return the number of lookups that had to go to the underlying mapping
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	private static String normalize(String name) {
+		return name == null ? null : name.toLowerCase();
+	}
+}
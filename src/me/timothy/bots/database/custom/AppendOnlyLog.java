@@ -0,0 +1,446 @@
+package me.timothy.bots.database.custom;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * <p>An append-only file of small records which is shared by the custom mappings. Records are
+ * collected in a direct buffer and written through a FileChannel, and the file is only forced
+ * to the device when the sync policy says so or when someone calls {@link #sync()}. This is
+ * group commit: many records share a single fsync instead of paying for one each.</p>
+ *
+ * <p>Every record is framed with its length and a CRC32 of its contents. If we crash part way
+ * through writing a record, {@link #recover(RecordHandler)} notices the torn tail, stops there
+ * and truncates it away.</p>
+ *
+ * <p>The whole log can be replaced with {@link #rewrite(ByteBuffer...)}, which writes the new
+ * contents to a temporary file and renames it over the old one, so a crash leaves either the
+ * old log or the new one but never a mix.</p>
+ *
+ * <p>A log can be told to {@link #writeAfter(AppendOnlyLog) write after} another log. Nothing
+ * from this log reaches the operating system before everything already appended to the other
+ * log is durable, so a record here can safely depend on a record there.</p>
+ *
+ * @author Timothy
+ */
+public class AppendOnlyLog {
+	private static final Logger logger = LogManager.getLogger();
+	
+	/** Identifies the file as an append only log ("USLL") */
+	private static final int MAGIC = 0x55534C4C;
+	/** The magic followed by the kind of log */
+	private static final int HEADER_SIZE = 8;
+	/** The length and crc in front of each record */
+	private static final int FRAME_SIZE = 8;
+	/** The size of the write buffer */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/** The largest record that can be appended */
+	public static final int MAX_RECORD_SIZE = BUFFER_SIZE - FRAME_SIZE;
+	
+	/**
+	 * Decides how often appended records are forced to the device. Both limits are only
+	 * checked when a record is appended; nothing runs in the background, so the last records
+	 * before the log goes idle wait for the next append or an explicit {@link AppendOnlyLog#sync()}.
+	 *
+	 * @author Timothy
+	 */
+	public static class SyncPolicy {
+		/** Force every record as it is appended, like opening the file with "rwd" */
+		public static final SyncPolicy EVERY_RECORD = new SyncPolicy(1, 0);
+		/** Only force when sync is called explicitly (or the log is closed) */
+		public static final SyncPolicy EXPLICIT = new SyncPolicy(Integer.MAX_VALUE, Long.MAX_VALUE);
+		/** Force after 4096 records, or on the first append a second or more after the oldest unsynced one */
+		public static final SyncPolicy DEFAULT = new SyncPolicy(4096, 1000);
+		
+		/** The number of records which may be appended before the log is forced */
+		public final int syncEveryRecords;
+		/** 
+		 * Once the oldest unsynced record is this many milliseconds old, the log is forced when
+		 * the next record is appended
+		 */
+		public final long syncIntervalMs;
+		
+		/**
+		 * @param syncEveryRecords the number of records which may be appended before the log is forced
+		 * @param syncIntervalMs how old the oldest unsynced record must be for the next append to force the log
+		 */
+		public SyncPolicy(int syncEveryRecords, long syncIntervalMs) {
+			if(syncEveryRecords <= 0)
+				throw new IllegalArgumentException("syncEveryRecords must be positive (got " + syncEveryRecords + ")");
+			if(syncIntervalMs < 0)
+				throw new IllegalArgumentException("syncIntervalMs must not be negative (got " + syncIntervalMs + ")");
+			
+			this.syncEveryRecords = syncEveryRecords;
+			this.syncIntervalMs = syncIntervalMs;
+		}
+	}
+	
+	/**
+	 * Receives each record while a log is recovered
+	 *
+	 * @author Timothy
+	 */
+	@FunctionalInterface
+	public interface RecordHandler {
+		/**
+		 * Handle the next record in the log. The buffer is only valid until this returns.
+		 *
+		 * @param record the contents of the record
+		 * @throws IOException if one occurs
+		 */
+		public void handle(ByteBuffer record) throws IOException;
+	}
+	
+	private final File file;
+	private final int kind;
+	private final SyncPolicy policy;
+	
+	private FileChannel channel;
+	private final ByteBuffer writeBuffer;
+	private final CRC32 crc;
+	
+	private AppendOnlyLog dependency;
+	private long size;
+	private int unsyncedRecords;
+	private long oldestUnsyncedAt;
+	
+	/**
+	 * Create a log for the given file. Nothing happens on disk until recover or rewrite is called.
+	 *
+	 * @param file the file
+	 * @param kind identifies what the log holds, so that one mapping never reads another's file
+	 * @param policy when to force records to the device
+	 */
+	public AppendOnlyLog(File file, int kind, SyncPolicy policy) {
+		this.file = file;
+		this.kind = kind;
+		this.policy = policy;
+		
+		writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		crc = new CRC32();
+	}
+	
+	/**
+	 * Make sure nothing from this log is written before everything appended to the given log
+	 * so far has been forced to the device.
+	 *
+	 * @param other the log that this log depends on, or null
+	 */
+	public void writeAfter(AppendOnlyLog other) {
+		this.dependency = other;
+	}
+	
+	/**
+	 * Open the log and pass every intact record to the handler, in the order they were
+	 * appended. If the file does not exist it is created empty. If the last record was
+	 * only partially written, it and anything after it is truncated.
+	 *
+	 * If the file exists but is not a log of this kind (for example a file written by an older
+	 * version) nothing is read or modified and this returns false. The caller should read it
+	 * however it likes and then {@link #rewrite(ByteBuffer...)} it.
+	 *
+	 * @param handler receives each record
+	 * @return true if the log was opened, false if the file is not a log of this kind
+	 */
+	public boolean recover(RecordHandler handler) {
+		close();
+		
+		try {
+			File dir = file.getAbsoluteFile().getParentFile();
+			if(!dir.exists()) {
+				if(!dir.mkdirs()) {
+					throw new IllegalStateException("Failed to create directory " + dir.toString());
+				}
+			}
+			
+			if(!file.exists()) {
+				rewrite();
+				return true;
+			}
+			
+			long goodSize;
+			try(FileChannel reader = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				DataInputStream dis = new DataInputStream(new BufferedInputStream(Channels.newInputStream(reader), BUFFER_SIZE));
+				try {
+					if(dis.readInt() != MAGIC || dis.readInt() != kind)
+						return false;
+				}catch(EOFException e) {
+					return false;
+				}
+				
+				goodSize = HEADER_SIZE;
+				byte[] record = new byte[64];
+				while(true) {
+					int length;
+					int expectedCrc;
+					try {
+						length = dis.readInt();
+						expectedCrc = dis.readInt();
+						if(length < 0 || length > MAX_RECORD_SIZE)
+							break;
+						if(record.length < length)
+							record = new byte[Math.max(length, record.length * 2)];
+						dis.readFully(record, 0, length);
+					}catch(EOFException e) {
+						break;
+					}
+					
+					crc.reset();
+					crc.update(length >>> 24);
+					crc.update(length >>> 16);
+					crc.update(length >>> 8);
+					crc.update(length);
+					crc.update(record, 0, length);
+					if((int)crc.getValue() != expectedCrc)
+						break;
+					
+					handler.handle(ByteBuffer.wrap(record, 0, length).asReadOnlyBuffer());
+					goodSize += FRAME_SIZE + length;
+				}
+			}
+			
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+			if(channel.size() > goodSize) {
+				logger.printf(Level.WARN, "Truncating torn tail of %s (%d bytes)", file.getName(), channel.size() - goodSize);
+				channel.truncate(goodSize);
+				channel.force(true);
+			}
+			channel.position(goodSize);
+			size = goodSize;
+			writeBuffer.clear();
+			unsyncedRecords = 0;
+			return true;
+		}catch(IOException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Append a record to the log. The record is everything remaining in the given buffer,
+	 * and the buffers position is left at its limit. The record is durable once the sync
+	 * policy forces it or {@link #sync()} returns.
+	 *
+	 * @param record the contents of the record
+	 */
+	public void append(ByteBuffer record) {
+		appendUnsynced(record);
+		
+		if(unsyncedRecords == 0)
+			oldestUnsyncedAt = System.currentTimeMillis();
+		unsyncedRecords++;
+		
+		if(unsyncedRecords >= policy.syncEveryRecords
+				|| System.currentTimeMillis() - oldestUnsyncedAt >= policy.syncIntervalMs) {
+			sync();
+		}
+	}
+	
+	/**
+	 * Write any buffered records to the file without forcing them to the device. After this
+	 * the records survive the process dying, but not necessarily the machine losing power.
+	 */
+	public void flush() {
+		if(writeBuffer.position() == 0)
+			return;
+		
+		if(dependency != null)
+			dependency.sync();
+		
+		writeBuffer.flip();
+		try {
+			while(writeBuffer.hasRemaining()) {
+				channel.write(writeBuffer);
+			}
+		}catch(IOException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}finally {
+			writeBuffer.clear();
+		}
+	}
+	
+	/**
+	 * Write any buffered records and force them to the device. When this returns, everything
+	 * appended so far will survive a crash.
+	 */
+	public void sync() {
+		if(channel == null)
+			return;
+		
+		boolean hadBuffered = writeBuffer.position() > 0;
+		flush();
+		if(!hadBuffered && unsyncedRecords == 0)
+			return;
+		
+		try {
+			channel.force(false);
+		}catch(IOException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+		unsyncedRecords = 0;
+	}
+	
+	/**
+	 * Atomically replace the contents of the log with the given records. Anything appended
+	 * but not yet synced is discarded. The new contents are durable when this returns.
+	 *
+	 * @param records the only records the log should contain
+	 */
+	public void rewrite(ByteBuffer... records) {
+		rewrite(Arrays.asList(records).iterator());
+	}
+	
+	/**
+	 * Atomically replace the contents of the log with the given records. Anything appended
+	 * but not yet synced is discarded. The new contents are durable when this returns.
+	 *
+	 * Each record is written before the next one is requested, so the iterator may return
+	 * the same buffer every time.
+	 *
+	 * @param records the only records the log should contain
+	 */
+	public void rewrite(Iterator<ByteBuffer> records) {
+		if(dependency != null)
+			dependency.sync();
+		
+		closeChannel();
+		
+		Path path = file.toPath();
+		Path tmp = path.resolveSibling(file.getName() + ".tmp");
+		try {
+			try(FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				channel = out;
+				
+				writeBuffer.putInt(MAGIC);
+				writeBuffer.putInt(kind);
+				size = HEADER_SIZE;
+				while(records.hasNext()) {
+					appendUnsynced(records.next());
+				}
+				flush();
+				out.force(true);
+			}finally {
+				channel = null;
+			}
+			
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			forceDirectory(path.toAbsolutePath().getParent());
+			
+			channel = FileChannel.open(path, StandardOpenOption.WRITE);
+			channel.position(size);
+			unsyncedRecords = 0;
+		}catch(IOException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * @return the size of the log in bytes, including records that are still buffered
+	 */
+	public long size() {
+		return size;
+	}
+	
+	/**
+	 * @return the file this log is stored in
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Sync and close the log, if it is open
+	 */
+	public void close() {
+		if(channel == null)
+			return;
+		
+		sync();
+		closeChannel();
+	}
+	
+	/**
+	 * Close the log and delete its file
+	 */
+	public void delete() {
+		closeChannel();
+		
+		try {
+			Files.deleteIfExists(file.toPath());
+		}catch(IOException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private void appendUnsynced(ByteBuffer record) {
+		int length = record.remaining();
+		if(length > MAX_RECORD_SIZE)
+			throw new IllegalArgumentException("Record too large (" + length + " bytes)");
+		
+		if(writeBuffer.remaining() < FRAME_SIZE + length)
+			flush();
+		
+		int start = record.position();
+		crc.reset();
+		crc.update(length >>> 24);
+		crc.update(length >>> 16);
+		crc.update(length >>> 8);
+		crc.update(length);
+		crc.update(record);
+		record.position(start);
+		
+		writeBuffer.putInt(length);
+		writeBuffer.putInt((int)crc.getValue());
+		writeBuffer.put(record);
+		size += FRAME_SIZE + length;
+	}
+	
+	private void closeChannel() {
+		writeBuffer.clear();
+		unsyncedRecords = 0;
+		if(channel == null)
+			return;
+		
+		try {
+			channel.close();
+		}catch(IOException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}finally {
+			channel = null;
+		}
+	}
+	
+	/**
+	 * Make a rename inside the given directory durable. Not every platform allows opening a
+	 * directory, in which case this does nothing and we rely on the file system.
+	 */
+	static void forceDirectory(Path dir) {
+		try(FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			dirChannel.force(true);
+		}catch(IOException e) {
+			logger.printf(Level.TRACE, "Could not force directory %s: %s", dir, e.getMessage());
+		}
+	}
+}
@@ -1,172 +1,395 @@
 package me.timothy.bots.database.custom;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import me.timothy.bots.database.DirtyPersonMapping;
 import me.timothy.bots.database.SchemaValidator;
+import me.timothy.bots.memory.IntPrioritySet;
 import me.timothy.bots.models.DirtyPerson;
 
+/**
+ * <p>Keeps the dirty persons in memory, in a heap ordered by their priority, and records every
+ * change in an append-only log so they can be recovered after a restart. Each record is an 
+ * operation (add, remove or clear) followed by the person id and, for adds, their priority. 
+ * An add only ever raises a priority, so replaying a record twice does no harm.</p>
+ * 
+ * <p>The urgent lane is folded into the priority: urgent persons have {@link #URGENT_LANE} added
+ * to theirs, which is more than any time we will ever see, so they always come first.</p>
+ * 
+ * <p>Once the log has grown well past the size of the set, the set is written to a snapshot 
+ * file on a background thread, and then the log is cut down to just the changes made while that
+ * was happening. Recovery reads the snapshot and replays the log on top of it, so it takes time
+ * proportional to the number of dirty persons rather than to how many changes have ever been 
+ * made. Since replaying an older log over a newer snapshot gives the same result, a crash 
+ * between writing the snapshot and cutting the log is harmless.</p>
+ * 
+ * @author Timothy
+ */
 public class CustomDirtyPersonMapping implements DirtyPersonMapping, SchemaValidator, CustomMapping<DirtyPerson> {
 	private static final Logger logger = LogManager.getLogger();
 	
-	private File file;
+	/** Identifies the log file for dirty persons ("DIRT"), and the snapshot from before they had priorities */
+	private static final int LOG_KIND = 0x44495254;
+	/** Identifies the snapshot of dirty persons and their priorities ("DIRQ") */
+	private static final int SNAPSHOT_KIND = 0x44495251;
+	
+	/** Adds a person with the lowest priority; only written before persons had priorities */
+	private static final byte OP_ADD = 1;
+	private static final byte OP_REMOVE = 2;
+	private static final byte OP_CLEAR = 3;
+	/** Adds a person or raises their priority */
+	private static final byte OP_ADD_PRIORITY = 4;
+	
+	/** Added to the priority of urgent persons. Priorities are clamped below this */
+	private static final long URGENT_LANE = 1L << 62;
 	
-	private RandomAccessFile writer;
+	/** The size of an add record, the largest and most common kind, including its framing */
+	private static final int LOG_BYTES_PER_RECORD = 21;
+	/** The log is never snapshotted until it is at least this big */
+	private static final long MIN_SNAPSHOT_LOG_SIZE = 1024 * 1024;
+	/** The log is snapshotted once it has this many records per dirty person */
+	private static final int SNAPSHOT_RECORDS_PER_PERSON = 4;
+	private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+	
+	private File file;
+	private AppendOnlyLog log;
+	private IntSnapshotFile snapshot;
+	/** The same file as snapshot, when it was written before persons had priorities */
+	private IntSnapshotFile legacySnapshot;
 	
-	private Set<Integer> personIds;
+	private IntPrioritySet persons;
+	private int[] fetchBuffer;
+	private long[] fetchPriorities;
 	
-	private int counter;
 	private ByteBuffer buffer;
 	
+	private ThreadPoolExecutor snapshotter;
+	private Future<?> pendingSnapshot;
+	/** The operations since the pending snapshot was taken, as (op << 32) | person id */
+	private long[] opsSinceSnapshot;
+	/** The priority that went with each operation in opsSinceSnapshot */
+	private long[] prioritiesSinceSnapshot;
+	private int numOpsSinceSnapshot;
+	
 	public CustomDirtyPersonMapping(File file) {
+		this(file, AppendOnlyLog.SyncPolicy.DEFAULT);
+	}
+	
+	public CustomDirtyPersonMapping(File file, AppendOnlyLog.SyncPolicy policy) {
 		this.file = file;
 		
-		counter = 0;
-		personIds = new HashSet<Integer>();
-		buffer = ByteBuffer.allocate(16);
+		log = new AppendOnlyLog(file, LOG_KIND, policy);
+		snapshot = new IntSnapshotFile(new File(file.getPath() + ".snapshot"), SNAPSHOT_KIND);
+		legacySnapshot = new IntSnapshotFile(snapshot.getFile(), LOG_KIND);
+		persons = new IntPrioritySet();
+		fetchBuffer = new int[0];
+		fetchPriorities = new long[0];
+		buffer = ByteBuffer.allocate(13);
+		opsSinceSnapshot = new long[16];
+		prioritiesSinceSnapshot = new long[16];
+		
+		snapshotter = new ThreadPoolExecutor(1, 1, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r) -> {
+			Thread thread = new Thread(r, file.getName() + " snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		snapshotter.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * @return the log that changes to this mapping are written to
+	 */
+	public AppendOnlyLog getLog() {
+		return log;
 	}
 	
 	@Override
 	public void save(DirtyPerson a) throws IllegalArgumentException {
-		if(personIds.contains(a.personID))
-			return;
-		
-		personIds.add(a.personID);
-		directWrite(a.personID);
+		long priority = toInternalPriority(a);
+		if(persons.add(a.personID, priority))
+			directWrite(OP_ADD_PRIORITY, a.personID, priority);
 	}
 	
-	protected void directWrite(int personID) {
+	protected void directWrite(byte op, int personID, long priority) {
 		buffer.clear();
-		buffer.putInt(counter);
+		buffer.put(op);
 		buffer.putInt(personID);
+		if(op == OP_ADD_PRIORITY)
+			buffer.putLong(priority);
 		buffer.flip();
-		try {
-			writer.write(buffer.array(), 0, 8);
-		}catch(IOException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
+		log.append(buffer);
+		
+		if(pendingSnapshot != null) {
+			if(numOpsSinceSnapshot == opsSinceSnapshot.length) {
+				opsSinceSnapshot = Arrays.copyOf(opsSinceSnapshot, opsSinceSnapshot.length * 2);
+				prioritiesSinceSnapshot = Arrays.copyOf(prioritiesSinceSnapshot, opsSinceSnapshot.length);
+			}
+			opsSinceSnapshot[numOpsSinceSnapshot] = ((long)op << 32) | (personID & 0xFFFFFFFFL);
+			prioritiesSinceSnapshot[numOpsSinceSnapshot++] = priority;
+			
+			if(pendingSnapshot.isDone())
+				finishSnapshot();
+		}else if(log.size() >= Math.max(MIN_SNAPSHOT_LOG_SIZE, (long)persons.size() * SNAPSHOT_RECORDS_PER_PERSON * LOG_BYTES_PER_RECORD)) {
+			startSnapshot();
 		}
 	}
 	
 	public void recover() {
-		if(writer != null)
-			close();
+		awaitSnapshot();
 		
-		personIds.clear();
-		try {
-			File dir = file.getParentFile();
-			if(!dir.exists()) {
-				if(!dir.mkdirs()) {
-					throw new IllegalStateException("Failed to create directory " + dir.toString());
-				}
+		if(legacySnapshot.exists()) {
+			int[] snapshotIds = legacySnapshot.read();
+			persons = new IntPrioritySet(snapshotIds.length);
+			for(int personId : snapshotIds) {
+				persons.add(personId, 0);
 			}
-			
-			if(!file.exists()) {
-				writer = new RandomAccessFile(file, "rwd");
-				writer.seek(0);
-				
-				buffer.clear();
-				buffer.putInt(counter);
-				buffer.flip();
-				writer.write(buffer.array(), 0, 4);
-				return;
+		}else {
+			// (person id, high half of priority, low half of priority) triples
+			int[] snapshotValues = snapshot.read();
+			persons = new IntPrioritySet(snapshotValues == null ? 0 : snapshotValues.length / 3);
+			if(snapshotValues != null) {
+				for(int i = 0; i + 2 < snapshotValues.length; i += 3) {
+					persons.add(snapshotValues[i], ((long)snapshotValues[i + 1] << 32) | (snapshotValues[i + 2] & 0xFFFFFFFFL));
+				}
 			}
-			
-			int seekPos = 0;
-			try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
-				counter = dis.readInt();
-				seekPos += 4;
-				
-				while(dis.readInt() == counter) {
-					int personId = dis.readInt();
-					if(!personIds.add(personId)) {
-						personIds.remove(personId);
-					}
-					seekPos += 8;
+		}
+		
+		boolean isLog = log.recover((record) -> {
+			byte op = record.get();
+			int personId = record.getInt();
+			if(op == OP_ADD_PRIORITY)
+				persons.add(personId, record.getLong());
+			else if(op == OP_ADD)
+				persons.add(personId, 0);
+			else if(op == OP_REMOVE)
+				persons.remove(personId);
+			else
+				persons.clear();
+		});
+		
+		if(!isLog) {
+			persons.clear();
+			recoverLegacy();
+			logger.info("Converting " + file.getName() + " to the log format (" + persons.size() + " dirty persons)");
+			compact();
+		}
+	}
+	
+	/**
+	 * Get the priority we order the given person by, which puts urgent persons above
+	 * everyone else.
+	 * 
+	 * @param person the dirty person
+	 * @return the priority to store for them
+	 */
+	private static long toInternalPriority(DirtyPerson person) {
+		long priority = Math.max(0, Math.min(URGENT_LANE - 1, person.priority));
+		return person.urgent ? URGENT_LANE + priority : priority;
+	}
+	
+	private static DirtyPerson fromInternalPriority(int personId, long priority) {
+		boolean urgent = priority >= URGENT_LANE;
+		return new DirtyPerson(personId, urgent ? priority - URGENT_LANE : priority, urgent);
+	}
+	
+	/**
+	 * Load the format used before the append-only log; a counter followed by (counter, person id) 
+	 * pairs where each pair toggles the person in or out of the set. Pairs with a stale counter 
+	 * were left over from before the last clear.
+	 */
+	private void recoverLegacy() {
+		try(DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			int counter = dis.readInt();
+			while(dis.readInt() == counter) {
+				int personId = dis.readInt();
+				if(!persons.add(personId, 0)) {
+					persons.remove(personId);
 				}
-			}catch(EOFException e) {
 			}
-			
-			writer = new RandomAccessFile(file, "rwd");
-			writer.seek(seekPos);
+		}catch(EOFException e) {
 		}catch(IOException e) {
 			logger.throwing(e);
 			throw new RuntimeException(e);
 		}
 	}
 	
-	public void clear() {
-		counter++;
-		
+	/**
+	 * Write a snapshot of the dirty persons and cut the log down to nothing, waiting
+	 * for both to finish.
+	 */
+	public void compact() {
+		awaitSnapshot();
+		startSnapshot();
+		awaitSnapshot();
+	}
+	
+	/**
+	 * Begin writing a snapshot of the current dirty persons on the background thread. Until 
+	 * it finishes, every operation is remembered so the log can be rewritten with just those.
+	 * The persons are written in heap order, so reading them back never has to reorder the heap.
+	 */
+	private void startSnapshot() {
+		final int[] ids = persons.toArray();
+		final long[] priorities = persons.toPriorityArray();
+		numOpsSinceSnapshot = 0;
+		pendingSnapshot = snapshotter.submit(() -> {
+			int[] values = new int[ids.length * 3];
+			for(int i = 0; i < ids.length; i++) {
+				values[i * 3] = ids[i];
+				values[i * 3 + 1] = (int)(priorities[i] >>> 32);
+				values[i * 3 + 2] = (int)priorities[i];
+			}
+			snapshot.write(values);
+		});
+	}
+	
+	/**
+	 * Wait for the pending snapshot, if there is one, and then cut the log down
+	 */
+	private void awaitSnapshot() {
+		if(pendingSnapshot != null)
+			finishSnapshot();
+	}
+	
+	/**
+	 * Wait for the pending snapshot to be written and then replace the log with the
+	 * operations that happened since it was taken.
+	 */
+	private void finishSnapshot() {
+		boolean interrupted = false;
 		try {
-			writer.seek(0);
-			
-			buffer.clear();
-			buffer.putInt(counter);
-			buffer.flip();
-			writer.write(buffer.array(), 0, 4);
-		}catch(IOException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
+			while(true) {
+				try {
+					pendingSnapshot.get();
+					break;
+				}catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}catch(ExecutionException e) {
+			pendingSnapshot = null;
+			logger.throwing(e.getCause());
+			throw new RuntimeException(e.getCause());
+		}finally {
+			if(interrupted)
+				Thread.currentThread().interrupt();
 		}
 		
-		personIds.clear();
+		pendingSnapshot = null;
+		final ByteBuffer record = ByteBuffer.allocate(13);
+		log.rewrite(new Iterator<ByteBuffer>() {
+			private int index = 0;
+			
+			@Override
+			public boolean hasNext() {
+				return index < numOpsSinceSnapshot;
+			}
+			
+			@Override
+			public ByteBuffer next() {
+				long op = opsSinceSnapshot[index];
+				record.clear();
+				record.put((byte)(op >>> 32));
+				record.putInt((int)op);
+				if((byte)(op >>> 32) == OP_ADD_PRIORITY)
+					record.putLong(prioritiesSinceSnapshot[index]);
+				record.flip();
+				index++;
+				return record;
+			}
+		});
+		numOpsSinceSnapshot = 0;
+	}
+	
+	public void clear() {
+		awaitSnapshot();
+		
+		persons.clear();
+		buffer.clear();
+		buffer.put(OP_CLEAR);
+		buffer.putInt(0);
+		buffer.flip();
+		
+		// the clear record makes the snapshot irrelevant, so it is safe to delete it afterward
+		log.rewrite(buffer);
+		snapshot.delete();
+	}
+	
+	@Override
+	public void sync() {
+		if(pendingSnapshot != null && pendingSnapshot.isDone())
+			finishSnapshot();
+		log.sync();
 	}
 	
 	public void close() {
-		try {
-			writer.close();
-			writer = null;
-		}catch(IOException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
+		awaitSnapshot();
+		log.close();
 	}
 
 	@Override
 	public List<DirtyPerson> fetchAll() {
-		return personIds.stream().map((i) -> new DirtyPerson(i)).collect(Collectors.toList());
+		int[] ids = persons.toArray();
+		long[] priorities = persons.toPriorityArray();
+		List<DirtyPerson> result = new ArrayList<>(ids.length);
+		for(int i = 0; i < ids.length; i++) {
+			result.add(fromInternalPriority(ids[i], priorities[i]));
+		}
+		return result;
 	}
 
 	@Override
 	public List<DirtyPerson> fetch(int limit) {
-		return personIds.stream().limit(limit).map((i) -> new DirtyPerson(i)).collect(Collectors.toList());
+		if(fetchBuffer.length != limit) {
+			fetchBuffer = new int[limit];
+			fetchPriorities = new long[limit];
+		}
+		
+		int num = persons.top(fetchBuffer, fetchPriorities);
+		List<DirtyPerson> result = new ArrayList<>(num);
+		for(int i = 0; i < num; i++) {
+			result.add(fromInternalPriority(fetchBuffer[i], fetchPriorities[i]));
+		}
+		return result;
 	}
 
 	@Override
 	public boolean contains(int personId) {
-		return personIds.contains(personId);
+		return persons.contains(personId);
 	}
 
 	@Override
 	public void delete(int personId) {
-		if(personIds.contains(personId)) {
-			personIds.remove(personId);
-			if(personIds.isEmpty()) {
+		if(persons.remove(personId)) {
+			if(persons.isEmpty()) {
 				clear();
 			}else {
-				directWrite(personId);
+				directWrite(OP_REMOVE, personId, 0);
 			}
 		}
 	}
 
 	@Override
 	public int count() {
-		return personIds.size();
+		return persons.size();
 	}
 
 	@Override
@@ -175,16 +398,9 @@ public class CustomDirtyPersonMapping implements DirtyPersonMapping, SchemaValid
 
 	@Override
 	public void purgeSchema() {
-		if(writer != null)
-			close();
-		
-		counter = 0;
-		try {
-			Files.delete(file.toPath());
-		}catch(IOException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
+		awaitSnapshot();
+		log.delete();
+		snapshot.delete();
 		recover();
 	}
 }
@@ -1,20 +1,17 @@
 package me.timothy.bots.database.custom;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.PrimitiveIterator;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -22,11 +19,8 @@ import org.apache.logging.log4j.Logger;
 import me.timothy.bots.USLDatabase;
 import me.timothy.bots.database.HandledAtTimestampMapping;
 import me.timothy.bots.database.SchemaValidator;
-import me.timothy.bots.models.BanHistory;
+import me.timothy.bots.memory.IntHashSet;
 import me.timothy.bots.models.HandledAtTimestamp;
-import me.timothy.bots.models.HandledModAction;
-import me.timothy.bots.models.UnbanHistory;
-import me.timothy.bots.models.UnbanRequest;
 
 /**
  * This is a specialized mapping for the HandledAtTimestamp that is persisted to 
@@ -35,150 +29,256 @@ import me.timothy.bots.models.UnbanRequest;
  * as fast as possible except during recovery, which is allowed to be as slow as
  * necessary.
  * 
+ * The file is an append-only log. Every record is checksummed by the log, so a recovered
+ * entry is known to be exactly what was written; the only thing left to check is that the
+ * database still agrees, which is done with one query per type of entry rather than one
+ * per entry. Clearing appends a record with the new timestamp,
+ * and everything after the last such record is what we handled at that timestamp. Once
+ * the log gets large it is rewritten on the next clear.
+ * 
  * @author Timothy
  */
 public class CustomHandledAtTimestampMapping implements HandledAtTimestampMapping, SchemaValidator, CustomMapping<HandledAtTimestamp> {
 	private static final Logger logger = LogManager.getLogger();
 	
+	/** Identifies the log file for handled at timestamps ("HATS") */
+	private static final int LOG_KIND = 0x48415453;
+	/** The record type for a clear; the other record types are the HandledAtTimestampType database values */
+	private static final byte RECORD_CLEAR = 16;
+	/** Once the log is larger than this many bytes it is rewritten on the next clear */
+	private static final long COMPACT_SIZE = 64 * 1024;
+	/** The most ids checked against the database in a single query during recovery */
+	private static final int VALIDATE_BATCH_SIZE = 10000;
+	
 	private File file;
 	
 	private USLDatabase database;
-	private RandomAccessFile writer;
+	private AppendOnlyLog log;
 	
 	private Timestamp expectedTime;
-	private Set<Integer> banHistories;
-	private Set<Integer> unbanHistories;
-	private Set<Integer> unbanRequests;
+	private IntHashSet banHistories;
+	private IntHashSet unbanHistories;
+	private IntHashSet unbanRequests;
 	
 	private ByteBuffer buffer;
 	
 	public CustomHandledAtTimestampMapping(USLDatabase database, File file) {
+		this(database, file, AppendOnlyLog.SyncPolicy.DEFAULT);
+	}
+	
+	public CustomHandledAtTimestampMapping(USLDatabase database, File file, AppendOnlyLog.SyncPolicy policy) {
 		this.database = database;
 		this.file = file;
 		
-		banHistories = new HashSet<>();
-		unbanHistories = new HashSet<>();
-		unbanRequests = new HashSet<>();
+		log = new AppendOnlyLog(file, LOG_KIND, policy);
+		banHistories = new IntHashSet();
+		unbanHistories = new IntHashSet();
+		unbanRequests = new IntHashSet();
 		
-		buffer = ByteBuffer.allocate(8);
+		buffer = ByteBuffer.allocate(9);
+	}
+	
+	/**
+	 * @return the log that changes to this mapping are written to
+	 */
+	public AppendOnlyLog getLog() {
+		return log;
 	}
 	
 	/**
 	 * Recovers the database by reading from the file if it exists, loading our actual memory,
 	 * then setting up the file handle.
+	 * 
+	 * Every recovered entry is checked against the database, and entries whose row no longer
+	 * exists or no longer occurred at the expected time are dropped (this happens if the database
+	 * is restored from a backup, for example). This takes one query per type of entry.
 	 */
 	public void recover() {
+		expectedTime = null;
 		banHistories.clear();
 		unbanHistories.clear();
 		unbanRequests.clear();
 		
-		try {
-			if(writer != null) {
-				writer.close();
-				writer = null;
+		boolean isLog = log.recover((record) -> {
+			byte type = record.get();
+			if(type == RECORD_CLEAR) {
+				expectedTime = new Timestamp(record.getLong());
+				banHistories.clear();
+				unbanHistories.clear();
+				unbanRequests.clear();
+			}else {
+				setFor(HandledAtTimestamp.HandledAtTimestampType.getByDatabaseValue(type)).add(record.getInt());
 			}
+		});
+		
+		if(!isLog) {
+			recoverLegacy();
+			logger.info("Converting " + file.getName() + " to the log format");
+			rewriteFromMemory();
+			return;
+		}
+		
+		if(expectedTime == null)
+			return;
+		
+		boolean droppedAny = false;
+		for(HandledAtTimestamp.HandledAtTimestampType type : HandledAtTimestamp.HandledAtTimestampType.values()) {
+			IntHashSet set = setFor(type);
+			List<Integer> ids = toList(set);
+			IntHashSet valid = fetchStillAtExpectedTime(type, ids);
+			if(valid.size() == ids.size())
+				continue;
 			
-			File dir = file.getParentFile();
-			if(!dir.exists()) {
-				if(!dir.mkdirs()) {
-					throw new IllegalStateException("Failed to create directory " + dir.toString());
-				}
-			}
-			if(!file.exists()) {
-				writer = new RandomAccessFile(file, "rwd");
-				writer.seek(0);
-				return;
+			droppedAny = true;
+			for(int id : ids) {
+				if(!valid.contains(id))
+					set.remove(id);
 			}
+		}
+		
+		if(droppedAny) {
+			logger.info("Some handled at timestamps no longer match the database; rewriting " + file.getName());
+			rewriteFromMemory();
+		}
+	}
+	
+	/**
+	 * Load the format used before the append-only log; the expected timestamp followed by 
+	 * (type, primary key) pairs. Clearing overwrote the file from the start, so everything
+	 * from the first entry that does not match the database onward is stale.
+	 */
+	private void recoverLegacy() {
+		List<HandledAtTimestamp> entries = new ArrayList<>();
+		try(DataInputStream reader = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			expectedTime = new Timestamp(reader.readLong());
 			
-			int seekTo = 0;
-			try(DataInputStream reader = new DataInputStream(new FileInputStream(file))) {
-				long expectedTimestamp = reader.readLong();
-				seekTo += 8;
-				expectedTime = new Timestamp(expectedTimestamp);
-				
-				boolean finished = false;
-				while(!finished) {
-					byte type = reader.readByte();
-					int primaryKey = reader.readInt();
-					
-					HandledAtTimestamp.HandledAtTimestampType typeEnum = HandledAtTimestamp.HandledAtTimestampType.getByDatabaseValue(type);
-					
-					HandledModAction hma;
-					switch(typeEnum) {
-					case BAN_HISTORY:
-						BanHistory bh = database.getBanHistoryMapping().fetchByID(primaryKey);
-						if(bh == null) {
-							finished = true;
-							break;
-						}
-						hma = database.getHandledModActionMapping().fetchByID(bh.handledModActionID);
-						if(hma.occurredAt.getTime() != expectedTimestamp) {
-							finished = true;
-							break;
-						}
-						banHistories.add(primaryKey);
-						break;
-					case UNBAN_HISTORY:
-						UnbanHistory ubh = database.getUnbanHistoryMapping().fetchByID(primaryKey);
-						if(ubh == null) {
-							finished = true;
-							break;
-						}
-						hma = database.getHandledModActionMapping().fetchByID(ubh.handledModActionID);
-						if(hma.occurredAt.getTime() != expectedTimestamp) {
-							finished = true;
-							break;
-						}
-
-						unbanHistories.add(primaryKey);
-						break;
-					case VALID_UNBAN_REQUEST:
-						UnbanRequest req = database.getUnbanRequestMapping().fetchByID(primaryKey);
-						if(req == null) {
-							finished = true;
-							break;
-						}
-						if(req.handledAt.getTime() != expectedTimestamp) {
-							finished = true;
-							break;
-						}
-
-						unbanRequests.add(primaryKey);
-						break;
-					}
-					
-					if(!finished)
-						seekTo += 5;
-				}
-			}catch(EOFException e) {
+			while(true) {
+				byte type = reader.readByte();
+				int primaryKey = reader.readInt();
+				entries.add(new HandledAtTimestamp(primaryKey, type));
 			}
-			
-			writer = new RandomAccessFile(file, "rwd");
-			writer.seek(seekTo);
-		} catch (IOException e) {
+		}catch(EOFException e) {
+		}catch(IOException e) {
 			logger.throwing(e);
 			throw new RuntimeException(e);
 		}
+		
+		if(expectedTime == null)
+			return;
+		
+		List<IntHashSet> validByType = new ArrayList<>();
+		for(HandledAtTimestamp.HandledAtTimestampType type : HandledAtTimestamp.HandledAtTimestampType.values()) {
+			List<Integer> ids = new ArrayList<>();
+			for(HandledAtTimestamp entry : entries) {
+				if(entry.type == type)
+					ids.add(entry.primaryKey);
+			}
+			validByType.add(fetchStillAtExpectedTime(type, ids));
+		}
+		
+		for(HandledAtTimestamp entry : entries) {
+			if(!validByType.get(entry.type.ordinal()).contains(entry.primaryKey))
+				break;
+			
+			setFor(entry.type).add(entry.primaryKey);
+		}
 	}
 	
-	@Override
-	public void save(HandledAtTimestamp a) throws IllegalArgumentException {
+	/**
+	 * Determine which of the rows referenced by handled at timestamps of the given type still
+	 * exist and still have the expected timestamp. This takes one query per VALIDATE_BATCH_SIZE
+	 * ids.
+	 * 
+	 * @param type the type of row
+	 * @param ids the primary keys of the rows
+	 * @return the primary keys which are still at the expected time
+	 */
+	private IntHashSet fetchStillAtExpectedTime(HandledAtTimestamp.HandledAtTimestampType type, List<Integer> ids) {
+		IntHashSet result = new IntHashSet(ids.size());
+		for(int start = 0; start < ids.size(); start += VALIDATE_BATCH_SIZE) {
+			List<Integer> batch = ids.subList(start, Math.min(ids.size(), start + VALIDATE_BATCH_SIZE));
+			
+			List<Integer> valid;
+			switch(type) {
+			case BAN_HISTORY:
+				valid = database.getBanHistoryMapping().fetchIDsOccurredAt(batch, expectedTime);
+				break;
+			case UNBAN_HISTORY:
+				valid = database.getUnbanHistoryMapping().fetchIDsOccurredAt(batch, expectedTime);
+				break;
+			case VALID_UNBAN_REQUEST:
+				valid = database.getUnbanRequestMapping().fetchIDsHandledAt(batch, expectedTime);
+				break;
+			default:
+				throw new AssertionError("unknown type " + type);
+			}
+			
+			for(int id : valid) {
+				result.add(id);
+			}
+		}
+		return result;
+	}
+	
+	private static List<Integer> toList(IntHashSet set) {
+		List<Integer> result = new ArrayList<>(set.size());
+		PrimitiveIterator.OfInt iter = set.iterator();
+		while(iter.hasNext()) {
+			result.add(iter.nextInt());
+		}
+		return result;
+	}
+	
+	/**
+	 * Replace the log with a clear record for the expected time followed by 
+	 * everything in memory.
+	 */
+	private void rewriteFromMemory() {
 		if(expectedTime == null) {
-			throw new IllegalStateException("You must call clear at least once before you can start saving/writing things");
+			log.rewrite();
+			return;
 		}
 		
-		buffer.clear();
-		buffer.put(a.type.databaseValue);
-		buffer.putInt(a.primaryKey);
+		List<ByteBuffer> records = new ArrayList<>();
+		records.add(clearRecord(expectedTime.getTime()));
+		for(HandledAtTimestamp.HandledAtTimestampType type : HandledAtTimestamp.HandledAtTimestampType.values()) {
+			for(int primaryKey : setFor(type).toArray()) {
+				ByteBuffer record = ByteBuffer.allocate(5);
+				record.put(type.databaseValue);
+				record.putInt(primaryKey);
+				record.flip();
+				records.add(record);
+			}
+		}
 		
-		buffer.flip();
-		try {
-			writer.write(buffer.array(), 0, 5);
-		} catch (IOException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
+		log.rewrite(records.iterator());
+	}
+	
+	private static ByteBuffer clearRecord(long time) {
+		ByteBuffer record = ByteBuffer.allocate(9);
+		record.put(RECORD_CLEAR);
+		record.putLong(time);
+		record.flip();
+		return record;
+	}
+	
+	private IntHashSet setFor(HandledAtTimestamp.HandledAtTimestampType type) {
+		switch(type) {
+		case BAN_HISTORY:
+			return banHistories;
+		case UNBAN_HISTORY:
+			return unbanHistories;
+		case VALID_UNBAN_REQUEST:
+			return unbanRequests;
+		default:
+			throw new AssertionError("unknown type " + type);
 		}
 	}
+	
+	@Override
+	public void save(HandledAtTimestamp a) throws IllegalArgumentException {
+		add(a.type, a.primaryKey);
+	}
 
 	@Override
 	public List<HandledAtTimestamp> fetchAll() {
@@ -202,65 +302,31 @@ public class CustomHandledAtTimestampMapping implements HandledAtTimestampMappin
 
 	@Override
 	public void addBanHistory(int banHistoryID) {
-		if(expectedTime == null) {
-			throw new IllegalStateException("You must call clear at least once before you can start saving/writing things");
-		}
-		
-		buffer.clear();
-		buffer.put((byte)HandledAtTimestamp.HandledAtTimestampType.BAN_HISTORY.databaseValue);
-		buffer.putInt(banHistoryID);
-		buffer.flip();
-
-		try {
-			writer.write(buffer.array(), 0, 5);
-		} catch (IOException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
-		
-		banHistories.add(banHistoryID);
+		add(HandledAtTimestamp.HandledAtTimestampType.BAN_HISTORY, banHistoryID);
 	}
 
 	@Override
 	public void addUnbanHistory(int unbanHistoryID) {
-		if(expectedTime == null) {
-			throw new IllegalStateException("You must call clear at least once before you can start saving/writing things");
-		}
-		
-		buffer.clear();
-		buffer.put((byte)HandledAtTimestamp.HandledAtTimestampType.UNBAN_HISTORY.databaseValue);
-		buffer.putInt(unbanHistoryID);
-		buffer.flip();
-
-		try {
-			writer.write(buffer.array(), 0, 5);
-		} catch (IOException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
-		
-		unbanHistories.add(unbanHistoryID);
+		add(HandledAtTimestamp.HandledAtTimestampType.UNBAN_HISTORY, unbanHistoryID);
 	}
 
 	@Override
 	public void addUnbanRequest(int unbanRequestID) {
+		add(HandledAtTimestamp.HandledAtTimestampType.VALID_UNBAN_REQUEST, unbanRequestID);
+	}
+	
+	private void add(HandledAtTimestamp.HandledAtTimestampType type, int primaryKey) {
 		if(expectedTime == null) {
 			throw new IllegalStateException("You must call clear at least once before you can start saving/writing things");
 		}
-
+		
 		buffer.clear();
-		buffer.put((byte)HandledAtTimestamp.HandledAtTimestampType.VALID_UNBAN_REQUEST.databaseValue);
-		buffer.putInt(unbanRequestID);
+		buffer.put(type.databaseValue);
+		buffer.putInt(primaryKey);
 		buffer.flip();
-
-		try {
-			writer.write(buffer.array(), 0, 5);
-		} catch (IOException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
+		log.append(buffer);
 		
-		unbanRequests.add(unbanRequestID);
+		setFor(type).add(primaryKey);
 	}
 	
 	/**
@@ -273,73 +339,58 @@ public class CustomHandledAtTimestampMapping implements HandledAtTimestampMappin
 	 * @throws AssertionError if this does not match the expected
 	 */
 	public void verifyContents(int[] banHists, int[] unbanHists, int[] unbRequests) {
-		verifyContents(IntStream.of(banHists).boxed().collect(Collectors.toList()),
-				IntStream.of(unbanHists).boxed().collect(Collectors.toList()),
-				IntStream.of(unbRequests).boxed().collect(Collectors.toList()));
+		verifyContents(banHistories, banHists);
+		verifyContents(unbanHistories, unbanHists);
+		verifyContents(unbanRequests, unbRequests);
 	}
 	
 	public void verifyContents(Collection<Integer> banHists, Collection<Integer> unbanHists, Collection<Integer> unbRequests) {
-		org.junit.Assert.assertEquals(banHistories.size(), banHists.size());
-		org.junit.Assert.assertTrue(banHistories.containsAll(banHists));
-
-		org.junit.Assert.assertEquals(unbanHistories.size(), unbanHists.size());
-		org.junit.Assert.assertTrue(unbanHistories.containsAll(unbanHists));
-
-		org.junit.Assert.assertEquals(unbanRequests.size(), unbRequests.size());
-		org.junit.Assert.assertTrue(unbanRequests.containsAll(unbRequests));
+		verifyContents(banHists.stream().mapToInt(Integer::intValue).toArray(),
+				unbanHists.stream().mapToInt(Integer::intValue).toArray(),
+				unbRequests.stream().mapToInt(Integer::intValue).toArray());
+	}
+	
+	private static void verifyContents(IntHashSet actual, int[] expected) {
+		org.junit.Assert.assertEquals(actual.size(), expected.length);
+		for(int id : expected) {
+			org.junit.Assert.assertTrue(actual.contains(id));
+		}
 	}
 
 	@Override
 	public void clear(Timestamp time) {
-		try {
-			Timestamp cp = new Timestamp(time.getTime());
-			cp.setNanos(0);
-			long writeTime = cp.getTime();
-			expectedTime = cp;
-			
-			buffer.clear();
-			buffer.putLong(writeTime);
-			buffer.flip();
-			
-			writer.seek(0);
-			writer.write(buffer.array(), 0, 8);
-		} catch (IOException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
+		Timestamp cp = new Timestamp(time.getTime());
+		cp.setNanos(0);
+		expectedTime = cp;
 		
 		banHistories.clear();
 		unbanHistories.clear();
 		unbanRequests.clear();
+		
+		ByteBuffer record = clearRecord(cp.getTime());
+		if(log.size() >= COMPACT_SIZE) {
+			log.rewrite(record);
+		}else {
+			log.append(record);
+		}
 	}
 
 	@Override
 	public void validateSchema() throws IllegalStateException {
 	}
+	
+	@Override
+	public void sync() {
+		log.sync();
+	}
 
 	public void close() {
-		if(writer != null) {
-			try {
-				writer.close();
-				writer = null;
-			}catch(IOException e) {
-				logger.throwing(e);
-				throw new RuntimeException(e);
-			}
-		}
+		log.close();
 	}
 	
 	@Override
 	public void purgeSchema() {
-		close();
-		
-		try {
-			Files.delete(file.toPath());
-		}catch(IOException e) { 
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
-		
+		log.delete();
 		recover();
 	}
 }
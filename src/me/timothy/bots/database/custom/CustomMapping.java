@@ -13,5 +13,11 @@ public interface CustomMapping<A> extends ObjectMapping<A> {
 	 * Recovers the database. This deletes anything in memory.
 	 */
 	public void recover();
+	
+	/**
+	 * Makes sure everything written to this mapping so far will survive a crash. Writes
+	 * are otherwise grouped together and only forced to disk every so often.
+	 */
+	public void sync();
 	public void close();
 }
@@ -9,36 +9,36 @@ import java.sql.Timestamp;
 import java.util.Collections;
 import java.util.List;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
 import me.timothy.bots.database.RedditToMeaningProgressMapping;
 import me.timothy.bots.database.SchemaValidator;
 import me.timothy.bots.models.RedditToMeaningProgress;
 
 /**
  * A custom implementation of the RedditToMeaningProgressMapping. This keeps the timestamp
- * in memory (of course) and will fill the file until it has more than 8kb of stuff or 
- * we detect a long gap in activity, or we just restarted.
+ * in memory (of course) and appends each new value to the log until it has more than 16kb
+ * of stuff, at which point the log is rewritten with just the current value.
  * 
  * @author Timothy
  */
-public class CustomRedditToMeaningProgressMapping extends RandomAccessFileMapping<RedditToMeaningProgress>
+public class CustomRedditToMeaningProgressMapping extends LogFileMapping<RedditToMeaningProgress>
 												  implements RedditToMeaningProgressMapping, SchemaValidator {
-	private static final Logger logger = LogManager.getLogger();
+	/** Identifies the log file for the reddit to meaning progress ("RTMP") */
+	private static final int LOG_KIND = 0x52544D50;
 	private static final long MAX_FILE_SIZE = 1024 * 16;
 	
-	private int counter;
-	private Timestamp timestamp;
-	private long fileSize;
+	/** Read by planning threads through read-only databases while the main thread sets it */
+	private volatile Timestamp timestamp;
 
 	private ByteBuffer buffer;
 	
 	public CustomRedditToMeaningProgressMapping(File file) {
-		super(file);
+		this(file, AppendOnlyLog.SyncPolicy.DEFAULT);
+	}
+	
+	public CustomRedditToMeaningProgressMapping(File file, AppendOnlyLog.SyncPolicy policy) {
+		super(file, LOG_KIND, policy);
 		
-		buffer = ByteBuffer.allocate(16);
-		counter = 0;
+		buffer = ByteBuffer.allocate(8);
 	}
 
 	@Override
@@ -57,33 +57,18 @@ public class CustomRedditToMeaningProgressMapping extends RandomAccessFileMappin
 
 	@Override
 	public void set(Timestamp stamp) {
-		if(fileSize >= MAX_FILE_SIZE - 12) {
-			counter++;
-			try {
-				raf.seek(0);
-				fileSize = 0;
-				writeFirst();
-			} catch (IOException e) {
-				logger.throwing(e);
-				throw new RuntimeException(e);
-			}
-		}
-
 		long time = stamp == null ? 0 : stamp.getTime();
 		timestamp = stamp == null ? null : new Timestamp(time);
 		
+		if(log.size() >= MAX_FILE_SIZE) {
+			compact();
+			return;
+		}
+		
 		buffer.clear();
 		buffer.putLong(time);
-		buffer.putInt(counter);
 		buffer.flip();
-		
-		try {
-			raf.write(buffer.array(), 0, 12);
-			fileSize += 12;
-		}catch(IOException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
+		log.append(buffer);
 	}
 	
 	@Override
@@ -94,46 +79,39 @@ public class CustomRedditToMeaningProgressMapping extends RandomAccessFileMappin
 	@Override
 	protected void clearMemory() {
 		timestamp = null;
-		counter = 0;
-		fileSize = 0;
+	}
+	
+	@Override
+	protected void recoverRecord(ByteBuffer record) throws IOException {
+		long time = record.getLong();
+		timestamp = time == 0 ? null : new Timestamp(time);
 	}
 
 	@Override
-	protected int recoverImpl(DataInputStream dis) throws IOException {
-		int seekPos = 0;
+	protected void recoverLegacy(DataInputStream dis) throws IOException {
+		// A counter followed by (time, counter) pairs; pairs with a stale counter were 
+		// left over from before the file was last restarted
+		int counter = dis.readInt();
 		
-		try {
-			counter = dis.readInt();
-			seekPos += 4;
-			
-			while(true) {
-				long time = dis.readLong();
-				int count = dis.readInt();
-				if(count != counter)
-					return seekPos;
-				
-				seekPos += 12;
-				if(time == 0) {
-					timestamp = null;
-				}else {
-					if(timestamp == null)
-						timestamp = new Timestamp(time);
-					else
-						timestamp.setTime(time);
-				}
+		while(true) {
+			long time;
+			try {
+				time = dis.readLong();
+				if(dis.readInt() != counter)
+					return;
+			}catch(EOFException e) {
+				return;
 			}
-		}catch(EOFException e) {
-			return seekPos;
+			
+			timestamp = time == 0 ? null : new Timestamp(time);
 		}
 	}
-
+	
 	@Override
-	protected void writeFirst() throws IOException {
-		buffer.clear();
-		buffer.putInt(counter);
-		buffer.flip();
-		
-		raf.write(buffer.array(), 0, 4);
-		fileSize += 4;
+	protected ByteBuffer[] snapshot() {
+		ByteBuffer record = ByteBuffer.allocate(8);
+		record.putLong(timestamp == null ? 0 : timestamp.getTime());
+		record.flip();
+		return new ByteBuffer[] { record };
 	}
 }
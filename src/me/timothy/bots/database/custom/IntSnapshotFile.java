@@ -0,0 +1,202 @@
+package me.timothy.bots.database.custom;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * <p>A file holding an array of ints (usually sorted) which is always written all at once.
+ * The file is a header with the number of values, the values themselves, and a CRC32 of
+ * everything before it.</p>
+ *
+ * <p>Writing goes to a temporary file which is forced and then renamed over the old one, so
+ * after a crash the file holds either the old values or the new ones. It is safe to write
+ * from a background thread as long as nothing else reads, writes or deletes the file at the
+ * same time.</p>
+ *
+ * @author Timothy
+ */
+public class IntSnapshotFile {
+	private static final Logger logger = LogManager.getLogger();
+	
+	/** Identifies the file as an int snapshot ("USLS") */
+	private static final int MAGIC = 0x55534C53;
+	/** The magic, the kind of snapshot and the number of values */
+	private static final int HEADER_SIZE = 12;
+	/** The size of the buffer used for reading and writing */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final File file;
+	private final int kind;
+	
+	/**
+	 * Create a snapshot for the given file. Nothing happens on disk until it is written.
+	 *
+	 * @param file the file
+	 * @param kind identifies what the snapshot holds, so that one mapping never reads another's file
+	 */
+	public IntSnapshotFile(File file, int kind) {
+		this.file = file;
+		this.kind = kind;
+	}
+	
+	/**
+	 * Determine if there is a snapshot of this kind, without reading the values.
+	 *
+	 * @return true if the file exists and its header says it is a snapshot of this kind
+	 */
+	public boolean exists() {
+		if(!file.exists())
+			return false;
+		
+		try(FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if(in.size() < HEADER_SIZE)
+				return false;
+			
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+			readFully(in, buffer, HEADER_SIZE);
+			return buffer.getInt() == MAGIC && buffer.getInt() == kind;
+		}catch(IOException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Read the values in the snapshot.
+	 *
+	 * @return the values, in the order they were written, or null if there is no snapshot
+	 * @throws IllegalStateException if the file is not a snapshot of this kind or is corrupt
+	 */
+	public int[] read() {
+		if(!file.exists())
+			return null;
+		
+		try(FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			CRC32 crc = new CRC32();
+			
+			readFully(in, buffer, HEADER_SIZE);
+			if(buffer.getInt() != MAGIC || buffer.getInt() != kind)
+				throw new IllegalStateException(file.getName() + " is not a snapshot of the expected kind");
+			int count = buffer.getInt();
+			if(count < 0 || in.size() != HEADER_SIZE + count * 4L + 4)
+				throw new IllegalStateException(file.getName() + " has the wrong size for " + count + " values");
+			buffer.flip();
+			crc.update(buffer);
+			
+			int[] result = new int[count];
+			int offset = 0;
+			while(offset < count) {
+				int num = Math.min(count - offset, BUFFER_SIZE / 4);
+				readFully(in, buffer, num * 4);
+				buffer.asIntBuffer().get(result, offset, num);
+				crc.update(buffer);
+				offset += num;
+			}
+			
+			readFully(in, buffer, 4);
+			if(buffer.getInt() != (int)crc.getValue())
+				throw new IllegalStateException(file.getName() + " is corrupt (checksum mismatch)");
+			return result;
+		}catch(IOException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Atomically replace the snapshot with the given values. The new snapshot is durable
+	 * when this returns.
+	 *
+	 * @param values the values to store
+	 */
+	public void write(int[] values) {
+		Path path = file.toPath();
+		Path tmp = path.resolveSibling(file.getName() + ".tmp");
+		try {
+			try(FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+				CRC32 crc = new CRC32();
+				
+				buffer.putInt(MAGIC);
+				buffer.putInt(kind);
+				buffer.putInt(values.length);
+				int offset = 0;
+				while(true) {
+					IntBuffer ints = buffer.asIntBuffer();
+					int num = Math.min(values.length - offset, ints.remaining());
+					ints.put(values, offset, num);
+					buffer.position(buffer.position() + num * 4);
+					offset += num;
+					
+					buffer.flip();
+					crc.update(buffer);
+					buffer.rewind();
+					writeFully(out, buffer);
+					
+					if(offset == values.length)
+						break;
+				}
+				
+				buffer.putInt((int)crc.getValue());
+				buffer.flip();
+				writeFully(out, buffer);
+				out.force(true);
+			}
+			
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			AppendOnlyLog.forceDirectory(path.toAbsolutePath().getParent());
+		}catch(IOException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Delete the snapshot, if there is one. The deletion is durable when this returns.
+	 */
+	public void delete() {
+		try {
+			if(Files.deleteIfExists(file.toPath()))
+				AppendOnlyLog.forceDirectory(file.toPath().toAbsolutePath().getParent());
+		}catch(IOException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * @return the file this snapshot is stored in
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	private static void readFully(FileChannel in, ByteBuffer buffer, int length) throws IOException {
+		buffer.clear();
+		buffer.limit(length);
+		while(buffer.hasRemaining()) {
+			if(in.read(buffer) < 0)
+				throw new IOException("Unexpected end of snapshot");
+		}
+		buffer.flip();
+	}
+	
+	private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+}
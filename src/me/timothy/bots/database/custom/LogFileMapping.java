@@ -0,0 +1,152 @@
+package me.timothy.bots.database.custom;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import me.timothy.bots.database.SchemaValidator;
+
+/**
+ * Abstract base class for making a mapping that relies on a single append-only log and memory,
+ * great for tables which we still need guarranteed persistence through restarts but thats really
+ * the only thing we need out of the mapping.
+ * 
+ * @author Timothy
+ */
+public abstract class LogFileMapping<A> implements CustomMapping<A>, SchemaValidator {
+	private static final Logger logger = LogManager.getLogger();
+	
+	protected File file;
+	protected AppendOnlyLog log;
+	
+	/**
+	 * Create a new log file mapping attached to the given file
+	 * @param file the file of interest
+	 * @param kind identifies the kind of log, see {@link AppendOnlyLog#AppendOnlyLog(File, int, AppendOnlyLog.SyncPolicy)}
+	 * @param policy when to force writes to disk
+	 */
+	public LogFileMapping(File file, int kind, AppendOnlyLog.SyncPolicy policy) {
+		this.file = file;
+		this.log = new AppendOnlyLog(file, kind, policy);
+	}
+	
+	/**
+	 * @return the log that changes to this mapping are written to
+	 */
+	public AppendOnlyLog getLog() {
+		return log;
+	}
+	
+	/**
+	 * Recover the database. This will create or open the log and replay each record
+	 * through recoverRecord. Files from before the log format are read with recoverLegacy
+	 * and then converted.
+	 */
+	public void recover() {
+		clearMemory();
+		
+		if(log.recover(this::recoverRecord))
+			return;
+		
+		logger.info("Converting " + file.getName() + " to the log format");
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			recoverLegacy(dis);
+		}catch(EOFException eof) {
+		}catch(IOException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+		compact();
+	}
+	
+	/**
+	 * Close the log if it is open.
+	 */
+	public void close() {
+		log.close();
+		clearMemory();
+	}
+	
+	@Override
+	public void sync() {
+		log.sync();
+	}
+	
+	/**
+	 * Wraps the save inside a try/catch and calls saveImpl
+	 */
+	public void save(A a) throws IllegalArgumentException {
+		try {
+			saveImpl(a);
+		}catch(IOException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@Override
+	public void purgeSchema() {
+		log.delete();
+		recover();
+	}
+	
+	@Override
+	public void validateSchema() {}
+	
+	/**
+	 * Replace the log with the records from snapshot, which only describe what is
+	 * in memory right now.
+	 */
+	protected void compact() {
+		log.rewrite(snapshot());
+	}
+	
+	/**
+	 * Clear any information that is stored in memory
+	 */
+	protected abstract void clearMemory();
+	
+	/**
+	 * Save the given record without having to handle errors
+	 * 
+	 * @param a the record to save
+	 * @throws IllegalArgumentException if the record is not valid
+	 * @throws IOException if one occurs
+	 */
+	protected abstract void saveImpl(A a) throws IllegalArgumentException, IOException;
+	
+	/**
+	 * Apply the given record from the log to memory. This is called for each record in
+	 * the order they were appended.
+	 * 
+	 * @param record the record
+	 * @throws IOException if one occurs
+	 */
+	protected abstract void recoverRecord(ByteBuffer record) throws IOException;
+	
+	/**
+	 * Recover from a file that was written before this mapping used a log. It may throw 
+	 * an EOFException to indicate that it is complete. Afterwards the file is replaced 
+	 * with a log via compact.
+	 * 
+	 * @param dis the data input stream to load from
+	 * @throws IOException if one occurs
+	 * @throws EOFException when it reaches the end of the file
+	 */
+	protected abstract void recoverLegacy(DataInputStream dis) throws IOException;
+	
+	/**
+	 * Get the records which, when recovered, reproduce exactly what is in memory
+	 * right now.
+	 * 
+	 * @return the records for what is in memory
+	 */
+	protected abstract ByteBuffer[] snapshot();
+}
@@ -5,6 +5,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -74,6 +75,35 @@ public class MysqlBanHistoryMapping extends MysqlObjectWithIDMapping<BanHistory>
 		}
 	}
 	
+	/**
+	 * Saves all the given ban histories. New ones are inserted with multi-row inserts
+	 * and are assigned their generated ids; existing ones are updated one at a time.
+	 * 
+	 * @param as the ban histories to save
+	 */
+	@Override
+	public void saveAll(Collection<BanHistory> as) throws IllegalArgumentException {
+		List<BanHistory> toInsert = new ArrayList<>();
+		for(BanHistory a : as) {
+			if(!a.isValid())
+				throw new IllegalArgumentException(a + " is not valid");
+			
+			if(a.id > 0) {
+				save(a);
+				continue;
+			}
+			toInsert.add(a);
+		}
+		
+		insertAll(new String[] { "mod_person_id", "banned_person_id", "handled_modaction_id", "ban_description", "ban_details" }, toInsert, (statement, counter, a) -> {
+			statement.setInt(counter++, a.modPersonID);
+			statement.setInt(counter++, a.bannedPersonID);
+			statement.setInt(counter++, a.handledModActionID);
+			statement.setString(counter++, (a.banDescription == null || a.banDescription.isEmpty()) ? null : a.banDescription);
+			statement.setString(counter++, a.banDetails);
+			return counter;
+		}, (a, id) -> a.id = id);
+	}
 	
 	@Override
 	public BanHistory fetchByHandledModActionID(int handledModActionID) {
@@ -92,7 +122,7 @@ public class MysqlBanHistoryMapping extends MysqlObjectWithIDMapping<BanHistory>
 		if(handledModActionIDs.size() == 0)
 			return new ArrayList<BanHistory>();
 		
-		return fetchByAction("SELECT * FROM " + table + " WHERE handled_modaction_id IN (" + createPlaceholders(handledModActionIDs.size()) + ")",
+		return fetchByActionUncached("SELECT * FROM " + table + " WHERE handled_modaction_id IN (" + createPlaceholders(handledModActionIDs.size()) + ")",
 				new PreparedStatementSetVars() {
 
 					@Override
@@ -106,6 +136,31 @@ public class MysqlBanHistoryMapping extends MysqlObjectWithIDMapping<BanHistory>
 				}, fetchListFromSetFunction());
 	}
 
+	@Override
+	public List<Integer> fetchIDsOccurredAt(Collection<Integer> ids, Timestamp occurredAt) {
+		if(ids == null)
+			throw new NullPointerException("ids cannot be null");
+		
+		if(ids.size() == 0)
+			return new ArrayList<Integer>();
+		
+		return fetchByActionUncached("SELECT " + table + ".id FROM " + table + " "
+				+ "INNER JOIN handled_modactions ON handled_modactions.id = " + table + ".handled_modaction_id "
+				+ "WHERE handled_modactions.occurred_at = ? AND " + table + ".id IN (" + createPlaceholders(ids.size()) + ")",
+				new PreparedStatementSetVars() {
+
+					@Override
+					public void setVars(PreparedStatement statement) throws SQLException {
+						int counter = 1;
+						statement.setTimestamp(counter++, occurredAt);
+						for(int id : ids) {
+							statement.setInt(counter++, id);
+						}
+					}
+		
+				}, fetchFirstColumnIntsFromSetFunction());
+	}
+
 	@Override
 	public BanHistory fetchBanHistoryByPersonAndSubreddit(int bannedPersonId, int monitoredSubredditId) {
 		return fetchByAction("SELECT bh.id, bh.mod_person_id, bh.banned_person_id, bh.handled_modaction_id, "
@@ -166,38 +221,47 @@ public class MysqlBanHistoryMapping extends MysqlObjectWithIDMapping<BanHistory>
 
 	@Override
 	public BanHistory fetchByActionAndSubreddit(int uslActionId, int subredditId) {
+		List<BanHistory> found = new ArrayList<>(1);
 		BanHistory res = null;
-		try(PreparedStatement statement = connection.prepareStatement(
-				"SELECT ban_histories.id, ban_histories.mod_person_id, ban_histories.banned_person_id, ban_histories.handled_modaction_id, "
-				+ "ban_histories.ban_description, ban_histories.ban_details FROM "
-				+ "usl_action_ban_history "
-				+ "INNER JOIN ban_histories ON usl_action_ban_history.usl_action_id = ? AND usl_action_ban_history.ban_history_id = ban_histories.id "
-				+ "INNER JOIN handled_modactions ON ban_histories.handled_modaction_id = handled_modactions.id AND "
-				+ "handled_modactions.monitored_subreddit_id = ? ORDER BY ban_history_id ASC")) {
-			statement.setInt(1, uslActionId);
-			statement.setInt(2, subredditId);
-			try (ResultSet set = statement.executeQuery()) {
-				if(!set.next())
-					return null;
-				
-				res = new BanHistory(set.getInt(1), set.getInt(2), set.getInt(3), set.getInt(4), set.getString(5), set.getString(6));
-				if(res.banDescription == null)
-					res.banDescription = "";
-				
-				if(set.next()) {
-					String query = "SELECT ban_histories.id, ban_histories.mod_person_id, ban_histories.banned_person_id, ban_histories.handled_modaction_id, "
-							+ "ban_histories.ban_description, ban_histories.ban_details FROM "
-							+ "usl_action_ban_history "
-							+ "INNER JOIN ban_histories ON usl_action_ban_history.usl_action_id = " + uslActionId + " AND usl_action_ban_history.ban_history_id = ban_histories.id "
-							+ "INNER JOIN handled_modactions ON ban_histories.handled_modaction_id = handled_modactions.id AND "
-							+ "handled_modactions.monitored_subreddit_id = " + subredditId + " ORDER BY ban_history_id ASC";
-					logger.warn("shouldnt have more! Full query: %s", query);
-					
-					// I don't know why this happens but it's always the younger result which is wrong
-				} else {
-					return res;
-				}
-			}
+		try {
+			boolean hasMore = withCached(
+					"SELECT ban_histories.id, ban_histories.mod_person_id, ban_histories.banned_person_id, ban_histories.handled_modaction_id, "
+					+ "ban_histories.ban_description, ban_histories.ban_details FROM "
+					+ "usl_action_ban_history "
+					+ "INNER JOIN ban_histories ON usl_action_ban_history.usl_action_id = ? AND usl_action_ban_history.ban_history_id = ban_histories.id "
+					+ "INNER JOIN handled_modactions ON ban_histories.handled_modaction_id = handled_modactions.id AND "
+					+ "handled_modactions.monitored_subreddit_id = ? ORDER BY ban_history_id ASC",
+					(statement) -> {
+						statement.setInt(1, uslActionId);
+						statement.setInt(2, subredditId);
+						try (ResultSet set = statement.executeQuery()) {
+							if(!set.next())
+								return false;
+							
+							found.add(new BanHistory(set.getInt(1), set.getInt(2), set.getInt(3), set.getInt(4), set.getString(5), set.getString(6)));
+							return set.next();
+						}
+					});
+			
+			if(found.isEmpty())
+				return null;
+			
+			res = found.get(0);
+			if(res.banDescription == null)
+				res.banDescription = "";
+			
+			if(!hasMore)
+				return res;
+			
+			String query = "SELECT ban_histories.id, ban_histories.mod_person_id, ban_histories.banned_person_id, ban_histories.handled_modaction_id, "
+					+ "ban_histories.ban_description, ban_histories.ban_details FROM "
+					+ "usl_action_ban_history "
+					+ "INNER JOIN ban_histories ON usl_action_ban_history.usl_action_id = " + uslActionId + " AND usl_action_ban_history.ban_history_id = ban_histories.id "
+					+ "INNER JOIN handled_modactions ON ban_histories.handled_modaction_id = handled_modactions.id AND "
+					+ "handled_modactions.monitored_subreddit_id = " + subredditId + " ORDER BY ban_history_id ASC";
+			logger.warn("shouldnt have more! Full query: %s", query);
+			
+			// I don't know why this happens but it's always the younger result which is wrong
 		}catch(SQLException e) {
 			logger.throwing(e);
 			throw new RuntimeException(e);
@@ -205,15 +269,10 @@ public class MysqlBanHistoryMapping extends MysqlObjectWithIDMapping<BanHistory>
 
 		
 		// If we got here we need to delete that row and try again
-		try(PreparedStatement statement = connection.prepareStatement(
-				"DELETE FROM usl_action_ban_history WHERE usl_action_id = ? AND ban_history_id = ?")) {
-			statement.setInt(1, uslActionId);
-			statement.setInt(2, res.id);
-			statement.execute();
-		}catch(SQLException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
+		runStatement("DELETE FROM usl_action_ban_history WHERE usl_action_id = ? AND ban_history_id = ?",
+				new PreparedStatementSetVarsUnsafe(
+						new MysqlTypeValueTuple(Types.INTEGER, uslActionId),
+						new MysqlTypeValueTuple(Types.INTEGER, res.id)));
 		
 		return fetchByActionAndSubreddit(uslActionId, subredditId);
 	}
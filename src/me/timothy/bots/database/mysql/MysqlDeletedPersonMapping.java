@@ -46,26 +46,15 @@ public class MysqlDeletedPersonMapping extends MysqlObjectMapping<DeletedPerson>
 
 	@Override
 	public void addIfNotExists(int personID) {
-		try(PreparedStatement statement = connection.prepareStatement("INSERT INTO " + table + " (person_id) VALUES (?) ON DUPLICATE KEY UPDATE person_id=person_id")) {
-			statement.setInt(1, personID);
-			statement.execute();
-		}catch(SQLException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
+		runStatement("INSERT INTO " + table + " (person_id) VALUES (?) ON DUPLICATE KEY UPDATE person_id=person_id",
+				new PreparedStatementSetVarsUnsafe(new MysqlTypeValueTuple(Types.INTEGER, personID)));
 	}
 
 	@Override
 	public boolean contains(int personID) {
-		try(PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM " + table + " WHERE person_id=? LIMIT 1")) {
-			statement.setInt(1, personID);
-			try(ResultSet set = statement.executeQuery()) {
-				return set.next();
-			}
-		}catch(SQLException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
+		return fetchByAction("SELECT 1 FROM " + table + " WHERE person_id=? LIMIT 1",
+				new PreparedStatementSetVarsUnsafe(new MysqlTypeValueTuple(Types.INTEGER, personID)),
+				fetchAnyRowsFromSetFunction());
 	}
 
 	@Override
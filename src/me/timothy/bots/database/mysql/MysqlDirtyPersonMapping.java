@@ -23,14 +23,19 @@ public class MysqlDirtyPersonMapping extends MysqlObjectMapping<DirtyPerson> imp
 
 	public MysqlDirtyPersonMapping(USLDatabase database, Connection connection) {
 		super(database, connection, "dirty_persons", 
-				new MysqlColumn(Types.INTEGER, "person_id"));
-		insertQuery = "INSERT INTO " + table + " (person_id) VALUES (?)";
+				new MysqlColumn(Types.INTEGER, "person_id"),
+				new MysqlColumn(Types.BIGINT, "priority"),
+				new MysqlColumn(Types.BIT, "urgent"));
+		insertQuery = "INSERT INTO " + table + " (person_id, priority, urgent) VALUES (?, ?, ?) "
+				+ "ON DUPLICATE KEY UPDATE priority=GREATEST(priority, VALUES(priority)), urgent=(urgent OR VALUES(urgent))";
 	}
 
 	@Override
 	public void save(DirtyPerson a) throws IllegalArgumentException {
 		try(PreparedStatement statement = connection.prepareStatement(insertQuery)) {
 			statement.setInt(1, a.personID);
+			statement.setLong(2, a.priority);
+			statement.setBoolean(3, a.urgent);
 			statement.execute();
 		} catch (SQLException e) {
 			logger.throwing(e);
@@ -40,7 +45,7 @@ public class MysqlDirtyPersonMapping extends MysqlObjectMapping<DirtyPerson> imp
 
 	@Override
 	public List<DirtyPerson> fetch(int limit) {
-		try(PreparedStatement statement = connection.prepareStatement("SELECT person_id FROM " + table + " LIMIT ?")) {
+		try(PreparedStatement statement = connection.prepareStatement("SELECT person_id, priority, urgent FROM " + table + " ORDER BY urgent DESC, priority DESC, person_id ASC LIMIT ?")) {
 			statement.setInt(1, limit);
 			try(ResultSet set = statement.executeQuery()) {
 				if(!set.next()) 
@@ -60,26 +65,15 @@ public class MysqlDirtyPersonMapping extends MysqlObjectMapping<DirtyPerson> imp
 
 	@Override
 	public boolean contains(int personId) {
-		try(PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM " + table + " WHERE person_id=? LIMIT 1")) {
-			statement.setInt(1, personId);
-			try(ResultSet set = statement.executeQuery()) {
-				return set.next();
-			}
-		} catch (SQLException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
+		return fetchByAction("SELECT 1 FROM " + table + " WHERE person_id=? LIMIT 1",
+				new PreparedStatementSetVarsUnsafe(new MysqlTypeValueTuple(Types.INTEGER, personId)),
+				fetchAnyRowsFromSetFunction());
 	}
 
 	@Override
 	public void delete(int personId) {
-		try(PreparedStatement statement = connection.prepareStatement("DELETE FROM " + table + " WHERE person_id=? LIMIT 1")) {
-			statement.setInt(1, personId);
-			statement.execute();
-		} catch (SQLException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
+		runStatement("DELETE FROM " + table + " WHERE person_id=? LIMIT 1",
+				new PreparedStatementSetVarsUnsafe(new MysqlTypeValueTuple(Types.INTEGER, personId)));
 	}
 
 	@Override
@@ -98,7 +92,7 @@ public class MysqlDirtyPersonMapping extends MysqlObjectMapping<DirtyPerson> imp
 
 	@Override
 	protected DirtyPerson fetchFromSet(ResultSet set) throws SQLException {
-		return new DirtyPerson(set.getInt(1));
+		return new DirtyPerson(set.getInt(1), set.getLong(2), set.getBoolean(3));
 	}
 
 	@Override
@@ -106,7 +100,10 @@ public class MysqlDirtyPersonMapping extends MysqlObjectMapping<DirtyPerson> imp
 		try(Statement statement = connection.createStatement()) { 
 			statement.execute("CREATE TABLE " + table + " ("
 					+ "person_id INT NOT NULL, "
-					+ "PRIMARY KEY(person_id)"
+					+ "priority BIGINT NOT NULL DEFAULT 0, "
+					+ "urgent TINYINT(1) NOT NULL DEFAULT 0, "
+					+ "PRIMARY KEY(person_id), "
+					+ "INDEX ind_dirtper_order (urgent, priority)"
 					+ ") ENGINE = INNODB");
 		}
 	}
@@ -62,21 +62,9 @@ public class MysqlFullnameMapping extends MysqlObjectMapping<Fullname> implement
 
 	@Override
 	public boolean contains(String fullname) {
-		try {
-			PreparedStatement statement = connection.prepareStatement("SELECT * FROM fullnames WHERE fullname=?");
-			statement.setString(1, fullname);
-			
-			ResultSet results = statement.executeQuery();
-			boolean contains = results.next();
-			results.close();
-			
-			statement.close();
-			
-			return contains;
-		}catch(SQLException sqlE) {
-			logger.throwing(sqlE);
-			throw new RuntimeException(sqlE);
-		}
+		return fetchByAction("SELECT 1 FROM fullnames WHERE fullname=? LIMIT 1",
+				new PreparedStatementSetVarsUnsafe(new MysqlTypeValueTuple(Types.VARCHAR, fullname)),
+				fetchAnyRowsFromSetFunction());
 	}
 
 	/**
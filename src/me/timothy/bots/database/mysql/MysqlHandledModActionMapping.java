@@ -8,7 +8,10 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -29,6 +32,10 @@ public class MysqlHandledModActionMapping extends MysqlObjectWithIDMapping<Handl
 				new MysqlColumn(Types.INTEGER, "monitored_subreddit_id"),
 				new MysqlColumn(Types.VARCHAR, "modaction_id"),
 				new MysqlColumn(Types.TIMESTAMP, "occurred_at"));
+		
+		indexes = new MysqlIndex[] {
+			new MysqlIndex("ind_handmodactions_occurred_id", "occurred_at", "id")
+		};
 	}
 
 	@Override
@@ -78,6 +85,37 @@ public class MysqlHandledModActionMapping extends MysqlObjectWithIDMapping<Handl
 		}
 	}
 
+	/**
+	 * Saves all the given handled mod actions. New ones are inserted with multi-row
+	 * inserts and are assigned their generated ids; existing ones are updated one at
+	 * a time.
+	 * 
+	 * @param as the handled mod actions to save
+	 */
+	@Override
+	public void saveAll(Collection<HandledModAction> as) throws IllegalArgumentException {
+		List<HandledModAction> toInsert = new ArrayList<>();
+		for(HandledModAction a : as) {
+			if(!a.isValid())
+				throw new IllegalArgumentException(a + " is not valid");
+			
+			if(a.id > 0) {
+				save(a);
+				continue;
+			}
+			
+			if(a.occurredAt != null) { a.occurredAt.setNanos(0); }
+			toInsert.add(a);
+		}
+		
+		insertAll(new String[] { "monitored_subreddit_id", "modaction_id", "occurred_at" }, toInsert, (statement, counter, a) -> {
+			statement.setInt(counter++, a.monitoredSubredditID);
+			statement.setString(counter++, a.modActionID);
+			statement.setTimestamp(counter++, a.occurredAt);
+			return counter;
+		}, (a, id) -> a.id = id);
+	}
+
 	@Override
 	protected HandledModAction fetchFromSet(ResultSet set) throws SQLException {
 		return new HandledModAction(set.getInt("id"), set.getInt("monitored_subreddit_id"),
@@ -95,6 +133,7 @@ public class MysqlHandledModActionMapping extends MysqlObjectWithIDMapping<Handl
 				+ "PRIMARY KEY(id), "
 				+ "UNIQUE KEY(modaction_id), "
 				+ "INDEX ind_handmodactions_monsub_id (monitored_subreddit_id), "
+				+ "INDEX ind_handmodactions_occurred_id (occurred_at, id), "
 				+ "FOREIGN KEY(monitored_subreddit_id) REFERENCES monitored_subreddits(id)"
 				+ ")");
 		statement.close();
@@ -107,6 +146,28 @@ public class MysqlHandledModActionMapping extends MysqlObjectWithIDMapping<Handl
 				fetchFromSetFunction());
 	}
 
+	@Override
+	public List<HandledModAction> fetchByModActionIDs(Collection<String> modActionIDs) {
+		if(modActionIDs == null)
+			throw new NullPointerException("modActionIDs cannot be null");
+		
+		if(modActionIDs.size() == 0)
+			return new ArrayList<>();
+		
+		return fetchByActionUncached("SELECT * FROM " + table + " WHERE modaction_id IN (" + createPlaceholders(modActionIDs.size()) + ")",
+				new PreparedStatementSetVars() {
+
+					@Override
+					public void setVars(PreparedStatement statement) throws SQLException {
+						int counter = 1;
+						for(String id : modActionIDs) {
+							statement.setString(counter++, id);
+						}
+					}
+			
+				}, fetchListFromSetFunction());
+	}
+
 	@Override
 	public List<HandledModAction> fetchByTimestamp(Timestamp timestamp) {
 		return fetchByAction("SELECT * FROM " + table + " WHERE occurred_at=?", 
@@ -149,51 +210,82 @@ public class MysqlHandledModActionMapping extends MysqlObjectWithIDMapping<Handl
 
 	@Override
 	public List<HandledModActionJoinHistory> fetchLatestJoined(Timestamp after, Timestamp before, int num) {
-		Timestamp fixedAfter = new Timestamp(after.getTime());
+		return fetchLatestJoinedAfter(after, 0, before, num);
+	}
+	
+	@Override
+	public List<HandledModActionJoinHistory> fetchLatestJoinedAfter(Timestamp afterTime, int afterID, Timestamp before, int num) {
+		Timestamp fixedAfter = new Timestamp(afterTime.getTime());
 		fixedAfter.setNanos(0);
 		
 		Timestamp fixedBefore = new Timestamp(before.getTime());
 		fixedBefore.setNanos(0);
 		
-		try(PreparedStatement statement = connection.prepareStatement("SELECT handled_modactions.id, handled_modactions.monitored_subreddit_id, handled_modactions.modaction_id, "
+		// This walks ind_handmodactions_occurred_id in order and stops after num rows; it
+		// must not sort or materialize handled_modactions.
+		return fetchByAction("SELECT handled_modactions.id, handled_modactions.monitored_subreddit_id, handled_modactions.modaction_id, "
 				+ "handled_modactions.occurred_at, ban_histories.id, ban_histories.mod_person_id, ban_histories.banned_person_id, "
 				+ "ban_histories.ban_description, ban_histories.ban_details, unban_histories.id, unban_histories.mod_person_id, "
 				+ "unban_histories.unbanned_person_id "
-				+ "FROM (SELECT * FROM handled_modactions ORDER BY handled_modactions.occurred_at ASC) handled_modactions "
+				+ "FROM handled_modactions "
 				+ "LEFT JOIN ban_histories ON handled_modactions.id = ban_histories.handled_modaction_id "
 				+ "LEFT JOIN unban_histories ON handled_modactions.id = unban_histories.handled_modaction_id "
-				+ "WHERE handled_modactions.occurred_at >= ? AND handled_modactions.occurred_at < ? AND (ban_histories.id IS NOT NULL OR unban_histories.id IS NOT NULL) "
-				+ "ORDER BY handled_modactions.occurred_at ASC LIMIT ?")) {
-			statement.setTimestamp(1, fixedAfter);
-			statement.setTimestamp(2, fixedBefore);
-			statement.setInt(3, num);
-			
-			try(ResultSet set = statement.executeQuery()) {
-				List<HandledModActionJoinHistory> result = new ArrayList<>();
-				while(set.next()) {
-					HandledModAction hma = new HandledModAction(set.getInt(1), set.getInt(2), set.getString(3), set.getTimestamp(4));
-					set.getInt(5);
-					if(set.wasNull()) {
-						// Unban
-						result.add(new HandledModActionJoinHistory(hma, null, new UnbanHistory(
-								set.getInt(10), set.getInt(11), set.getInt(12), hma.id)));
-					}else {
-						// Ban
-						BanHistory bh = new BanHistory(
-								set.getInt(5), set.getInt(6), set.getInt(7), hma.id, set.getString(8), set.getString(9));
-						
-						if(bh.banDescription == null)
-							bh.banDescription = "";
-						
-						result.add(new HandledModActionJoinHistory(hma, bh, null));
+				+ "WHERE handled_modactions.occurred_at >= ? AND handled_modactions.occurred_at < ? "
+				+ "AND (handled_modactions.occurred_at > ? OR handled_modactions.id > ?) "
+				+ "AND (ban_histories.id IS NOT NULL OR unban_histories.id IS NOT NULL) "
+				+ "ORDER BY handled_modactions.occurred_at ASC, handled_modactions.id ASC LIMIT ?",
+				new PreparedStatementSetVarsUnsafe(
+						new MysqlTypeValueTuple(Types.TIMESTAMP, fixedAfter),
+						new MysqlTypeValueTuple(Types.TIMESTAMP, fixedBefore),
+						new MysqlTypeValueTuple(Types.TIMESTAMP, fixedAfter),
+						new MysqlTypeValueTuple(Types.INTEGER, afterID),
+						new MysqlTypeValueTuple(Types.INTEGER, num)),
+				new PreparedStatementFetchResult<List<HandledModActionJoinHistory>>() {
+
+					@Override
+					public List<HandledModActionJoinHistory> fetchResult(ResultSet set) throws SQLException {
+						List<HandledModActionJoinHistory> result = new ArrayList<>();
+						while(set.next()) {
+							HandledModAction hma = new HandledModAction(set.getInt(1), set.getInt(2), set.getString(3), set.getTimestamp(4));
+							set.getInt(5);
+							if(set.wasNull()) {
+								// Unban
+								result.add(new HandledModActionJoinHistory(hma, null, new UnbanHistory(
+										set.getInt(10), set.getInt(11), set.getInt(12), hma.id)));
+							}else {
+								// Ban
+								BanHistory bh = new BanHistory(
+										set.getInt(5), set.getInt(6), set.getInt(7), hma.id, set.getString(8), set.getString(9));
+								
+								if(bh.banDescription == null)
+									bh.banDescription = "";
+								
+								result.add(new HandledModActionJoinHistory(hma, bh, null));
+							}
+						}
+						return result;
 					}
-				}
-				return result;
-			}
-		}catch(SQLException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
+					
+				});
+	}
+
+	@Override
+	public Map<Integer, Integer> countBySubredditSince(Timestamp after) {
+		return fetchByAction("SELECT monitored_subreddit_id, COUNT(*) FROM " + table + " WHERE occurred_at>=? GROUP BY monitored_subreddit_id", 
+				new PreparedStatementSetVarsUnsafe(
+						new MysqlTypeValueTuple(Types.TIMESTAMP, after)),
+				new PreparedStatementFetchResult<Map<Integer, Integer>>() {
+
+					@Override
+					public Map<Integer, Integer> fetchResult(ResultSet set) throws SQLException {
+						Map<Integer, Integer> result = new HashMap<>();
+						while(set.next()) {
+							result.put(set.getInt(1), set.getInt(2));
+						}
+						return result;
+					}
+
+				});
 	}
 
 }
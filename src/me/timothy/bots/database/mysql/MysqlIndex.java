@@ -0,0 +1,75 @@
+package me.timothy.bots.database.mysql;
+
+import java.util.Arrays;
+
+/**
+ * Describes a (non-primary) MySQL index. Unlike columns, a missing index
+ * is not a compatibility problem, so these are created when they are missing
+ * rather than causing validation to fail.
+ * 
+ * @author Timothy
+ */
+public class MysqlIndex {
+	/**
+	 * The name of the index
+	 */
+	public String name;
+	
+	/**
+	 * The columns in the index, in order
+	 */
+	public String[] columns;
+	
+	/**
+	 * Creates the MySQL index
+	 * @param name the name of the index
+	 * @param columns the columns in the index, in order
+	 */
+	public MysqlIndex(String name, String... columns) {
+		this.name = name;
+		this.columns = columns;
+	}
+	
+	/**
+	 * Get the statement which would add this index to the given table
+	 * 
+	 * @param table the table
+	 * @return the sql to create this index
+	 */
+	public String getCreateStatement(String table) {
+		return "CREATE INDEX " + name + " ON " + table + " (" + String.join(", ", columns) + ")";
+	}
+	
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + Arrays.hashCode(columns);
+		result = prime * result + ((name == null) ? 0 : name.hashCode());
+		return result;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		MysqlIndex other = (MysqlIndex) obj;
+		if (!Arrays.equals(columns, other.columns))
+			return false;
+		if (name == null) {
+			if (other.name != null)
+				return false;
+		} else if (!name.equals(other.name))
+			return false;
+		return true;
+	}
+	
+	@Override
+	public String toString() {
+		return "MysqlIndex [name=" + name + ", columns=" + Arrays.toString(columns) + "]";
+	}
+}
@@ -9,6 +9,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
@@ -84,12 +87,71 @@ public class MysqlManyToManyMapping<A> extends MysqlObjectMapping<A> {
 		}
 	}
 	
+	/**
+	 * Saves all of the given rows using multi-row inserts, so this costs one round trip
+	 * per {@link #MAX_ROWS_PER_INSERT} rows rather than one per row.
+	 * 
+	 * @param as the rows to save
+	 */
+	@Override
+	public void saveAll(Collection<A> as) throws IllegalArgumentException {
+		if(as.isEmpty())
+			return;
+		
+		Iterator<A> iter = as.iterator();
+		int remaining = as.size();
+		while(remaining > 0) {
+			int rows = Math.min(remaining, MAX_ROWS_PER_INSERT);
+			
+			StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (").append(column1)
+					.append(", ").append(column2).append(") VALUES ");
+			for(int i = 0; i < rows; i++) {
+				if(i != 0)
+					sql.append(", ");
+				sql.append("(?, ?)");
+			}
+			
+			try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+				int counter = 1;
+				for(int i = 0; i < rows; i++) {
+					A a = iter.next();
+					statement.setInt(counter++, column1Field.getInt(a));
+					statement.setInt(counter++, column2Field.getInt(a));
+				}
+				statement.execute();
+			}catch(SQLException | IllegalAccessException e) {
+				logger.throwing(e);
+				throw new RuntimeException(e);
+			}
+			
+			remaining -= rows;
+		}
+	}
+	
 	public List<A> fetchByCol1(int col1) {
 		return fetchByAction(fetchByColumn1Query, 
 				new PreparedStatementSetVarsUnsafe(new MysqlTypeValueTuple(Types.INTEGER, col1)),
 				fetchListFromSetFunction());
 	}
 	
+	public List<A> fetchByCol1s(Collection<Integer> col1s) {
+		if(col1s.isEmpty())
+			return new ArrayList<A>();
+		
+		return fetchByActionUncached("SELECT " + column1 + ", " + column2 + " FROM " + table + " WHERE " + column1 + " IN (" + createPlaceholders(col1s.size()) + ")",
+				new PreparedStatementSetVars() {
+
+					@Override
+					public void setVars(PreparedStatement statement) throws SQLException {
+						int counter = 1;
+						for(int col1 : col1s) {
+							statement.setInt(counter++, col1);
+						}
+					}
+					
+				}, fetchListFromSetFunction());
+	}
+	
 	public List<A> fetchByCol2(int col2) {
 		return fetchByAction(fetchByColumn2Query,
 				new PreparedStatementSetVarsUnsafe(new MysqlTypeValueTuple(Types.INTEGER, col2)),
@@ -1,6 +1,7 @@
 package me.timothy.bots.database.mysql;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -26,18 +27,49 @@ public class MysqlMonitoredSubredditMapping extends MysqlObjectWithIDMapping<Mon
 				new MysqlColumn(Types.VARCHAR, "subreddit"),
 				new MysqlColumn(Types.BIT, "silent"),
 				new MysqlColumn(Types.BIT, "read_only"),
-				new MysqlColumn(Types.BIT, "write_only")
+				new MysqlColumn(Types.BIT, "write_only"),
+				new MysqlColumn(Types.BIT, "modmail_digest")
 		});
 	}
+	
+	/**
+	 * The modmail digest setting was added after this table was. If the table we have
+	 * doesn't have it yet it is added, off for every subreddit.
+	 */
+	@Override
+	public void validateSchema() {
+		try {
+			DatabaseMetaData metadata = connection.getMetaData();
+			boolean tableExists, hasDigestColumn;
+			try(ResultSet results = metadata.getTables(null, null, table, null)) {
+				tableExists = results.next();
+			}
+			try(ResultSet results = metadata.getColumns(null, null, table, "modmail_digest")) {
+				hasDigestColumn = results.next();
+			}
+			
+			if(tableExists && !hasDigestColumn) {
+				logger.info("Adding the modmail digest setting to " + table);
+				try(Statement statement = connection.createStatement()) {
+					statement.execute("ALTER TABLE " + table + " ADD COLUMN modmail_digest TINYINT(1) NOT NULL DEFAULT 0");
+				}
+			}
+		}catch(SQLException ex) {
+			logger.throwing(ex);
+			throw new RuntimeException(ex);
+		}
+		
+		super.validateSchema();
+	}
 
 	@Override
 	public void save(MonitoredSubreddit monitoredSubreddit) throws IllegalArgumentException {
 		try {
 			PreparedStatement statement;
 			if(monitoredSubreddit.id > 0) {
-				statement = connection.prepareStatement("UPDATE " + table + " SET subreddit=?, silent=?, read_only=?, write_only=? WHERE id=?");
+				statement = connection.prepareStatement("UPDATE " + table + " SET subreddit=?, silent=?, read_only=?, write_only=?, modmail_digest=? WHERE id=?");
 			}else {
-				statement = connection.prepareStatement("INSERT INTO " + table + " (subreddit, silent, read_only, write_only) VALUES (?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+				statement = connection.prepareStatement("INSERT INTO " + table + " (subreddit, silent, read_only, write_only, modmail_digest) VALUES (?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
 			}
 			
 			int counter = 1;
@@ -45,6 +77,7 @@ public class MysqlMonitoredSubredditMapping extends MysqlObjectWithIDMapping<Mon
 			statement.setBoolean(counter++, monitoredSubreddit.silent);
 			statement.setBoolean(counter++, monitoredSubreddit.readOnly);
 			statement.setBoolean(counter++, monitoredSubreddit.writeOnly);
+			statement.setBoolean(counter++, monitoredSubreddit.modmailDigest);
 			
 			if(monitoredSubreddit.id > 0) {
 				statement.setInt(counter++, monitoredSubreddit.id);
@@ -137,7 +170,7 @@ public class MysqlMonitoredSubredditMapping extends MysqlObjectWithIDMapping<Mon
 	@Override
 	protected MonitoredSubreddit fetchFromSet(ResultSet set) throws SQLException {
 		return new MonitoredSubreddit(set.getInt("id"), set.getString("subreddit"), set.getBoolean("silent"),
-				set.getBoolean("read_only"), set.getBoolean("write_only"));
+				set.getBoolean("read_only"), set.getBoolean("write_only"), set.getBoolean("modmail_digest"));
 	}
 
 	@Override
@@ -149,6 +182,7 @@ public class MysqlMonitoredSubredditMapping extends MysqlObjectWithIDMapping<Mon
 				+ "silent TINYINT(1) NOT NULL, "
 				+ "read_only TINYINT(1) NOT NULL, "
 				+ "write_only TINYINT(1) NOT NULL, "
+				+ "modmail_digest TINYINT(1) NOT NULL DEFAULT 0, "
 				+ "PRIMARY KEY(id),"
 				+ "UNIQUE KEY(subreddit))");
 		statement.close();
@@ -11,8 +11,12 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.ObjIntConsumer;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
@@ -99,6 +103,20 @@ public abstract class MysqlObjectMapping<A> implements ObjectMapping<A>, SchemaV
 			}
 		}
 	}
+	/** Effectively acting as a function definition */
+	protected interface PreparedStatementSetRowVars<B> {
+		/**
+		 * Call statement.setInt like functions for one row of a multi-row insert.
+		 * 
+		 * @param statement the statement
+		 * @param counter the index of the first parameter for this row
+		 * @param row the row
+		 * @return the index of the first parameter for the next row
+		 * @throws SQLException if one occurs
+		 */
+		public int setVars(PreparedStatement statement, int counter, B row) throws SQLException;
+	}
+	
 	/** Effectively acting as a function definition */
 	protected interface PreparedStatementFetchResult<B> {
 		/**
@@ -113,8 +131,31 @@ public abstract class MysqlObjectMapping<A> implements ObjectMapping<A>, SchemaV
 		public B fetchResult(ResultSet set) throws SQLException;
 	}
 	
+	/** Effectively acting as a function definition */
+	protected interface PreparedStatementAction<B> {
+		/**
+		 * Use the statement, which is held for this caller and has had its parameters cleared.
+		 * Should not close the statement.
+		 * 
+		 * @param statement the statement
+		 * @return the result
+		 * @throws SQLException if one occurs
+		 */
+		public B run(PreparedStatement statement) throws SQLException;
+	}
+	
 	private static final Logger logger = LogManager.getLogger();
 	
+	/**
+	 * The maximum number of prepared statements each mapping keeps open. Most mappings
+	 * only have a handful of distinct queries; queries with a variable number of placeholders
+	 * go through {@link #fetchByActionUncached} instead so they don't push these out.
+	 */
+	private static final int MAX_CACHED_STATEMENTS = 64;
+	
+	/** The maximum number of rows a single multi-row insert contains */
+	protected static final int MAX_ROWS_PER_INSERT = 500;
+	
 	/**
 	 * Using other mappings is discouraged since it couples mappings, however
 	 * the practicality occasionally offsets the principle here.
@@ -131,6 +172,35 @@ public abstract class MysqlObjectMapping<A> implements ObjectMapping<A>, SchemaV
 	 */
 	protected MysqlColumn[] columns;
 	
+	/**
+	 * The indexes that are expected to be in the schema, other than the primary key. These
+	 * are created when validating the schema if they are missing, which is how indexes are
+	 * added to tables that already exist.
+	 */
+	protected MysqlIndex[] indexes = new MysqlIndex[0];
+	
+	/**
+	 * The statements that have been prepared by runStatement and fetchByAction, by their
+	 * SQL, in least-recently-used order. These are reused for as long as the connection
+	 * is open and are closed by {@link #closeStatements()}. A statement that is pushed
+	 * out is left in evicted until prepareCached can close it outside the cache lock.
+	 */
+	private final LinkedHashMap<String, PreparedStatement> statementCache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+			if(size() > MAX_CACHED_STATEMENTS) {
+				evicted = eldest.getValue();
+				return true;
+			}
+			return false;
+		}
+	};
+	
+	/** The statement the cache just pushed out; only touched while holding the cache lock */
+	private PreparedStatement evicted;
+	
 	/**
 	 * Sets the {@code connection} to the specified connection and the 
 	 * {@code database} to the specified database, as well as enough information
@@ -161,13 +231,15 @@ public abstract class MysqlObjectMapping<A> implements ObjectMapping<A>, SchemaV
 	 */
 	protected void runStatement(String statement, PreparedStatementSetVars setVars) {
 		try {
-			PreparedStatement pStatement = connection.prepareStatement(statement);
-			if(setVars != null)
-				setVars.setVars(pStatement);
-			
-			pStatement.execute();
-			pStatement.close();
+			withCached(statement, (pStatement) -> {
+				if(setVars != null)
+					setVars.setVars(pStatement);
+				
+				pStatement.execute();
+				return null;
+			});
 		}catch(SQLException e) {
+			discardCached(statement);
 			logger.error("SQLException occurred on MysqlObjectMapping<A>#runStatement. statement=" + statement + ", table=" + table);
 			logger.throwing(e);
 			throw new RuntimeException(e);
@@ -175,9 +247,9 @@ public abstract class MysqlObjectMapping<A> implements ObjectMapping<A>, SchemaV
 	}
 	
 	/**
-	 * Creates a preparedstatement statement, then calls setVars, then executes the prepared statement
-	 * as a query, caches the result of the fetchFunc on that result, then closes the set and prepared
-	 * statement and returns the cached result.
+	 * Fetches (or creates) the prepared statement for the given SQL, then calls setVars, then executes the
+	 * prepared statement as a query, caches the result of the fetchFunc on that result, then closes the set
+	 * and returns the cached result. The prepared statement is kept open to be reused.
 	 * 
 	 * @param statement the statement
 	 * @param setVars the setvars function or null
@@ -186,23 +258,149 @@ public abstract class MysqlObjectMapping<A> implements ObjectMapping<A>, SchemaV
 	 */
 	protected <B> B fetchByAction(String statement, PreparedStatementSetVars setVars, PreparedStatementFetchResult<B> fetchFunc) {
 		try {
-			PreparedStatement pStatement = connection.prepareStatement(statement);
+			return withCached(statement, (pStatement) -> {
+				if(setVars != null)
+					setVars.setVars(pStatement);
+				
+				try(ResultSet set = pStatement.executeQuery()) {
+					return fetchFunc.fetchResult(set);
+				}
+			});
+		}catch(SQLException e) {
+			discardCached(statement);
+			logger.error("SQLException occurred on MysqlObjectMapping<A>#fetchByAction. statement=" + statement + ", table=" + table);
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Works like fetchByAction, except the statement is prepared just for this call and closed
+	 * afterward. This is for SQL that is built for each call, such as an IN with one placeholder
+	 * per value, which would otherwise fill the statement cache with one statement per length.
+	 * 
+	 * @param statement the statement
+	 * @param setVars the setvars function or null
+	 * @param fetchFunc the function that fetches the B from the result set 
+	 * @return result from fetchFunc
+	 */
+	protected <B> B fetchByActionUncached(String statement, PreparedStatementSetVars setVars, PreparedStatementFetchResult<B> fetchFunc) {
+		try(PreparedStatement pStatement = connection.prepareStatement(statement)) {
 			if(setVars != null)
 				setVars.setVars(pStatement);
 			
-			ResultSet set = pStatement.executeQuery();
-			B result = fetchFunc.fetchResult(set);
-			set.close();
-			
-			pStatement.close();
-			return result;
+			try(ResultSet set = pStatement.executeQuery()) {
+				return fetchFunc.fetchResult(set);
+			}
 		}catch(SQLException e) {
-			logger.error("SQLException occurred on MysqlObjectMapping<A>#fetchByAction. statement=" + statement + ", table=" + table);
+			logger.error("SQLException occurred on MysqlObjectMapping<A>#fetchByActionUncached. statement=" + statement + ", table=" + table);
 			logger.throwing(e);
 			throw new RuntimeException(e);
 		}
 	}
 	
+	/**
+	 * Run the given action with the cached prepared statement for the given SQL, preparing it
+	 * if this mapping has not done so yet. The statement may be shared with other threads, so
+	 * it is held for the duration of the action and its parameters are cleared first. If the
+	 * statement was pushed out of the cache and closed before it could be held, it is prepared
+	 * again.
+	 * 
+	 * @param statement the SQL
+	 * @param action what to do with the statement
+	 * @return the result of the action
+	 * @throws SQLException if one occurs
+	 */
+	protected <B> B withCached(String statement, PreparedStatementAction<B> action) throws SQLException {
+		while(true) {
+			PreparedStatement pStatement = prepareCached(statement);
+			synchronized(pStatement) {
+				if(pStatement.isClosed())
+					continue;
+				
+				pStatement.clearParameters();
+				return action.run(pStatement);
+			}
+		}
+	}
+	
+	/**
+	 * Get the prepared statement for the given SQL, preparing it if this mapping
+	 * has not done so yet. The statement may be shared with other threads and may be
+	 * closed once it is pushed out of the cache, so use it through {@link #withCached}.
+	 * 
+	 * @param statement the SQL
+	 * @return the prepared statement for that SQL
+	 * @throws SQLException if one occurs
+	 */
+	private PreparedStatement prepareCached(String statement) throws SQLException {
+		PreparedStatement pStatement;
+		PreparedStatement toClose;
+		synchronized(statementCache) {
+			pStatement = statementCache.get(statement);
+			if(pStatement != null && !pStatement.isClosed()) {
+				return pStatement;
+			}
+			
+			pStatement = connection.prepareStatement(statement);
+			statementCache.put(statement, pStatement);
+			toClose = evicted;
+			evicted = null;
+		}
+		
+		closeWhenIdle(toClose);
+		return pStatement;
+	}
+	
+	/**
+	 * Closes and forgets the prepared statement for the given SQL, if there is one. This
+	 * is used after a statement fails since it may no longer be usable.
+	 * 
+	 * @param statement the SQL
+	 */
+	protected void discardCached(String statement) {
+		PreparedStatement pStatement;
+		synchronized(statementCache) {
+			pStatement = statementCache.remove(statement);
+		}
+		closeWhenIdle(pStatement);
+	}
+	
+	/**
+	 * Closes every prepared statement this mapping is holding on to. This should be
+	 * called before the connection is closed. The mapping is still usable afterward
+	 * and will prepare statements again as needed.
+	 */
+	public void closeStatements() {
+		List<PreparedStatement> toClose;
+		synchronized(statementCache) {
+			toClose = new ArrayList<>(statementCache.values());
+			statementCache.clear();
+		}
+		
+		for(PreparedStatement pStatement : toClose) {
+			closeWhenIdle(pStatement);
+		}
+	}
+	
+	/**
+	 * Close the given statement once no other thread is using it
+	 * 
+	 * @param pStatement the statement or null
+	 */
+	private static void closeWhenIdle(PreparedStatement pStatement) {
+		if(pStatement == null)
+			return;
+		
+		synchronized(pStatement) {
+			try {
+				pStatement.close();
+			}catch(SQLException e) {
+				logger.throwing(e);
+			}
+		}
+	}
+	
 	/**
 	 * Wrapper around fetchListFromSet so it can be passed to fetchByAction
 	 * 
@@ -257,6 +455,22 @@ public abstract class MysqlObjectMapping<A> implements ObjectMapping<A>, SchemaV
 		};
 	}
 	
+	/**
+	 * Returns true if the set has at least one row, false otherwise.
+	 * 
+	 * @return A statement fetch result that just checks if there are any rows
+	 */
+	protected PreparedStatementFetchResult<Boolean> fetchAnyRowsFromSetFunction() {
+		return new PreparedStatementFetchResult<Boolean>() {
+			
+			@Override
+			public Boolean fetchResult(ResultSet set) throws SQLException {
+				return set.next();
+			}
+			
+		};
+	}
+	
 	/**
 	 * Fetch the int in the first column for all the rows in the set. Returns an empty set
 	 * if set.next() returns false on the first call.
@@ -278,6 +492,48 @@ public abstract class MysqlObjectMapping<A> implements ObjectMapping<A>, SchemaV
 		};
 	}
 	
+	/**
+	 * Inserts all of the given rows using multi-row inserts, so this costs one round trip
+	 * per {@link #MAX_ROWS_PER_INSERT} rows rather than one per row. The generated keys are
+	 * passed to setID in the same order as the rows.
+	 * 
+	 * @param columns the columns being inserted, in the order setVars sets them
+	 * @param rows the rows to insert
+	 * @param setVars sets the parameters for a single row
+	 * @param setID receives each row and its generated id
+	 */
+	protected <B> void insertAll(String[] columns, List<B> rows, PreparedStatementSetRowVars<B> setVars, ObjIntConsumer<B> setID) {
+		String rowPlaceholders = "(" + createPlaceholders(columns.length) + ")";
+		
+		int start = 0;
+		while(start < rows.size()) {
+			List<B> chunk = rows.subList(start, Math.min(rows.size(), start + MAX_ROWS_PER_INSERT));
+			
+			String sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES "
+					+ String.join(", ", Collections.nCopies(chunk.size(), rowPlaceholders));
+			try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+				int counter = 1;
+				for(B row : chunk) {
+					counter = setVars.setVars(statement, counter, row);
+				}
+				statement.execute();
+				
+				try(ResultSet keys = statement.getGeneratedKeys()) {
+					for(B row : chunk) {
+						if(!keys.next())
+							throw new RuntimeException("expected generated keys when inserting into " + table);
+						setID.accept(row, keys.getInt(1));
+					}
+				}
+			}catch(SQLException e) {
+				logger.throwing(e);
+				throw new RuntimeException(e);
+			}
+			
+			start += chunk.size();
+		}
+	}
+	
 	/**
 	 * Creates ?, ?, ? etc., where there are num
 	 * question marks in the resulting string.
@@ -328,6 +584,7 @@ public abstract class MysqlObjectMapping<A> implements ObjectMapping<A>, SchemaV
 			}else {
 				createTable();
 			}
+			verifyIndexes(metadata);
 		}catch(SQLException ex) {
 			logger.throwing(ex);
 			throw new RuntimeException(ex);
@@ -336,6 +593,7 @@ public abstract class MysqlObjectMapping<A> implements ObjectMapping<A>, SchemaV
 
 	@Override
 	public void purgeSchema() {
+		closeStatements();
 		try {
 			Statement statement = connection.createStatement();
 			statement.execute("DROP TABLE IF EXISTS " + table);
@@ -397,6 +655,57 @@ public abstract class MysqlObjectMapping<A> implements ObjectMapping<A>, SchemaV
 		}
 	}
 	
+	/**
+	 * Verifies the indexes on the table using the metadata of the database. Indexes
+	 * which are missing are created. 
+	 * 
+	 * @param metadata the metadata
+	 * @throws SQLException if one occurs
+	 * @throws IllegalStateException if an index exists with the expected name but on the wrong columns
+	 */
+	protected void verifyIndexes(DatabaseMetaData metadata) throws SQLException, IllegalStateException {
+		if(indexes.length == 0)
+			return;
+		
+		Map<String, List<String>> found = new HashMap<>();
+		try(ResultSet set = metadata.getIndexInfo(connection.getCatalog(), null, table, false, false)) {
+			while(set.next()) {
+				String name = set.getString("INDEX_NAME");
+				int position = set.getInt("ORDINAL_POSITION");
+				String column = set.getString("COLUMN_NAME");
+				if(name == null || column == null)
+					continue;
+				
+				List<String> cols = found.get(name);
+				if(cols == null) {
+					cols = new ArrayList<>();
+					found.put(name, cols);
+				}
+				while(cols.size() < position)
+					cols.add(null);
+				cols.set(position - 1, column);
+			}
+		}
+		
+		List<String> errors = new ArrayList<>();
+		for(MysqlIndex index : indexes) {
+			List<String> cols = found.get(index.name);
+			if(cols == null) {
+				logger.info("Adding missing index " + index.name + " to " + table);
+				try(Statement statement = connection.createStatement()) {
+					statement.execute(index.getCreateStatement(table));
+				}
+			}else if(!cols.equals(Arrays.asList(index.columns))) {
+				errors.add(String.format("expected index %s to be on (%s) (got (%s))", index.name,
+						String.join(", ", index.columns), String.join(", ", cols)));
+			}
+		}
+		
+		if(errors.size() > 0) {
+			throw new IllegalStateException(String.join("; ", errors));
+		}
+	}
+	
 	/**
 	 * Verifies a column returned from DatabaseMetaData is expected. If the column is unexpected
 	 * or there are differences between it and the expected value, errors should be appended with
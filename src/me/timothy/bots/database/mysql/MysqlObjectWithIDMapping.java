@@ -3,6 +3,9 @@ package me.timothy.bots.database.mysql;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 import me.timothy.bots.USLDatabase;
 
@@ -29,4 +32,26 @@ public abstract class MysqlObjectWithIDMapping<A> extends MysqlObjectMapping<A>
 			
 		}, fetchFromSetFunction());
 	}
+	
+	/**
+	 * Fetches every A from the current table with one of the given ids in a single query
+	 * @param ids the ids
+	 * @return the rows with those ids, in no particular order
+	 */
+	public List<A> fetchByIDs(Collection<Integer> ids) {
+		if(ids.isEmpty())
+			return new ArrayList<A>();
+		
+		return fetchByActionUncached("SELECT * FROM " + table + " WHERE id IN (" + createPlaceholders(ids.size()) + ")", new PreparedStatementSetVars() {
+
+			@Override
+			public void setVars(PreparedStatement statement) throws SQLException {
+				int counter = 1;
+				for(int id : ids) {
+					statement.setInt(counter++, id);
+				}
+			}
+
+		}, fetchListFromSetFunction());
+	}
 }
@@ -0,0 +1,262 @@
+package me.timothy.bots.database.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import me.timothy.bots.USLDatabase;
+import me.timothy.bots.database.OutboundActionMapping;
+import me.timothy.bots.models.OutboundAction;
+
+public class MysqlOutboundActionMapping extends MysqlObjectWithIDMapping<OutboundAction> implements OutboundActionMapping {
+	private static final Logger logger = LogManager.getLogger();
+
+	public MysqlOutboundActionMapping(USLDatabase database, Connection connection) {
+		super(database, connection, "outbound_actions",
+				new MysqlColumn(Types.INTEGER, "id", true),
+				new MysqlColumn(Types.VARCHAR, "idempotency_key"),
+				new MysqlColumn(Types.VARCHAR, "action_type"),
+				new MysqlColumn(Types.INTEGER, "monitored_subreddit_id"),
+				new MysqlColumn(Types.INTEGER, "person_id"),
+				new MysqlColumn(Types.LONGVARCHAR, "title"),
+				new MysqlColumn(Types.LONGVARCHAR, "body"),
+				new MysqlColumn(Types.VARCHAR, "ban_reason"),
+				new MysqlColumn(Types.VARCHAR, "ban_note"),
+				new MysqlColumn(Types.INTEGER, "attempts"),
+				new MysqlColumn(Types.TIMESTAMP, "created_at"),
+				new MysqlColumn(Types.TIMESTAMP, "next_attempt_at"),
+				new MysqlColumn(Types.TIMESTAMP, "sent_at"),
+				new MysqlColumn(Types.TIMESTAMP, "failed_at"));
+
+		indexes = new MysqlIndex[] {
+			new MysqlIndex("ind_outacts_sent_failed_sub_next", "sent_at", "failed_at", "monitored_subreddit_id", "next_attempt_at")
+		};
+	}
+
+	@Override
+	public void save(OutboundAction a) throws IllegalArgumentException {
+		if(!a.isValid())
+			throw new IllegalArgumentException(a + " is not valid");
+
+		clearNanos(a);
+
+		try {
+			PreparedStatement statement;
+			if(a.id > 0) {
+				statement = connection.prepareStatement("UPDATE " + table + " SET idempotency_key=?, action_type=?, monitored_subreddit_id=?, "
+						+ "person_id=?, title=?, body=?, ban_reason=?, ban_note=?, attempts=?, created_at=?, next_attempt_at=?, "
+						+ "sent_at=?, failed_at=? WHERE id=?");
+			}else {
+				statement = connection.prepareStatement("INSERT INTO " + table + " (idempotency_key, action_type, monitored_subreddit_id, "
+						+ "person_id, title, body, ban_reason, ban_note, attempts, created_at, next_attempt_at, sent_at, failed_at) "
+						+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+			}
+
+			int counter = setVars(statement, a);
+
+			if(a.id > 0) {
+				statement.setInt(counter++, a.id);
+				statement.execute();
+			}else {
+				statement.execute();
+
+				ResultSet keys = statement.getGeneratedKeys();
+				if(!keys.next()) {
+					keys.close();
+					statement.close();
+					throw new RuntimeException("Expected generated keys for table " + table);
+				}
+				a.id = keys.getInt(1);
+				keys.close();
+			}
+			statement.close();
+		}catch(SQLException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public boolean enqueue(OutboundAction a) {
+		if(a.id > 0)
+			throw new IllegalArgumentException(a + " is already in the database");
+		if(!a.isValid())
+			throw new IllegalArgumentException(a + " is not valid");
+
+		clearNanos(a);
+
+		try {
+			PreparedStatement statement = connection.prepareStatement("INSERT INTO " + table + " (idempotency_key, action_type, monitored_subreddit_id, "
+					+ "person_id, title, body, ban_reason, ban_note, attempts, created_at, next_attempt_at, sent_at, failed_at) "
+					+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE idempotency_key=idempotency_key",
+					Statement.RETURN_GENERATED_KEYS);
+			setVars(statement, a);
+
+			int inserted = statement.executeUpdate();
+			if(inserted == 1) {
+				ResultSet keys = statement.getGeneratedKeys();
+				if(!keys.next()) {
+					keys.close();
+					statement.close();
+					throw new RuntimeException("Expected generated keys for table " + table);
+				}
+				a.id = keys.getInt(1);
+				keys.close();
+			}
+			statement.close();
+			return inserted == 1;
+		}catch(SQLException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public OutboundAction fetchByIdempotencyKey(String idempotencyKey) {
+		return fetchByAction("SELECT * FROM " + table + " WHERE idempotency_key=? LIMIT 1",
+				new PreparedStatementSetVarsUnsafe(new MysqlTypeValueTuple(Types.VARCHAR, idempotencyKey)),
+				fetchFromSetFunction());
+	}
+
+	@Override
+	public List<Integer> fetchDueSubredditIDs(Timestamp now) {
+		return fetchByAction("SELECT DISTINCT monitored_subreddit_id FROM " + table + " WHERE sent_at IS NULL AND failed_at IS NULL AND next_attempt_at<=? "
+				+ "AND action_type<>?",
+				new PreparedStatementSetVarsUnsafe(
+						new MysqlTypeValueTuple(Types.TIMESTAMP, now),
+						new MysqlTypeValueTuple(Types.VARCHAR, OutboundAction.MODMAIL_DIGEST)),
+				new PreparedStatementFetchResult<List<Integer>>() {
+					@Override
+					public List<Integer> fetchResult(ResultSet set) throws SQLException {
+						List<Integer> result = new ArrayList<>();
+						while(set.next()) {
+							int id = set.getInt(1);
+							result.add(set.wasNull() ? null : id);
+						}
+						return result;
+					}
+				});
+	}
+
+	@Override
+	public List<OutboundAction> fetchDue(Integer monitoredSubredditID, Timestamp now, int limit) {
+		if(monitoredSubredditID == null) {
+			return fetchByAction("SELECT * FROM " + table + " WHERE sent_at IS NULL AND failed_at IS NULL AND monitored_subreddit_id IS NULL "
+					+ "AND next_attempt_at<=? AND action_type<>? ORDER BY next_attempt_at ASC, id ASC LIMIT ?",
+					new PreparedStatementSetVarsUnsafe(
+							new MysqlTypeValueTuple(Types.TIMESTAMP, now),
+							new MysqlTypeValueTuple(Types.VARCHAR, OutboundAction.MODMAIL_DIGEST),
+							new MysqlTypeValueTuple(Types.INTEGER, limit)),
+					fetchListFromSetFunction());
+		}
+
+		return fetchByAction("SELECT * FROM " + table + " WHERE sent_at IS NULL AND failed_at IS NULL AND monitored_subreddit_id=? "
+				+ "AND next_attempt_at<=? AND action_type<>? ORDER BY next_attempt_at ASC, id ASC LIMIT ?",
+				new PreparedStatementSetVarsUnsafe(
+						new MysqlTypeValueTuple(Types.INTEGER, monitoredSubredditID),
+						new MysqlTypeValueTuple(Types.TIMESTAMP, now),
+						new MysqlTypeValueTuple(Types.VARCHAR, OutboundAction.MODMAIL_DIGEST),
+						new MysqlTypeValueTuple(Types.INTEGER, limit)),
+				fetchListFromSetFunction());
+	}
+	
+	@Override
+	public List<OutboundAction> fetchPendingDigests() {
+		return fetchByAction("SELECT * FROM " + table + " WHERE sent_at IS NULL AND failed_at IS NULL AND action_type=? "
+				+ "ORDER BY monitored_subreddit_id ASC, id ASC",
+				new PreparedStatementSetVarsUnsafe(new MysqlTypeValueTuple(Types.VARCHAR, OutboundAction.MODMAIL_DIGEST)),
+				fetchListFromSetFunction());
+	}
+
+	@Override
+	public int countPending() {
+		return fetchByAction("SELECT COUNT(*) FROM " + table + " WHERE sent_at IS NULL AND failed_at IS NULL",
+				new PreparedStatementSetVarsUnsafe(),
+				fetchFirstIntFromSetFunction());
+	}
+
+	private int setVars(PreparedStatement statement, OutboundAction a) throws SQLException {
+		int counter = 1;
+		statement.setString(counter++, a.idempotencyKey);
+		statement.setString(counter++, a.actionType);
+
+		if(a.monitoredSubredditID != null)
+			statement.setInt(counter++, a.monitoredSubredditID);
+		else
+			statement.setNull(counter++, Types.INTEGER);
+
+		if(a.personID != null)
+			statement.setInt(counter++, a.personID);
+		else
+			statement.setNull(counter++, Types.INTEGER);
+
+		statement.setString(counter++, a.title);
+		statement.setString(counter++, a.body);
+		statement.setString(counter++, a.banReason);
+		statement.setString(counter++, a.banNote);
+		statement.setInt(counter++, a.attempts);
+		statement.setTimestamp(counter++, a.createdAt);
+		statement.setTimestamp(counter++, a.nextAttemptAt);
+		statement.setTimestamp(counter++, a.sentAt);
+		statement.setTimestamp(counter++, a.failedAt);
+		return counter;
+	}
+
+	private void clearNanos(OutboundAction a) {
+		if(a.createdAt != null) { a.createdAt.setNanos(0); }
+		if(a.nextAttemptAt != null) { a.nextAttemptAt.setNanos(0); }
+		if(a.sentAt != null) { a.sentAt.setNanos(0); }
+		if(a.failedAt != null) { a.failedAt.setNanos(0); }
+	}
+
+	@Override
+	protected OutboundAction fetchFromSet(ResultSet set) throws SQLException {
+		Integer monitoredSubredditID = set.getInt("monitored_subreddit_id");
+		if(set.wasNull())
+			monitoredSubredditID = null;
+
+		Integer personID = set.getInt("person_id");
+		if(set.wasNull())
+			personID = null;
+
+		return new OutboundAction(set.getInt("id"), set.getString("idempotency_key"), set.getString("action_type"),
+				monitoredSubredditID, personID, set.getString("title"), set.getString("body"), set.getString("ban_reason"),
+				set.getString("ban_note"), set.getInt("attempts"), set.getTimestamp("created_at"), set.getTimestamp("next_attempt_at"),
+				set.getTimestamp("sent_at"), set.getTimestamp("failed_at"));
+	}
+
+	@Override
+	protected void createTable() throws SQLException {
+		Statement statement = connection.createStatement();
+		statement.execute("CREATE TABLE " + table + " ("
+				+ "id INT NOT NULL AUTO_INCREMENT, "
+				+ "idempotency_key VARCHAR(191) NOT NULL, "
+				+ "action_type VARCHAR(15) NOT NULL, "
+				+ "monitored_subreddit_id INT NULL, "
+				+ "person_id INT NULL, "
+				+ "title TEXT NULL, "
+				+ "body TEXT NULL, "
+				+ "ban_reason VARCHAR(255) NULL, "
+				+ "ban_note VARCHAR(255) NULL, "
+				+ "attempts INT NOT NULL DEFAULT 0, "
+				+ "created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+				+ "next_attempt_at TIMESTAMP NULL DEFAULT NULL, "
+				+ "sent_at TIMESTAMP NULL DEFAULT NULL, "
+				+ "failed_at TIMESTAMP NULL DEFAULT NULL, "
+				+ "PRIMARY KEY(id), "
+				+ "UNIQUE KEY(idempotency_key), "
+				+ "FOREIGN KEY (monitored_subreddit_id) REFERENCES monitored_subreddits(id), "
+				+ "FOREIGN KEY (person_id) REFERENCES persons(id)"
+				+ ")");
+		statement.close();
+	}
+}
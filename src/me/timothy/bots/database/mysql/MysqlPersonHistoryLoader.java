@@ -0,0 +1,145 @@
+package me.timothy.bots.database.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import me.timothy.bots.database.PersonHistoryLoader;
+import me.timothy.bots.functions.PersonHistoryRowHandlerFunction;
+import me.timothy.bots.memory.PersonHistoryRow;
+import me.timothy.bots.memory.PersonHistoryRow.RowType;
+
+/**
+ * Loads a persons history in a single query by taking the union of each of the
+ * things that can show up in a history, already joined with the tables that hold
+ * the names we need, and letting mysql sort it.
+ *
+ * List updates come back as one row per tag (or one row with a null tag if the action
+ * has no tags), so consecutive rows for the same action are merged before they are handed
+ * out.
+ *
+ * @author Timothy
+ */
+public class MysqlPersonHistoryLoader implements PersonHistoryLoader {
+	private static final Logger logger = LogManager.getLogger();
+	
+	private static final int KIND_UNBAN_REQUEST = 0;
+	private static final int KIND_UNBAN = 1;
+	private static final int KIND_BAN = 2;
+	private static final int KIND_LIST_UPDATE = 3;
+	
+	private static final String QUERY = "SELECT kind, row_id, happened_at, mod_username, subreddit, description, invalid, tag FROM ("
+			+ "SELECT " + KIND_UNBAN_REQUEST + " AS kind, unban_requests.id AS row_id, unban_requests.handled_at AS happened_at, "
+			+ "mods.username AS mod_username, NULL AS subreddit, NULL AS description, unban_requests.invalid AS invalid, NULL AS tag "
+			+ "FROM unban_requests "
+			+ "INNER JOIN persons mods ON mods.id = unban_requests.mod_person_id "
+			+ "WHERE unban_requests.banned_person_id = ? AND unban_requests.handled_at IS NOT NULL "
+			+ "UNION ALL "
+			+ "SELECT " + KIND_UNBAN + ", unban_histories.id, handled_modactions.occurred_at, "
+			+ "mods.username, monitored_subreddits.subreddit, NULL, 0, NULL "
+			+ "FROM unban_histories "
+			+ "INNER JOIN handled_modactions ON handled_modactions.id = unban_histories.handled_modaction_id "
+			+ "INNER JOIN persons mods ON mods.id = unban_histories.mod_person_id "
+			+ "INNER JOIN monitored_subreddits ON monitored_subreddits.id = handled_modactions.monitored_subreddit_id "
+			+ "WHERE unban_histories.unbanned_person_id = ? AND unban_histories.mod_person_id <> ? "
+			+ "UNION ALL "
+			+ "SELECT " + KIND_BAN + ", ban_histories.id, handled_modactions.occurred_at, "
+			+ "mods.username, monitored_subreddits.subreddit, ban_histories.ban_description, 0, NULL "
+			+ "FROM ban_histories "
+			+ "INNER JOIN handled_modactions ON handled_modactions.id = ban_histories.handled_modaction_id "
+			+ "INNER JOIN persons mods ON mods.id = ban_histories.mod_person_id "
+			+ "INNER JOIN monitored_subreddits ON monitored_subreddits.id = handled_modactions.monitored_subreddit_id "
+			+ "WHERE ban_histories.banned_person_id = ? AND ban_histories.mod_person_id <> ? "
+			+ "UNION ALL "
+			+ "SELECT " + KIND_LIST_UPDATE + ", usl_actions.id, usl_actions.created_at, "
+			+ "NULL, NULL, NULL, 0, hashtags.tag "
+			+ "FROM usl_actions "
+			+ "LEFT JOIN usl_action_hashtags ON usl_action_hashtags.usl_action_id = usl_actions.id "
+			+ "LEFT JOIN hashtags ON hashtags.id = usl_action_hashtags.hashtag_id "
+			+ "WHERE usl_actions.person_id = ?"
+			+ ") timeline ORDER BY happened_at ASC, kind ASC, row_id ASC";
+	
+	private Connection connection;
+	
+	/**
+	 * Create a new history loader that uses the given connection
+	 *
+	 * @param connection the connection to mysql
+	 */
+	public MysqlPersonHistoryLoader(Connection connection) {
+		this.connection = connection;
+	}
+	
+	@Override
+	public void loadHistory(int personID, int excludeModPersonID, PersonHistoryRowHandlerFunction handler) {
+		try(PreparedStatement statement = connection.prepareStatement(QUERY)) {
+			int counter = 1;
+			statement.setInt(counter++, personID);
+			statement.setInt(counter++, personID);
+			statement.setInt(counter++, excludeModPersonID);
+			statement.setInt(counter++, personID);
+			statement.setInt(counter++, excludeModPersonID);
+			statement.setInt(counter++, personID);
+			
+			try(ResultSet set = statement.executeQuery()) {
+				PersonHistoryRow pendingListUpdate = null;
+				int pendingActionID = -1;
+				
+				while(set.next()) {
+					int kind = set.getInt(1);
+					int rowID = set.getInt(2);
+					
+					if(pendingListUpdate != null) {
+						if(kind == KIND_LIST_UPDATE && rowID == pendingActionID) {
+							String tag = set.getString(8);
+							if(tag != null)
+								pendingListUpdate.tags.add(tag);
+							continue;
+						}
+						
+						handler.handleRow(pendingListUpdate);
+						pendingListUpdate = null;
+					}
+					
+					switch(kind) {
+					case KIND_UNBAN_REQUEST:
+						handler.handleRow(new PersonHistoryRow(RowType.UNBAN_REQUEST, set.getTimestamp(3), set.getString(4),
+								null, null, set.getBoolean(7), null));
+						break;
+					case KIND_UNBAN:
+						handler.handleRow(new PersonHistoryRow(RowType.UNBAN, set.getTimestamp(3), set.getString(4),
+								set.getString(5), null, false, null));
+						break;
+					case KIND_BAN:
+						String desc = set.getString(6);
+						handler.handleRow(new PersonHistoryRow(RowType.BAN, set.getTimestamp(3), set.getString(4),
+								set.getString(5), desc == null ? "" : desc, false, null));
+						break;
+					case KIND_LIST_UPDATE:
+						pendingListUpdate = new PersonHistoryRow(RowType.LIST_UPDATE, set.getTimestamp(3), null, null, null,
+								false, new ArrayList<>());
+						pendingActionID = rowID;
+						String tag = set.getString(8);
+						if(tag != null)
+							pendingListUpdate.tags.add(tag);
+						break;
+					default:
+						throw new AssertionError("unknown history row kind " + kind);
+					}
+				}
+				
+				if(pendingListUpdate != null) {
+					handler.handleRow(pendingListUpdate);
+				}
+			}
+		}catch(SQLException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+}
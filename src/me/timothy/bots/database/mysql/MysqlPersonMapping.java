@@ -7,6 +7,12 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -90,6 +96,59 @@ public class MysqlPersonMapping extends MysqlObjectWithIDMapping<Person> impleme
 		return newPerson;
 	}
 
+	@Override
+	public Map<String, Person> fetchOrCreateByUsernames(Collection<String> usernames) {
+		Map<String, String> wanted = new LinkedHashMap<>();
+		for(String username : usernames) {
+			wanted.putIfAbsent(username.toLowerCase(), username);
+		}
+		
+		Map<String, Person> result = new HashMap<>();
+		if(wanted.isEmpty())
+			return result;
+		
+		List<Person> existing = fetchByActionUncached("SELECT * FROM " + table + " WHERE username IN (" + createPlaceholders(wanted.size()) + ")", new PreparedStatementSetVars() {
+
+			@Override
+			public void setVars(PreparedStatement statement) throws SQLException {
+				int counter = 1;
+				for(String username : wanted.values()) {
+					statement.setString(counter++, username);
+				}
+			}
+			
+		}, fetchListFromSetFunction());
+		for(Person person : existing) {
+			result.put(person.username.toLowerCase(), person);
+		}
+		
+		long now = System.currentTimeMillis();
+		List<Person> toCreate = new ArrayList<>();
+		for(Map.Entry<String, String> entry : wanted.entrySet()) {
+			if(!result.containsKey(entry.getKey())) {
+				Person newPerson = new Person(-1, entry.getValue(), null, null, -1, new Timestamp(now), new Timestamp(now));
+				newPerson.createdAt.setNanos(0);
+				newPerson.updatedAt.setNanos(0);
+				toCreate.add(newPerson);
+			}
+		}
+		
+		insertAll(new String[] { "username", "password_hash", "email", "auth", "created_at", "updated_at" }, toCreate, (statement, counter, person) -> {
+			statement.setString(counter++, person.username);
+			statement.setString(counter++, person.passwordHash);
+			statement.setString(counter++, person.email);
+			statement.setInt(counter++, person.authLevel);
+			statement.setTimestamp(counter++, person.createdAt);
+			statement.setTimestamp(counter++, person.updatedAt);
+			return counter;
+		}, (person, id) -> person.id = id);
+		
+		for(Person person : toCreate) {
+			result.put(person.username.toLowerCase(), person);
+		}
+		return result;
+	}
+
 	@Override
 	public Person fetchByUsername(String username) {
 		return fetchByAction("SELECT * FROM " + table + " WHERE username=? LIMIT 1", new PreparedStatementSetVars() {
@@ -116,6 +175,11 @@ public class MysqlPersonMapping extends MysqlObjectWithIDMapping<Person> impleme
 		}, fetchFromSetFunction());
 	}
 	
+	@Override
+	public Person fetchByIDUncached(int id) {
+		return fetchByID(id);
+	}
+	
 	/**
 	 * Fetch the person in the current row of the set.
 	 * 
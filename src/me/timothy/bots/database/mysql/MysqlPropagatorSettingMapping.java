@@ -67,33 +67,34 @@ public class MysqlPropagatorSettingMapping extends MysqlObjectWithIDMapping<Prop
 
 	@Override
 	public void put(PropagatorSettingKey key, String value) {
-		try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + table + " (property_key, property_value) VALUES (?, ?) "
-				+ "ON DUPLICATE KEY UPDATE property_value=?")) {
-			int counter = 1;
-			statement.setString(counter++, key.stringRepr);
-			statement.setString(counter++, value);
-			statement.setString(counter++, value);
-			statement.execute();
-		}catch(SQLException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
+		runStatement("INSERT INTO " + table + " (property_key, property_value) VALUES (?, ?) "
+				+ "ON DUPLICATE KEY UPDATE property_value=?",
+				new PreparedStatementSetVarsUnsafe(
+						new MysqlTypeValueTuple(Types.VARCHAR, key.stringRepr),
+						new MysqlTypeValueTuple(Types.VARCHAR, value),
+						new MysqlTypeValueTuple(Types.VARCHAR, value)));
 	}
 
 	@Override
 	public String get(PropagatorSettingKey key) {
-		try (PreparedStatement statement = connection.prepareStatement("SELECT property_value FROM " + table + " WHERE property_key=?")) {
-			statement.setString(1, key.stringRepr);
-			
-			try(ResultSet set = statement.executeQuery()) {
-				if(!set.next())
-					return null;
-				return set.getString(1);
-			}
-		}catch(SQLException e) {
-			logger.throwing(e);
-			throw new RuntimeException(e);
-		}
+		return fetchByAction("SELECT property_value FROM " + table + " WHERE property_key=?",
+				new PreparedStatementSetVarsUnsafe(new MysqlTypeValueTuple(Types.VARCHAR, key.stringRepr)),
+				new PreparedStatementFetchResult<String>() {
+
+					@Override
+					public String fetchResult(ResultSet set) throws SQLException {
+						if(!set.next())
+							return null;
+						return set.getString(1);
+					}
+					
+				});
+	}
+
+	@Override
+	public void remove(PropagatorSettingKey key) {
+		runStatement("DELETE FROM " + table + " WHERE property_key=?",
+				new PreparedStatementSetVarsUnsafe(new MysqlTypeValueTuple(Types.VARCHAR, key.stringRepr)));
 	}
 
 	@Override
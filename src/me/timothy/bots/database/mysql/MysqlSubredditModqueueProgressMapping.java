@@ -1,6 +1,7 @@
 package me.timothy.bots.database.mysql;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -27,9 +28,55 @@ public class MysqlSubredditModqueueProgressMapping extends MysqlObjectWithIDMapp
 			new MysqlColumn(Types.VARCHAR, "latest_modaction_id"),
 			new MysqlColumn(Types.VARCHAR, "newest_modaction_id"),
 			new MysqlColumn(Types.TIMESTAMP, "updated_at"),
-			new MysqlColumn(Types.TIMESTAMP, "last_time_had_full_history")
+			new MysqlColumn(Types.TIMESTAMP, "last_time_had_full_history"),
+			new MysqlColumn(Types.BIT, "ban_search_forward"),
+			new MysqlColumn(Types.VARCHAR, "ban_latest_modaction_id"),
+			new MysqlColumn(Types.VARCHAR, "ban_newest_modaction_id"),
+			new MysqlColumn(Types.BIT, "unban_search_forward"),
+			new MysqlColumn(Types.VARCHAR, "unban_latest_modaction_id"),
+			new MysqlColumn(Types.VARCHAR, "unban_newest_modaction_id")
 		});
 	}
+	
+	/**
+	 * Before the mod log was filtered by type this table only had one set of pagination
+	 * ids. If that's the table we have, the pagination ids for each type are added empty
+	 * and each type starts with a forward search. An untyped id is not used as a cursor
+	 * on a filtered log, since we don't know that reddit accepts a mod action of another
+	 * type there. Anything fetched again is skipped when it is ingested.
+	 */
+	@Override
+	public void validateSchema() {
+		try {
+			DatabaseMetaData metadata = connection.getMetaData();
+			boolean tableExists, hasTypedColumns;
+			try(ResultSet results = metadata.getTables(null, null, table, null)) {
+				tableExists = results.next();
+			}
+			try(ResultSet results = metadata.getColumns(null, null, table, "ban_search_forward")) {
+				hasTypedColumns = results.next();
+			}
+			
+			if(tableExists && !hasTypedColumns) {
+				logger.info("Adding pagination ids for each mod log type to " + table);
+				try(Statement statement = connection.createStatement()) {
+					statement.execute("ALTER TABLE " + table + " "
+							+ "ADD COLUMN ban_search_forward TINYINT(1) NOT NULL DEFAULT 1, "
+							+ "ADD COLUMN ban_latest_modaction_id VARCHAR(50) NULL, "
+							+ "ADD COLUMN ban_newest_modaction_id VARCHAR(50) NULL, "
+							+ "ADD COLUMN unban_search_forward TINYINT(1) NOT NULL DEFAULT 1, "
+							+ "ADD COLUMN unban_latest_modaction_id VARCHAR(50) NULL, "
+							+ "ADD COLUMN unban_newest_modaction_id VARCHAR(50) NULL");
+					statement.execute("UPDATE " + table + " SET search_forward=1, updated_at=updated_at");
+				}
+			}
+		}catch(SQLException ex) {
+			logger.throwing(ex);
+			throw new RuntimeException(ex);
+		}
+		
+		super.validateSchema();
+	}
 
 	@Override
 	public void save(SubredditModqueueProgress a) throws IllegalArgumentException {
@@ -41,9 +88,12 @@ public class MysqlSubredditModqueueProgressMapping extends MysqlObjectWithIDMapp
 		try {
 			PreparedStatement statement;
 			if(a.id > 0) {
-				statement = connection.prepareStatement("UPDATE " + table + " SET monitored_subreddit_id=?, search_forward=?, latest_modaction_id=?, newest_modaction_id=?, last_time_had_full_history=? WHERE id=?");
+				statement = connection.prepareStatement("UPDATE " + table + " SET monitored_subreddit_id=?, search_forward=?, latest_modaction_id=?, newest_modaction_id=?, last_time_had_full_history=?, "
+						+ "ban_search_forward=?, ban_latest_modaction_id=?, ban_newest_modaction_id=?, unban_search_forward=?, unban_latest_modaction_id=?, unban_newest_modaction_id=? WHERE id=?");
 			}else {
-				statement = connection.prepareStatement("INSERT INTO " + table + " (monitored_subreddit_id, search_forward, latest_modaction_id, newest_modaction_id, last_time_had_full_history) VALUES (?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+				statement = connection.prepareStatement("INSERT INTO " + table + " (monitored_subreddit_id, search_forward, latest_modaction_id, newest_modaction_id, last_time_had_full_history, "
+						+ "ban_search_forward, ban_latest_modaction_id, ban_newest_modaction_id, unban_search_forward, unban_latest_modaction_id, unban_newest_modaction_id) "
+						+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
 			}
 			
 			int counter = 1;
@@ -52,6 +102,12 @@ public class MysqlSubredditModqueueProgressMapping extends MysqlObjectWithIDMapp
 			statement.setString(counter++, a.latestModActionID);
 			statement.setString(counter++, a.newestModActionID);
 			statement.setTimestamp(counter++, a.lastTimeHadFullHistory);
+			statement.setBoolean(counter++, a.banSearchForward);
+			statement.setString(counter++, a.banLatestModActionID);
+			statement.setString(counter++, a.banNewestModActionID);
+			statement.setBoolean(counter++, a.unbanSearchForward);
+			statement.setString(counter++, a.unbanLatestModActionID);
+			statement.setString(counter++, a.unbanNewestModActionID);
 			
 			if(a.id > 0) {
 				statement.setInt(counter++, a.id);
@@ -143,7 +199,9 @@ public class MysqlSubredditModqueueProgressMapping extends MysqlObjectWithIDMapp
 	@Override
 	protected SubredditModqueueProgress fetchFromSet(ResultSet set) throws SQLException {
 		return new SubredditModqueueProgress(set.getInt("id"), set.getInt("monitored_subreddit_id"), set.getBoolean("search_forward"), 
-				set.getString("latest_modaction_id"), set.getString("newest_modaction_id"), set.getTimestamp("updated_at"), set.getTimestamp("last_time_had_full_history"));
+				set.getString("latest_modaction_id"), set.getString("newest_modaction_id"), set.getTimestamp("updated_at"), set.getTimestamp("last_time_had_full_history"),
+				set.getBoolean("ban_search_forward"), set.getString("ban_latest_modaction_id"), set.getString("ban_newest_modaction_id"),
+				set.getBoolean("unban_search_forward"), set.getString("unban_latest_modaction_id"), set.getString("unban_newest_modaction_id"));
 	}
 
 	@Override
@@ -157,6 +215,12 @@ public class MysqlSubredditModqueueProgressMapping extends MysqlObjectWithIDMapp
 				+ "newest_modaction_id VARCHAR(50) NULL, "
 				+ "updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP, "
 				+ "last_time_had_full_history TIMESTAMP NULL DEFAULT NULL, "
+				+ "ban_search_forward TINYINT(1) NOT NULL, "
+				+ "ban_latest_modaction_id VARCHAR(50) NULL, "
+				+ "ban_newest_modaction_id VARCHAR(50) NULL, "
+				+ "unban_search_forward TINYINT(1) NOT NULL, "
+				+ "unban_latest_modaction_id VARCHAR(50) NULL, "
+				+ "unban_newest_modaction_id VARCHAR(50) NULL, "
 				+ "PRIMARY KEY(id), "
 				+ "UNIQUE KEY(monitored_subreddit_id), "
 				+ "FOREIGN KEY (monitored_subreddit_id) REFERENCES monitored_subreddits(id)"
@@ -6,6 +6,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
@@ -75,6 +77,59 @@ public class MysqlSubscribedHashtagMapping extends MysqlObjectWithIDMapping<Subs
 		}
 	}
 
+	/**
+	 * Saves all the given subscriptions. New subscriptions are inserted in a single
+	 * batch and are assigned their generated ids; existing ones are updated one at a
+	 * time.
+	 * 
+	 * @param as the subscriptions to save
+	 */
+	@Override
+	public void saveAll(Collection<SubscribedHashtag> as) throws IllegalArgumentException {
+		List<SubscribedHashtag> toInsert = new ArrayList<>();
+		for(SubscribedHashtag a : as) {
+			if(!a.isValid()) {
+				throw new RuntimeException(a + " is not valid!");
+			}
+			
+			if(a.id > 0) {
+				save(a);
+				continue;
+			}
+			
+			if(a.createdAt != null) { a.createdAt.setNanos(0); }
+			if(a.deletedAt != null) { a.deletedAt.setNanos(0); }
+			toInsert.add(a);
+		}
+		
+		if(toInsert.isEmpty())
+			return;
+		
+		try(PreparedStatement statement = connection.prepareStatement("INSERT INTO " + table + 
+				" (monitored_subreddit_id, hashtag_id, created_at, deleted_at) VALUES(?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+			for(SubscribedHashtag a : toInsert) {
+				int counter = 1;
+				statement.setInt(counter++, a.monitoredSubredditID);
+				statement.setInt(counter++, a.hashtagID);
+				statement.setTimestamp(counter++, a.createdAt);
+				statement.setTimestamp(counter++, a.deletedAt);
+				statement.addBatch();
+			}
+			statement.executeBatch();
+			
+			try(ResultSet keys = statement.getGeneratedKeys()) {
+				for(SubscribedHashtag a : toInsert) {
+					if(!keys.next()) 
+						throw new RuntimeException("expected generated keys when inserting into " + table);
+					a.id = keys.getInt(1);
+				}
+			}
+		}catch(SQLException e) {
+			logger.throwing(e);
+			throw new RuntimeException(e);
+		}
+	}
+
 	@Override
 	public List<SubscribedHashtag> fetchForSubreddit(int monitoredSubredditID, boolean deleted) {
 		StringBuilder sql = new StringBuilder();
@@ -6,6 +6,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
@@ -81,6 +83,25 @@ public class MysqlTraditionalScammerMapping extends MysqlObjectWithIDMapping<Tra
 				fetchFromSetFunction());
 	}
 
+	@Override
+	public List<TraditionalScammer> fetchByPersonIDs(Collection<Integer> personIDs) {
+		if(personIDs.isEmpty())
+			return new ArrayList<TraditionalScammer>();
+		
+		return fetchByActionUncached("SELECT * FROM " + table + " WHERE person_id IN (" + createPlaceholders(personIDs.size()) + ")", 
+				new PreparedStatementSetVars() {
+
+					@Override
+					public void setVars(PreparedStatement statement) throws SQLException {
+						int counter = 1;
+						for(int personID : personIDs) {
+							statement.setInt(counter++, personID);
+						}
+					}
+					
+				}, fetchListFromSetFunction());
+	}
+
 	@Override
 	public void deleteByPersonID(int personID) {
 		try {
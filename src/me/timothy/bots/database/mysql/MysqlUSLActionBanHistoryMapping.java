@@ -1,6 +1,7 @@
 package me.timothy.bots.database.mysql;
 
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.List;
 
 import me.timothy.bots.USLDatabase;
@@ -20,6 +21,11 @@ public class MysqlUSLActionBanHistoryMapping extends MysqlManyToManyMapping<USLA
 		return fetchByCol1(uslActionId);
 	}
 
+	@Override
+	public List<USLActionBanHistory> fetchByUSLActionIDs(Collection<Integer> uslActionIds) {
+		return fetchByCol1s(uslActionIds);
+	}
+
 	@Override
 	public List<USLActionBanHistory> fetchByBanHistoryID(int banHistoryId) {
 		return fetchByCol2(banHistoryId);
@@ -1,6 +1,7 @@
 package me.timothy.bots.database.mysql;
 
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.List;
 
 import me.timothy.bots.USLDatabase;
@@ -21,4 +22,9 @@ public class MysqlUSLActionHashtagMapping extends MysqlManyToManyMapping<USLActi
 		return fetchByCol1(actionID);
 	}
 
+	@Override
+	public List<USLActionHashtag> fetchByUSLActionIDs(Collection<Integer> actionIDs) {
+		return fetchByCol1s(actionIDs);
+	}
+
 }
@@ -7,6 +7,8 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
@@ -93,6 +95,25 @@ public class MysqlUSLActionMapping extends MysqlObjectWithIDMapping<USLAction> i
 				fetchFromSetFunction());
 	}
 
+	@Override
+	public List<USLAction> fetchLatestByPersons(Collection<Integer> personIds) {
+		if(personIds.isEmpty())
+			return new ArrayList<USLAction>();
+		
+		return fetchByActionUncached("SELECT * FROM " + table + " WHERE person_id IN (" + createPlaceholders(personIds.size()) + ") AND is_latest=1",
+				new PreparedStatementSetVars() {
+
+					@Override
+					public void setVars(PreparedStatement statement) throws SQLException {
+						int counter = 1;
+						for(int personId : personIds) {
+							statement.setInt(counter++, personId);
+						}
+					}
+					
+				}, fetchListFromSetFunction());
+	}
+
 	@Override
 	public List<USLAction> fetchByPerson(int personId) {
 		return fetchByAction("SELECT * FROM " + table + " WHERE person_id=?",
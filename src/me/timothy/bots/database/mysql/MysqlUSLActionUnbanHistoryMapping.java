@@ -1,6 +1,7 @@
 package me.timothy.bots.database.mysql;
 
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.List;
 
 import me.timothy.bots.USLDatabase;
@@ -20,6 +21,11 @@ public class MysqlUSLActionUnbanHistoryMapping extends MysqlManyToManyMapping<US
 		return fetchByCol1(uslActionId);
 	}
 
+	@Override
+	public List<USLActionUnbanHistory> fetchByUSLActionIDs(Collection<Integer> uslActionIds) {
+		return fetchByCol1s(uslActionIds);
+	}
+
 	@Override
 	public List<USLActionUnbanHistory> fetchByUnbanHistoryID(int unbanHistoryId) {
 		return fetchByCol2(unbanHistoryId);
@@ -5,6 +5,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -72,6 +73,34 @@ public class MysqlUnbanHistoryMapping extends MysqlObjectWithIDMapping<UnbanHist
 		}
 	}
 	
+	/**
+	 * Saves all the given unban histories. New ones are inserted with multi-row inserts
+	 * and are assigned their generated ids; existing ones are updated one at a time.
+	 * 
+	 * @param as the unban histories to save
+	 */
+	@Override
+	public void saveAll(Collection<UnbanHistory> as) throws IllegalArgumentException {
+		List<UnbanHistory> toInsert = new ArrayList<>();
+		for(UnbanHistory a : as) {
+			if(!a.isValid())
+				throw new IllegalArgumentException(a + " is not valid");
+			
+			if(a.id > 0) {
+				save(a);
+				continue;
+			}
+			toInsert.add(a);
+		}
+		
+		insertAll(new String[] { "mod_person_id", "unbanned_person_id", "handled_modaction_id" }, toInsert, (statement, counter, a) -> {
+			statement.setInt(counter++, a.modPersonID);
+			statement.setInt(counter++, a.unbannedPersonID);
+			statement.setInt(counter++, a.handledModActionID);
+			return counter;
+		}, (a, id) -> a.id = id);
+	}
+	
 	@Override
 	public UnbanHistory fetchByHandledModActionID(int handledModActionID) {
 		return fetchByAction("SELECT * FROM " + table + " WHERE handled_modaction_id=? LIMIT 1", 
@@ -87,7 +116,7 @@ public class MysqlUnbanHistoryMapping extends MysqlObjectWithIDMapping<UnbanHist
 		if(handledModActionIDs.size() == 0)
 			return new ArrayList<>();
 		
-		return fetchByAction("SELECT * FROM " + table + " WHERE handled_modaction_id IN (" + createPlaceholders(handledModActionIDs.size()) + ")",
+		return fetchByActionUncached("SELECT * FROM " + table + " WHERE handled_modaction_id IN (" + createPlaceholders(handledModActionIDs.size()) + ")",
 				new PreparedStatementSetVars() {
 
 					@Override
@@ -101,6 +130,31 @@ public class MysqlUnbanHistoryMapping extends MysqlObjectWithIDMapping<UnbanHist
 				}, fetchListFromSetFunction());
 	}
 
+	@Override
+	public List<Integer> fetchIDsOccurredAt(Collection<Integer> ids, Timestamp occurredAt) {
+		if(ids == null)
+			throw new NullPointerException("ids cannot be null");
+		
+		if(ids.size() == 0)
+			return new ArrayList<>();
+		
+		return fetchByActionUncached("SELECT " + table + ".id FROM " + table + " "
+				+ "INNER JOIN handled_modactions ON handled_modactions.id = " + table + ".handled_modaction_id "
+				+ "WHERE handled_modactions.occurred_at = ? AND " + table + ".id IN (" + createPlaceholders(ids.size()) + ")",
+				new PreparedStatementSetVars() {
+
+					@Override
+					public void setVars(PreparedStatement statement) throws SQLException {
+						int counter = 1;
+						statement.setTimestamp(counter++, occurredAt);
+						for(int id : ids) {
+							statement.setInt(counter++, id);
+						}
+					}
+			
+				}, fetchFirstColumnIntsFromSetFunction());
+	}
+
 	@Override
 	public UnbanHistory fetchUnbanHistoryByPersonAndSubreddit(int unbannedPersonId, int monitoredSubredditId) {
 		return fetchByAction("SELECT ubh.id, ubh.mod_person_id, ubh.unbanned_person_id, ubh.handled_modaction_id FROM " + table + " AS ubh "
@@ -145,20 +199,23 @@ public class MysqlUnbanHistoryMapping extends MysqlObjectWithIDMapping<UnbanHist
 
 	@Override
 	public UnbanHistory fetchByActionAndSubreddit(int uslActionId, int subredditId) {
-		try(PreparedStatement statement = connection.prepareStatement(
-				"SELECT unban_histories.id, unban_histories.mod_person_id, unban_histories.unbanned_person_id, unban_histories.handled_modaction_id FROM "
-				+ "usl_action_unban_history "
-				+ "INNER JOIN unban_histories ON usl_action_unban_history.usl_action_id = ? AND usl_action_unban_history.unban_history_id = unban_histories.id "
-				+ "INNER JOIN handled_modactions ON unban_histories.handled_modaction_id = handled_modactions.id AND "
-				+ "handled_modactions.monitored_subreddit_id = ?")) {
-			statement.setInt(1, uslActionId);
-			statement.setInt(2, subredditId);
-			try (ResultSet set = statement.executeQuery()) {
-				if(!set.next())
-					return null;
-				
-				return new UnbanHistory(set.getInt(1), set.getInt(2), set.getInt(3), set.getInt(4));
-			}
+		try {
+			return withCached(
+					"SELECT unban_histories.id, unban_histories.mod_person_id, unban_histories.unbanned_person_id, unban_histories.handled_modaction_id FROM "
+					+ "usl_action_unban_history "
+					+ "INNER JOIN unban_histories ON usl_action_unban_history.usl_action_id = ? AND usl_action_unban_history.unban_history_id = unban_histories.id "
+					+ "INNER JOIN handled_modactions ON unban_histories.handled_modaction_id = handled_modactions.id AND "
+					+ "handled_modactions.monitored_subreddit_id = ?",
+					(statement) -> {
+						statement.setInt(1, uslActionId);
+						statement.setInt(2, subredditId);
+						try (ResultSet set = statement.executeQuery()) {
+							if(!set.next())
+								return null;
+							
+							return new UnbanHistory(set.getInt(1), set.getInt(2), set.getInt(3), set.getInt(4));
+						}
+					});
 		}catch(SQLException e) {
 			logger.throwing(e);
 			throw new RuntimeException(e);
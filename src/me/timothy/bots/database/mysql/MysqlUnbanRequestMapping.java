@@ -7,6 +7,8 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
@@ -27,6 +29,10 @@ public class MysqlUnbanRequestMapping extends MysqlObjectWithIDMapping<UnbanRequ
 				new MysqlColumn(Types.TIMESTAMP, "created_at"),
 				new MysqlColumn(Types.TIMESTAMP, "handled_at"), 
 				new MysqlColumn(Types.BIT, "invalid"));
+		
+		indexes = new MysqlIndex[] {
+			new MysqlIndex("ind_banreq_handled_id", "handled_at", "id")
+		};
 	}
 
 	@Override
@@ -101,6 +107,41 @@ public class MysqlUnbanRequestMapping extends MysqlObjectWithIDMapping<UnbanRequ
 				fetchListFromSetFunction());
 	}
 
+	@Override
+	public List<UnbanRequest> fetchLatestValidAfter(Timestamp afterTime, int afterID, Timestamp before, int num) {
+		return fetchByAction("SELECT * FROM " + table + " WHERE handled_at IS NOT NULL AND invalid=0 AND handled_at >= ? AND handled_at < ? "
+				+ "AND (handled_at > ? OR id > ?) ORDER BY handled_at ASC, id ASC LIMIT ?", 
+				new PreparedStatementSetVarsUnsafe(new MysqlTypeValueTuple(Types.TIMESTAMP, afterTime),
+						new MysqlTypeValueTuple(Types.TIMESTAMP, before),
+						new MysqlTypeValueTuple(Types.TIMESTAMP, afterTime),
+						new MysqlTypeValueTuple(Types.INTEGER, afterID),
+						new MysqlTypeValueTuple(Types.INTEGER, num)),
+				fetchListFromSetFunction());
+	}
+
+	@Override
+	public List<Integer> fetchIDsHandledAt(Collection<Integer> ids, Timestamp handledAt) {
+		if(ids == null)
+			throw new NullPointerException("ids cannot be null");
+		
+		if(ids.size() == 0)
+			return new ArrayList<>();
+		
+		return fetchByActionUncached("SELECT id FROM " + table + " WHERE handled_at = ? AND id IN (" + createPlaceholders(ids.size()) + ")",
+				new PreparedStatementSetVars() {
+
+					@Override
+					public void setVars(PreparedStatement statement) throws SQLException {
+						int counter = 1;
+						statement.setTimestamp(counter++, handledAt);
+						for(int id : ids) {
+							statement.setInt(counter++, id);
+						}
+					}
+			
+				}, fetchFirstColumnIntsFromSetFunction());
+	}
+
 	@Override
 	public List<UnbanRequest> fetchHandledByBannedPerson(int personID) {
 		return fetchByAction("SELECT * FROM " + table + " WHERE banned_person_id=? AND (handled_at IS NOT NULL)", 
@@ -127,6 +168,7 @@ public class MysqlUnbanRequestMapping extends MysqlObjectWithIDMapping<UnbanRequ
 				+ "PRIMARY KEY(id), "
 				+ "INDEX ind_banreqmodpers_id (mod_person_id), "
 				+ "INDEX ind_banreqbanpers_id (banned_person_id), "
+				+ "INDEX ind_banreq_handled_id (handled_at, id), "
 				+ "FOREIGN KEY (mod_person_id) REFERENCES persons(id), "
 				+ "FOREIGN KEY (banned_person_id) REFERENCES persons(id)"
 				+ ")");
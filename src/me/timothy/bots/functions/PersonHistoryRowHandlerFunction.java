@@ -0,0 +1,20 @@
+package me.timothy.bots.functions;
+
+import me.timothy.bots.memory.PersonHistoryRow;
+
+/**
+ * Function definition for something that consumes the rows of a persons
+ * history as they are loaded.
+ * 
+ * @author Timothy
+ */
+@FunctionalInterface
+public interface PersonHistoryRowHandlerFunction {
+	/**
+	 * Handle the next row of the history. Rows are given in the order they should
+	 * be displayed.
+	 * 
+	 * @param row the row
+	 */
+	public void handleRow(PersonHistoryRow row);
+}
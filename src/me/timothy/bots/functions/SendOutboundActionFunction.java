@@ -0,0 +1,18 @@
+package me.timothy.bots.functions;
+
+import me.timothy.bots.models.OutboundAction;
+
+/**
+ * Does what a queued outbound action says to do on reddit.
+ *
+ * @author Timothy
+ */
+public interface SendOutboundActionFunction {
+	/**
+	 * Do the given action on reddit.
+	 *
+	 * @param action the action to do
+	 * @return true if it was done (or does not need to be), false if it should be tried again later
+	 */
+	public boolean send(OutboundAction action);
+}
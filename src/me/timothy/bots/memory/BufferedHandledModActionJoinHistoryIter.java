@@ -3,102 +3,68 @@ package me.timothy.bots.memory;
 import java.sql.Timestamp;
 import java.util.List;
 
-import org.apache.logging.log4j.Level;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
 import me.timothy.bots.database.HandledAtTimestampMapping;
 import me.timothy.bots.database.HandledModActionMapping;
 import me.timothy.bots.database.MappingDatabase;
 
 /**
- * This class just lets you iterate over handled mod actions joined with their history. This
- * requires a buffering step from mysql which this handles smoothly.
+ * This class just lets you iterate over handled mod actions joined with their history. Rows
+ * are paged from mysql on (occurred at, handled mod action id), so the page size is fixed no
+ * matter how many mod actions share a timestamp.
  * 
- * This only returns items which are NOT in the handled at timestamp mapping.
+ * This only returns items which are NOT in the handled at timestamp mapping. If given a database
+ * for the pages, each page after the first is fetched from it on a background thread while the
+ * caller works through the previous one.
  * 
  * @author Timothy
  */
-public class BufferedHandledModActionJoinHistoryIter {
-	private static final Logger logger = LogManager.getLogger();
-	private static final int bufferSizeIncrement = 250;
+public class BufferedHandledModActionJoinHistoryIter extends KeysetIter<HandledModActionJoinHistory> {
+	private static final int pageSize = 250;
 	
-	private int bufferSize;
 	private HandledModActionMapping hmaMap;
 	private HandledAtTimestampMapping hatMap;
 	
 	private Timestamp timeBeforeWhichIgnore;
 	private Timestamp timeAtOrAfterIgnore;
 	
-	private List<HandledModActionJoinHistory> buffer;
-	private int bufferInd;
-	private boolean sawNew;
-	
 	public BufferedHandledModActionJoinHistoryIter(MappingDatabase database, Timestamp timeBeforeWhichIgnore, Timestamp timeAtOrAfterIgnore) {
-		this.bufferSize = 250;
-		this.hmaMap = database.getHandledModActionMapping();
+		this(database, null, timeBeforeWhichIgnore, timeAtOrAfterIgnore);
+	}
+	
+	/**
+	 * Iterate over the handled mod actions joined with their history, prefetching pages from
+	 * pageDatabase if it is not null.
+	 * 
+	 * @param database the database which has the handled at timestamp mapping
+	 * @param pageDatabase a database with its own read-only connection, which the caller doesn't use
+	 *                     while iterating, or null to fetch pages from database on the callers thread
+	 * @param timeBeforeWhichIgnore the earliest time to return
+	 * @param timeAtOrAfterIgnore the time at or after which nothing is returned
+	 */
+	public BufferedHandledModActionJoinHistoryIter(MappingDatabase database, MappingDatabase pageDatabase, 
+			Timestamp timeBeforeWhichIgnore, Timestamp timeAtOrAfterIgnore) {
+		super(pageSize, pageDatabase != null);
+		this.hmaMap = (pageDatabase != null ? pageDatabase : database).getHandledModActionMapping();
 		this.hatMap = database.getHandledAtTimestampMapping();
 		
 		this.timeBeforeWhichIgnore = timeBeforeWhichIgnore;
 		this.timeAtOrAfterIgnore = timeAtOrAfterIgnore;
 		
-		this.sawNew = false;
-		
-		updateBuffer();
-	}
-	
-	private void updateBuffer() {
-		buffer = hmaMap.fetchLatestJoined(timeBeforeWhichIgnore, timeAtOrAfterIgnore, bufferSize);
-		if(buffer.isEmpty()) 
-			bufferInd = -1;
-		else
-			bufferInd = 0;
+		start();
 	}
 	
-	private void increaseBuffer() {
-		logger.printf(Level.WARN, "Iter HMAs -> Detected buffer size %d insufficient, increasing by %d", bufferSize, bufferSizeIncrement);
-		bufferSize += bufferSizeIncrement;
+	@Override
+	protected List<HandledModActionJoinHistory> fetchPage(HandledModActionJoinHistory after, int num) {
+		if(after == null)
+			return hmaMap.fetchLatestJoinedAfter(timeBeforeWhichIgnore, 0, timeAtOrAfterIgnore, num);
+		
+		return hmaMap.fetchLatestJoinedAfter(after.handledModAction.occurredAt, after.handledModAction.id, timeAtOrAfterIgnore, num);
 	}
 	
-	public HandledModActionJoinHistory next() {
-		if(bufferInd == -1)
-			return null;
-		
-		HandledModActionJoinHistory current = buffer.get(bufferInd);
-		bufferInd++;
-		while(true) {
-			if(current.isBan() && !hatMap.containsBanHistory(current.banHistory.id))
-				break;
-			if(current.isUnban() && !hatMap.containsUnbanHistory(current.unbanHistory.id))
-				break;
-			if(bufferInd == buffer.size()) {
-				if(buffer.size() < bufferSize)
-				{
-					bufferInd = -1;
-					return null;
-				}
-				
-				if(!sawNew) {
-					increaseBuffer();
-				}
-				updateBuffer();
-			}
-			current = buffer.get(bufferInd);
-			bufferInd++;
-		}
-		
-		if(!current.handledModAction.occurredAt.equals(timeBeforeWhichIgnore)) {
-			timeBeforeWhichIgnore = new Timestamp(current.handledModAction.occurredAt.getTime());
-			sawNew = true;
-		}
-		
-		if(bufferInd == buffer.size()) {
-			if(!sawNew) {
-				increaseBuffer();
-			}
-			updateBuffer();
-		}
-		
-		return current;
+	@Override
+	protected boolean isHandled(HandledModActionJoinHistory row) {
+		if(row.isBan())
+			return hatMap.containsBanHistory(row.banHistory.id);
+		return hatMap.containsUnbanHistory(row.unbanHistory.id);
 	}
 }
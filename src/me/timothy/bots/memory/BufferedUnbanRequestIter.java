@@ -3,92 +3,65 @@ package me.timothy.bots.memory;
 import java.sql.Timestamp;
 import java.util.List;
 
-import org.apache.logging.log4j.Level;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
 import me.timothy.bots.database.HandledAtTimestampMapping;
 import me.timothy.bots.database.MappingDatabase;
 import me.timothy.bots.database.UnbanRequestMapping;
 import me.timothy.bots.models.UnbanRequest;
 
-public class BufferedUnbanRequestIter {
-	private static final Logger logger = LogManager.getLogger();
-	private static final int bufferSizeIncrement = 10;
+/**
+ * Iterates over valid, handled unban requests in the order they were handled. Rows are paged
+ * from mysql on (handled at, id).
+ * 
+ * This only returns items which are NOT in the handled at timestamp mapping. If given a database
+ * for the pages, each page after the first is fetched from it on a background thread.
+ * 
+ * @author Timothy
+ */
+public class BufferedUnbanRequestIter extends KeysetIter<UnbanRequest> {
+	private static final int pageSize = 50;
 	
-	private int bufferSize;
 	private UnbanRequestMapping urMap;
 	private HandledAtTimestampMapping hatMap;
-
+	
 	private Timestamp timeBeforeWhichIgnore;
 	private Timestamp timeAtOrAfterIgnore;
 	
-	private List<UnbanRequest> buffer;
-	private int bufferInd;
-	private boolean sawNew;
-	
 	public BufferedUnbanRequestIter(MappingDatabase database, Timestamp timeBeforeWhichIgnore, Timestamp timeAtOrAfterIgnore) {
-		this.bufferSize = 10;
-		this.urMap = database.getUnbanRequestMapping();
+		this(database, null, timeBeforeWhichIgnore, timeAtOrAfterIgnore);
+	}
+	
+	/**
+	 * Iterate over the valid, handled unban requests, prefetching pages from pageDatabase if it 
+	 * is not null.
+	 * 
+	 * @param database the database which has the handled at timestamp mapping
+	 * @param pageDatabase a database with its own read-only connection, which the caller doesn't use
+	 *                     while iterating, or null to fetch pages from database on the callers thread
+	 * @param timeBeforeWhichIgnore the earliest time to return
+	 * @param timeAtOrAfterIgnore the time at or after which nothing is returned
+	 */
+	public BufferedUnbanRequestIter(MappingDatabase database, MappingDatabase pageDatabase, 
+			Timestamp timeBeforeWhichIgnore, Timestamp timeAtOrAfterIgnore) {
+		super(pageSize, pageDatabase != null);
+		this.urMap = (pageDatabase != null ? pageDatabase : database).getUnbanRequestMapping();
 		this.hatMap = database.getHandledAtTimestampMapping();
 		
 		this.timeBeforeWhichIgnore = timeBeforeWhichIgnore;
 		this.timeAtOrAfterIgnore = timeAtOrAfterIgnore;
 		
-		this.sawNew = false;
-		
-		updateBuffer();
+		start();
 	}
 	
-	private void updateBuffer() {
-		buffer = urMap.fetchLatestValid(timeBeforeWhichIgnore, timeAtOrAfterIgnore, bufferSize);
-		if(buffer.isEmpty()) {
-			bufferInd = -1;
-		}else {
-			bufferInd = 0;
-		}
-	}
-	
-	private void increaseBuffer() {
-		logger.printf(Level.WARN, "Iter URs -> Detected buffer size %d insufficient, increasing by %d", bufferSize, bufferSizeIncrement);
-		bufferSize += bufferSizeIncrement;
+	@Override
+	protected List<UnbanRequest> fetchPage(UnbanRequest after, int num) {
+		if(after == null)
+			return urMap.fetchLatestValidAfter(timeBeforeWhichIgnore, 0, timeAtOrAfterIgnore, num);
+		
+		return urMap.fetchLatestValidAfter(after.handledAt, after.id, timeAtOrAfterIgnore, num);
 	}
 	
-	public UnbanRequest next() {
-		if(bufferInd == -1)
-			return null;
-		
-		UnbanRequest current = buffer.get(bufferInd);
-		bufferInd++;
-		while(hatMap.containsUnbanRequest(current.id)) {
-			if(bufferInd == buffer.size()) {
-				if(buffer.size() < bufferSize)
-				{
-					bufferInd = -1;
-					return null;
-				}
-				
-				if(!sawNew) {
-					increaseBuffer();
-				}
-				updateBuffer();
-			}
-			current = buffer.get(bufferInd);
-			bufferInd++;
-		}
-		
-		if(!current.handledAt.equals(timeBeforeWhichIgnore)) {
-			timeBeforeWhichIgnore = new Timestamp(current.handledAt.getTime());
-			sawNew = true;
-		}
-		
-		if(bufferInd == buffer.size()) {
-			if(!sawNew) {
-				increaseBuffer();
-			}
-			updateBuffer();
-		}
-		
-		return current;
+	@Override
+	protected boolean isHandled(UnbanRequest row) {
+		return hatMap.containsUnbanRequest(row.id);
 	}
 }
@@ -0,0 +1,165 @@
+package me.timothy.bots.memory;
+
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the history tables produced by the USLHistoryMarkupFormatter. The
+ * same person will typically have their history rendered many times in a row (once per
+ * subreddit that a ban is propagated to, for example), and rendering a history is one
+ * of the most expensive things the propagator does.
+ *
+ * Entries are keyed by the person, whether or not bot activity was included, and the
+ * latest handled timestamp at the time of rendering (i.e., the time before which every
+ * reddit action has been turned into a USLAction). Once that timestamp moves, old entries
+ * are simply never hit again and fall off the end. Anything that changes a persons history
+ * without moving that timestamp (new ban histories, handled unban requests, etc) must
+ * call {@link #invalidate(int)} for that person.
+ *
+ * @author Timothy
+ */
+public class HistoryMarkupCache {
+	/** The default maximum number of histories to keep */
+	public static final int DEFAULT_MAX_SIZE = 256;
+	
+	private static class Key {
+		private final int personID;
+		private final boolean includeBotActivity;
+		private final long latestHandled;
+		
+		public Key(int personID, boolean includeBotActivity, Timestamp latestHandled) {
+			this.personID = personID;
+			this.includeBotActivity = includeBotActivity;
+			this.latestHandled = latestHandled == null ? 0 : latestHandled.getTime();
+		}
+		
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + (includeBotActivity ? 1231 : 1237);
+			result = prime * result + (int) (latestHandled ^ (latestHandled >>> 32));
+			result = prime * result + personID;
+			return result;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			return personID == other.personID && includeBotActivity == other.includeBotActivity
+					&& latestHandled == other.latestHandled;
+		}
+	}
+	
+	private final int maxSize;
+	private final LinkedHashMap<Key, String> histories;
+	private long hits;
+	private long misses;
+	
+	/**
+	 * Create a new history cache with the default maximum size
+	 */
+	public HistoryMarkupCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+	
+	/**
+	 * Create a new history cache which holds at most maxSize histories. When
+	 * full, the least recently used history is evicted.
+	 *
+	 * @param maxSize the maximum number of histories
+	 */
+	public HistoryMarkupCache(final int maxSize) {
+		if(maxSize <= 0)
+			throw new IllegalArgumentException("maxSize must be positive (got " + maxSize + ")");
+		
+		this.maxSize = maxSize;
+		this.histories = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+				return size() > HistoryMarkupCache.this.maxSize;
+			}
+		};
+	}
+	
+	/**
+	 * Get the rendered history for the given person, if we have it.
+	 *
+	 * @param personID the person the history is about
+	 * @param includeBotActivity if the history included bot activity
+	 * @param latestHandled the latest handled timestamp
+	 * @return the rendered history or null
+	 */
+	public synchronized String get(int personID, boolean includeBotActivity, Timestamp latestHandled) {
+		String result = histories.get(new Key(personID, includeBotActivity, latestHandled));
+		if(result == null)
+			misses++;
+		else
+			hits++;
+		return result;
+	}
+	
+	/**
+	 * Store the rendered history for the given person.
+	 *
+	 * @param personID the person the history is about
+	 * @param includeBotActivity if the history included bot activity
+	 * @param latestHandled the latest handled timestamp
+	 * @param history the rendered history
+	 */
+	public synchronized void put(int personID, boolean includeBotActivity, Timestamp latestHandled, String history) {
+		histories.put(new Key(personID, includeBotActivity, latestHandled), history);
+	}
+	
+	/**
+	 * Forget every history we have for the given person. This must be called whenever
+	 * something is added to the persons history.
+	 *
+	 * @param personID the person whose history changed
+	 */
+	public synchronized void invalidate(int personID) {
+		Iterator<Key> iter = histories.keySet().iterator();
+		while(iter.hasNext()) {
+			if(iter.next().personID == personID)
+				iter.remove();
+		}
+	}
+	
+	/**
+	 * Forget every history we have.
+	 */
+	public synchronized void clear() {
+		histories.clear();
+	}
+	
+	/**
+	 * @return the number of histories currently cached
+	 */
+	public synchronized int size() {
+		return histories.size();
+	}
+	
+	/**
+	 * @return the number of times get found a history
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * @return the number of times get did not find a history
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+}
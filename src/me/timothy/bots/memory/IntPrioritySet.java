@@ -0,0 +1,384 @@
+package me.timothy.bots.memory;
+
+import java.util.Arrays;
+
+/**
+ * A set of ints where each value has a long priority, which can cheaply list the values with
+ * the highest priorities. A value's priority can only go up while it's in the set; adding it
+ * again with a lower priority does nothing.
+ *
+ * The values are kept in a binary max-heap, and an open-addressing (linear probing) table
+ * remembers where in the heap each value is, so add, raise and remove are all O(log n) and
+ * nothing is boxed. Ties are broken by the smaller value, so the order is always the same
+ * for the same contents.
+ *
+ * This is not thread-safe.
+ *
+ * @author Timothy
+ */
+public class IntPrioritySet {
+	/** The default number of slots in a new table */
+	private static final int DEFAULT_CAPACITY = 16;
+	/** The table is grown once more than this fraction of it is in use */
+	private static final float MAX_LOAD = 0.5f;
+	
+	/** The values in the table */
+	private int[] keys;
+	/** The index in the heap of the value in the same slot of keys plus one, or 0 if the slot is unused */
+	private int[] positions;
+	private int mask;
+	private int resizeAt;
+	
+	/** The values in heap order */
+	private int[] heapValues;
+	/** The priority of the value at the same index in heapValues */
+	private long[] heapPriorities;
+	private int size;
+	
+	/** Heap indexes that top has yet to look at, kept as a heap themselves */
+	private int[] candidates;
+	
+	/**
+	 * Create a new, empty set
+	 */
+	public IntPrioritySet() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Create a new, empty set which can hold at least expected values before it
+	 * has to grow.
+	 *
+	 * @param expected the number of values you expect to add
+	 */
+	public IntPrioritySet(int expected) {
+		if(expected < 0)
+			throw new IllegalArgumentException("expected must not be negative (got " + expected + ")");
+		
+		int capacity = capacityFor(expected);
+		allocate(capacity);
+		heapValues = new int[Math.max(DEFAULT_CAPACITY, expected)];
+		heapPriorities = new long[heapValues.length];
+		candidates = new int[0];
+	}
+	
+	/**
+	 * Determine if the given value is in this set
+	 *
+	 * @param value the value
+	 * @return true if it is in the set, false otherwise
+	 */
+	public boolean contains(int value) {
+		return find(value) >= 0;
+	}
+	
+	/**
+	 * Get the priority of the given value
+	 *
+	 * @param value the value
+	 * @param absent what to return if the value is not in the set
+	 * @return the priority of value, or absent if it's not in the set
+	 */
+	public long getPriority(int value, long absent) {
+		int slot = find(value);
+		return slot < 0 ? absent : heapPriorities[positions[slot] - 1];
+	}
+	
+	/**
+	 * Add the given value to this set with the given priority, or raise its priority if it's
+	 * already there with a lower one.
+	 *
+	 * @param value the value
+	 * @param priority the priority
+	 * @return true if the set changed, false if the value was already there with at least this priority
+	 */
+	public boolean add(int value, long priority) {
+		int slot = hash(value) & mask;
+		while(positions[slot] != 0) {
+			if(keys[slot] == value) {
+				int index = positions[slot] - 1;
+				if(priority <= heapPriorities[index])
+					return false;
+				heapPriorities[index] = priority;
+				siftUp(index);
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		if(size == heapValues.length) {
+			heapValues = Arrays.copyOf(heapValues, size * 2);
+			heapPriorities = Arrays.copyOf(heapPriorities, size * 2);
+		}
+		keys[slot] = value;
+		positions[slot] = size + 1;
+		heapValues[size] = value;
+		heapPriorities[size] = priority;
+		size++;
+		siftUp(size - 1);
+		
+		if(size > resizeAt)
+			rehash(keys.length * 2);
+		return true;
+	}
+	
+	/**
+	 * Remove the given value from this set
+	 *
+	 * @param value the value
+	 * @return true if the set changed, false if it was not there
+	 */
+	public boolean remove(int value) {
+		int slot = find(value);
+		if(slot < 0)
+			return false;
+		
+		int index = positions[slot] - 1;
+		shiftBack(slot);
+		size--;
+		if(index != size) {
+			move(size, index);
+			siftDown(index);
+			siftUp(index);
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the number of values in this set
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return true if there are no values in this set
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Remove every value from this set. If the set had grown large its memory is released,
+	 * since a set that is cleared is usually about to be refilled with far fewer values.
+	 */
+	public void clear() {
+		if(keys.length > DEFAULT_CAPACITY * 64) {
+			allocate(DEFAULT_CAPACITY);
+			heapValues = new int[DEFAULT_CAPACITY];
+			heapPriorities = new long[DEFAULT_CAPACITY];
+		}else {
+			Arrays.fill(positions, 0);
+		}
+		size = 0;
+	}
+	
+	/**
+	 * Copy the up to values.length values with the highest priorities into values, highest
+	 * first, without removing them. This takes O(k log k) time for k values, no matter how
+	 * big the set is.
+	 *
+	 * @param values where to put the values
+	 * @param priorities where to put the priority of each value, or null
+	 * @return the number of values copied
+	 */
+	public int top(int[] values, long[] priorities) {
+		int limit = Math.min(values.length, size);
+		if(limit == 0)
+			return 0;
+		if(candidates.length < limit + 1)
+			candidates = new int[limit + 1];
+		
+		// Only the children of a value can be next, so the candidates never number more than limit + 1
+		int numCandidates = 1;
+		candidates[0] = 0;
+		for(int count = 0; count < limit; count++) {
+			int index = candidates[0];
+			values[count] = heapValues[index];
+			if(priorities != null)
+				priorities[count] = heapPriorities[index];
+			
+			candidates[0] = candidates[--numCandidates];
+			siftDownCandidate(0, numCandidates);
+			for(int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+				candidates[numCandidates] = child;
+				siftUpCandidate(numCandidates++);
+			}
+		}
+		return limit;
+	}
+	
+	/**
+	 * @return a new array containing every value in this set, in no particular order
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(heapValues, size);
+	}
+	
+	/**
+	 * Get the priority of every value in this set, in the same order as {@link #toArray()}
+	 *
+	 * @return a new array containing the priority of every value
+	 */
+	public long[] toPriorityArray() {
+		return Arrays.copyOf(heapPriorities, size);
+	}
+	
+	/**
+	 * Determine if the value at heap index a comes before the one at heap index b
+	 */
+	private boolean before(int a, int b) {
+		long pa = heapPriorities[a], pb = heapPriorities[b];
+		return pa > pb || (pa == pb && heapValues[a] < heapValues[b]);
+	}
+	
+	private void siftUp(int index) {
+		while(index > 0) {
+			int parent = (index - 1) >> 1;
+			if(!before(index, parent))
+				break;
+			swap(index, parent);
+			index = parent;
+		}
+	}
+	
+	private void siftDown(int index) {
+		while(true) {
+			int best = index;
+			int left = 2 * index + 1;
+			if(left < size && before(left, best))
+				best = left;
+			if(left + 1 < size && before(left + 1, best))
+				best = left + 1;
+			if(best == index)
+				break;
+			swap(index, best);
+			index = best;
+		}
+	}
+	
+	private void swap(int a, int b) {
+		int value = heapValues[a];
+		long priority = heapPriorities[a];
+		heapValues[a] = heapValues[b];
+		heapPriorities[a] = heapPriorities[b];
+		heapValues[b] = value;
+		heapPriorities[b] = priority;
+		positions[find(heapValues[a])] = a + 1;
+		positions[find(value)] = b + 1;
+	}
+	
+	/**
+	 * Move the value at heap index from to heap index to, overwriting whatever was there
+	 */
+	private void move(int from, int to) {
+		heapValues[to] = heapValues[from];
+		heapPriorities[to] = heapPriorities[from];
+		positions[find(heapValues[to])] = to + 1;
+	}
+	
+	private void siftUpCandidate(int index) {
+		while(index > 0) {
+			int parent = (index - 1) >> 1;
+			if(!before(candidates[index], candidates[parent]))
+				break;
+			int tmp = candidates[index];
+			candidates[index] = candidates[parent];
+			candidates[parent] = tmp;
+			index = parent;
+		}
+	}
+	
+	private void siftDownCandidate(int index, int numCandidates) {
+		while(true) {
+			int best = index;
+			int left = 2 * index + 1;
+			if(left < numCandidates && before(candidates[left], candidates[best]))
+				best = left;
+			if(left + 1 < numCandidates && before(candidates[left + 1], candidates[best]))
+				best = left + 1;
+			if(best == index)
+				break;
+			int tmp = candidates[index];
+			candidates[index] = candidates[best];
+			candidates[best] = tmp;
+			index = best;
+		}
+	}
+	
+	/**
+	 * @return the slot in the table with the given value, or -1 if it is not in the set
+	 */
+	private int find(int value) {
+		int slot = hash(value) & mask;
+		while(positions[slot] != 0) {
+			if(keys[slot] == value)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Fill the hole at the given slot by moving later entries of the same probe
+	 * run back into it, so that lookups never stop early at a false empty slot.
+	 *
+	 * @param hole the slot that was just emptied
+	 */
+	private void shiftBack(int hole) {
+		int slot = hole;
+		while(true) {
+			slot = (slot + 1) & mask;
+			if(positions[slot] == 0)
+				break;
+			
+			int home = hash(keys[slot]) & mask;
+			// The value can fill the hole unless its home lies cyclically in (hole, slot]
+			boolean homeBetween = hole <= slot ? (hole < home && home <= slot) : (hole < home || home <= slot);
+			if(!homeBetween) {
+				keys[hole] = keys[slot];
+				positions[hole] = positions[slot];
+				hole = slot;
+			}
+		}
+		positions[hole] = 0;
+	}
+	
+	private void rehash(int newCapacity) {
+		allocate(newCapacity);
+		for(int index = 0; index < size; index++) {
+			int slot = hash(heapValues[index]) & mask;
+			while(positions[slot] != 0)
+				slot = (slot + 1) & mask;
+			keys[slot] = heapValues[index];
+			positions[slot] = index + 1;
+		}
+	}
+	
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		positions = new int[capacity];
+		mask = capacity - 1;
+		resizeAt = (int) (capacity * MAX_LOAD);
+	}
+	
+	private static int capacityFor(int expected) {
+		long needed = (long) Math.ceil(expected / MAX_LOAD) + 1;
+		int capacity = DEFAULT_CAPACITY;
+		while(capacity < needed) {
+			if(capacity >= (1 << 30))
+				throw new IllegalArgumentException("Too many values for an IntPrioritySet: " + expected);
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+	
+	/**
+	 * Spreads the bits of the value so that sequential ids (which is what
+	 * auto increment keys are) do not end up in long adjacent runs.
+	 */
+	private static int hash(int value) {
+		int h = value * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
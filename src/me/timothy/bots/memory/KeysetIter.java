@@ -0,0 +1,182 @@
+package me.timothy.bots.memory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterates over rows from the database a fixed size page at a time, where each page starts
+ * strictly after the last row of the previous page (keyset pagination). Since the key is
+ * unique, the page size never has to grow no matter how many rows share a timestamp.
+ *
+ * If prefetching, as soon as a page arrives the next one is requested on a background thread,
+ * so by the time the caller has worked through a page the next one is usually already waiting.
+ * The background thread only ever fetches; skipping rows which were already handled happens on
+ * the callers thread. Since the caller is usually opening and committing units of work on its
+ * own connection, the pages must come from a different connection, or the selects would end up
+ * inside those units of work. Without prefetching, pages are fetched on the callers thread when
+ * the previous one runs out.
+ *
+ * The background thread is a daemon and goes away on its own shortly after the last fetch, but
+ * an iterator which is abandoned part way through should be closed so it stops using the
+ * connection.
+ *
+ * @author Timothy
+ *
+ * @param <A> the type of row
+ */
+public abstract class KeysetIter<A> {
+	private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+	
+	private final int pageSize;
+	private final ThreadPoolExecutor prefetcher;
+	
+	private List<A> page;
+	private int pageInd;
+	private boolean morePages;
+	private Future<List<A>> nextPage;
+	
+	/**
+	 * Create a new iterator which fetches pageSize rows at a time on the callers thread.
+	 * Subclasses must call {@link #start()} once they are ready for fetchPage to be called.
+	 *
+	 * @param pageSize the number of rows per page
+	 */
+	protected KeysetIter(int pageSize) {
+		this(pageSize, false);
+	}
+	
+	/**
+	 * Create a new iterator which fetches pageSize rows at a time. Subclasses must
+	 * call {@link #start()} once they are ready for fetchPage to be called.
+	 *
+	 * @param pageSize the number of rows per page
+	 * @param prefetch true to fetch every page after the first on a background thread
+	 */
+	protected KeysetIter(int pageSize, boolean prefetch) {
+		if(pageSize <= 0)
+			throw new IllegalArgumentException("pageSize must be positive (got " + pageSize + ")");
+		
+		this.pageSize = pageSize;
+		if(prefetch) {
+			this.prefetcher = new ThreadPoolExecutor(1, 1, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r) -> {
+				Thread thread = new Thread(r, getClass().getSimpleName() + " prefetch");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.prefetcher.allowCoreThreadTimeOut(true);
+		}else {
+			this.prefetcher = null;
+		}
+	}
+	
+	/**
+	 * Fetch the first page, and begin prefetching the second if prefetching.
+	 */
+	protected void start() {
+		page = Collections.emptyList();
+		pageInd = 0;
+		accept(fetchPage(null, pageSize));
+	}
+	
+	/**
+	 * Fetch up to num rows which come strictly after the given row, in key order.
+	 * If prefetching, every page after the first is fetched from a background thread.
+	 *
+	 * @param after the last row of the previous page, or null for the first page
+	 * @param num the maximum number of rows to return
+	 * @return the rows, in order
+	 */
+	protected abstract List<A> fetchPage(A after, int num);
+	
+	/**
+	 * Determine if the given row has already been handled and should be skipped.
+	 *
+	 * @param row the row
+	 * @return true to skip the row, false to return it
+	 */
+	protected abstract boolean isHandled(A row);
+	
+	/**
+	 * Get the next row that has not been handled yet
+	 *
+	 * @return the next row or null if there are no more
+	 */
+	public A next() {
+		while(true) {
+			if(pageInd < page.size()) {
+				A current = page.get(pageInd++);
+				if(!isHandled(current))
+					return current;
+				continue;
+			}
+			
+			if(!morePages)
+				return null;
+			
+			if(nextPage != null)
+				accept(awaitNextPage());
+			else
+				accept(fetchPage(page.get(page.size() - 1), pageSize));
+		}
+	}
+	
+	/**
+	 * Stop iterating. The iterator will not return anything else.
+	 */
+	public void close() {
+		morePages = false;
+		if(nextPage != null) {
+			nextPage.cancel(false);
+			nextPage = null;
+		}
+		page = Collections.emptyList();
+		if(prefetcher != null)
+			prefetcher.shutdown();
+	}
+	
+	private void accept(List<A> fetched) {
+		page = fetched;
+		pageInd = 0;
+		morePages = fetched.size() >= pageSize;
+		
+		if(prefetcher == null)
+			return;
+		
+		if(!morePages) {
+			prefetcher.shutdown();
+			return;
+		}
+		
+		final A last = fetched.get(fetched.size() - 1);
+		nextPage = prefetcher.submit(() -> fetchPage(last, pageSize));
+	}
+	
+	private List<A> awaitNextPage() {
+		boolean interrupted = false;
+		try {
+			while(true) {
+				try {
+					return nextPage.get();
+				}catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}finally {
+			nextPage = null;
+			if(interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+}
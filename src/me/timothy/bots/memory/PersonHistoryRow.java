@@ -0,0 +1,68 @@
+package me.timothy.bots.memory;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * A single row in the timeline of a person on the USL, already joined with the
+ * names that are needed to display it. This is what the PersonHistoryLoader hands
+ * out, one at a time, in the order they should be displayed.
+ * 
+ * @author Timothy
+ */
+public class PersonHistoryRow {
+	/**
+	 * The different things that can show up in a persons history
+	 */
+	public static enum RowType {
+		/** A handled unban request; uses modUsername and invalid */
+		UNBAN_REQUEST,
+		/** An unban by a moderator; uses modUsername and subreddit */
+		UNBAN,
+		/** A ban by a moderator; uses modUsername, subreddit and banDescription */
+		BAN,
+		/** A USLAction was created; uses tags */
+		LIST_UPDATE
+	}
+	
+	/** What kind of row this is */
+	public RowType type;
+	/** When this happened */
+	public Timestamp time;
+	/** The username of the moderator responsible, or null for list updates */
+	public String modUsername;
+	/** The subreddit this happened on, or null for unban requests and list updates */
+	public String subreddit;
+	/** The ban description for bans, otherwise null */
+	public String banDescription;
+	/** For unban requests, true if the request was denied */
+	public boolean invalid;
+	/** For list updates, the tags on the new action, otherwise null */
+	public List<String> tags;
+	
+	/**
+	 * @param type what kind of row this is
+	 * @param time when this happened
+	 * @param modUsername the moderator responsible or null
+	 * @param subreddit the subreddit or null
+	 * @param banDescription the ban description or null
+	 * @param invalid if the unban request was denied
+	 * @param tags the tags on the action or null
+	 */
+	public PersonHistoryRow(RowType type, Timestamp time, String modUsername, String subreddit, String banDescription,
+			boolean invalid, List<String> tags) {
+		this.type = type;
+		this.time = time;
+		this.modUsername = modUsername;
+		this.subreddit = subreddit;
+		this.banDescription = banDescription;
+		this.invalid = invalid;
+		this.tags = tags;
+	}
+	
+	@Override
+	public String toString() {
+		return "PersonHistoryRow [type=" + type + ", time=" + time + ", modUsername=" + modUsername + ", subreddit="
+				+ subreddit + ", banDescription=" + banDescription + ", invalid=" + invalid + ", tags=" + tags + "]";
+	}
+}
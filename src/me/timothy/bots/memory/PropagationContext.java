@@ -0,0 +1,262 @@
+package me.timothy.bots.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import me.timothy.bots.FileConfiguration;
+import me.timothy.bots.database.MappingDatabase;
+import me.timothy.bots.database.PropagatorSettingMapping;
+import me.timothy.bots.models.Hashtag;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.Person;
+import me.timothy.bots.models.PropagatorSetting.PropagatorSettingKey;
+import me.timothy.bots.models.Response;
+import me.timothy.bots.models.SubscribedHashtag;
+
+/**
+ * Everything the USLPropagator needs to know which does not depend on the action
+ * being propagated. This is loaded once per propagation loop by the propagator manager
+ * and then passed down, rather than having every action (and every subreddit within
+ * every action) go back to the database for the same subreddits, settings, bot account,
+ * responses and subscriptions.
+ *
+ * This is immutable once constructed. If the underlying tables change, a new context
+ * must be loaded for the changes to be seen.
+ *
+ * @author Timothy
+ */
+public class PropagationContext {
+	/**
+	 * The subreddits which receive bans from the list (i.e., are not write-only),
+	 * keyed by their id. Not null.
+	 */
+	public final Map<Integer, MonitoredSubreddit> readingSubreddits;
+	
+	/**
+	 * The subreddit which receives notifications for the list as a whole, or null if
+	 * it is not being monitored.
+	 */
+	public final MonitoredSubreddit notificationsSubreddit;
+	
+	/**
+	 * The account that the bot is running under, or null if it has not been seen yet
+	 */
+	public final Person bot;
+	
+	/**
+	 * True if we should not send messages about things we are choosing not to do
+	 *
+	 * @see PropagatorSettingKey#SUPPRESS_NO_OP_MESSAGES
+	 */
+	public final boolean suppressNoOpMessages;
+	
+	/** The body of each response, keyed by the name of the response */
+	private final Map<String, String> responses;
+	
+	/** Every hashtag, keyed by its id */
+	private final Map<Integer, Hashtag> hashtags;
+	
+	/** For each subreddit id, the ids of the hashtags it subscribes to (excluding deleted subscriptions) */
+	private final Map<Integer, Set<Integer>> subscriptions;
+	
+	/** The ids of the reading subreddits in ascending order; bit i in {@link #followers} is readingSubredditIDs[i] */
+	private final int[] readingSubredditIDs;
+	
+	/** For each hashtag id, which of the reading subreddits subscribe to it */
+	private final Map<Integer, BitSet> followers;
+	
+	/**
+	 * @param readingSubreddits the subreddits that receive bans keyed by id
+	 * @param notificationsSubreddit the subreddit that receives list-wide notifications
+	 * @param bot the person the bot is running as
+	 * @param suppressNoOpMessages if no-op messages should be suppressed
+	 * @param responses the response bodies keyed by name
+	 * @param hashtags the hashtags keyed by id
+	 * @param subscriptions the hashtag ids each subreddit subscribes to, keyed by subreddit id
+	 */
+	public PropagationContext(Map<Integer, MonitoredSubreddit> readingSubreddits, MonitoredSubreddit notificationsSubreddit,
+			Person bot, boolean suppressNoOpMessages, Map<String, String> responses, Map<Integer, Hashtag> hashtags,
+			Map<Integer, Set<Integer>> subscriptions) {
+		this.readingSubreddits = Collections.unmodifiableMap(readingSubreddits);
+		this.notificationsSubreddit = notificationsSubreddit;
+		this.bot = bot;
+		this.suppressNoOpMessages = suppressNoOpMessages;
+		this.responses = Collections.unmodifiableMap(responses);
+		this.hashtags = Collections.unmodifiableMap(hashtags);
+		this.subscriptions = Collections.unmodifiableMap(subscriptions);
+		
+		readingSubredditIDs = new int[readingSubreddits.size()];
+		int counter = 0;
+		for(int id : readingSubreddits.keySet()) {
+			readingSubredditIDs[counter++] = id;
+		}
+		Arrays.sort(readingSubredditIDs);
+		
+		followers = new HashMap<>();
+		for(int i = 0; i < readingSubredditIDs.length; i++) {
+			Set<Integer> tags = subscriptions.get(readingSubredditIDs[i]);
+			if(tags == null)
+				continue;
+			
+			for(int tagID : tags) {
+				BitSet bits = followers.get(tagID);
+				if(bits == null) {
+					bits = new BitSet(readingSubredditIDs.length);
+					followers.put(tagID, bits);
+				}
+				bits.set(i);
+			}
+		}
+	}
+	
+	/**
+	 * Get the body of the response with the given name.
+	 *
+	 * @param name the name of the response
+	 * @return the body of the response
+	 * @throws IllegalArgumentException if there is no response with that name
+	 */
+	public String getResponse(String name) {
+		String body = responses.get(name);
+		if(body == null)
+			throw new IllegalArgumentException("Missing response " + name);
+		return body;
+	}
+	
+	/**
+	 * Get the hashtag with the given id
+	 *
+	 * @param id the id of the hashtag
+	 * @return the hashtag with that id or null
+	 */
+	public Hashtag getHashtag(int id) {
+		return hashtags.get(id);
+	}
+	
+	/**
+	 * Get every hashtag
+	 *
+	 * @return all the hashtags, in no particular order
+	 */
+	public Collection<Hashtag> getHashtags() {
+		return hashtags.values();
+	}
+	
+	/**
+	 * Determines if the given subreddit has an active subscription to the given hashtag
+	 *
+	 * @param subredditID the id of the monitored subreddit
+	 * @param hashtagID the id of the hashtag
+	 * @return true if the subreddit follows that hashtag, false otherwise
+	 */
+	public boolean isSubscribed(int subredditID, int hashtagID) {
+		Set<Integer> tags = subscriptions.get(subredditID);
+		return tags != null && tags.contains(hashtagID);
+	}
+	
+	/**
+	 * Get the subreddits which receive bans from the list and have an active subscription
+	 * to at least one of the given hashtags.
+	 *
+	 * @param hashtagIDs the ids of the hashtags
+	 * @return the ids of the reading subreddits which follow any of those hashtags, in ascending order
+	 */
+	public List<Integer> getReadingSubredditsFollowingAny(Collection<Integer> hashtagIDs) {
+		BitSet matches = new BitSet(readingSubredditIDs.length);
+		for(int tagID : hashtagIDs) {
+			BitSet bits = followers.get(tagID);
+			if(bits != null)
+				matches.or(bits);
+		}
+		
+		List<Integer> result = new ArrayList<>(matches.cardinality());
+		for(int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+			result.add(readingSubredditIDs[i]);
+		}
+		return result;
+	}
+	
+	/**
+	 * Get the hashtags that the given subreddit has an active subscription to
+	 *
+	 * @param subredditID the id of the monitored subreddit
+	 * @return the hashtags that subreddit follows
+	 */
+	public List<Hashtag> getSubscribedHashtags(int subredditID) {
+		Set<Integer> tags = subscriptions.get(subredditID);
+		if(tags == null)
+			return Collections.emptyList();
+		
+		List<Hashtag> result = new ArrayList<>(tags.size());
+		for(int tagID : tags) {
+			result.add(hashtags.get(tagID));
+		}
+		return result;
+	}
+	
+	/**
+	 * Load the propagation context from the database. If the suppress no-op messages setting
+	 * has never been set, it is initialized to false.
+	 *
+	 * @param database the database to load from
+	 * @param config the configuration, for the bot username and notifications subreddit
+	 * @return the current propagation context
+	 */
+	public static PropagationContext load(MappingDatabase database, FileConfiguration config) {
+		Map<Integer, MonitoredSubreddit> readingSubreddits = new HashMap<>();
+		MonitoredSubreddit notificationsSubreddit = null;
+		String notificationsSubName = config.getProperty("general.notifications_sub");
+		for(MonitoredSubreddit sub : database.getMonitoredSubredditMapping().fetchAll()) {
+			if(!sub.writeOnly) {
+				readingSubreddits.put(sub.id, sub);
+			}
+			
+			if(notificationsSubName != null && sub.subreddit.equalsIgnoreCase(notificationsSubName)) {
+				notificationsSubreddit = sub;
+			}
+		}
+		
+		Person bot = database.getPersonMapping().fetchByUsername(config.getProperty("user.username"));
+		
+		PropagatorSettingMapping settingsMap = database.getPropagatorSettingMapping();
+		String suppressNoOpMessVal = settingsMap.get(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES);
+		if(suppressNoOpMessVal == null) {
+			settingsMap.put(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES, "false");
+		}
+		boolean suppressNoOpMess = suppressNoOpMessVal != null && suppressNoOpMessVal.equals("true");
+		
+		Map<String, String> responses = new HashMap<>();
+		for(Response resp : database.getResponseMapping().fetchAll()) {
+			responses.put(resp.name, resp.responseBody);
+		}
+		
+		Map<Integer, Hashtag> hashtags = new HashMap<>();
+		for(Hashtag tag : database.getHashtagMapping().fetchAll()) {
+			hashtags.put(tag.id, tag);
+		}
+		
+		Map<Integer, Set<Integer>> subscriptions = new HashMap<>();
+		for(SubscribedHashtag subTag : database.getSubscribedHashtagMapping().fetchAll()) {
+			if(subTag.deletedAt != null)
+				continue;
+			
+			Set<Integer> tags = subscriptions.get(subTag.monitoredSubredditID);
+			if(tags == null) {
+				tags = new HashSet<>();
+				subscriptions.put(subTag.monitoredSubredditID, tags);
+			}
+			tags.add(subTag.hashtagID);
+		}
+		
+		return new PropagationContext(readingSubreddits, notificationsSubreddit, bot, suppressNoOpMess,
+				responses, hashtags, subscriptions);
+	}
+}
@@ -3,6 +3,7 @@ package me.timothy.bots.memory;
 import java.util.List;
 
 import me.timothy.bots.models.Person;
+import me.timothy.bots.models.TemporaryAuthRequest;
 
 /**
  * The result of the temporary auth granter
@@ -10,6 +11,9 @@ import me.timothy.bots.models.Person;
  * @author Timothy
  */
 public class TemporaryAuthGranterResult {
+	/** The request that was handled */
+	public final TemporaryAuthRequest request;
+	
 	/** The person who requested authorization */
 	public final Person requester;
 	
@@ -25,12 +29,14 @@ public class TemporaryAuthGranterResult {
 	/**
 	 * Creates a new temporary auth granter with the given information
 	 * 
+	 * @param request the request that was handled
 	 * @param requester the person who requested
 	 * @param verified if they were verified
 	 * @param userPMs the pms to send out
 	 * @param subredditPMs the sub pms to send out
 	 */
-	public TemporaryAuthGranterResult(Person requester, boolean verified, List<UserPMInformation> userPMs, List<ModmailPMInformation> subredditPMs) {
+	public TemporaryAuthGranterResult(TemporaryAuthRequest request, Person requester, boolean verified, List<UserPMInformation> userPMs, List<ModmailPMInformation> subredditPMs) {
+		this.request = request;
 		this.requester = requester;
 		this.verified = verified;
 		this.userPMs = userPMs;
@@ -0,0 +1,225 @@
+package me.timothy.bots.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.timothy.bots.database.MappingDatabase;
+import me.timothy.bots.models.BanHistory;
+import me.timothy.bots.models.HandledModAction;
+import me.timothy.bots.models.Person;
+import me.timothy.bots.models.TraditionalScammer;
+import me.timothy.bots.models.USLAction;
+import me.timothy.bots.models.USLActionBanHistory;
+import me.timothy.bots.models.USLActionHashtag;
+import me.timothy.bots.models.USLActionUnbanHistory;
+import me.timothy.bots.models.UnbanHistory;
+
+/**
+ * Everything the USLPropagator needs to know about a single action: the person it is for,
+ * its hashtags, whether they are on the traditional list, and the ban and unban histories
+ * attached to it on each subreddit along with their handled mod actions.
+ *
+ * These are loaded for many actions at once with a fixed number of queries, so that
+ * propagating a batch of dirty persons doesn't cost a round trip for every person and
+ * subreddit.
+ *
+ * @author Timothy
+ */
+public class USLActionBundle {
+	/** The action */
+	public final USLAction action;
+	
+	/** The person the action is for */
+	public final Person person;
+	
+	/** The hashtags the person is banned with, in order of hashtag id */
+	public final List<USLActionHashtag> tags;
+	
+	/** The persons entry on the traditional list, or null if they are not on it */
+	public final TraditionalScammer traditionalScammer;
+	
+	/** The ban history attached to the action on each subreddit, keyed by subreddit id */
+	private final Map<Integer, BanHistory> bans;
+	
+	/** The unban history attached to the action on each subreddit, keyed by subreddit id */
+	private final Map<Integer, UnbanHistory> unbans;
+	
+	/** The handled mod actions for the bans and unbans, keyed by their id */
+	private final Map<Integer, HandledModAction> handledModActions;
+	
+	/**
+	 * @param action the action
+	 * @param person the person the action is for
+	 * @param tags the hashtags of the action
+	 * @param traditionalScammer the persons traditional list entry or null
+	 * @param bans the ban histories attached to the action, keyed by subreddit id
+	 * @param unbans the unban histories attached to the action, keyed by subreddit id
+	 * @param handledModActions the handled mod actions of those histories, keyed by id
+	 */
+	public USLActionBundle(USLAction action, Person person, List<USLActionHashtag> tags, TraditionalScammer traditionalScammer,
+			Map<Integer, BanHistory> bans, Map<Integer, UnbanHistory> unbans, Map<Integer, HandledModAction> handledModActions) {
+		this.action = action;
+		this.person = person;
+		this.tags = Collections.unmodifiableList(tags);
+		this.traditionalScammer = traditionalScammer;
+		this.bans = bans;
+		this.unbans = unbans;
+		this.handledModActions = handledModActions;
+	}
+	
+	/**
+	 * Get the ban history attached to the action on the given subreddit
+	 *
+	 * @param subredditID the id of the monitored subreddit
+	 * @return the ban history, or null if there isn't one
+	 */
+	public BanHistory getBan(int subredditID) {
+		return bans.get(subredditID);
+	}
+	
+	/**
+	 * Get the unban history attached to the action on the given subreddit
+	 *
+	 * @param subredditID the id of the monitored subreddit
+	 * @return the unban history, or null if there isn't one
+	 */
+	public UnbanHistory getUnban(int subredditID) {
+		return unbans.get(subredditID);
+	}
+	
+	/**
+	 * Get the handled mod action of one of the ban or unban histories attached to the action
+	 *
+	 * @param id the id of the handled mod action
+	 * @return the handled mod action
+	 */
+	public HandledModAction getHandledModAction(int id) {
+		return handledModActions.get(id);
+	}
+	
+	/**
+	 * Load the latest action of each of the given persons along with everything the propagator
+	 * needs to know about it.
+	 *
+	 * @param database the database to load from
+	 * @param personIDs the persons
+	 * @return the bundle for each person that has an action, keyed by person id
+	 */
+	public static Map<Integer, USLActionBundle> loadLatest(MappingDatabase database, Collection<Integer> personIDs) {
+		List<USLAction> actions = database.getUSLActionMapping().fetchLatestByPersons(personIDs);
+		
+		Map<Integer, USLActionBundle> result = new HashMap<>();
+		for(USLActionBundle bundle : load(database, actions)) {
+			result.put(bundle.action.personID, bundle);
+		}
+		return result;
+	}
+	
+	/**
+	 * Load everything the propagator needs to know about each of the given actions. This is
+	 * a fixed number of queries no matter how many actions there are.
+	 *
+	 * @param database the database to load from
+	 * @param actions the actions
+	 * @return a bundle for each action, in the same order
+	 */
+	public static List<USLActionBundle> load(MappingDatabase database, List<USLAction> actions) {
+		if(actions.isEmpty())
+			return Collections.emptyList();
+		
+		List<Integer> actionIDs = new ArrayList<>(actions.size());
+		List<Integer> personIDs = new ArrayList<>(actions.size());
+		for(USLAction action : actions) {
+			actionIDs.add(action.id);
+			personIDs.add(action.personID);
+		}
+		
+		Map<Integer, Person> persons = new HashMap<>();
+		for(Person person : database.getPersonMapping().fetchByIDs(personIDs)) {
+			persons.put(person.id, person);
+		}
+		
+		Map<Integer, List<USLActionHashtag>> tags = new HashMap<>();
+		for(USLActionHashtag tag : database.getUSLActionHashtagMapping().fetchByUSLActionIDs(actionIDs)) {
+			tags.computeIfAbsent(tag.actionID, (k) -> new ArrayList<>()).add(tag);
+		}
+		
+		Map<Integer, TraditionalScammer> tradScammers = new HashMap<>();
+		for(TraditionalScammer tradScammer : database.getTraditionalScammerMapping().fetchByPersonIDs(personIDs)) {
+			tradScammers.put(tradScammer.personID, tradScammer);
+		}
+		
+		List<USLActionBanHistory> actionBans = database.getUSLActionBanHistoryMapping().fetchByUSLActionIDs(actionIDs);
+		List<USLActionUnbanHistory> actionUnbans = database.getUSLActionUnbanHistoryMapping().fetchByUSLActionIDs(actionIDs);
+		
+		List<Integer> banIDs = new ArrayList<>(actionBans.size());
+		for(USLActionBanHistory actionBan : actionBans) {
+			banIDs.add(actionBan.banHistoryID);
+		}
+		List<Integer> unbanIDs = new ArrayList<>(actionUnbans.size());
+		for(USLActionUnbanHistory actionUnban : actionUnbans) {
+			unbanIDs.add(actionUnban.unbanHistoryID);
+		}
+		
+		Map<Integer, BanHistory> bansByID = new HashMap<>();
+		for(BanHistory ban : database.getBanHistoryMapping().fetchByIDs(banIDs)) {
+			bansByID.put(ban.id, ban);
+		}
+		Map<Integer, UnbanHistory> unbansByID = new HashMap<>();
+		for(UnbanHistory unban : database.getUnbanHistoryMapping().fetchByIDs(unbanIDs)) {
+			unbansByID.put(unban.id, unban);
+		}
+		
+		List<Integer> hmaIDs = new ArrayList<>(bansByID.size() + unbansByID.size());
+		for(BanHistory ban : bansByID.values()) {
+			hmaIDs.add(ban.handledModActionID);
+		}
+		for(UnbanHistory unban : unbansByID.values()) {
+			hmaIDs.add(unban.handledModActionID);
+		}
+		Map<Integer, HandledModAction> hmas = new HashMap<>();
+		for(HandledModAction hma : database.getHandledModActionMapping().fetchByIDs(hmaIDs)) {
+			hmas.put(hma.id, hma);
+		}
+		
+		// When an action somehow has more than one history on a subreddit, the oldest is used
+		Map<Integer, Map<Integer, BanHistory>> bans = new HashMap<>();
+		for(USLActionBanHistory actionBan : actionBans) {
+			BanHistory ban = bansByID.get(actionBan.banHistoryID);
+			HandledModAction hma = ban == null ? null : hmas.get(ban.handledModActionID);
+			if(hma == null)
+				continue;
+			
+			Map<Integer, BanHistory> forAction = bans.computeIfAbsent(actionBan.actionID, (k) -> new HashMap<>());
+			BanHistory existing = forAction.get(hma.monitoredSubredditID);
+			if(existing == null || existing.id > ban.id)
+				forAction.put(hma.monitoredSubredditID, ban);
+		}
+		Map<Integer, Map<Integer, UnbanHistory>> unbans = new HashMap<>();
+		for(USLActionUnbanHistory actionUnban : actionUnbans) {
+			UnbanHistory unban = unbansByID.get(actionUnban.unbanHistoryID);
+			HandledModAction hma = unban == null ? null : hmas.get(unban.handledModActionID);
+			if(hma == null)
+				continue;
+			
+			Map<Integer, UnbanHistory> forAction = unbans.computeIfAbsent(actionUnban.actionID, (k) -> new HashMap<>());
+			UnbanHistory existing = forAction.get(hma.monitoredSubredditID);
+			if(existing == null || existing.id > unban.id)
+				forAction.put(hma.monitoredSubredditID, unban);
+		}
+		
+		List<USLActionBundle> result = new ArrayList<>(actions.size());
+		for(USLAction action : actions) {
+			List<USLActionHashtag> actionTags = tags.getOrDefault(action.id, new ArrayList<>());
+			actionTags.sort((a, b) -> Integer.compare(a.hashtagID, b.hashtagID));
+			
+			result.add(new USLActionBundle(action, persons.get(action.personID), actionTags, tradScammers.get(action.personID),
+					bans.getOrDefault(action.id, Collections.emptyMap()), unbans.getOrDefault(action.id, Collections.emptyMap()), hmas));
+		}
+		return result;
+	}
+}
@@ -8,18 +8,39 @@ package me.timothy.bots.models;
  * lets us know if the action has been modified since we have last looked at it. It doesn't mean
  * that the person is unkempt.
  * 
+ * Urgent persons are sent to the propagator before everyone else, and otherwise those with the
+ * highest priority go first. Only the person id is part of equals and hashCode, since a person
+ * is either dirty or not.
+ * 
  * @author Timothy
  */
 public class DirtyPerson {
 	/** The id of the person which needs to be rescanned */
 	public int personID;
+	/** When the action that made this person dirty happened in milliseconds since the epoch, or 0 if unknown */
+	public long priority;
+	/** True if this person was dirtied by something that just happened on reddit */
+	public boolean urgent;
 
 	/**
+	 * Create a dirty person with the lowest priority
+	 * 
 	 * @param personId the person which needs to be sent to the propagator
 	 */
 	public DirtyPerson(int personId) {
+		this(personId, 0, false);
+	}
+
+	/**
+	 * @param personId the person which needs to be sent to the propagator
+	 * @param priority when the action that made them dirty happened, in milliseconds since the epoch
+	 * @param urgent if they were dirtied by something that just happened on reddit
+	 */
+	public DirtyPerson(int personId, long priority, boolean urgent) {
 		super();
 		this.personID = personId;
+		this.priority = priority;
+		this.urgent = urgent;
 	}
 
 	@Override
@@ -50,6 +71,6 @@ public class DirtyPerson {
 
 	@Override
 	public String toString() {
-		return "DirtyPerson [personId=" + personID + "]";
+		return "DirtyPerson [personId=" + personID + ", priority=" + priority + ", urgent=" + urgent + "]";
 	}
 }
@@ -12,6 +12,7 @@ public class MonitoredSubreddit {
 	public boolean silent;
 	public boolean readOnly;
 	public boolean writeOnly;
+	public boolean modmailDigest;
 	
 	/**
 	 * Initializes a new monitored subreddit using the given information.
@@ -23,11 +24,26 @@ public class MonitoredSubreddit {
 	 * @param writeOnly if the subreddit only bans from the list, but cannot write to the list
 	 */
 	public MonitoredSubreddit(int id, String subreddit, boolean silent, boolean readOnly, boolean writeOnly) {
+		this(id, subreddit, silent, readOnly, writeOnly, false);
+	}
+	
+	/**
+	 * Initializes a new monitored subreddit using the given information.
+	 * 
+	 * @param id id (use -1 if you don't have one)
+	 * @param subreddit the subreddit
+	 * @param silent if the subreddit does not receieve pm alerts
+	 * @param readOnly if the subreddit does not ban from the list, only gives bans to the list
+	 * @param writeOnly if the subreddit only bans from the list, but cannot write to the list
+	 * @param modmailDigest if the modmail we send the subreddit is combined into as few messages as possible
+	 */
+	public MonitoredSubreddit(int id, String subreddit, boolean silent, boolean readOnly, boolean writeOnly, boolean modmailDigest) {
 		this.id = id;
 		this.subreddit = subreddit;
 		this.silent = silent;
 		this.readOnly = readOnly;
 		this.writeOnly = writeOnly;
+		this.modmailDigest = modmailDigest;
 	}
 	
 	@Override
@@ -39,6 +55,7 @@ public class MonitoredSubreddit {
 		result = prime * result + Boolean.hashCode(silent);
 		result = prime * result + Boolean.hashCode(readOnly);
 		result = prime * result + Boolean.hashCode(writeOnly);
+		result = prime * result + Boolean.hashCode(modmailDigest);
 		return result;
 	}
 
@@ -64,12 +81,14 @@ public class MonitoredSubreddit {
 			return false;
 		if (writeOnly != other.writeOnly)
 			return false;
+		if (modmailDigest != other.modmailDigest)
+			return false;
 		return true;
 	}
 
 	@Override
 	public String toString() {
 		return "MonitoredSubreddit [id=" + id + ", subreddit=" + subreddit + ", silent=" + silent + ", readOnly="
-				+ readOnly + ", writeOnly=" + writeOnly + "]";
+				+ readOnly + ", writeOnly=" + writeOnly + ", modmailDigest=" + modmailDigest + "]";
 	}
 }
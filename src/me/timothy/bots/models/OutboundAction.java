@@ -0,0 +1,196 @@
+package me.timothy.bots.models;
+
+import java.sql.Timestamp;
+
+/**
+ * Something we need to do on reddit - a ban, an unban, some modmail or a personal
+ * message - which is waiting in the outbound queue to be sent. Anything which comes
+ * up with reddit actions puts them here, and the USLOutboundQueue sends them out as
+ * quickly as reddit allows.
+ *
+ * @author Timothy
+ */
+public class OutboundAction {
+	/** Ban personID on monitoredSubredditID, with body as the message to the user */
+	public static final String BAN = "ban";
+	/** Unban personID on monitoredSubredditID */
+	public static final String UNBAN = "unban";
+	/** Send modmail with title and body to monitoredSubredditID */
+	public static final String MODMAIL = "modmail";
+	/**
+	 * Modmail like MODMAIL to a subreddit which wants a digest. These are not sent by
+	 * themselves; they are combined into as few MODMAIL actions as possible first.
+	 */
+	public static final String MODMAIL_DIGEST = "modmail_digest";
+	/** Send a personal message with title and body to personID */
+	public static final String USER_PM = "user_pm";
+
+	/** Database row id or -1 if not yet in the database */
+	public int id;
+	/** Unique to what caused this action, so queueing the same thing twice only sends it once */
+	public String idempotencyKey;
+	/** What to do; one of BAN, UNBAN, MODMAIL, MODMAIL_DIGEST or USER_PM */
+	public String actionType;
+	/** The subreddit the action is on, or null for a personal message */
+	public Integer monitoredSubredditID;
+	/** The person the action is about, or null for modmail */
+	public Integer personID;
+	/** The title of the message, or null for a ban or unban */
+	public String title;
+	/** The body of the message, or the message to the user for a ban, or null for an unban */
+	public String body;
+	/** The subreddit ban reason for a ban, otherwise null */
+	public String banReason;
+	/** The note to the moderators for a ban, otherwise null */
+	public String banNote;
+	/** How many times we have tried to send this */
+	public int attempts;
+	/** When this was queued */
+	public Timestamp createdAt;
+	/** When we should next try to send this */
+	public Timestamp nextAttemptAt;
+	/** When this was sent, or null if it has not been */
+	public Timestamp sentAt;
+	/** When we gave up sending this, or null if we have not */
+	public Timestamp failedAt;
+
+	/**
+	 * @param id database row id or -1 if not yet in the database
+	 * @param idempotencyKey unique to what caused this action
+	 * @param actionType one of BAN, UNBAN, MODMAIL, MODMAIL_DIGEST or USER_PM
+	 * @param monitoredSubredditID the subreddit the action is on, or null for a personal message
+	 * @param personID the person the action is about, or null for modmail
+	 * @param title the title of the message, or null for a ban or unban
+	 * @param body the body of the message or the ban message, or null for an unban
+	 * @param banReason the ban reason for a ban, otherwise null
+	 * @param banNote the note to the moderators for a ban, otherwise null
+	 * @param attempts how many times we have tried to send this
+	 * @param createdAt when this was queued
+	 * @param nextAttemptAt when we should next try to send this
+	 * @param sentAt when this was sent, or null
+	 * @param failedAt when we gave up sending this, or null
+	 */
+	public OutboundAction(int id, String idempotencyKey, String actionType, Integer monitoredSubredditID, Integer personID,
+			String title, String body, String banReason, String banNote, int attempts, Timestamp createdAt,
+			Timestamp nextAttemptAt, Timestamp sentAt, Timestamp failedAt) {
+		this.id = id;
+		this.idempotencyKey = idempotencyKey;
+		this.actionType = actionType;
+		this.monitoredSubredditID = monitoredSubredditID;
+		this.personID = personID;
+		this.title = title;
+		this.body = body;
+		this.banReason = banReason;
+		this.banNote = banNote;
+		this.attempts = attempts;
+		this.createdAt = createdAt;
+		this.nextAttemptAt = nextAttemptAt;
+		this.sentAt = sentAt;
+		this.failedAt = failedAt;
+	}
+
+	/**
+	 * Determines if this is potentially viable for saving in the database without
+	 * doing any foreign key or uniqueness checks
+	 *
+	 * @return if this is a potentially viable entry in the database
+	 */
+	public boolean isValid() {
+		if(idempotencyKey == null || actionType == null || createdAt == null || nextAttemptAt == null || attempts < 0)
+			return false;
+
+		switch(actionType) {
+		case BAN:
+		case UNBAN:
+			return monitoredSubredditID != null && personID != null;
+		case MODMAIL:
+		case MODMAIL_DIGEST:
+			return monitoredSubredditID != null && title != null && body != null;
+		case USER_PM:
+			return personID != null && title != null && body != null;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @return true if this has not been sent and we have not given up on it
+	 */
+	public boolean isPending() {
+		return sentAt == null && failedAt == null;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + id;
+		result = prime * result + ((idempotencyKey == null) ? 0 : idempotencyKey.hashCode());
+		result = prime * result + ((actionType == null) ? 0 : actionType.hashCode());
+		result = prime * result + ((monitoredSubredditID == null) ? 0 : monitoredSubredditID.hashCode());
+		result = prime * result + ((personID == null) ? 0 : personID.hashCode());
+		result = prime * result + ((title == null) ? 0 : title.hashCode());
+		result = prime * result + ((body == null) ? 0 : body.hashCode());
+		result = prime * result + ((banReason == null) ? 0 : banReason.hashCode());
+		result = prime * result + ((banNote == null) ? 0 : banNote.hashCode());
+		result = prime * result + attempts;
+		result = prime * result + ((createdAt == null) ? 0 : createdAt.hashCode());
+		result = prime * result + ((nextAttemptAt == null) ? 0 : nextAttemptAt.hashCode());
+		result = prime * result + ((sentAt == null) ? 0 : sentAt.hashCode());
+		result = prime * result + ((failedAt == null) ? 0 : failedAt.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		OutboundAction other = (OutboundAction) obj;
+		if (id != other.id)
+			return false;
+		if (!equal(idempotencyKey, other.idempotencyKey))
+			return false;
+		if (!equal(actionType, other.actionType))
+			return false;
+		if (!equal(monitoredSubredditID, other.monitoredSubredditID))
+			return false;
+		if (!equal(personID, other.personID))
+			return false;
+		if (!equal(title, other.title))
+			return false;
+		if (!equal(body, other.body))
+			return false;
+		if (!equal(banReason, other.banReason))
+			return false;
+		if (!equal(banNote, other.banNote))
+			return false;
+		if (attempts != other.attempts)
+			return false;
+		if (!equal(createdAt, other.createdAt))
+			return false;
+		if (!equal(nextAttemptAt, other.nextAttemptAt))
+			return false;
+		if (!equal(sentAt, other.sentAt))
+			return false;
+		if (!equal(failedAt, other.failedAt))
+			return false;
+		return true;
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	@Override
+	public String toString() {
+		return "OutboundAction [id=" + id + ", idempotencyKey=" + idempotencyKey + ", actionType=" + actionType
+				+ ", monitoredSubredditID=" + monitoredSubredditID + ", personID=" + personID + ", title=" + title
+				+ ", body=" + body + ", banReason=" + banReason + ", banNote=" + banNote + ", attempts=" + attempts
+				+ ", createdAt=" + createdAt + ", nextAttemptAt=" + nextAttemptAt + ", sentAt=" + sentAt
+				+ ", failedAt=" + failedAt + "]";
+	}
+}
@@ -13,7 +13,15 @@ public class PropagatorSetting {
 		 * "Not banning because reasons", which are messages stating things we *won't* do. This setting should be the
 		 * string "true" or "false" and is automatically toggled off 
 		 */
-		SUPPRESS_NO_OP_MESSAGES("suppress_no_op")
+		SUPPRESS_NO_OP_MESSAGES("suppress_no_op"),
+		
+		/**
+		 * The last handled mod action or unban request that the propagator manager committed the effects of
+		 * while converting reddit actions to usl actions, as "time:source:id" where source is 0 for handled mod
+		 * actions and 1 for unban requests. This is written in the same transaction as those effects so that after
+		 * a crash we can tell which events need to be redone. 
+		 */
+		LAST_MEANING_EVENT("last_meaning_event")
 		;
 		
 		public final String stringRepr;
@@ -25,6 +33,8 @@ public class PropagatorSetting {
 		public static PropagatorSettingKey fromDatabase(String dbVal) {
 			if(dbVal.equals(SUPPRESS_NO_OP_MESSAGES.stringRepr))
 				return SUPPRESS_NO_OP_MESSAGES;
+			if(dbVal.equals(LAST_MEANING_EVENT.stringRepr))
+				return LAST_MEANING_EVENT;
 			
 			throw new IllegalArgumentException("Unknown propagator setting key: " + dbVal);
 		}
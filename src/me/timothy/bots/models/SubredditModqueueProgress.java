@@ -1,6 +1,9 @@
 package me.timothy.bots.models;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * This table is one-to-one with MonitoredSubreddits. It provides information
@@ -8,9 +11,23 @@ import java.sql.Timestamp;
  * the modqueue, as well as enough information to continue from where it let
  * off. 
  * 
+ * <p>Bans and unbans are fetched separately, asking reddit for only that type
+ * of action, so each has its own pagination ids and its own forward search. 
+ * searchForward is true while either type is still searching forward, and 
+ * lastTimeHadFullHistory is only set when both types have been caught up. The
+ * untyped latestModActionID and newestModActionID are from before the mod log
+ * was filtered by type; they are no longer used for scanning.</p>
+ * 
  * @author Timothy
  */
 public class SubredditModqueueProgress {
+	/** The mod log type for bans */
+	public static final String BAN_TYPE = "banuser";
+	/** The mod log type for unbans */
+	public static final String UNBAN_TYPE = "unbanuser";
+	/** Every mod log type that we scan for, each with its own pagination ids */
+	public static final List<String> TYPES = Collections.unmodifiableList(Arrays.asList(BAN_TYPE, UNBAN_TYPE));
+	
 	/** Unique identifier in database */
 	public int id;
 	/** Which subreddit */
@@ -25,18 +42,38 @@ public class SubredditModqueueProgress {
 	public Timestamp updatedAt;
 	/** The last time when we had a complete history of this history, or null */
 	public Timestamp lastTimeHadFullHistory;
+	/** True if we have not reached the oldest ban on reddit */
+	public boolean banSearchForward;
+	/** The latest/OLDEST ban mod action id that has been retrieved from reddit */
+	public String banLatestModActionID;
+	/** The newest ban mod action id that has been retrieved from reddit */
+	public String banNewestModActionID;
+	/** True if we have not reached the oldest unban on reddit */
+	public boolean unbanSearchForward;
+	/** The latest/OLDEST unban mod action id that has been retrieved from reddit */
+	public String unbanLatestModActionID;
+	/** The newest unban mod action id that has been retrieved from reddit */
+	public String unbanNewestModActionID;
 	
 	/**
 	 * @param id id (or -1 if not in database yet)
 	 * @param monitoredSubredditID the id of the monitoredsubreddit
-	 * @param searchForward if latestHandledModActionID is null or less than the latest one on reddit
-	 * @param latestModActionID the latest/OLDEST HandledModAction id that was retrieved from this subreddit. may be null
-	 * @param newestModActionID the newest/YOUNGEST HandledModAction id that was retrieved from this subreddit. may be null
+	 * @param searchForward if either type is still searching forward
+	 * @param latestModActionID the latest/OLDEST mod action id from before the mod log was filtered by type. may be null
+	 * @param newestModActionID the newest/YOUNGEST mod action id from before the mod log was filtered by type. may be null
 	 * @param updatedAt when this was last updated
-	 * @param lastTimeHadFullHistory the last time that we had a full history of this subreddit
+	 * @param lastTimeHadFullHistory the last time that we had a full history of both types on this subreddit
+	 * @param banSearchForward if we have not reached the oldest ban on reddit
+	 * @param banLatestModActionID the latest/OLDEST ban mod action id that was retrieved. may be null
+	 * @param banNewestModActionID the newest/YOUNGEST ban mod action id that was retrieved. may be null
+	 * @param unbanSearchForward if we have not reached the oldest unban on reddit
+	 * @param unbanLatestModActionID the latest/OLDEST unban mod action id that was retrieved. may be null
+	 * @param unbanNewestModActionID the newest/YOUNGEST unban mod action id that was retrieved. may be null
 	 */
 	public SubredditModqueueProgress(int id, int monitoredSubredditID, boolean searchForward, String latestModActionID,
-			String newestModActionID, Timestamp updatedAt, Timestamp lastTimeHadFullHistory) {
+			String newestModActionID, Timestamp updatedAt, Timestamp lastTimeHadFullHistory, boolean banSearchForward,
+			String banLatestModActionID, String banNewestModActionID, boolean unbanSearchForward, 
+			String unbanLatestModActionID, String unbanNewestModActionID) {
 		this.id = id;
 		this.monitoredSubredditID = monitoredSubredditID;
 		this.searchForward = searchForward;
@@ -44,6 +81,106 @@ public class SubredditModqueueProgress {
 		this.newestModActionID = newestModActionID;
 		this.updatedAt = updatedAt;
 		this.lastTimeHadFullHistory = lastTimeHadFullHistory;
+		this.banSearchForward = banSearchForward;
+		this.banLatestModActionID = banLatestModActionID;
+		this.banNewestModActionID = banNewestModActionID;
+		this.unbanSearchForward = unbanSearchForward;
+		this.unbanLatestModActionID = unbanLatestModActionID;
+		this.unbanNewestModActionID = unbanNewestModActionID;
+	}
+	
+	/**
+	 * Create progress where every type starts from the same pagination ids.
+	 * 
+	 * @param id id (or -1 if not in database yet)
+	 * @param monitoredSubredditID the id of the monitoredsubreddit
+	 * @param searchForward if latestHandledModActionID is null or less than the latest one on reddit
+	 * @param latestModActionID the latest/OLDEST HandledModAction id that was retrieved from this subreddit. may be null
+	 * @param newestModActionID the newest/YOUNGEST HandledModAction id that was retrieved from this subreddit. may be null
+	 * @param updatedAt when this was last updated
+	 * @param lastTimeHadFullHistory the last time that we had a full history of this subreddit
+	 */
+	public SubredditModqueueProgress(int id, int monitoredSubredditID, boolean searchForward, String latestModActionID,
+			String newestModActionID, Timestamp updatedAt, Timestamp lastTimeHadFullHistory) {
+		this(id, monitoredSubredditID, searchForward, latestModActionID, newestModActionID, updatedAt, lastTimeHadFullHistory,
+				searchForward, latestModActionID, newestModActionID, searchForward, latestModActionID, newestModActionID);
+	}
+	
+	/**
+	 * @param type the mod log type, one of {@link #TYPES}
+	 * @return if we have not reached the oldest action of that type on reddit
+	 */
+	public boolean isSearchingForward(String type) {
+		switch(type) {
+		case BAN_TYPE: return banSearchForward;
+		case UNBAN_TYPE: return unbanSearchForward;
+		default: throw new IllegalArgumentException("Unknown mod log type " + type);
+		}
+	}
+	
+	/**
+	 * @param type the mod log type, one of {@link #TYPES}
+	 * @return the latest/OLDEST mod action id of that type that was retrieved, or null
+	 */
+	public String getLatestModActionID(String type) {
+		switch(type) {
+		case BAN_TYPE: return banLatestModActionID;
+		case UNBAN_TYPE: return unbanLatestModActionID;
+		default: throw new IllegalArgumentException("Unknown mod log type " + type);
+		}
+	}
+	
+	/**
+	 * @param type the mod log type, one of {@link #TYPES}
+	 * @return the newest/YOUNGEST mod action id of that type that was retrieved, or null
+	 */
+	public String getNewestModActionID(String type) {
+		switch(type) {
+		case BAN_TYPE: return banNewestModActionID;
+		case UNBAN_TYPE: return unbanNewestModActionID;
+		default: throw new IllegalArgumentException("Unknown mod log type " + type);
+		}
+	}
+	
+	/**
+	 * Set if we have not reached the oldest action of the given type, and update
+	 * searchForward to match.
+	 * 
+	 * @param type the mod log type, one of {@link #TYPES}
+	 * @param searchForward if we have not reached the oldest action of that type
+	 */
+	public void setSearchingForward(String type, boolean searchForward) {
+		switch(type) {
+		case BAN_TYPE: banSearchForward = searchForward; break;
+		case UNBAN_TYPE: unbanSearchForward = searchForward; break;
+		default: throw new IllegalArgumentException("Unknown mod log type " + type);
+		}
+		
+		this.searchForward = banSearchForward || unbanSearchForward;
+	}
+	
+	/**
+	 * @param type the mod log type, one of {@link #TYPES}
+	 * @param modActionID the latest/OLDEST mod action id of that type that was retrieved
+	 */
+	public void setLatestModActionID(String type, String modActionID) {
+		switch(type) {
+		case BAN_TYPE: banLatestModActionID = modActionID; break;
+		case UNBAN_TYPE: unbanLatestModActionID = modActionID; break;
+		default: throw new IllegalArgumentException("Unknown mod log type " + type);
+		}
+	}
+	
+	/**
+	 * @param type the mod log type, one of {@link #TYPES}
+	 * @param modActionID the newest/YOUNGEST mod action id of that type that was retrieved
+	 */
+	public void setNewestModActionID(String type, String modActionID) {
+		switch(type) {
+		case BAN_TYPE: banNewestModActionID = modActionID; break;
+		case UNBAN_TYPE: unbanNewestModActionID = modActionID; break;
+		default: throw new IllegalArgumentException("Unknown mod log type " + type);
+		}
 	}
 	
 	/**
@@ -66,6 +203,12 @@ public class SubredditModqueueProgress {
 		result = prime * result + (searchForward ? 1231 : 1237);
 		result = prime * result + ((updatedAt == null) ? 0 : updatedAt.hashCode());
 		result = prime * result + ((lastTimeHadFullHistory == null) ? 0 : lastTimeHadFullHistory.hashCode());
+		result = prime * result + (banSearchForward ? 1231 : 1237);
+		result = prime * result + ((banLatestModActionID == null) ? 0 : banLatestModActionID.hashCode());
+		result = prime * result + ((banNewestModActionID == null) ? 0 : banNewestModActionID.hashCode());
+		result = prime * result + (unbanSearchForward ? 1231 : 1237);
+		result = prime * result + ((unbanLatestModActionID == null) ? 0 : unbanLatestModActionID.hashCode());
+		result = prime * result + ((unbanNewestModActionID == null) ? 0 : unbanNewestModActionID.hashCode());
 		return result;
 	}
 
@@ -104,6 +247,30 @@ public class SubredditModqueueProgress {
 				return false;
 		} else if (!lastTimeHadFullHistory.equals(other.lastTimeHadFullHistory))
 			return false;
+		if (banSearchForward != other.banSearchForward)
+			return false;
+		if (banLatestModActionID == null) {
+			if (other.banLatestModActionID != null)
+				return false;
+		} else if (!banLatestModActionID.equals(other.banLatestModActionID))
+			return false;
+		if (banNewestModActionID == null) {
+			if (other.banNewestModActionID != null)
+				return false;
+		} else if (!banNewestModActionID.equals(other.banNewestModActionID))
+			return false;
+		if (unbanSearchForward != other.unbanSearchForward)
+			return false;
+		if (unbanLatestModActionID == null) {
+			if (other.unbanLatestModActionID != null)
+				return false;
+		} else if (!unbanLatestModActionID.equals(other.unbanLatestModActionID))
+			return false;
+		if (unbanNewestModActionID == null) {
+			if (other.unbanNewestModActionID != null)
+				return false;
+		} else if (!unbanNewestModActionID.equals(other.unbanNewestModActionID))
+			return false;
 		return true;
 	}
 
@@ -112,6 +279,9 @@ public class SubredditModqueueProgress {
 		return "SubredditModqueueProgress [id=" + id + ", monitoredSubredditID=" + monitoredSubredditID
 				+ ", searchForward=" + searchForward + ", latestHandledModActionID=" + latestModActionID
 				+ ", newestHandledModActionID=" + newestModActionID + ", updatedAt=" + updatedAt + ""
-				+ ", lastTimeHadFullHistory=" + lastTimeHadFullHistory + "]";
+				+ ", lastTimeHadFullHistory=" + lastTimeHadFullHistory + ", banSearchForward=" + banSearchForward
+				+ ", banLatestModActionID=" + banLatestModActionID + ", banNewestModActionID=" + banNewestModActionID
+				+ ", unbanSearchForward=" + unbanSearchForward + ", unbanLatestModActionID=" + unbanLatestModActionID
+				+ ", unbanNewestModActionID=" + unbanNewestModActionID + "]";
 	}
 }
@@ -67,7 +67,7 @@ public class CheckPMSummon implements PMSummon, AuthCheckingSummon {
 		}
 
 		Person personToCheck = database.getPersonMapping().fetchOrCreateByUsername(userToCheck);
-		String historyTable = USLHistoryMarkupFormatter.format(database, config, personToCheck.id, false);
+		String historyTable = USLHistoryMarkupFormatter.formatCached(database, config, personToCheck.id, false);
 		
 		ResponseInfo respInfo = new ResponseInfo(ResponseInfoFactory.base);
 		respInfo.addLongtermString("user_to_check", userToCheck);
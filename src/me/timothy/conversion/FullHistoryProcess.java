@@ -83,9 +83,7 @@ public class FullHistoryProcess {
 		}
 		oldTags.close();
 		
-		for(SubscribedHashtag newTag : tagsToSave) {
-			newSubTagMapping.save(newTag);
-		}
+		newSubTagMapping.saveAll(tagsToSave);
 		
 		statement.execute("DROP TABLE subscribed_hashtags_old");
 		statement.close();
@@ -0,0 +1,173 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.timothy.bots.database.custom.AppendOnlyLog;
+import me.timothy.bots.database.custom.AppendOnlyLog.SyncPolicy;
+import me.timothy.bots.database.custom.CustomDirtyPersonMapping;
+import me.timothy.bots.models.DirtyPerson;
+
+/**
+ * Tests that the append only log gives back exactly what was synced, and that it
+ * throws away a partially written or corrupted tail rather than replaying it.
+ *
+ * @author Timothy
+ */
+public class AppendOnlyLogTest {
+	private static final int KIND = 0x54455354;
+	
+	private File file;
+	
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("aol", ".dat");
+		file.delete();
+	}
+	
+	@Test
+	public void testRoundTrip() {
+		AppendOnlyLog log = new AppendOnlyLog(file, KIND, SyncPolicy.EXPLICIT);
+		assertTrue(log.recover((rec) -> {}));
+		for(int i = 0; i < 10000; i++) {
+			log.append(record(i));
+		}
+		log.close();
+		
+		assertEquals(range(0, 10000), replay());
+	}
+	
+	@Test
+	public void testTornTailIsTruncated() throws IOException {
+		AppendOnlyLog log = new AppendOnlyLog(file, KIND, SyncPolicy.EXPLICIT);
+		log.recover((rec) -> {});
+		for(int i = 0; i < 100; i++) {
+			log.append(record(i));
+		}
+		log.close();
+		
+		long goodLength = file.length();
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(goodLength - 3);
+		}
+		
+		assertEquals(range(0, 99), replay());
+		assertTrue(file.length() < goodLength);
+		
+		log = new AppendOnlyLog(file, KIND, SyncPolicy.EXPLICIT);
+		log.recover((rec) -> {});
+		log.append(record(1000));
+		log.close();
+		
+		List<Integer> expected = range(0, 99);
+		expected.add(1000);
+		assertEquals(expected, replay());
+	}
+	
+	@Test
+	public void testCorruptRecordStopsReplay() throws IOException {
+		AppendOnlyLog log = new AppendOnlyLog(file, KIND, SyncPolicy.EVERY_RECORD);
+		log.recover((rec) -> {});
+		for(int i = 0; i < 10; i++) {
+			log.append(record(i));
+		}
+		log.close();
+		
+		// header is 8 bytes and each record is 8 bytes of framing then 4 bytes of payload
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(8 + 12 * 5 + 8);
+			raf.writeInt(12345);
+		}
+		
+		assertEquals(range(0, 5), replay());
+	}
+	
+	@Test
+	public void testRewriteReplacesContents() {
+		AppendOnlyLog log = new AppendOnlyLog(file, KIND, SyncPolicy.EXPLICIT);
+		log.recover((rec) -> {});
+		for(int i = 0; i < 50; i++) {
+			log.append(record(i));
+		}
+		log.rewrite(record(7), record(8));
+		log.append(record(9));
+		log.close();
+		
+		assertEquals(Arrays.asList(7, 8, 9), replay());
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+	}
+	
+	@Test
+	public void testOtherFileIsNotTouched() throws IOException {
+		byte[] legacy = new byte[] { 0, 0, 0, 3, 1, 2, 3 };
+		Files.write(file.toPath(), legacy);
+		
+		AppendOnlyLog log = new AppendOnlyLog(file, KIND, SyncPolicy.EXPLICIT);
+		assertFalse(log.recover((rec) -> {}));
+		log.close();
+		
+		assertTrue(Arrays.equals(legacy, Files.readAllBytes(file.toPath())));
+	}
+	
+	@Test
+	public void testDirtyPersonsSurviveReopen() {
+		CustomDirtyPersonMapping mapping = new CustomDirtyPersonMapping(file, SyncPolicy.EXPLICIT);
+		mapping.recover();
+		for(int i = 1; i <= 100; i++) {
+			mapping.save(new DirtyPerson(i));
+		}
+		for(int i = 1; i <= 100; i += 2) {
+			mapping.delete(i);
+		}
+		mapping.close();
+		
+		mapping = new CustomDirtyPersonMapping(file, SyncPolicy.EXPLICIT);
+		mapping.recover();
+		assertEquals(50, mapping.count());
+		assertTrue(mapping.contains(2));
+		assertFalse(mapping.contains(3));
+		mapping.close();
+	}
+	
+	@After
+	public void cleanUp() {
+		file.delete();
+	}
+	
+	private List<Integer> replay() {
+		List<Integer> result = new ArrayList<>();
+		AppendOnlyLog log = new AppendOnlyLog(file, KIND, SyncPolicy.EXPLICIT);
+		assertTrue(log.recover((rec) -> result.add(rec.getInt())));
+		log.close();
+		return result;
+	}
+	
+	private static ByteBuffer record(int value) {
+		ByteBuffer buf = ByteBuffer.allocate(4);
+		buf.putInt(value);
+		buf.flip();
+		return buf;
+	}
+	
+	private static List<Integer> range(int from, int to) {
+		List<Integer> result = new ArrayList<>();
+		for(int i = from; i < to; i++) {
+			result.add(i);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,158 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.timothy.bots.USLDatabase;
+import me.timothy.bots.USLFileConfiguration;
+import me.timothy.bots.memory.BufferedHandledModActionJoinHistoryIter;
+import me.timothy.bots.memory.BufferedUnbanRequestIter;
+import me.timothy.bots.memory.HandledModActionJoinHistory;
+import me.timothy.bots.models.BanHistory;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.Person;
+import me.timothy.bots.models.UnbanRequest;
+import me.timothy.tests.database.mysql.MysqlTestUtils;
+
+/**
+ * Tests that the buffered iterators return everything exactly once, in order, even when
+ * far more rows share a timestamp than fit in one page.
+ *
+ * @author Timothy
+ */
+public class BufferedIterTest {
+	private DBShortcuts db;
+	private USLDatabase database;
+	private USLFileConfiguration config;
+	
+	@Before
+	public void setUp() throws NullPointerException, IOException {
+		config = new USLFileConfiguration(Paths.get("tests"));
+		config.load();
+		database = MysqlTestUtils.getDatabase(config.getProperties().get("database"));
+		db = new DBShortcuts(database, config);
+		
+		MysqlTestUtils.clearDatabase(database);
+	}
+	
+	@Test
+	public void testManyModActionsAtOneTime() {
+		Person mod = db.mod();
+		Person user1 = db.user1();
+		MonitoredSubreddit sub = db.sub();
+		
+		Timestamp shared = db.now(-60000);
+		database.getHandledAtTimestampMapping().clear(shared);
+		
+		List<BanHistory> expected = new ArrayList<>();
+		for(int i = 0; i < 600; i++) {
+			BanHistory bh = db.bh(mod, user1, db.hma(sub, shared), "#scammer", true);
+			if(i % 7 == 0) {
+				database.getHandledAtTimestampMapping().addBanHistory(bh.id);
+			}else {
+				expected.add(bh);
+			}
+		}
+		BanHistory later = db.bh(mod, user1, db.hma(sub, db.now(-30000)), "#scammer", true);
+		expected.add(later);
+		
+		BufferedHandledModActionJoinHistoryIter iter = new BufferedHandledModActionJoinHistoryIter(database, shared, db.now());
+		for(BanHistory bh : expected) {
+			HandledModActionJoinHistory hist = iter.next();
+			assertEquals(bh, hist.banHistory);
+		}
+		assertNull(iter.next());
+		assertNull(iter.next());
+	}
+	
+	@Test
+	public void testManyUnbanRequestsAtOneTime() {
+		Person user1 = db.user1();
+		
+		Timestamp shared = db.now(-60000);
+		database.getHandledAtTimestampMapping().clear(shared);
+		
+		List<UnbanRequest> expected = new ArrayList<>();
+		for(int i = 0; i < 120; i++) {
+			UnbanRequest req = db.unbanRequest(user1, db.now(-90000));
+			db.handle(req, shared, false);
+			if(i % 5 == 0) {
+				database.getHandledAtTimestampMapping().addUnbanRequest(req.id);
+			}else {
+				expected.add(req);
+			}
+		}
+		
+		BufferedUnbanRequestIter iter = new BufferedUnbanRequestIter(database, shared, db.now());
+		for(UnbanRequest req : expected) {
+			assertEquals(req, iter.next());
+		}
+		assertNull(iter.next());
+	}
+	
+	@Test
+	public void testPrefetchFromReadOnlyConnection() throws SQLException {
+		Person mod = db.mod();
+		Person user1 = db.user1();
+		MonitoredSubreddit sub = db.sub();
+		
+		Timestamp shared = db.now(-60000);
+		database.getHandledAtTimestampMapping().clear(shared);
+		
+		List<BanHistory> expected = new ArrayList<>();
+		for(int i = 0; i < 600; i++) {
+			BanHistory bh = db.bh(mod, user1, db.hma(sub, shared), "#scammer", true);
+			if(i % 7 == 0) {
+				database.getHandledAtTimestampMapping().addBanHistory(bh.id);
+			}else {
+				expected.add(bh);
+			}
+		}
+		
+		List<UnbanRequest> expectedRequests = new ArrayList<>();
+		for(int i = 0; i < 120; i++) {
+			UnbanRequest req = db.unbanRequest(user1, db.now(-90000));
+			db.handle(req, shared, false);
+			expectedRequests.add(req);
+		}
+		
+		Properties props = config.getProperties().get("database");
+		USLDatabase prefetchDatabase = new USLDatabase();
+		prefetchDatabase.connectReadOnly(props.getProperty("username"), props.getProperty("password"), props.getProperty("url"), database);
+		try {
+			BufferedHandledModActionJoinHistoryIter iter = new BufferedHandledModActionJoinHistoryIter(database, prefetchDatabase, shared, db.now());
+			BufferedUnbanRequestIter urIter = new BufferedUnbanRequestIter(database, prefetchDatabase, shared, db.now());
+			for(BanHistory bh : expected) {
+				assertEquals(bh, iter.next().banHistory);
+			}
+			assertNull(iter.next());
+			
+			for(UnbanRequest req : expectedRequests) {
+				assertEquals(req, urIter.next());
+			}
+			assertNull(urIter.next());
+			
+			iter.close();
+			urIter.close();
+		}finally {
+			prefetchDatabase.disconnect();
+		}
+	}
+	
+	@After
+	public void cleanUp() {
+		database.disconnect();
+	}
+}
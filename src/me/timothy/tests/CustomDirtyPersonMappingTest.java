@@ -0,0 +1,187 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.timothy.bots.database.custom.AppendOnlyLog.SyncPolicy;
+import me.timothy.bots.database.custom.CustomDirtyPersonMapping;
+import me.timothy.bots.database.custom.IntSnapshotFile;
+import me.timothy.bots.models.DirtyPerson;
+
+/**
+ * Tests that the dirty person mapping recovers the same set from its snapshot
+ * and log as it had in memory, however the two were left, and that it hands
+ * out urgent and newer persons first.
+ *
+ * @author Timothy
+ */
+public class CustomDirtyPersonMappingTest {
+	private File file;
+	private File snapshotFile;
+	
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("dirty", ".dat");
+		file.delete();
+		snapshotFile = new File(file.getPath() + ".snapshot");
+	}
+	
+	@Test
+	public void testCompactShrinksLog() {
+		CustomDirtyPersonMapping mapping = open();
+		for(int i = 1; i <= 1000; i++) {
+			mapping.save(new DirtyPerson(i));
+		}
+		for(int i = 1; i <= 1000; i += 3) {
+			mapping.delete(i);
+		}
+		mapping.sync();
+		
+		long before = file.length();
+		mapping.compact();
+		assertTrue(file.length() < before);
+		assertTrue(snapshotFile.exists());
+		
+		mapping.save(new DirtyPerson(5000));
+		mapping.delete(2);
+		mapping.close();
+		
+		mapping = open();
+		assertEquals(666, mapping.count());
+		assertTrue(mapping.contains(5000));
+		assertFalse(mapping.contains(1));
+		assertFalse(mapping.contains(2));
+		assertTrue(mapping.contains(3));
+		mapping.close();
+	}
+	
+	@Test
+	public void testLongHistorySnapshotsInBackground() {
+		CustomDirtyPersonMapping mapping = open();
+		for(int round = 0; round < 200; round++) {
+			for(int i = 1; i <= 1000; i++) {
+				mapping.save(new DirtyPerson(i));
+			}
+			for(int i = 2; i <= 1000; i++) {
+				mapping.delete(i);
+			}
+		}
+		mapping.sync();
+		
+		assertTrue(snapshotFile.exists());
+		assertTrue(file.length() < 2 * 1024 * 1024);
+		mapping.close();
+		
+		mapping = open();
+		assertEquals(1, mapping.count());
+		assertTrue(mapping.contains(1));
+		mapping.close();
+	}
+	
+	@Test
+	public void testClearAfterSnapshot() {
+		CustomDirtyPersonMapping mapping = open();
+		for(int i = 1; i <= 100; i++) {
+			mapping.save(new DirtyPerson(i));
+		}
+		mapping.compact();
+		mapping.clear();
+		mapping.save(new DirtyPerson(7));
+		mapping.close();
+		
+		mapping = open();
+		assertEquals(1, mapping.count());
+		assertTrue(mapping.contains(7));
+		mapping.close();
+	}
+	
+	@Test
+	public void testFetchesUrgentThenNewest() {
+		CustomDirtyPersonMapping mapping = open();
+		mapping.save(new DirtyPerson(1, 1000, false));
+		mapping.save(new DirtyPerson(2, 3000, false));
+		mapping.save(new DirtyPerson(3, 2000, false));
+		mapping.save(new DirtyPerson(4, 500, true));
+		mapping.save(new DirtyPerson(5));
+		
+		assertFetched(mapping.fetch(10), 4, 2, 3, 1, 5);
+		assertFetched(mapping.fetch(2), 4, 2);
+		
+		// saving again can only raise a priority
+		mapping.save(new DirtyPerson(2, 100, false));
+		mapping.save(new DirtyPerson(1, 4000, false));
+		assertFetched(mapping.fetch(10), 4, 1, 2, 3, 5);
+		
+		mapping.delete(4);
+		mapping.save(new DirtyPerson(5, 0, true));
+		List<DirtyPerson> fetched = mapping.fetch(10);
+		assertFetched(fetched, 5, 1, 2, 3);
+		assertTrue(fetched.get(0).urgent);
+		assertEquals(0, fetched.get(0).priority);
+		assertFalse(fetched.get(1).urgent);
+		assertEquals(4000, fetched.get(1).priority);
+		mapping.close();
+	}
+	
+	@Test
+	public void testRecoversPriorities() {
+		CustomDirtyPersonMapping mapping = open();
+		for(int i = 1; i <= 100; i++) {
+			mapping.save(new DirtyPerson(i, i * 10, i % 25 == 0));
+		}
+		mapping.compact();
+		mapping.save(new DirtyPerson(7, 5000, false));
+		mapping.save(new DirtyPerson(101, 1, true));
+		mapping.delete(100);
+		mapping.close();
+		
+		mapping = open();
+		assertEquals(100, mapping.count());
+		assertFetched(mapping.fetch(6), 75, 50, 25, 101, 7, 99);
+		mapping.close();
+	}
+	
+	@Test
+	public void testRecoversLegacySnapshot() {
+		// a snapshot from before persons had priorities, with the same kind as the log ("DIRT")
+		new IntSnapshotFile(snapshotFile, 0x44495254).write(new int[] { 3, 8, 12 });
+		
+		CustomDirtyPersonMapping mapping = open();
+		mapping.save(new DirtyPerson(20, 100, false));
+		assertFetched(mapping.fetch(10), 20, 3, 8, 12);
+		mapping.compact();
+		mapping.close();
+		
+		mapping = open();
+		assertFetched(mapping.fetch(10), 20, 3, 8, 12);
+		mapping.close();
+	}
+	
+	@After
+	public void cleanUp() {
+		file.delete();
+		snapshotFile.delete();
+	}
+	
+	private static void assertFetched(List<DirtyPerson> fetched, int... personIds) {
+		assertEquals(personIds.length, fetched.size());
+		for(int i = 0; i < personIds.length; i++) {
+			assertEquals(personIds[i], fetched.get(i).personID);
+		}
+	}
+	
+	private CustomDirtyPersonMapping open() {
+		CustomDirtyPersonMapping mapping = new CustomDirtyPersonMapping(file, SyncPolicy.EXPLICIT);
+		mapping.recover();
+		return mapping;
+	}
+}
@@ -215,9 +215,7 @@ public class DBShortcuts {
 	public SubredditModqueueProgress emptyProgress(MonitoredSubreddit sub) {
 		SubredditModqueueProgress existing = database.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id);
 		if(existing != null) {
-			existing.searchForward = true;
-			existing.latestModActionID = null;
-			existing.newestModActionID = null;
+			setCursors(existing, true, null, null);
 			existing.updatedAt = now();
 			existing.lastTimeHadFullHistory = null;
 			database.getSubredditModqueueProgressMapping().save(existing);
@@ -231,9 +229,7 @@ public class DBShortcuts {
 	public SubredditModqueueProgress fullProgress(MonitoredSubreddit sub, HandledModAction oldestHma, HandledModAction latestHma, Timestamp time) {
 		SubredditModqueueProgress existing = database.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id);
 		if(existing != null) {
-			existing.searchForward = false;
-			existing.latestModActionID = oldestHma.modActionID;
-			existing.newestModActionID = latestHma.modActionID;
+			setCursors(existing, false, oldestHma.modActionID, latestHma.modActionID);
 			existing.updatedAt = time;
 			existing.lastTimeHadFullHistory = time;
 			database.getSubredditModqueueProgressMapping().save(existing);
@@ -255,9 +251,7 @@ public class DBShortcuts {
 	public SubredditModqueueProgress partialProgress(MonitoredSubreddit sub, HandledModAction oldest, HandledModAction newest, Timestamp time) { 
 		SubredditModqueueProgress existing = database.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id);
 		if(existing != null) {
-			existing.searchForward = true;
-			existing.latestModActionID = oldest.modActionID;
-			existing.newestModActionID = newest.modActionID;
+			setCursors(existing, true, oldest.modActionID, newest.modActionID);
 			existing.updatedAt = time;
 			existing.lastTimeHadFullHistory = null;
 			database.getSubredditModqueueProgressMapping().save(existing);
@@ -268,6 +262,16 @@ public class DBShortcuts {
 		return res;
 	}
 	
+	private void setCursors(SubredditModqueueProgress progress, boolean searchForward, String latestModActionID, String newestModActionID) {
+		progress.latestModActionID = latestModActionID;
+		progress.newestModActionID = newestModActionID;
+		for(String type : SubredditModqueueProgress.TYPES) {
+			progress.setSearchingForward(type, searchForward);
+			progress.setLatestModActionID(type, latestModActionID);
+			progress.setNewestModActionID(type, newestModActionID);
+		}
+	}
+	
 	public Response response(String name, String val) {
 		Response resp = new Response(-1, name, val, now(), now());
 		database.getResponseMapping().save(resp);
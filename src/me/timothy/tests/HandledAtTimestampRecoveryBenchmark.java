@@ -0,0 +1,249 @@
+package me.timothy.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import me.timothy.bots.USLDatabase;
+import me.timothy.bots.USLFileConfiguration;
+import me.timothy.bots.database.BanHistoryMapping;
+import me.timothy.bots.database.HandledModActionMapping;
+import me.timothy.bots.database.UnbanHistoryMapping;
+import me.timothy.bots.database.UnbanRequestMapping;
+import me.timothy.bots.database.custom.CustomHandledAtTimestampMapping;
+import me.timothy.bots.models.BanHistory;
+import me.timothy.bots.models.HandledModAction;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.Person;
+import me.timothy.tests.database.mysql.MysqlTestUtils;
+
+/**
+ * Measures how long it takes to recover the handled at timestamp mapping when a large
+ * number of mod actions happened in the same second, which is when the bot restarts
+ * in the middle of a backlog.
+ *
+ * The "per entry" number repeats what recovery used to do (fetch each history and then its
+ * handled mod action) so the two can be compared against the same database.
+ *
+ * Run with "--in-memory [round trip microseconds]" to use a database that answers from memory
+ * instead of the mysql test database. Every query then costs the given round trip (default 0),
+ * which counts the queries each approach makes and times the rest of recovery on its own.
+ *
+ * @author Timothy
+ */
+public class HandledAtTimestampRecoveryBenchmark {
+	private static final int NUM_ENTRIES = 50000;
+	
+	private static USLFileConfiguration config;
+	private static USLDatabase database;
+	
+	public static void main(String[] args) throws NullPointerException, IOException, SQLException {
+		if(args.length > 0 && args[0].equals("--in-memory")) {
+			runInMemory(args.length > 1 ? Long.parseLong(args[1]) : 0);
+			return;
+		}
+		
+		System.out.println("Loading database...");
+		
+		config = new USLFileConfiguration(Paths.get("tests"));
+		config.load();
+		database = MysqlTestUtils.getDatabase(config.getProperties().get("database"));
+		
+		MysqlTestUtils.clearDatabase(database);
+		
+		Timestamp time = new Timestamp(System.currentTimeMillis());
+		time.setNanos(0);
+		
+		System.out.println("Creating " + NUM_ENTRIES + " ban histories...");
+		List<Integer> ids = setup(time);
+		
+		File file = File.createTempFile("hat_bench", ".dat");
+		file.delete();
+		CustomHandledAtTimestampMapping mapping = new CustomHandledAtTimestampMapping(database, file);
+		mapping.recover();
+		mapping.clear(time);
+		for(int id : ids) {
+			mapping.addBanHistory(id);
+		}
+		mapping.close();
+		
+		System.out.println("Recovering one entry at a time...");
+		long before = getQuestions();
+		long start = System.currentTimeMillis();
+		int matched = 0;
+		for(int id : ids) {
+			BanHistory bh = database.getBanHistoryMapping().fetchByID(id);
+			HandledModAction hma = database.getHandledModActionMapping().fetchByID(bh.handledModActionID);
+			if(hma.occurredAt.getTime() == time.getTime())
+				matched++;
+		}
+		long perEntryTime = System.currentTimeMillis() - start;
+		long perEntryQueries = getQuestions() - before - 1;
+		
+		System.out.println("Recovering with batched queries...");
+		before = getQuestions();
+		start = System.currentTimeMillis();
+		mapping = new CustomHandledAtTimestampMapping(database, file);
+		mapping.recover();
+		long batchedTime = System.currentTimeMillis() - start;
+		long batchedQueries = getQuestions() - before - 1;
+		mapping.close();
+		
+		System.out.println();
+		System.out.printf("Per entry: %d ms, %d queries (%d matched)%n", perEntryTime, perEntryQueries, matched);
+		System.out.printf("Batched:   %d ms, %d queries%n", batchedTime, batchedQueries);
+		
+		file.delete();
+		MysqlTestUtils.clearDatabase(database);
+		database.disconnect();
+	}
+	
+	private static List<Integer> setup(Timestamp time) {
+		Person mod = database.getPersonMapping().fetchOrCreateByUsername("mod");
+		Person banned = database.getPersonMapping().fetchOrCreateByUsername("banned");
+		MonitoredSubreddit sub = new MonitoredSubreddit(-1, "benchsub", true, false, false);
+		database.getMonitoredSubredditMapping().save(sub);
+		
+		List<Integer> ids = new ArrayList<>(NUM_ENTRIES);
+		database.beginTransaction();
+		for(int i = 0; i < NUM_ENTRIES; i++) {
+			HandledModAction hma = new HandledModAction(-1, sub.id, "ModAction_ID" + i, time);
+			database.getHandledModActionMapping().save(hma);
+			
+			BanHistory bh = new BanHistory(-1, mod.id, banned.id, hma.id, "#scammer", "permanent");
+			database.getBanHistoryMapping().save(bh);
+			ids.add(bh.id);
+		}
+		database.commitTransaction();
+		return ids;
+	}
+	
+	private static void runInMemory(long roundTripMicros) throws IOException {
+		Timestamp time = new Timestamp(System.currentTimeMillis());
+		time.setNanos(0);
+		InMemoryDatabase memDatabase = new InMemoryDatabase(time, roundTripMicros * 1000);
+		
+		List<Integer> ids = new ArrayList<>(NUM_ENTRIES);
+		for(int i = 1; i <= NUM_ENTRIES; i++) {
+			ids.add(i);
+		}
+		
+		File file = File.createTempFile("hat_bench", ".dat");
+		file.delete();
+		CustomHandledAtTimestampMapping mapping = new CustomHandledAtTimestampMapping(memDatabase, file);
+		mapping.recover();
+		mapping.clear(time);
+		for(int id : ids) {
+			mapping.addBanHistory(id);
+		}
+		mapping.close();
+		
+		System.out.println("Recovering " + NUM_ENTRIES + " entries from memory, " + roundTripMicros + " us per query...");
+		for(int round = 0; round < 3; round++) {
+			memDatabase.queries = 0;
+			long start = System.nanoTime();
+			int matched = 0;
+			for(int id : ids) {
+				BanHistory bh = memDatabase.getBanHistoryMapping().fetchByID(id);
+				HandledModAction hma = memDatabase.getHandledModActionMapping().fetchByID(bh.handledModActionID);
+				if(hma.occurredAt.getTime() == time.getTime())
+					matched++;
+			}
+			long perEntryTime = System.nanoTime() - start;
+			long perEntryQueries = memDatabase.queries;
+			
+			memDatabase.queries = 0;
+			start = System.nanoTime();
+			mapping = new CustomHandledAtTimestampMapping(memDatabase, file);
+			mapping.recover();
+			long batchedTime = System.nanoTime() - start;
+			long batchedQueries = memDatabase.queries;
+			mapping.close();
+			
+			System.out.printf("Per entry: %.1f ms, %d queries (%d matched)%n", perEntryTime / 1000000.0, perEntryQueries, matched);
+			System.out.printf("Batched:   %.1f ms, %d queries%n", batchedTime / 1000000.0, batchedQueries);
+		}
+		
+		file.delete();
+	}
+	
+	/**
+	 * A database whose ban history, unban history, unban request and handled mod action
+	 * mappings answer from memory as if every history exists and occurred at the given time.
+	 * Each call counts as one query and waits out the round trip.
+	 */
+	private static class InMemoryDatabase extends USLDatabase {
+		private final BanHistoryMapping banHistories;
+		private final UnbanHistoryMapping unbanHistories;
+		private final UnbanRequestMapping unbanRequests;
+		private final HandledModActionMapping handledModActions;
+		private long queries;
+		
+		public InMemoryDatabase(Timestamp time, long roundTripNanos) {
+			banHistories = proxy(BanHistoryMapping.class, roundTripNanos, (name, args) -> {
+				if(name.equals("fetchByID")) {
+					int id = (Integer) args[0];
+					return new BanHistory(id, 1, 2, id, "#scammer", "permanent");
+				}
+				return new ArrayList<>((Collection<?>) args[0]);
+			});
+			unbanHistories = proxy(UnbanHistoryMapping.class, roundTripNanos, (name, args) -> new ArrayList<>((Collection<?>) args[0]));
+			unbanRequests = proxy(UnbanRequestMapping.class, roundTripNanos, (name, args) -> new ArrayList<>((Collection<?>) args[0]));
+			handledModActions = proxy(HandledModActionMapping.class, roundTripNanos, (name, args) -> {
+				int id = (Integer) args[0];
+				return new HandledModAction(id, 1, "ModAction_ID" + id, time);
+			});
+		}
+		
+		private interface Answer {
+			Object answer(String name, Object[] args);
+		}
+		
+		private <M> M proxy(Class<M> mappingClass, long roundTripNanos, Answer answer) {
+			return mappingClass.cast(Proxy.newProxyInstance(mappingClass.getClassLoader(), new Class<?>[] { mappingClass }, (proxy, method, args) -> {
+				queries++;
+				if(roundTripNanos > 0)
+					LockSupport.parkNanos(roundTripNanos);
+				return answer.answer(method.getName(), args);
+			}));
+		}
+		
+		@Override
+		public BanHistoryMapping getBanHistoryMapping() {
+			return banHistories;
+		}
+		
+		@Override
+		public UnbanHistoryMapping getUnbanHistoryMapping() {
+			return unbanHistories;
+		}
+		
+		@Override
+		public UnbanRequestMapping getUnbanRequestMapping() {
+			return unbanRequests;
+		}
+		
+		@Override
+		public HandledModActionMapping getHandledModActionMapping() {
+			return handledModActions;
+		}
+	}
+	
+	private static long getQuestions() throws SQLException {
+		try(Statement statement = database.getConnection().createStatement()) {
+			try(ResultSet set = statement.executeQuery("SHOW SESSION STATUS LIKE 'Questions'")) {
+				set.next();
+				return set.getLong(2);
+			}
+		}
+	}
+}
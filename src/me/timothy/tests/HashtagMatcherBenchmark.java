@@ -0,0 +1,119 @@
+package me.timothy.tests;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import me.timothy.bots.HashtagMatcher;
+import me.timothy.bots.models.Hashtag;
+
+/**
+ * Compares finding hashtags in ban descriptions with the HashtagMatcher against lowercasing
+ * the description and checking each hashtag with contains, which is what we used to do. Uses
+ * 200 hashtags and a million descriptions that look like the ones moderators write, most of
+ * which have no hashtags at all.
+ *
+ * Each approach is repeated a few times to warm up the JIT before it is measured.
+ *
+ * @author Timothy
+ */
+public class HashtagMatcherBenchmark {
+	private static final int NUM_TAGS = 200;
+	private static final int NUM_DESCRIPTIONS = 1000000;
+	private static final int WARMUP_ROUNDS = 3;
+	
+	private static final String[] WORDS = new String[] {
+			"spam", "spammed", "links", "in", "comments", "rude", "to", "users", "banned", "for", "selling",
+			"fake", "items", "didn't", "send", "paypal", "chargeback", "after", "trade", "see", "modmail",
+			"https://reddit.com/r/giftcardexchange/comments/abc123", "alt", "of", "ban", "evasion", "usl",
+			"confirmed", "by", "mods", "rule", "3", "no", "reply", "ticket", "#"
+	};
+	
+	private static List<Hashtag> tags;
+	private static String[] descriptions;
+	private static long sink;
+	
+	public static void main(String[] args) {
+		Random random = new Random(7);
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		
+		tags = new ArrayList<>();
+		tags.add(new Hashtag(1, "#scammer", "desc", 1, 1, now, now));
+		tags.add(new Hashtag(2, "#sketchy", "desc", 1, 1, now, now));
+		tags.add(new Hashtag(3, "#compromised", "desc", 1, 1, now, now));
+		tags.add(new Hashtag(4, "#troll", "desc", 1, 1, now, now));
+		while(tags.size() < NUM_TAGS) {
+			tags.add(new Hashtag(tags.size() + 1, "#" + WORDS[random.nextInt(WORDS.length - 1)] + tags.size(), "desc", 1, 1, now, now));
+		}
+		
+		descriptions = new String[NUM_DESCRIPTIONS];
+		for(int i = 0; i < NUM_DESCRIPTIONS; i++) {
+			StringBuilder desc = new StringBuilder();
+			int numWords = 3 + random.nextInt(15);
+			for(int j = 0; j < numWords; j++) {
+				if(j > 0)
+					desc.append(' ');
+				desc.append(WORDS[random.nextInt(WORDS.length)]);
+			}
+			if(random.nextInt(10) == 0) {
+				desc.append(' ').append(tags.get(random.nextInt(random.nextInt(5) == 0 ? NUM_TAGS : 4)).tag.toUpperCase());
+			}
+			descriptions[i] = desc.toString();
+		}
+		
+		System.out.println("Benchmarking with " + NUM_TAGS + " tags and " + NUM_DESCRIPTIONS + " descriptions...");
+		System.out.println();
+		
+		for(int i = 0; i < WARMUP_ROUNDS; i++) {
+			runContains(false);
+			runMatcher(false);
+		}
+		
+		runContains(true);
+		runMatcher(true);
+		
+		System.out.println();
+		System.out.println("(ignore) " + sink);
+	}
+	
+	private static void runContains(boolean print) {
+		long start = System.nanoTime();
+		int found = 0;
+		for(String desc : descriptions) {
+			String descLower = desc.toLowerCase();
+			for(Hashtag tag : tags) {
+				if(descLower.contains(tag.tag.toLowerCase()))
+					found++;
+			}
+		}
+		long time = System.nanoTime() - start;
+		
+		sink += found;
+		if(print)
+			report("contains", time, found);
+	}
+	
+	private static void runMatcher(boolean print) {
+		long start = System.nanoTime();
+		HashtagMatcher matcher = new HashtagMatcher(tags);
+		long buildTime = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		int found = 0;
+		for(String desc : descriptions) {
+			found += matcher.findAll(desc).size();
+		}
+		long time = System.nanoTime() - start;
+		
+		sink += found;
+		if(print) {
+			report("HashtagMatcher", time, found);
+			System.out.printf("%-18s built in %.2f ms%n", "", buildTime / 1000000.0);
+		}
+	}
+	
+	private static void report(String name, long time, int found) {
+		System.out.printf("%-18s %8.1f ns/description, %d matches%n", name, (double)time / NUM_DESCRIPTIONS, found);
+	}
+}
@@ -0,0 +1,114 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import me.timothy.bots.HashtagMatcher;
+import me.timothy.bots.models.Hashtag;
+
+/**
+ * Tests that the HashtagMatcher finds the same hashtags as checking each one with contains
+ *
+ * @author Timothy
+ */
+public class HashtagMatcherTest {
+	private static Hashtag tag(int id, String tag) {
+		Timestamp now = new Timestamp(0);
+		return new Hashtag(id, tag, "description", 1, 1, now, now);
+	}
+	
+	private static List<Hashtag> naive(List<Hashtag> tags, String text) {
+		String lower = text.toLowerCase();
+		List<Hashtag> result = new ArrayList<>();
+		for(Hashtag tag : tags) {
+			if(lower.contains(tag.tag.toLowerCase()))
+				result.add(tag);
+		}
+		return result;
+	}
+	
+	@Test
+	public void testNoTags() {
+		HashtagMatcher matcher = new HashtagMatcher(Collections.emptyList());
+		assertEquals(Collections.emptyList(), matcher.findAll("#scammer"));
+		assertEquals(Collections.emptyList(), matcher.findAll(""));
+	}
+	
+	@Test
+	public void testFindsTagsInOrder() {
+		Hashtag scammer = tag(1, "#scammer");
+		Hashtag sketchy = tag(2, "#sketchy");
+		Hashtag compromised = tag(3, "#compromised");
+		HashtagMatcher matcher = new HashtagMatcher(Arrays.asList(scammer, sketchy, compromised));
+		
+		assertEquals(Collections.emptyList(), matcher.findAll("spammed a link"));
+		assertEquals(Arrays.asList(scammer), matcher.findAll("#scammer"));
+		assertEquals(Arrays.asList(scammer, sketchy), matcher.findAll("#sketchy and then #SCAMMER"));
+		assertEquals(Arrays.asList(compromised), matcher.findAll("#compromise #compromised #sketch"));
+		assertEquals(Arrays.asList(scammer, sketchy, compromised), matcher.findAll("#compromised#sketchy#scammer"));
+	}
+	
+	@Test
+	public void testOverlappingTags() {
+		Hashtag sc = tag(1, "#sc");
+		Hashtag scam = tag(2, "#scam");
+		Hashtag scammer = tag(3, "#scammer");
+		Hashtag mer = tag(4, "mer");
+		Hashtag ammo = tag(5, "ammo");
+		HashtagMatcher matcher = new HashtagMatcher(Arrays.asList(sc, scam, scammer, mer, ammo));
+		
+		assertEquals(Arrays.asList(sc, scam, scammer, mer), matcher.findAll("#scammer"));
+		assertEquals(Arrays.asList(sc, scam), matcher.findAll("##scamm"));
+		assertEquals(Arrays.asList(mer, ammo), matcher.findAll("ammer and ammo"));
+	}
+	
+	@Test
+	public void testMatchesNaive() {
+		List<Hashtag> tags = Arrays.asList(tag(1, "#scammer"), tag(2, "#Sketchy"), tag(3, "#troll"),
+				tag(4, "#caf\u00e9"), tag(5, "#ROLL"), tag(6, "#trolling"));
+		HashtagMatcher matcher = new HashtagMatcher(tags);
+		
+		String[] descriptions = new String[] {
+				"", "#", "#scam", "#SCAMMER #sketchy", "#trolling", "#rollin", "#troll #troll",
+				"met at the #CAF\u00c9, was a #scammer", "usl ban #sketchy (see https://reddit.com/r/x)",
+				"trolling without a hashtag"
+		};
+		for(String desc : descriptions) {
+			assertEquals(desc, naive(tags, desc), matcher.findAll(desc));
+		}
+	}
+	
+	@Test
+	public void testManyTags() {
+		List<Hashtag> tags = new ArrayList<>();
+		for(int i = 0; i < 200; i++) {
+			tags.add(tag(i + 1, "#tag" + i));
+		}
+		HashtagMatcher matcher = new HashtagMatcher(tags);
+		
+		assertEquals(naive(tags, "#tag199 and #tag63 and #tag64"), matcher.findAll("#tag199 and #tag63 and #tag64"));
+		assertEquals(Arrays.asList(tags.get(1), tags.get(19), tags.get(199)), matcher.findAll("#tag199"));
+	}
+	
+	@Test
+	public void testRebuildIfChanged() {
+		List<Hashtag> tags = new ArrayList<>(Arrays.asList(tag(1, "#scammer")));
+		HashtagMatcher matcher = HashtagMatcher.rebuildIfChanged(null, tags);
+		
+		assertSame(matcher, HashtagMatcher.rebuildIfChanged(matcher, tags));
+		assertSame(matcher, HashtagMatcher.rebuildIfChanged(matcher, Arrays.asList(tag(1, "#scammer"))));
+		
+		HashtagMatcher rebuilt = HashtagMatcher.rebuildIfChanged(matcher, Arrays.asList(tag(1, "#scammer"), tag(2, "#sketchy")));
+		assertNotSame(matcher, rebuilt);
+		assertEquals(1, rebuilt.findAll("#sketchy").size());
+	}
+}
@@ -0,0 +1,146 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.timothy.bots.USLDatabase;
+import me.timothy.bots.USLFileConfiguration;
+import me.timothy.bots.USLHistoryMarkupFormatter;
+import me.timothy.bots.memory.HistoryMarkupCache;
+import me.timothy.bots.models.BanHistory;
+import me.timothy.bots.models.HandledModAction;
+import me.timothy.bots.models.Hashtag;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.Person;
+import me.timothy.bots.models.UnbanHistory;
+import me.timothy.tests.database.mysql.MysqlTestUtils;
+
+/**
+ * Tests that the cached history formatter gives the same result as the uncached one
+ * and notices when it has to render again.
+ *
+ * @author Timothy
+ */
+public class HistoryMarkupFormatterTest {
+	private DBShortcuts db;
+	private USLDatabase database;
+	private USLFileConfiguration config;
+	
+	@Before
+	public void setUp() throws NullPointerException, IOException {
+		config = new USLFileConfiguration(Paths.get("tests"));
+		config.load();
+		database = MysqlTestUtils.getDatabase(config.getProperties().get("database"));
+		db = new DBShortcuts(database, config);
+		
+		MysqlTestUtils.clearDatabase(database);
+	}
+	
+	@Test
+	public void testCachedMatchesUncached() {
+		Person mod = db.mod();
+		Person user1 = db.user1();
+		db.bot();
+		MonitoredSubreddit sub = db.sub();
+		
+		HandledModAction hma = db.hma(sub);
+		BanHistory bh = db.bh(mod, user1, hma, "#scammer", true);
+		db.action(true, user1, new Hashtag[] { db.scammerTag() }, new BanHistory[] { bh }, new UnbanHistory[0]);
+		
+		String uncached = USLHistoryMarkupFormatter.format(database, config, user1.id, false);
+		assertEquals(uncached, USLHistoryMarkupFormatter.formatCached(database, config, user1.id, false));
+		assertEquals(uncached, USLHistoryMarkupFormatter.formatCached(database, config, user1.id, false));
+		
+		HistoryMarkupCache cache = database.getHistoryCache();
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+	}
+	
+	@Test
+	public void testInvalidateRendersAgain() {
+		Person mod = db.mod();
+		Person user1 = db.user1();
+		db.bot();
+		MonitoredSubreddit sub = db.sub();
+		MonitoredSubreddit sub2 = db.sub2();
+		
+		db.bh(mod, user1, db.hma(sub), "#scammer", true);
+		
+		String before = USLHistoryMarkupFormatter.formatCached(database, config, user1.id, false);
+		assertTrue(before.contains(sub.subreddit));
+		assertFalse(before.contains(sub2.subreddit));
+		
+		db.bh(mod, user1, db.hma(sub2), "#scammer", true);
+		database.getHistoryCache().invalidate(user1.id);
+		
+		String after = USLHistoryMarkupFormatter.formatCached(database, config, user1.id, false);
+		assertNotEquals(before, after);
+		assertTrue(after.contains(sub2.subreddit));
+	}
+	
+	@Test
+	public void testLatestHandledChangeRendersAgain() {
+		Person mod = db.mod();
+		Person user1 = db.user1();
+		db.bot();
+		MonitoredSubreddit sub = db.sub();
+		MonitoredSubreddit sub2 = db.sub2();
+		
+		database.getRedditToMeaningProgressMapping().set(db.now(-10000));
+		db.bh(mod, user1, db.hma(sub), "#scammer", true);
+		String before = USLHistoryMarkupFormatter.formatCached(database, config, user1.id, false);
+		
+		db.bh(mod, user1, db.hma(sub2), "#scammer", true);
+		database.getRedditToMeaningProgressMapping().set(db.now());
+		
+		String after = USLHistoryMarkupFormatter.formatCached(database, config, user1.id, false);
+		assertNotEquals(before, after);
+		assertTrue(after.contains(sub2.subreddit));
+	}
+	
+	@Test
+	public void testTimelineOrderAndContents() {
+		Person mod = db.mod();
+		Person user1 = db.user1();
+		Person bot = db.bot();
+		MonitoredSubreddit sub = db.sub();
+		MonitoredSubreddit sub2 = db.sub2();
+		Hashtag scammer = db.scammerTag();
+		Hashtag sketchy = db.sketchyTag();
+		
+		BanHistory bh = db.bh(mod, user1, db.hma(sub, db.now(-5000)), "#scammer", true);
+		db.action(true, user1, new Hashtag[] { scammer, sketchy }, new BanHistory[] { bh }, new UnbanHistory[0]);
+		db.bh(bot, user1, db.hma(sub2, db.now(-4000)), "#scammer", true);
+		UnbanHistory ubh = db.ubh(mod, user1, db.hma(sub, db.now(-3000)));
+		db.handle(db.unbanRequest(mod, user1, db.now(-2500), null, false), db.now(-2000), false);
+		db.action(false, user1, new Hashtag[0], new BanHistory[0], new UnbanHistory[] { ubh });
+		
+		String withoutBot = USLHistoryMarkupFormatter.format(database, config, user1.id, false);
+		String[] lines = withoutBot.split("\n");
+		assertEquals(9, lines.length);
+		assertTrue(lines[4], lines[4].contains("BAN|/u/mod banned with note '#scammer' on /r/" + sub.subreddit));
+		assertTrue(lines[5], lines[5].contains("UNBAN|/u/mod unbanned"));
+		assertTrue(lines[6], lines[6].contains("UNBAN REQUEST|/u/mod requested that I unban and was approved"));
+		assertTrue(lines[7], lines[7].contains("LIST UPDATE|"));
+		assertTrue(lines[7], lines[7].contains("'#scammer'") && lines[7].contains("'#sketchy'"));
+		assertTrue(lines[8], lines[8].endsWith("LIST UPDATE|New list tags: "));
+		
+		String withBot = USLHistoryMarkupFormatter.format(database, config, user1.id, true);
+		assertEquals(10, withBot.split("\n").length);
+		assertTrue(withBot.contains("/u/" + bot.username + " banned with note '#scammer' on /r/" + sub2.subreddit));
+	}
+	
+	@After
+	public void cleanUp() {
+		database.disconnect();
+	}
+}
@@ -0,0 +1,155 @@
+package me.timothy.tests;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.Set;
+
+import me.timothy.bots.memory.IntHashSet;
+
+/**
+ * Compares the IntHashSet which backs the custom dirty person and handled at timestamp
+ * mappings against the HashSet&lt;Integer&gt; that used to, at the size the dirty person set
+ * reaches after a full repropagation.
+ *
+ * Each operation is repeated a few times to warm up the JIT before it is measured, and the
+ * retained heap is estimated from the used memory after a full garbage collection.
+ *
+ * @author Timothy
+ */
+public class IntHashSetBenchmark {
+	private static final int NUM_IDS = 1000000;
+	private static final int WARMUP_ROUNDS = 3;
+	
+	private static int[] ids;
+	private static int[] misses;
+	private static long sink;
+	
+	public static void main(String[] args) {
+		Random random = new Random(7);
+		ids = new int[NUM_IDS];
+		misses = new int[NUM_IDS];
+		for(int i = 0; i < NUM_IDS; i++) {
+			ids[i] = i + 1;
+			misses[i] = NUM_IDS + 1 + random.nextInt(Integer.MAX_VALUE - NUM_IDS - 1);
+		}
+		shuffle(ids, random);
+		
+		System.out.println("Benchmarking with " + NUM_IDS + " ids...");
+		System.out.println();
+		
+		for(int i = 0; i < WARMUP_ROUNDS; i++) {
+			runHashSet(false);
+			runIntHashSet(false);
+		}
+		
+		runHashSet(true);
+		runIntHashSet(true);
+		
+		System.out.println();
+		System.out.println("(ignore) " + sink);
+	}
+	
+	private static void runHashSet(boolean print) {
+		long memBefore = usedMemory();
+		
+		long start = System.nanoTime();
+		Set<Integer> set = new HashSet<>();
+		for(int id : ids)
+			set.add(id);
+		long addTime = System.nanoTime() - start;
+		
+		long memAfter = usedMemory();
+		
+		start = System.nanoTime();
+		int found = 0;
+		for(int id : ids) {
+			if(set.contains(id))
+				found++;
+		}
+		for(int id : misses) {
+			if(set.contains(id))
+				found++;
+		}
+		long containsTime = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		long sum = 0;
+		Iterator<Integer> iter = set.iterator();
+		while(iter.hasNext())
+			sum += iter.next();
+		long iterTime = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		for(int id : ids)
+			set.remove(id);
+		long removeTime = System.nanoTime() - start;
+		
+		sink += found + sum;
+		if(print)
+			report("HashSet<Integer>", addTime, containsTime, iterTime, removeTime, memAfter - memBefore);
+	}
+	
+	private static void runIntHashSet(boolean print) {
+		long memBefore = usedMemory();
+		
+		long start = System.nanoTime();
+		IntHashSet set = new IntHashSet();
+		for(int id : ids)
+			set.add(id);
+		long addTime = System.nanoTime() - start;
+		
+		long memAfter = usedMemory();
+		
+		start = System.nanoTime();
+		int found = 0;
+		for(int id : ids) {
+			if(set.contains(id))
+				found++;
+		}
+		for(int id : misses) {
+			if(set.contains(id))
+				found++;
+		}
+		long containsTime = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		long sum = 0;
+		PrimitiveIterator.OfInt iter = set.iterator();
+		while(iter.hasNext())
+			sum += iter.nextInt();
+		long iterTime = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		for(int id : ids)
+			set.remove(id);
+		long removeTime = System.nanoTime() - start;
+		
+		sink += found + sum;
+		if(print)
+			report("IntHashSet", addTime, containsTime, iterTime, removeTime, memAfter - memBefore);
+	}
+	
+	private static void report(String name, long addTime, long containsTime, long iterTime, long removeTime, long bytes) {
+		System.out.printf("%-18s add %6.1f ns/op, contains %6.1f ns/op, iterate %6.1f ns/op, remove %6.1f ns/op, ~%.1f bytes/id%n",
+				name, (double)addTime / NUM_IDS, (double)containsTime / (NUM_IDS * 2), (double)iterTime / NUM_IDS,
+				(double)removeTime / NUM_IDS, (double)bytes / NUM_IDS);
+	}
+	
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	private static void shuffle(int[] arr, Random random) {
+		for(int i = arr.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int tmp = arr[i];
+			arr[i] = arr[j];
+			arr[j] = tmp;
+		}
+	}
+}
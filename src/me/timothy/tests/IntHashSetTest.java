@@ -0,0 +1,103 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import me.timothy.bots.memory.IntHashSet;
+
+/**
+ * Checks the IntHashSet against a HashSet with a long run of random operations, 
+ * including the special cases of zero and negative values.
+ *
+ * @author Timothy
+ */
+public class IntHashSetTest {
+	@Test
+	public void testMatchesHashSet() {
+		Random random = new Random(42);
+		IntHashSet actual = new IntHashSet();
+		Set<Integer> expected = new HashSet<>();
+		
+		for(int i = 0; i < 200000; i++) {
+			int value = random.nextInt(5000) - 100;
+			switch(random.nextInt(3)) {
+			case 0:
+				assertEquals(expected.add(value), actual.add(value));
+				break;
+			case 1:
+				assertEquals(expected.remove(value), actual.remove(value));
+				break;
+			default:
+				assertEquals(expected.contains(value), actual.contains(value));
+				break;
+			}
+			assertEquals(expected.size(), actual.size());
+		}
+		
+		assertContents(expected, actual);
+	}
+	
+	@Test
+	public void testNextBatchDrains() {
+		IntHashSet set = new IntHashSet();
+		for(int i = 0; i < 10000; i++) {
+			set.add(i);
+		}
+		
+		Set<Integer> seen = new HashSet<>();
+		int[] batch = new int[7];
+		while(!set.isEmpty()) {
+			int num = set.nextBatch(batch);
+			assertTrue(num > 0);
+			for(int i = 0; i < num; i++) {
+				assertTrue(seen.add(batch[i]));
+				assertTrue(set.remove(batch[i]));
+			}
+		}
+		
+		assertEquals(10000, seen.size());
+		assertEquals(0, set.nextBatch(batch));
+	}
+	
+	@Test
+	public void testClear() {
+		IntHashSet set = new IntHashSet();
+		for(int i = 0; i < 100000; i++) {
+			set.add(i * 31);
+		}
+		set.clear();
+		
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains(31));
+		assertFalse(set.iterator().hasNext());
+		
+		assertTrue(set.add(31));
+		assertTrue(set.contains(31));
+		assertEquals(1, set.toArray().length);
+	}
+	
+	private static void assertContents(Set<Integer> expected, IntHashSet actual) {
+		assertEquals(expected.size(), actual.size());
+		
+		Set<Integer> iterated = new HashSet<>();
+		PrimitiveIterator.OfInt iter = actual.iterator();
+		while(iter.hasNext()) {
+			assertTrue(iterated.add(iter.nextInt()));
+		}
+		assertEquals(expected, iterated);
+		
+		Set<Integer> fromArray = new HashSet<>();
+		for(int value : actual.toArray()) {
+			fromArray.add(value);
+		}
+		assertEquals(expected, fromArray);
+	}
+}
@@ -0,0 +1,116 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import me.timothy.bots.memory.IntPrioritySet;
+
+/**
+ * Checks the IntPrioritySet against a HashMap with a long run of random operations,
+ * and that top lists the values highest priority first.
+ *
+ * @author Timothy
+ */
+public class IntPrioritySetTest {
+	@Test
+	public void testMatchesHashMap() {
+		Random random = new Random(42);
+		IntPrioritySet actual = new IntPrioritySet();
+		Map<Integer, Long> expected = new HashMap<>();
+		
+		for(int i = 0; i < 200000; i++) {
+			int value = random.nextInt(5000) - 100;
+			switch(random.nextInt(4)) {
+			case 0:
+			case 1:
+				long priority = random.nextInt(1000);
+				Long old = expected.get(value);
+				boolean changed = old == null || old < priority;
+				if(changed)
+					expected.put(value, priority);
+				assertEquals(changed, actual.add(value, priority));
+				break;
+			case 2:
+				assertEquals(expected.remove(value) != null, actual.remove(value));
+				break;
+			default:
+				assertEquals(expected.containsKey(value), actual.contains(value));
+				assertEquals(expected.containsKey(value) ? expected.get(value) : -1L, actual.getPriority(value, -1));
+				break;
+			}
+			assertEquals(expected.size(), actual.size());
+			
+			if(i % 1000 == 0) {
+				assertTop(expected, actual, 1 + random.nextInt(50));
+			}
+		}
+		
+		assertTop(expected, actual, expected.size() + 10);
+	}
+	
+	@Test
+	public void testTopDoesNotRemove() {
+		IntPrioritySet set = new IntPrioritySet();
+		set.add(1, 10);
+		set.add(2, 30);
+		set.add(3, 20);
+		set.add(4, 30);
+		
+		int[] values = new int[3];
+		long[] priorities = new long[3];
+		assertEquals(3, set.top(values, priorities));
+		assertEquals(2, values[0]);
+		assertEquals(4, values[1]);
+		assertEquals(3, values[2]);
+		assertEquals(30, priorities[0]);
+		assertEquals(20, priorities[2]);
+		assertEquals(4, set.size());
+		
+		assertFalse(set.add(1, 5));
+		assertTrue(set.add(1, 40));
+		assertEquals(3, set.top(values, null));
+		assertEquals(1, values[0]);
+		assertEquals(2, values[1]);
+	}
+	
+	@Test
+	public void testClear() {
+		IntPrioritySet set = new IntPrioritySet();
+		for(int i = 0; i < 100000; i++) {
+			set.add(i * 31, i);
+		}
+		set.clear();
+		
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains(31));
+		assertEquals(0, set.top(new int[5], null));
+		
+		assertTrue(set.add(31, 7));
+		assertTrue(set.contains(31));
+		assertEquals(1, set.toArray().length);
+		assertEquals(7, set.toPriorityArray()[0]);
+	}
+	
+	private static void assertTop(Map<Integer, Long> expected, IntPrioritySet actual, int limit) {
+		List<Map.Entry<Integer, Long>> sorted = new ArrayList<>(expected.entrySet());
+		sorted.sort((a, b) -> a.getValue().equals(b.getValue()) ? Integer.compare(a.getKey(), b.getKey()) : Long.compare(b.getValue(), a.getValue()));
+		
+		int[] values = new int[limit];
+		long[] priorities = new long[limit];
+		int num = actual.top(values, priorities);
+		assertEquals(Math.min(limit, sorted.size()), num);
+		for(int i = 0; i < num; i++) {
+			assertEquals(sorted.get(i).getKey(), (Integer)values[i]);
+			assertEquals(sorted.get(i).getValue(), (Long)priorities[i]);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.timothy.bots.RedditRateLimiter;
+import me.timothy.bots.USLFileConfiguration;
+import me.timothy.bots.USLModeratorPermissionCache;
+
+/**
+ * Tests that the USLModeratorPermissionCache only asks reddit when it has to, refreshes
+ * old answers in the background, and forgets subreddits when they are invalidated.
+ *
+ * @author Timothy
+ */
+public class ModeratorPermissionCacheTest {
+	private static final long HOUR = 1000 * 60 * 60;
+	
+	private long now;
+	private Set<String> moderated;
+	private List<String> checked;
+	private Queue<Runnable> background;
+	private boolean invalidateDuringCheck;
+	private USLModeratorPermissionCache cache;
+	
+	@Before
+	public void setUp() throws NullPointerException, IOException {
+		USLFileConfiguration config = new USLFileConfiguration(Paths.get("tests"));
+		config.load();
+		
+		now = 0;
+		moderated = new HashSet<>();
+		checked = new ArrayList<>();
+		background = new ArrayDeque<>();
+		invalidateDuringCheck = false;
+		RedditRateLimiter limiter = new RedditRateLimiter(1000, 1000, () -> now);
+		cache = new USLModeratorPermissionCache(config, limiter, (sub) -> {
+			checked.add(sub);
+			boolean result = moderated.contains(sub);
+			if(invalidateDuringCheck) {
+				invalidateDuringCheck = false;
+				moderated.add(sub);
+				cache.invalidate(sub);
+			}
+			return result;
+		}, (r) -> background.add(r), () -> now);
+	}
+	
+	@Test
+	public void testOnlyChecksOnce() {
+		moderated.add("johnssub");
+		
+		assertTrue(cache.isModerator("johnssub"));
+		assertFalse(cache.isModerator("paulssub"));
+		assertEquals(2, checked.size());
+		
+		assertTrue(cache.isModerator("johnssub"));
+		assertTrue(cache.isModerator("JohnsSub"));
+		assertFalse(cache.isModerator("paulssub"));
+		assertEquals(2, checked.size());
+		assertTrue(background.isEmpty());
+	}
+	
+	@Test
+	public void testRefreshesInBackground() {
+		moderated.add("johnssub");
+		assertTrue(cache.isModerator("johnssub"));
+		assertEquals(1, checked.size());
+		
+		moderated.remove("johnssub");
+		now += 2 * HOUR;
+		assertTrue(cache.isModerator("johnssub"));
+		assertTrue(cache.isModerator("johnssub"));
+		assertEquals(1, checked.size());
+		assertEquals(1, background.size());
+		
+		background.poll().run();
+		assertEquals(2, checked.size());
+		assertFalse(cache.isModerator("johnssub"));
+		assertTrue(background.isEmpty());
+	}
+	
+	@Test
+	public void testInvalidate() {
+		assertFalse(cache.isModerator("johnssub"));
+		
+		moderated.add("johnssub");
+		assertFalse(cache.isModerator("johnssub"));
+		cache.invalidate("JohnsSub");
+		assertTrue(cache.isModerator("johnssub"));
+		assertEquals(2, checked.size());
+		assertTrue(cache.isModerator("johnssub"));
+		assertEquals(2, checked.size());
+	}
+	
+	@Test
+	public void testInvalidateDuringRefresh() {
+		assertFalse(cache.isModerator("johnssub"));
+		
+		now += 2 * HOUR;
+		assertFalse(cache.isModerator("johnssub"));
+		assertEquals(1, background.size());
+		
+		invalidateDuringCheck = true;
+		background.poll().run();
+		assertEquals(2, checked.size());
+		assertTrue(cache.isModerator("johnssub"));
+		assertEquals(3, checked.size());
+	}
+}
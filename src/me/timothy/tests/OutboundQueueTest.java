@@ -0,0 +1,255 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.timothy.bots.RedditRateLimiter;
+import me.timothy.bots.USLDatabase;
+import me.timothy.bots.USLFileConfiguration;
+import me.timothy.bots.USLOutboundQueue;
+import me.timothy.bots.memory.ModmailPMInformation;
+import me.timothy.bots.memory.UserBanInformation;
+import me.timothy.bots.memory.UserPMInformation;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.OutboundAction;
+import me.timothy.bots.models.Person;
+import me.timothy.tests.database.mysql.MysqlTestUtils;
+
+/**
+ * Tests that the USLOutboundQueue only queues things once, takes turns between
+ * subreddits, and retries failed actions until it gives up on them.
+ *
+ * @author Timothy
+ */
+public class OutboundQueueTest {
+	private USLDatabase database;
+	private USLFileConfiguration config;
+	private DBShortcuts db;
+	
+	private long now;
+	private List<OutboundAction> sent;
+	private boolean succeed;
+	private USLOutboundQueue queue;
+	
+	@Before
+	public void setUp() throws NullPointerException, IOException {
+		config = new USLFileConfiguration(Paths.get("tests"));
+		config.load();
+		database = MysqlTestUtils.getDatabase(config.getProperties().get("database"));
+		db = new DBShortcuts(database);
+		
+		MysqlTestUtils.clearDatabase(database);
+		
+		now = System.currentTimeMillis();
+		sent = new ArrayList<>();
+		succeed = true;
+		RedditRateLimiter limiter = new RedditRateLimiter(1000, 1000, () -> now);
+		queue = new USLOutboundQueue(database, config, limiter, (action) -> {
+			sent.add(action);
+			return succeed;
+		}, () -> now);
+	}
+	
+	@Test
+	public void testEnqueueIsIdempotent() {
+		Person paul = db.user1();
+		MonitoredSubreddit sub = db.sub();
+		List<UserBanInformation> bans = Collections.singletonList(new UserBanInformation(paul, sub, "msg", "reason", "note"));
+		
+		assertEquals(1, queue.enqueueBans("propagate:1@1", bans));
+		assertEquals(0, queue.enqueueBans("propagate:1@1", bans));
+		assertEquals(1, queue.countPending());
+		
+		assertEquals(1, queue.dispatch());
+		assertEquals(0, queue.enqueueBans("propagate:1@1", bans));
+		assertEquals(1, queue.enqueueBans("propagate:1@2", bans));
+		assertEquals(1, queue.countPending());
+		
+		assertEquals(1, queue.dispatch());
+		assertEquals(0, queue.countPending());
+		assertEquals(2, sent.size());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testEnqueueWithCallbacksFails() {
+		Person paul = db.user1();
+		queue.enqueueUserPMs("test", Collections.singletonList(new UserPMInformation(paul, "title", "body", () -> {})));
+	}
+	
+	@Test
+	public void testSubredditsTakeTurns() {
+		Person paul = db.user1();
+		Person john = db.mod();
+		Person eric = db.mod2();
+		MonitoredSubreddit busy = db.sub();
+		MonitoredSubreddit quiet = db.sub2();
+		
+		queue.enqueueBans("test", Arrays.asList(
+				new UserBanInformation(paul, busy, "msg", "reason", "note"),
+				new UserBanInformation(john, busy, "msg", "reason", "note"),
+				new UserBanInformation(eric, busy, "msg", "reason", "note")));
+		queue.enqueueModmailPMs("test", Collections.singletonList(new ModmailPMInformation(quiet, "title", "body")));
+		queue.enqueueUserPMs("test", Collections.singletonList(new UserPMInformation(paul, "title", "body")));
+		
+		assertEquals(5, queue.dispatch());
+		assertEquals(5, sent.size());
+		
+		List<Integer> firstRound = new ArrayList<>();
+		for(int i = 0; i < 3; i++) {
+			firstRound.add(sent.get(i).monitoredSubredditID);
+		}
+		assertTrue(firstRound.contains(busy.id));
+		assertTrue(firstRound.contains(quiet.id));
+		assertTrue(firstRound.contains(null));
+		assertEquals(busy.id, (int) sent.get(3).monitoredSubredditID);
+		assertEquals(busy.id, (int) sent.get(4).monitoredSubredditID);
+	}
+	
+	@Test
+	public void testRetriesThenGivesUp() {
+		Person paul = db.user1();
+		queue.enqueueUserPMs("test", Collections.singletonList(new UserPMInformation(paul, "title", "body")));
+		OutboundAction action = database.getOutboundActionMapping().fetchAll().get(0);
+		
+		succeed = false;
+		assertEquals(0, queue.dispatch());
+		assertEquals(1, sent.size());
+		action = database.getOutboundActionMapping().fetchByIdempotencyKey(action.idempotencyKey);
+		assertEquals(1, action.attempts);
+		assertTrue(action.nextAttemptAt.getTime() > now);
+		assertNull(action.failedAt);
+		
+		assertEquals(0, queue.dispatch());
+		assertEquals(1, sent.size());
+		
+		for(int attempt = 2; attempt <= 5; attempt++) {
+			now = database.getOutboundActionMapping().fetchByIdempotencyKey(action.idempotencyKey).nextAttemptAt.getTime();
+			assertEquals(0, queue.dispatch());
+			assertEquals(attempt, sent.size());
+		}
+		
+		action = database.getOutboundActionMapping().fetchByIdempotencyKey(action.idempotencyKey);
+		assertEquals(5, action.attempts);
+		assertNotNull(action.failedAt);
+		assertNull(action.sentAt);
+		assertEquals(0, queue.countPending());
+		
+		now += 1000 * 60 * 60 * 24;
+		assertEquals(0, queue.dispatch());
+		assertEquals(5, sent.size());
+	}
+	
+	@Test
+	public void testFailedBanIsRetried() {
+		Person paul = db.user1();
+		MonitoredSubreddit sub = db.sub();
+		queue.enqueueBans("test", Collections.singletonList(new UserBanInformation(paul, sub, "msg", "reason", "note")));
+		
+		succeed = false;
+		assertEquals(0, queue.dispatch());
+		assertEquals(1, sent.size());
+		assertEquals(OutboundAction.BAN, sent.get(0).actionType);
+		OutboundAction action = database.getOutboundActionMapping().fetchAll().get(0);
+		assertNull(action.sentAt);
+		assertNull(action.failedAt);
+		assertEquals(1, action.attempts);
+		assertEquals(1, queue.countPending());
+		
+		succeed = true;
+		now = action.nextAttemptAt.getTime();
+		assertEquals(1, queue.dispatch());
+		assertEquals(2, sent.size());
+		action = database.getOutboundActionMapping().fetchByIdempotencyKey(action.idempotencyKey);
+		assertEquals(2, action.attempts);
+		assertNotNull(action.sentAt);
+		assertEquals(0, queue.countPending());
+	}
+	
+	@Test
+	public void testRetrySucceeds() {
+		MonitoredSubreddit sub = db.sub();
+		queue.enqueueModmailPMs("test", Collections.singletonList(new ModmailPMInformation(sub, "title", "body")));
+		
+		succeed = false;
+		assertEquals(0, queue.dispatch());
+		OutboundAction action = database.getOutboundActionMapping().fetchAll().get(0);
+		assertNull(action.sentAt);
+		
+		succeed = true;
+		now = action.nextAttemptAt.getTime();
+		assertEquals(1, queue.dispatch());
+		action = database.getOutboundActionMapping().fetchByIdempotencyKey(action.idempotencyKey);
+		assertEquals(2, action.attempts);
+		assertNotNull(action.sentAt);
+		assertEquals(0, queue.countPending());
+	}
+	
+	@Test
+	public void testModmailDigest() {
+		MonitoredSubreddit digested = db.sub();
+		digested.modmailDigest = true;
+		database.getMonitoredSubredditMapping().save(digested);
+		MonitoredSubreddit notDigested = db.sub2();
+		
+		queue.enqueueModmailPMs("a", Collections.singletonList(new ModmailPMInformation(digested, "banned paul", "paul was banned")));
+		queue.enqueueModmailPMs("b", Collections.singletonList(new ModmailPMInformation(digested, "banned john", "john was banned")));
+		queue.enqueueModmailPMs("c", Collections.singletonList(new ModmailPMInformation(digested, "banned eric", "eric was banned")));
+		queue.enqueueModmailPMs("a", Arrays.asList(
+				new ModmailPMInformation(notDigested, "banned paul", "paul was banned"),
+				new ModmailPMInformation(notDigested, "banned john", "john was banned")));
+		
+		assertEquals(3, queue.dispatch());
+		assertEquals(3, sent.size());
+		assertEquals(0, queue.countPending());
+		
+		OutboundAction digest = null;
+		for(OutboundAction action : sent) {
+			if(action.monitoredSubredditID == digested.id)
+				digest = action;
+		}
+		assertNotNull(digest);
+		assertEquals("banned paul (and 2 more)", digest.title);
+		assertTrue(digest.body.indexOf("paul was banned") < digest.body.indexOf("john was banned"));
+		assertTrue(digest.body.indexOf("john was banned") < digest.body.indexOf("eric was banned"));
+	}
+	
+	@Test
+	public void testModmailDigestIsSplit() {
+		MonitoredSubreddit sub = db.sub();
+		sub.modmailDigest = true;
+		database.getMonitoredSubredditMapping().save(sub);
+		
+		StringBuilder longBody = new StringBuilder();
+		for(int i = 0; i < 4000; i++) {
+			longBody.append('a');
+		}
+		for(int i = 0; i < 5; i++) {
+			queue.enqueueModmailPMs("test" + i, Collections.singletonList(new ModmailPMInformation(sub, "title " + i, longBody.toString())));
+		}
+		
+		assertEquals(3, queue.dispatch());
+		for(OutboundAction action : sent) {
+			assertTrue(action.body.length() <= 10000);
+		}
+		assertEquals("title 4", sent.get(2).title);
+		assertEquals(0, queue.countPending());
+	}
+	
+	@After
+	public void cleanUp() {
+		database.disconnect();
+	}
+}
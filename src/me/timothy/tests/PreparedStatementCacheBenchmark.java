@@ -0,0 +1,85 @@
+package me.timothy.tests;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+
+import me.timothy.bots.USLDatabase;
+import me.timothy.bots.USLFileConfiguration;
+import me.timothy.bots.database.mysql.MysqlBanHistoryMapping;
+import me.timothy.bots.models.BanHistory;
+import me.timothy.bots.models.HandledModAction;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.Person;
+import me.timothy.bots.models.USLAction;
+import me.timothy.bots.models.USLActionBanHistory;
+import me.timothy.tests.database.mysql.MysqlTestUtils;
+
+/**
+ * Measures how long BanHistoryMapping#fetchByActionAndSubreddit takes in a tight loop
+ * when the mapping reuses its prepared statement, compared to when the statement is
+ * prepared and closed on every call (which is simulated by closing the mappings
+ * statements after each call).
+ * 
+ * @author Timothy
+ */
+public class PreparedStatementCacheBenchmark {
+	private static final int WARMUP_ITERATIONS = 1000;
+	private static final int ITERATIONS = 20000;
+	
+	public static void main(String[] args) throws NullPointerException, IOException {
+		System.out.println("Loading database...");
+		
+		USLFileConfiguration config = new USLFileConfiguration(Paths.get("tests"));
+		config.load();
+		USLDatabase database = MysqlTestUtils.getDatabase(config.getProperties().get("database"));
+		
+		MysqlTestUtils.clearDatabase(database);
+		
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		now.setNanos(0);
+		
+		Person mod = database.getPersonMapping().fetchOrCreateByUsername("mod");
+		Person banned = database.getPersonMapping().fetchOrCreateByUsername("banned");
+		MonitoredSubreddit sub = new MonitoredSubreddit(-1, "benchsub", false, false, false);
+		database.getMonitoredSubredditMapping().save(sub);
+		
+		HandledModAction hma = new HandledModAction(-1, sub.id, "ModAction_ID1", now);
+		database.getHandledModActionMapping().save(hma);
+		BanHistory bh = new BanHistory(-1, mod.id, banned.id, hma.id, "#scammer", "permanent");
+		database.getBanHistoryMapping().save(bh);
+		USLAction action = database.getUSLActionMapping().create(true, banned.id, now);
+		database.getUSLActionBanHistoryMapping().save(new USLActionBanHistory(action.id, bh.id));
+		
+		MysqlBanHistoryMapping mapping = (MysqlBanHistoryMapping) database.getBanHistoryMapping();
+		
+		System.out.println("Warming up...");
+		run(mapping, action.id, sub.id, WARMUP_ITERATIONS, false);
+		run(mapping, action.id, sub.id, WARMUP_ITERATIONS, true);
+		
+		System.out.println("Running " + ITERATIONS + " iterations preparing every time...");
+		long uncached = run(mapping, action.id, sub.id, ITERATIONS, false);
+		
+		System.out.println("Running " + ITERATIONS + " iterations reusing the statement...");
+		long cached = run(mapping, action.id, sub.id, ITERATIONS, true);
+		
+		System.out.println();
+		System.out.printf("Preparing every time: %d ms total, %.1f us/call%n", uncached / 1000000, uncached / 1000.0 / ITERATIONS);
+		System.out.printf("Reusing statement:    %d ms total, %.1f us/call%n", cached / 1000000, cached / 1000.0 / ITERATIONS);
+		
+		MysqlTestUtils.clearDatabase(database);
+		database.disconnect();
+	}
+	
+	private static long run(MysqlBanHistoryMapping mapping, int actionID, int subID, int iterations, boolean reuse) {
+		long start = System.nanoTime();
+		for(int i = 0; i < iterations; i++) {
+			if(mapping.fetchByActionAndSubreddit(actionID, subID) == null)
+				throw new IllegalStateException("expected to find the ban history");
+			
+			if(!reuse)
+				mapping.closeStatements();
+		}
+		return System.nanoTime() - start;
+	}
+}
@@ -0,0 +1,63 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import me.timothy.bots.memory.PropagationContext;
+import me.timothy.bots.models.Hashtag;
+import me.timothy.bots.models.MonitoredSubreddit;
+
+/**
+ * Tests finding which subreddits follow an action's hashtags from a PropagationContext
+ *
+ * @author Timothy
+ */
+public class PropagationContextTest {
+	private static PropagationContext context(Map<Integer, MonitoredSubreddit> reading, Map<Integer, Set<Integer>> subscriptions) {
+		return new PropagationContext(reading, null, null, false, new HashMap<>(), new HashMap<Integer, Hashtag>(), subscriptions);
+	}
+	
+	private static Set<Integer> tags(Integer... ids) {
+		return new HashSet<>(Arrays.asList(ids));
+	}
+	
+	@Test
+	public void testNoSubscriptions() {
+		Map<Integer, MonitoredSubreddit> reading = new HashMap<>();
+		reading.put(1, new MonitoredSubreddit(1, "johnssub", false, false, false));
+		
+		PropagationContext ctx = context(reading, new HashMap<>());
+		assertEquals(Collections.emptyList(), ctx.getReadingSubredditsFollowingAny(Arrays.asList(1, 2)));
+		assertEquals(Collections.emptyList(), ctx.getReadingSubredditsFollowingAny(Collections.emptyList()));
+	}
+	
+	@Test
+	public void testFollowingAny() {
+		Map<Integer, MonitoredSubreddit> reading = new HashMap<>();
+		reading.put(7, new MonitoredSubreddit(7, "johnssub", false, false, false));
+		reading.put(3, new MonitoredSubreddit(3, "paulssub", false, false, false));
+		reading.put(12, new MonitoredSubreddit(12, "ericssub", false, false, false));
+		
+		Map<Integer, Set<Integer>> subscriptions = new HashMap<>();
+		subscriptions.put(7, tags(1, 2));
+		subscriptions.put(3, tags(2));
+		subscriptions.put(12, tags(3));
+		subscriptions.put(20, tags(1, 2, 3)); // write only, so not reading
+		
+		PropagationContext ctx = context(reading, subscriptions);
+		assertEquals(Arrays.asList(7), ctx.getReadingSubredditsFollowingAny(Arrays.asList(1)));
+		assertEquals(Arrays.asList(3, 7), ctx.getReadingSubredditsFollowingAny(Arrays.asList(2)));
+		assertEquals(Arrays.asList(3, 7), ctx.getReadingSubredditsFollowingAny(Arrays.asList(1, 2)));
+		assertEquals(Arrays.asList(7, 12), ctx.getReadingSubredditsFollowingAny(Arrays.asList(1, 3)));
+		assertEquals(Arrays.asList(3, 7, 12), ctx.getReadingSubredditsFollowingAny(Arrays.asList(3, 2, 1)));
+		assertEquals(Collections.emptyList(), ctx.getReadingSubredditsFollowingAny(Arrays.asList(4)));
+	}
+}
@@ -3,16 +3,21 @@ package me.timothy.tests;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
@@ -29,15 +34,25 @@ import me.timothy.bots.USLFileConfiguration;
 import me.timothy.bots.USLPropagator;
 import me.timothy.bots.USLPropagatorManager;
 import me.timothy.bots.USLRedditToMeaningProcessor;
+import me.timothy.bots.USLScanPlanner;
 import me.timothy.bots.USLValidUnbanRequestToMeaningProcessor;
+import me.timothy.bots.database.mysql.MysqlUSLActionBanHistoryMapping;
+import me.timothy.bots.database.mysql.MysqlUSLActionHashtagMapping;
+import me.timothy.bots.database.mysql.MysqlUSLActionMapping;
+import me.timothy.bots.database.mysql.MysqlUSLActionUnbanHistoryMapping;
 import me.timothy.bots.functions.PropagateResultHandlerFunction;
 import me.timothy.bots.memory.PropagateResult;
+import me.timothy.bots.memory.PropagationContext;
+import me.timothy.bots.memory.USLActionBundle;
 import me.timothy.bots.memory.UserBanInformation;
 import me.timothy.bots.models.BanHistory;
+import me.timothy.bots.models.DirtyPerson;
 import me.timothy.bots.models.HandledModAction;
 import me.timothy.bots.models.Hashtag;
 import me.timothy.bots.models.MonitoredSubreddit;
 import me.timothy.bots.models.Person;
+import me.timothy.bots.models.SubredditModqueueProgress;
+import me.timothy.bots.models.PropagatorSetting.PropagatorSettingKey;
 import me.timothy.bots.models.USLAction;
 import me.timothy.bots.models.USLActionBanHistory;
 import me.timothy.bots.models.USLActionUnbanHistory;
@@ -68,12 +83,12 @@ public class PropagatorManagerTest {
 		}
 		
 		@Override
-		public PropagateResult propagateAction(HashMap<Integer, MonitoredSubreddit> readingSubreddits, USLAction action) {
+		public PropagateResult propagateAction(PropagationContext context, USLActionBundle bundle) {
 			assertTrue(results.size() > 0);
 			assertTrue(expectedArgs.size() > 0);
-			assertTrue(expectedArgs.poll().test(action));
+			assertTrue(expectedArgs.poll().test(bundle.action));
 			
-			return results.poll().apply(action);
+			return results.poll().apply(bundle.action);
 		}
 	}
 	
@@ -599,6 +614,205 @@ public class PropagatorManagerTest {
 		postExpect();
 	}
 	
+	/**
+	 * A busy subreddit has been scanned recently and a quiet one has not. A ban on the busy subreddit
+	 * should wait for the quiet one to be scanned, so that when the quiet one turns out to have an
+	 * older ban, that ban is still processed, and in order.
+	 */
+	@Test
+	public void testWaitsForQuietSubreddits() {
+		List<MonitoredSubreddit> subs = new ArrayList<>();
+		MonitoredSubreddit busy, quiet;
+		subs.add(busy = db.sub());
+		subs.add(quiet = db.sub2());
+		
+		Person mod = db.mod();
+		db.hma(quiet, db.now(-60000));
+		db.fullProgress(quiet, db.now(-30000));
+		
+		HandledModAction hma1 = db.hma(busy, db.now(-10000));
+		BanHistory ban1 = db.bh(mod, db.person("banned1"), hma1, "spam", true);
+		db.fullProgress(busy, db.now(1000));
+		
+		propManager.managePropagating(subs);
+		postExpect();
+		
+		HandledModAction hma2 = db.hma(quiet, db.now(-20000));
+		BanHistory ban2 = db.bh(mod, db.person("banned2"), hma2, "spam", true);
+		db.fullProgress(quiet, db.now(1000));
+		
+		meaning.expectBan(ban2, () -> Collections.emptySet());
+		meaning.expectBan(ban1, () -> Collections.emptySet());
+		
+		propManager.managePropagating(subs);
+		postExpect();
+		
+		propManager.managePropagating(subs);
+		postExpect();
+	}
+	
+	/**
+	 * A ban is found on one subreddit while another was scanned a while ago and isn't due for
+	 * a long time. The scan planner should scan the quiet subreddit right away, rather than 
+	 * when it is next due, so the ban is propagated well within the maximum latency.
+	 */
+	@Test
+	public void testBusyBanDoesNotWaitForQuietSchedule() {
+		List<MonitoredSubreddit> subs = new ArrayList<>();
+		MonitoredSubreddit busy, quiet;
+		subs.add(busy = db.sub());
+		subs.add(quiet = db.sub2());
+		
+		Person mod = db.mod();
+		db.hma(quiet, db.now(-60000));
+		db.hma(busy, db.now(-50000));
+		db.fullProgress(quiet, db.now(-30000));
+		db.fullProgress(busy, db.now(-30000));
+		
+		USLScanPlanner planner = new USLScanPlanner(database, config);
+		assertEquals(subs, planner.selectDue(subs, fetchProgress(subs), db.now - 30000));
+		planner.scanned(busy, true, db.now - 30000);
+		planner.scanned(quiet, true, db.now - 30000);
+		
+		HandledModAction hma = db.hma(busy, db.now(-10000));
+		BanHistory ban = db.bh(mod, db.person("banned"), hma, "spam", true);
+		db.fullProgress(busy, db.now(-5000));
+		planner.scanned(busy, true, db.now - 5000);
+		
+		propManager.managePropagating(subs);
+		postExpect();
+		
+		assertTrue(db.now - 30000 + planner.getMaxLatencyMs(quiet) > db.now);
+		assertEquals(Arrays.asList(quiet), planner.selectDue(subs, fetchProgress(subs), db.now));
+		db.fullProgress(quiet, db.now());
+		planner.scanned(quiet, true, db.now);
+		
+		meaning.expectBan(ban, () -> Collections.emptySet());
+		propManager.managePropagating(subs);
+		postExpect();
+		
+		assertTrue(planner.selectDue(subs, fetchProgress(subs), db.now).isEmpty());
+	}
+	
+	private Map<Integer, SubredditModqueueProgress> fetchProgress(List<MonitoredSubreddit> subs) {
+		Map<Integer, SubredditModqueueProgress> result = new HashMap<>();
+		for(MonitoredSubreddit sub : subs) {
+			result.put(sub.id, database.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id));
+		}
+		return result;
+	}
+	
+	/**
+	 * A guy is banned and the action is made and propagated. Then everything is cleared out the way
+	 * approving a repropagation request does; the ban should be replayed and the action rebuilt,
+	 * even though it was the last event that had been committed.
+	 */
+	@Test
+	public void testRepropagateRebuildsActions() {
+		List<MonitoredSubreddit> subs = new ArrayList<>();
+		subs.add(db.sub());
+		
+		Hashtag scammer = db.scammerTag();
+		Person banned = db.user1();
+		HandledModAction hma = db.hma(db.sub(), db.now(-60000));
+		BanHistory bh = db.bh(db.mod(), banned, hma, "#scammer", true);
+		db.fullProgress(db.sub(), db.now(10000));
+		
+		meaning.expectBan(bh, () -> {
+			db.action(true, banned, new Hashtag[] { scammer }, new BanHistory[] { bh }, new UnbanHistory[] {});
+			return Collections.singleton(banned.id);
+		});
+		propagator.expect((action) -> action.personID == banned.id, (action) -> new PropagateResult(action));
+		resultHandler.expect((prop) -> prop.action.personID == banned.id, false);
+		
+		propManager.managePropagating(subs);
+		postExpect();
+		assertNotNull(database.getUSLActionMapping().fetchLatest(banned.id));
+		assertNotNull(database.getPropagatorSettingMapping().get(PropagatorSettingKey.LAST_MEANING_EVENT));
+		
+		((MysqlUSLActionMapping)database.getUSLActionMapping()).truncate();
+		((MysqlUSLActionBanHistoryMapping)database.getUSLActionBanHistoryMapping()).truncate();
+		((MysqlUSLActionUnbanHistoryMapping)database.getUSLActionUnbanHistoryMapping()).truncate();
+		((MysqlUSLActionHashtagMapping)database.getUSLActionHashtagMapping()).truncate();
+		database.purgeCustom();
+		assertNull(database.getUSLActionMapping().fetchLatest(banned.id));
+		
+		meaning.expectBan(bh, () -> {
+			db.action(true, banned, new Hashtag[] { scammer }, new BanHistory[] { bh }, new UnbanHistory[] {});
+			return Collections.singleton(banned.id);
+		});
+		propagator.expect((action) -> action.personID == banned.id, (action) -> new PropagateResult(action));
+		resultHandler.expect((prop) -> prop.action.personID == banned.id, false);
+		
+		propManager.managePropagating(subs);
+		postExpect();
+		
+		USLAction rebuilt = database.getUSLActionMapping().fetchLatest(banned.id);
+		assertNotNull(rebuilt);
+		MysqlTestUtils.assertListContentsPreds(database.getUSLActionBanHistoryMapping().fetchByUSLActionID(rebuilt.id),
+				(a) -> a.banHistoryID == bh.id);
+		
+		propManager.managePropagating(subs);
+		postExpect();
+	}
+	
+	/**
+	 * Lots of people are dirty and they're planned by several propagators with their own connections.
+	 * Every result should still be handled on this thread, and each person is only marked clean after
+	 * their result was handled.
+	 */
+	@Test
+	public void testParallelPlanning() throws SQLException {
+		List<MonitoredSubreddit> subs = new ArrayList<>();
+		subs.add(db.sub());
+		
+		db.hma(db.sub());
+		db.fullProgress(db.sub(), db.now(10000));
+		
+		Set<Integer> dirty = new HashSet<>();
+		for(int i = 0; i < 30; i++) {
+			Person pers = db.person("dirty" + i);
+			db.action(true, pers, new Hashtag[] {}, new BanHistory[] {}, new UnbanHistory[] {});
+			database.getDirtyPersonMapping().save(new DirtyPerson(pers.id));
+			dirty.add(pers.id);
+		}
+		
+		Properties props = config.getProperties().get("database");
+		List<USLDatabase> planningDatabases = new ArrayList<>();
+		List<USLPropagator> planners = new ArrayList<>();
+		for(int i = 0; i < 3; i++) {
+			USLDatabase planningDatabase = new USLDatabase();
+			planningDatabase.connectReadOnly(props.getProperty("username"), props.getProperty("password"), props.getProperty("url"), database);
+			planningDatabases.add(planningDatabase);
+			planners.add(new USLPropagator(planningDatabase, config) {
+				@Override
+				public PropagateResult propagateAction(PropagationContext context, USLActionBundle bundle) {
+					return new PropagateResult(bundle.action);
+				}
+			});
+		}
+		
+		Thread testThread = Thread.currentThread();
+		List<Integer> handled = new ArrayList<>();
+		propManager = new USLPropagatorManager(database, config, propagator, planners, meaning, unbanRequestMeaning, (result) -> {
+			assertTrue(Thread.currentThread() == testThread);
+			assertTrue(database.getDirtyPersonMapping().contains(result.action.personID));
+			handled.add(result.action.personID);
+			return false;
+		});
+		
+		try {
+			propManager.managePropagating(subs);
+		}finally {
+			planningDatabases.forEach(USLDatabase::disconnect);
+		}
+		
+		assertEquals(dirty.size(), handled.size());
+		assertEquals(dirty, new HashSet<>(handled));
+		assertEquals(0, database.getDirtyPersonMapping().count());
+		postExpect();
+	}
+	
 	@After 
 	public void cleanUp() {
 		database.disconnect();
@@ -0,0 +1,151 @@
+package me.timothy.tests;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.timothy.bots.USLDatabase;
+import me.timothy.bots.USLFileConfiguration;
+import me.timothy.bots.USLPropagator;
+import me.timothy.bots.memory.PropagationContext;
+import me.timothy.bots.models.BanHistory;
+import me.timothy.bots.models.HandledModAction;
+import me.timothy.bots.models.Hashtag;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.Person;
+import me.timothy.bots.models.Response;
+import me.timothy.bots.models.SubscribedHashtag;
+import me.timothy.bots.models.USLAction;
+import me.timothy.bots.models.USLActionBanHistory;
+import me.timothy.bots.models.USLActionHashtag;
+import me.timothy.tests.database.mysql.MysqlTestUtils;
+
+/**
+ * Counts how many statements the propagator sends to mysql per action, both when it has to
+ * load everything itself (one action at a time) and when it is given a propagation context
+ * that was loaded once for the whole loop (how the propagator manager uses it).
+ *
+ * This uses the session "Questions" status variable so it counts every statement regardless
+ * of which mapping sent it.
+ *
+ * @author Timothy
+ */
+public class PropagatorQueryCountBenchmark {
+	private static final int NUM_SUBREDDITS = 100;
+	private static final int NUM_ACTIONS = 50;
+	
+	private static USLFileConfiguration config;
+	private static USLDatabase database;
+	
+	public static void main(String[] args) throws NullPointerException, IOException, SQLException {
+		System.out.println("Loading database...");
+		
+		config = new USLFileConfiguration(Paths.get("tests"));
+		config.load();
+		database = MysqlTestUtils.getDatabase(config.getProperties().get("database"));
+		
+		MysqlTestUtils.clearDatabase(database);
+		
+		System.out.println("Creating " + NUM_SUBREDDITS + " subreddits and " + NUM_ACTIONS + " actions...");
+		List<USLAction> actions = setup();
+		USLPropagator propagator = new USLPropagator(database, config);
+		
+		System.out.println("Warming up...");
+		for(USLAction action : actions) {
+			propagator.propagateAction(action);
+		}
+		
+		System.out.println("Counting queries without a shared context...");
+		long start = System.currentTimeMillis();
+		long before = getQuestions();
+		for(USLAction action : actions) {
+			propagator.propagateAction(action);
+		}
+		long withoutContext = getQuestions() - before - 1;
+		long withoutContextTime = System.currentTimeMillis() - start;
+		
+		System.out.println("Counting queries with a shared context...");
+		start = System.currentTimeMillis();
+		before = getQuestions();
+		PropagationContext context = PropagationContext.load(database, config);
+		for(USLAction action : actions) {
+			propagator.propagateAction(context, action);
+		}
+		long withContext = getQuestions() - before - 1;
+		long withContextTime = System.currentTimeMillis() - start;
+		
+		System.out.println();
+		System.out.printf("Without context: %.2f queries/action, %.2f ms/action%n",
+				(double)withoutContext / NUM_ACTIONS, (double)withoutContextTime / NUM_ACTIONS);
+		System.out.printf("With context:    %.2f queries/action, %.2f ms/action%n",
+				(double)withContext / NUM_ACTIONS, (double)withContextTime / NUM_ACTIONS);
+		
+		MysqlTestUtils.clearDatabase(database);
+		database.disconnect();
+	}
+	
+	private static List<USLAction> setup() {
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		now.setNanos(0);
+		
+		database.getPersonMapping().fetchOrCreateByUsername(config.getProperty("user.username"));
+		Person mod = database.getPersonMapping().fetchOrCreateByUsername("mod");
+		
+		String[] responseNames = new String[] {
+				"propagated_ban_message", "propagated_ban_note", "propagated_ban_modmail_title", "propagated_ban_modmail_body",
+				"propagate_ban_to_subreddit_override_unban_title", "propagate_ban_to_subreddit_override_unban_body",
+				"propagate_ban_to_subreddit_ban_collision_to_collider_title", "propagate_ban_to_subreddit_ban_collision_to_collider_body",
+				"propagate_unban_std_modmail_title", "propagate_unban_std_modmail_body",
+				"propagate_unban_primary_modmail_title", "propagate_unban_primary_modmail_body",
+				"propagate_unban_failed_modmail_title", "propagate_unban_failed_modmail_body",
+				"propagate_ban_on_traditional_title", "propagate_ban_on_traditional_body"
+		};
+		for(String name : responseNames) {
+			database.getResponseMapping().save(new Response(-1, name, name, now, now));
+		}
+		
+		Hashtag scammer = new Hashtag(-1, "#scammer", "famous tag", mod.id, mod.id, now, now);
+		database.getHashtagMapping().save(scammer);
+		
+		List<MonitoredSubreddit> subs = new ArrayList<>();
+		for(int i = 0; i < NUM_SUBREDDITS; i++) {
+			MonitoredSubreddit sub = new MonitoredSubreddit(-1, "benchsub" + i, true, false, false);
+			database.getMonitoredSubredditMapping().save(sub);
+			database.getSubscribedHashtagMapping().save(new SubscribedHashtag(-1, sub.id, scammer.id, now, null));
+			subs.add(sub);
+		}
+		
+		List<USLAction> actions = new ArrayList<>();
+		for(int i = 0; i < NUM_ACTIONS; i++) {
+			Person banned = database.getPersonMapping().fetchOrCreateByUsername("benchbanned" + i);
+			MonitoredSubreddit sub = subs.get(i % subs.size());
+			
+			HandledModAction hma = new HandledModAction(-1, sub.id, "ModAction_ID" + i, now);
+			database.getHandledModActionMapping().save(hma);
+			
+			BanHistory bh = new BanHistory(-1, mod.id, banned.id, hma.id, "#scammer", "permanent");
+			database.getBanHistoryMapping().save(bh);
+			
+			USLAction action = database.getUSLActionMapping().create(true, banned.id, now);
+			database.getUSLActionHashtagMapping().save(new USLActionHashtag(action.id, scammer.id));
+			database.getUSLActionBanHistoryMapping().save(new USLActionBanHistory(action.id, bh.id));
+			actions.add(action);
+		}
+		
+		return actions;
+	}
+	
+	private static long getQuestions() throws SQLException {
+		try(Statement statement = database.getConnection().createStatement()) {
+			try(ResultSet set = statement.executeQuery("SHOW SESSION STATUS LIKE 'Questions'")) {
+				set.next();
+				return set.getLong(2);
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.timothy.bots.RedditRateLimiter;
+
+/**
+ * Tests the reddit rate limiter against a fake clock, so nothing here actually waits.
+ *
+ * @author Timothy
+ */
+public class RedditRateLimiterTest {
+	private long now;
+	private RedditRateLimiter limiter;
+	
+	@Before
+	public void setUp() {
+		now = 1000000;
+		limiter = new RedditRateLimiter(3, 60, () -> now);
+	}
+	
+	@Test
+	public void testBurstThenRefill() {
+		assertEquals(0, limiter.tryAcquire());
+		assertEquals(0, limiter.tryAcquire());
+		assertEquals(0, limiter.tryAcquire());
+		assertEquals(1000, limiter.tryAcquire());
+		
+		now += 500;
+		assertEquals(500, limiter.tryAcquire());
+		
+		now += 500;
+		assertEquals(0, limiter.tryAcquire());
+		assertEquals(1000, limiter.tryAcquire());
+		
+		// never holds more than the burst
+		now += 60000;
+		assertEquals(0, limiter.tryAcquire());
+		assertEquals(0, limiter.tryAcquire());
+		assertEquals(0, limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire() > 0);
+	}
+	
+	@Test
+	public void testRateLimitedPausesForAMinute() {
+		limiter.onRateLimited();
+		assertEquals(60000, limiter.tryAcquire());
+		
+		now += 59999;
+		assertEquals(1, limiter.tryAcquire());
+		
+		now += 1;
+		assertEquals(0, limiter.tryAcquire());
+		
+		// the rate afterward is still the configured one
+		assertEquals(0, limiter.tryAcquire());
+		assertEquals(0, limiter.tryAcquire());
+		assertEquals(1000, limiter.tryAcquire());
+	}
+}
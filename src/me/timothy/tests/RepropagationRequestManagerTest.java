@@ -175,6 +175,7 @@ public class RepropagationRequestManagerTest {
 		database.getRepropagationRequestMapping().save(req);
 		
 		database.getDirtyPersonMapping().save(new DirtyPerson(banned.id));
+		database.getPropagatorSettingMapping().put(PropagatorSettingKey.LAST_MEANING_EVENT, hma3.occurredAt.getTime() + ":0:" + hma3.id);
 		
 		backupManager.handlers.add(() -> {
 			// Before clearing
@@ -200,6 +201,7 @@ public class RepropagationRequestManagerTest {
 			MysqlTestUtils.assertListContentsPreds(database.getUSLActionHashtagMapping().fetchAll());
 			assertFalse(database.getDirtyPersonMapping().contains(banned.id));
 			assertEquals("true", database.getPropagatorSettingMapping().get(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES));
+			assertNull(database.getPropagatorSettingMapping().get(PropagatorSettingKey.LAST_MEANING_EVENT));
 		});
 		
 		sendModmail.expect(notifs.subreddit);
@@ -0,0 +1,148 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.timothy.bots.USLDatabase;
+import me.timothy.bots.USLFileConfiguration;
+import me.timothy.bots.USLScanPlanner;
+import me.timothy.bots.models.HandledModAction;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.SubredditModqueueProgress;
+import me.timothy.tests.database.mysql.MysqlTestUtils;
+
+/**
+ * Tests that the scan planner scans busy subreddits more often than quiet ones,
+ * and subreddits which are catching up every time.
+ *
+ * @author Timothy
+ */
+public class ScanPlannerTest {
+	private static final long MINUTE = 1000 * 60;
+	
+	private USLDatabase database;
+	private USLFileConfiguration config;
+	private DBShortcuts db;
+	
+	@Before
+	public void setUp() throws NullPointerException, IOException {
+		config = new USLFileConfiguration(Paths.get("tests"));
+		config.load();
+		database = MysqlTestUtils.getDatabase(config.getProperties().get("database"));
+		
+		MysqlTestUtils.clearDatabase(database);
+		
+		db = new DBShortcuts(database, config);
+	}
+	
+	@Test
+	public void testBusySubredditsAreScannedMoreOften() {
+		MonitoredSubreddit busy = db.sub("busy");
+		MonitoredSubreddit quiet = db.sub("quiet");
+		MonitoredSubreddit catching = db.sub("catching");
+		
+		// 10 an hour over the last week, so about one every 6 minutes
+		List<HandledModAction> hmas = new ArrayList<>();
+		for(int i = 0; i < 10 * 24 * 7; i++) {
+			hmas.add(new HandledModAction(-1, busy.id, "ModAction_ID" + i, db.now(-(i + 1) * MINUTE * 6)));
+		}
+		database.getHandledModActionMapping().saveAll(hmas);
+		
+		Map<Integer, SubredditModqueueProgress> progress = new HashMap<>();
+		progress.put(busy.id, caughtUp(busy));
+		progress.put(quiet.id, caughtUp(quiet));
+		progress.put(catching.id, new SubredditModqueueProgress(-1, catching.id, true, null, null, null, null));
+		
+		List<MonitoredSubreddit> subs = Arrays.asList(quiet, busy, catching);
+		USLScanPlanner planner = new USLScanPlanner(database, config);
+		
+		long now = System.currentTimeMillis();
+		assertEquals(subs, planner.selectDue(subs, progress, now));
+		
+		planner.scanned(quiet, true, now);
+		planner.scanned(busy, true, now);
+		planner.scanned(catching, false, now);
+		
+		List<USLScanPlanner.PlannedScan> queue = planner.getQueue();
+		assertEquals(3, queue.size());
+		assertEquals(catching.id, queue.get(0).monitoredSubredditID);
+		assertTrue(queue.get(0).catchingUp);
+		assertEquals(busy.id, queue.get(1).monitoredSubredditID);
+		assertEquals(10, queue.get(1).actionsPerHour, 0.01);
+		assertEquals(now + 6 * MINUTE, queue.get(1).nextScanAt, 1000);
+		assertEquals(quiet.id, queue.get(2).monitoredSubredditID);
+		assertEquals(0, queue.get(2).actionsPerHour, 0.01);
+		assertEquals(now + 15 * MINUTE, queue.get(2).nextScanAt);
+		
+		assertEquals(Arrays.asList(catching), planner.selectDue(subs, progress, now + MINUTE));
+		assertEquals(Arrays.asList(catching, busy), planner.selectDue(subs, progress, now + 7 * MINUTE));
+		assertEquals(Arrays.asList(catching, busy, quiet), planner.selectDue(subs, progress, now + 15 * MINUTE));
+	}
+	
+	@Test
+	public void testSubredditThatFellBehindIsDue() {
+		MonitoredSubreddit sub = db.sub();
+		
+		Map<Integer, SubredditModqueueProgress> progress = new HashMap<>();
+		progress.put(sub.id, caughtUp(sub));
+		List<MonitoredSubreddit> subs = Arrays.asList(sub);
+		
+		USLScanPlanner planner = new USLScanPlanner(database, config);
+		long now = System.currentTimeMillis();
+		planner.selectDue(subs, progress, now);
+		planner.scanned(sub, true, now);
+		assertTrue(planner.selectDue(subs, progress, now + MINUTE).isEmpty());
+		
+		progress.get(sub.id).lastTimeHadFullHistory = null;
+		assertEquals(subs, planner.selectDue(subs, progress, now + MINUTE));
+		
+		planner.scanned(sub, false, now + MINUTE);
+		assertTrue(planner.getQueue().get(0).catchingUp);
+	}
+	
+	@Test
+	public void testRemovedSubredditLeavesQueue() {
+		MonitoredSubreddit sub = db.sub();
+		MonitoredSubreddit sub2 = db.sub2();
+		
+		Map<Integer, SubredditModqueueProgress> progress = new HashMap<>();
+		progress.put(sub.id, caughtUp(sub));
+		progress.put(sub2.id, caughtUp(sub2));
+		
+		USLScanPlanner planner = new USLScanPlanner(database, config);
+		long now = System.currentTimeMillis();
+		planner.selectDue(Arrays.asList(sub, sub2), progress, now);
+		planner.scanned(sub, true, now);
+		planner.scanned(sub2, true, now);
+		assertEquals(2, planner.getQueue().size());
+		
+		assertTrue(planner.selectDue(Arrays.asList(sub), progress, now).isEmpty());
+		assertEquals(1, planner.getQueue().size());
+		assertFalse(planner.getQueue().get(0).monitoredSubredditID == sub2.id);
+	}
+	
+	@After
+	public void cleanUp() {
+		database.disconnect();
+		database = null;
+		config = null;
+	}
+	
+	private SubredditModqueueProgress caughtUp(MonitoredSubreddit sub) {
+		return new SubredditModqueueProgress(-1, sub.id, false, "ModAction_IDA", "ModAction_IDB", null, new Timestamp(System.currentTimeMillis()));
+	}
+}
@@ -0,0 +1,162 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.timothy.bots.USLDatabase;
+import me.timothy.bots.USLFileConfiguration;
+import me.timothy.bots.memory.USLActionBundle;
+import me.timothy.bots.models.BanHistory;
+import me.timothy.bots.models.HandledModAction;
+import me.timothy.bots.models.Hashtag;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.Person;
+import me.timothy.bots.models.TraditionalScammer;
+import me.timothy.bots.models.USLAction;
+import me.timothy.bots.models.UnbanHistory;
+import me.timothy.tests.database.mysql.MysqlTestUtils;
+
+/**
+ * Tests loading many actions at once with the USLActionBundle
+ *
+ * @author Timothy
+ */
+public class USLActionBundleTest {
+	protected USLDatabase database;
+	protected USLFileConfiguration config;
+	protected DBShortcuts db;
+	
+	@Before
+	public void setUp() throws NullPointerException, IOException {
+		config = new USLFileConfiguration(Paths.get("tests"));
+		config.load();
+		database = MysqlTestUtils.getDatabase(config.getProperties().get("database"));
+		db = new DBShortcuts(database, config);
+		
+		MysqlTestUtils.clearDatabase(database);
+	}
+	
+	@Test
+	public void testNothingToLoad() {
+		Person nobody = db.person("nobody");
+		
+		assertTrue(USLActionBundle.load(database, Collections.emptyList()).isEmpty());
+		assertTrue(USLActionBundle.loadLatest(database, Collections.emptyList()).isEmpty());
+		assertTrue(USLActionBundle.loadLatest(database, Arrays.asList(nobody.id)).isEmpty());
+	}
+	
+	@Test
+	public void testLoadLatest() {
+		MonitoredSubreddit sub1 = db.sub();
+		MonitoredSubreddit sub2 = db.sub2();
+		Hashtag scammer = db.scammerTag();
+		Hashtag sketchy = db.sketchyTag();
+		Person mod = db.mod();
+		Person john = db.person("john");
+		Person paul = db.person("paul");
+		Person eric = db.person("eric");
+		
+		HandledModAction hma1 = db.hma(sub1, db.now(-50000));
+		BanHistory johnBan1 = db.bh(mod, john, hma1, "#scammer", true);
+		HandledModAction hma2 = db.hma(sub2, db.now(-40000));
+		BanHistory johnBan2 = db.bh(mod, john, hma2, "#scammer", true);
+		HandledModAction hma3 = db.hma(sub1, db.now(-30000));
+		UnbanHistory paulUnban = db.ubh(mod, paul, hma3);
+		
+		db.action(true, john, new Hashtag[] { scammer }, new BanHistory[] { johnBan1 }, new UnbanHistory[0]);
+		USLAction johnAction = db.action(true, john, new Hashtag[] { sketchy, scammer }, new BanHistory[] { johnBan1, johnBan2 }, new UnbanHistory[0]);
+		USLAction paulAction = db.action(false, paul, new Hashtag[0], new BanHistory[0], new UnbanHistory[] { paulUnban });
+		
+		TraditionalScammer paulTrad = new TraditionalScammer(-1, paul.id, "grandfathered", "#scammer", new Timestamp(db.now - 100000));
+		database.getTraditionalScammerMapping().save(paulTrad);
+		
+		Map<Integer, USLActionBundle> bundles = USLActionBundle.loadLatest(database, Arrays.asList(john.id, paul.id, eric.id));
+		assertEquals(2, bundles.size());
+		assertNull(bundles.get(eric.id));
+		
+		USLActionBundle johnBundle = bundles.get(john.id);
+		assertEquals(johnAction, johnBundle.action);
+		assertEquals(john, johnBundle.person);
+		assertNull(johnBundle.traditionalScammer);
+		assertEquals(2, johnBundle.tags.size());
+		assertEquals(Math.min(scammer.id, sketchy.id), johnBundle.tags.get(0).hashtagID);
+		assertEquals(Math.max(scammer.id, sketchy.id), johnBundle.tags.get(1).hashtagID);
+		assertEquals(johnBan1, johnBundle.getBan(sub1.id));
+		assertEquals(johnBan2, johnBundle.getBan(sub2.id));
+		assertNull(johnBundle.getUnban(sub1.id));
+		assertEquals(hma1, johnBundle.getHandledModAction(johnBan1.handledModActionID));
+		assertEquals(hma2, johnBundle.getHandledModAction(johnBan2.handledModActionID));
+		
+		USLActionBundle paulBundle = bundles.get(paul.id);
+		assertEquals(paulAction, paulBundle.action);
+		assertEquals(paul, paulBundle.person);
+		assertEquals(paulTrad.id, paulBundle.traditionalScammer.id);
+		assertTrue(paulBundle.tags.isEmpty());
+		assertNull(paulBundle.getBan(sub1.id));
+		assertEquals(paulUnban, paulBundle.getUnban(sub1.id));
+		assertNull(paulBundle.getUnban(sub2.id));
+		assertEquals(hma3, paulBundle.getHandledModAction(paulUnban.handledModActionID));
+	}
+	
+	@Test
+	public void testLoadKeepsOrder() {
+		Person john = db.person("john");
+		Person paul = db.person("paul");
+		
+		USLAction johnAction = db.action(true, john, new Hashtag[0], new BanHistory[0], new UnbanHistory[0]);
+		USLAction paulAction = db.action(true, paul, new Hashtag[0], new BanHistory[0], new UnbanHistory[0]);
+		
+		List<USLActionBundle> bundles = USLActionBundle.load(database, Arrays.asList(paulAction, johnAction));
+		assertEquals(2, bundles.size());
+		assertSame(paulAction, bundles.get(0).action);
+		assertSame(johnAction, bundles.get(1).action);
+	}
+	
+	@Test
+	public void testDuplicateHistoriesKeepOldest() {
+		MonitoredSubreddit sub = db.sub();
+		Person mod = db.mod();
+		Person john = db.person("john");
+		
+		HandledModAction hma1 = db.hma(sub, db.now(-50000));
+		BanHistory ban1 = db.bh(mod, john, hma1, "#scammer", true);
+		HandledModAction hma2 = db.hma(sub, db.now(-40000));
+		BanHistory ban2 = db.bh(mod, john, hma2, "#scammer", true);
+		HandledModAction hma3 = db.hma(sub, db.now(-30000));
+		UnbanHistory unban1 = db.ubh(mod, john, hma3);
+		HandledModAction hma4 = db.hma(sub, db.now(-20000));
+		UnbanHistory unban2 = db.ubh(mod, john, hma4);
+		
+		USLAction action = db.action(true, john, new Hashtag[0], new BanHistory[] { ban2, ban1 }, new UnbanHistory[] { unban2, unban1 });
+		
+		USLActionBundle bundle = USLActionBundle.load(database, Arrays.asList(action)).get(0);
+		assertEquals(ban1, bundle.getBan(sub.id));
+		assertEquals(unban1, bundle.getUnban(sub.id));
+		
+		// nothing is deleted while loading
+		assertEquals(2, database.getUSLActionBanHistoryMapping().fetchByUSLActionID(action.id).size());
+		assertEquals(2, database.getUSLActionUnbanHistoryMapping().fetchByUSLActionID(action.id).size());
+	}
+	
+	@After
+	public void cleanUp() {
+		database.disconnect();
+		database = null;
+		config = null;
+		db = null;
+	}
+}
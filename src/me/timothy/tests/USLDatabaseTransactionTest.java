@@ -0,0 +1,100 @@
+package me.timothy.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.timothy.bots.USLDatabase;
+import me.timothy.bots.USLFileConfiguration;
+import me.timothy.tests.database.mysql.MysqlTestUtils;
+
+/**
+ * Tests the unit of work api on the USLDatabase
+ * 
+ * @author Timothy
+ */
+public class USLDatabaseTransactionTest {
+	private USLDatabase database;
+	
+	@Before
+	public void setUp() throws NullPointerException, IOException {
+		USLFileConfiguration config = new USLFileConfiguration(Paths.get("tests"));
+		config.load();
+		database = MysqlTestUtils.getDatabase(config.getProperties().get("database"));
+		
+		MysqlTestUtils.clearDatabase(database);
+	}
+	
+	@Test
+	public void testCommit() {
+		database.beginTransaction();
+		assertTrue(database.isInTransaction());
+		database.getPersonMapping().fetchOrCreateByUsername("john");
+		database.commitTransaction();
+		assertFalse(database.isInTransaction());
+		
+		database.clearCaches();
+		assertNotNull(database.getPersonMapping().fetchByUsername("john"));
+	}
+	
+	@Test
+	public void testRollback() {
+		database.beginTransaction();
+		database.getPersonMapping().fetchOrCreateByUsername("john");
+		database.rollbackTransaction();
+		assertFalse(database.isInTransaction());
+		
+		assertNull(database.getPersonMapping().fetchByUsername("john"));
+		assertEquals(0, database.getPersonMapping().fetchAll().size());
+	}
+	
+	@Test
+	public void testNestedCommit() {
+		database.beginTransaction();
+		database.getPersonMapping().fetchOrCreateByUsername("john");
+		
+		database.beginTransaction();
+		database.getPersonMapping().fetchOrCreateByUsername("paul");
+		database.commitTransaction();
+		assertTrue(database.isInTransaction());
+		
+		database.commitTransaction();
+		assertFalse(database.isInTransaction());
+		assertEquals(2, database.getPersonMapping().fetchAll().size());
+	}
+	
+	@Test
+	public void testNestedRollbackRollsBackOuter() {
+		database.beginTransaction();
+		database.getPersonMapping().fetchOrCreateByUsername("john");
+		
+		database.beginTransaction();
+		database.getPersonMapping().fetchOrCreateByUsername("paul");
+		database.rollbackTransaction();
+		assertTrue(database.isInTransaction());
+		
+		try {
+			database.commitTransaction();
+			fail("expected commit to fail after a nested rollback");
+		}catch(IllegalStateException e) {
+		}
+		
+		assertFalse(database.isInTransaction());
+		assertEquals(0, database.getPersonMapping().fetchAll().size());
+	}
+	
+	@After
+	public void cleanUp() {
+		database.disconnect();
+	}
+}
@@ -7,6 +7,8 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Test;
@@ -19,6 +21,7 @@ import me.timothy.bots.models.Person;
 import me.timothy.bots.models.USLAction;
 import me.timothy.bots.models.USLActionBanHistory;
 import me.timothy.bots.models.UnbanHistory;
+import me.timothy.tests.DBShortcuts;
 import me.timothy.tests.database.mysql.MysqlTestUtils;
 
 /**
@@ -308,4 +311,26 @@ public class BanHistoryMappingTest {
 		fromDb = database.getBanHistoryMapping().fetchByActionAndSubreddit(action.id, sub2.id);
 		assertEquals(ban3, fromDb);
 	}
+	
+	/**
+	 * Create three ban histories, two of which belong to mod actions at the same time.
+	 * Verify fetchIDsOccurredAt returns exactly the two at that time, and ignores ids
+	 * which do not exist.
+	 */
+	@Test
+	public void testFetchIDsOccurredAt() {
+		DBShortcuts db = new DBShortcuts(database);
+		Timestamp time = db.now(-10000);
+		
+		BanHistory bh1 = db.bh(db.mod(), db.user1(), db.hma(db.sub(), time), "#scammer", true);
+		BanHistory bh2 = db.bh(db.mod(), db.user1(), db.hma(db.sub(), db.now()), "#scammer", true);
+		BanHistory bh3 = db.bh(db.mod(), db.user1(), db.hma(db.sub(), time), "#scammer", true);
+		
+		List<Integer> fromDb = database.getBanHistoryMapping().fetchIDsOccurredAt(Arrays.asList(bh1.id, bh2.id, bh3.id, bh3.id + 100), time);
+		assertEquals(2, fromDb.size());
+		assertTrue(fromDb.contains(bh1.id));
+		assertTrue(fromDb.contains(bh3.id));
+		
+		assertTrue(database.getBanHistoryMapping().fetchIDsOccurredAt(Collections.emptyList(), time).isEmpty());
+	}
 }
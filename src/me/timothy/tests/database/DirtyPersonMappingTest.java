@@ -1,9 +1,12 @@
 package me.timothy.tests.database;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.List;
+
 import org.junit.Test;
 
 import me.timothy.bots.database.DirtyPersonMapping;
@@ -60,4 +63,33 @@ public class DirtyPersonMappingTest {
 		assertFalse(map.contains(p2.id));
 	}
 
+	@Test
+	public void testUrgentThenHighestPriority() {
+		DBShortcuts db = new DBShortcuts(database);
+		DirtyPersonMapping map = database.getDirtyPersonMapping();
+		
+		Person p1 = db.mod();
+		Person p2 = db.mod2();
+		Person p3 = db.person("paul");
+		map.save(new DirtyPerson(p1.id, 1000, false));
+		map.save(new DirtyPerson(p2.id, 2000, false));
+		map.save(new DirtyPerson(p3.id, 10, true));
+		
+		List<DirtyPerson> fetched = map.fetch(10);
+		assertEquals(3, fetched.size());
+		assertEquals(p3.id, fetched.get(0).personID);
+		assertTrue(fetched.get(0).urgent);
+		assertEquals(p2.id, fetched.get(1).personID);
+		assertEquals(2000, fetched.get(1).priority);
+		assertEquals(p1.id, fetched.get(2).personID);
+		
+		map.save(new DirtyPerson(p1.id, 3000, false));
+		map.save(new DirtyPerson(p3.id, 0, false));
+		fetched = map.fetch(2);
+		assertEquals(p3.id, fetched.get(0).personID);
+		assertTrue(fetched.get(0).urgent);
+		assertEquals(10, fetched.get(0).priority);
+		assertEquals(p1.id, fetched.get(1).personID);
+	}
+
 }
@@ -3,7 +3,10 @@ package me.timothy.tests.database;
 import static org.junit.Assert.*;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -90,6 +93,59 @@ public class HandledModActionMappingTest {
 		assertNull(fromDB);
 	}
 	
+	/**
+	 * save three mod actions with saveAll, ensure they all get ids, then fetch
+	 * two of them plus an unknown id in one call
+	 */
+	@Test
+	public void testFetchByModActionIDs() {
+		MonitoredSubreddit sub = new MonitoredSubreddit(-1, "johnssub", false, false, true);
+		database.getMonitoredSubredditMapping().save(sub);
+		
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		HandledModAction mAction1 = new HandledModAction(-1, sub.id, "ModAction_ID1", now);
+		HandledModAction mAction2 = new HandledModAction(-1, sub.id, "ModAction_ID2", now);
+		HandledModAction mAction3 = new HandledModAction(-1, sub.id, "ModAction_ID3", now);
+		database.getHandledModActionMapping().saveAll(Arrays.asList(mAction1, mAction2, mAction3));
+		
+		assertTrue(mAction1.id > 0);
+		assertTrue(mAction2.id > 0);
+		assertTrue(mAction3.id > 0);
+		assertEquals(0, mAction1.occurredAt.getNanos());
+		MysqlTestUtils.assertListContents(database.getHandledModActionMapping().fetchAll(), mAction1, mAction2, mAction3);
+		
+		List<HandledModAction> fromDB = database.getHandledModActionMapping().fetchByModActionIDs(Arrays.asList("ModAction_ID1", "ModAction_ID3", "ModAction_ID4"));
+		MysqlTestUtils.assertListContents(fromDB, mAction1, mAction3);
+		
+		fromDB = database.getHandledModActionMapping().fetchByModActionIDs(Collections.emptyList());
+		MysqlTestUtils.assertListContents(fromDB);
+	}
+	
+	/**
+	 * two subreddits with a few handled mod actions each, some too old to count
+	 */
+	@Test
+	public void testCountBySubredditSince() {
+		DBShortcuts db = new DBShortcuts(database);
+		MonitoredSubreddit sub = db.sub();
+		MonitoredSubreddit sub2 = db.sub2();
+		db.sub3();
+		
+		db.hma(sub, db.now(-60000));
+		db.hma(sub, db.now(-30000));
+		db.hma(sub, db.now(-10000));
+		db.hma(sub2, db.now(-90000));
+		db.hma(sub2, db.now(-20000));
+		
+		Map<Integer, Integer> fromDB = database.getHandledModActionMapping().countBySubredditSince(db.now(-60000));
+		assertEquals(2, fromDB.size());
+		assertEquals(Integer.valueOf(3), fromDB.get(sub.id));
+		assertEquals(Integer.valueOf(1), fromDB.get(sub2.id));
+		
+		fromDB = database.getHandledModActionMapping().countBySubredditSince(db.now());
+		assertTrue(fromDB.isEmpty());
+	}
+	
 	@Test
 	public void testFetchByTimestampAndSubreddit() {
 		MonitoredSubreddit sub = new MonitoredSubreddit(-1, "johnssub", false, false, true);
@@ -259,4 +315,49 @@ public class HandledModActionMappingTest {
 		assertNull(fromDB.get(2).banHistory);
 		assertEquals(unban1, fromDB.get(2).unbanHistory);
 	}
+	
+	@Test
+	public void testFetchLatestJoinedAfterPages() {
+		DBShortcuts db = new DBShortcuts(database);
+		HandledModActionMapping map = database.getHandledModActionMapping();
+		MonitoredSubreddit sub = db.sub();
+		
+		Timestamp shared = db.now(-30000);
+		HandledModAction hma1 = db.hma(sub, db.now(-40000));
+		db.bh(db.mod(), db.user1(), hma1, "msg", true);
+		HandledModAction hma2 = db.hma(sub, shared);
+		db.bh(db.mod(), db.user1(), hma2, "msg", true);
+		HandledModAction hma3 = db.hma(sub, shared);
+		db.bh(db.mod(), db.person("user2"), hma3, "msg", true);
+		HandledModAction hma4 = db.hma(sub, shared);
+		db.ubh(db.mod2(), db.user1(), hma4);
+		db.hma(sub, shared); // not joined with anything
+		HandledModAction hma6 = db.hma(sub, db.now(-20000));
+		db.bh(db.mod(), db.person("user2"), hma6, "msg", true);
+		
+		HandledModAction[] expected = new HandledModAction[] { hma1, hma2, hma3, hma4, hma6 };
+		for(int pageSize = 1; pageSize <= 3; pageSize++) {
+			Timestamp lastTime = db.epoch;
+			int lastID = 0;
+			int index = 0;
+			
+			while(true) {
+				List<HandledModActionJoinHistory> page = map.fetchLatestJoinedAfter(lastTime, lastID, db.now(), pageSize);
+				assertTrue(page.size() <= pageSize);
+				if(page.isEmpty())
+					break;
+				
+				for(HandledModActionJoinHistory row : page) {
+					assertTrue("too many rows with page size " + pageSize, index < expected.length);
+					assertEquals(expected[index++], row.handledModAction);
+				}
+				
+				HandledModAction last = page.get(page.size() - 1).handledModAction;
+				lastTime = last.occurredAt;
+				lastID = last.id;
+			}
+			
+			assertEquals(expected.length, index);
+		}
+	}
 }
@@ -64,6 +64,26 @@ public class MonitoredSubredditMappingTest {
 		assertEquals(mSub.subreddit, fetched.get(0).subreddit);
 	}
 	
+	/**
+	 * Tests that the modmail digest setting is saved, both when inserting and when updating
+	 */
+	@Test
+	public void testSaveModmailDigest() {
+		MonitoredSubreddit mSub = new MonitoredSubreddit(-1, "johnssub", false, false, false, true);
+		database.getMonitoredSubredditMapping().save(mSub);
+		
+		MonitoredSubreddit fetched = database.getMonitoredSubredditMapping().fetchByID(mSub.id);
+		assertTrue(fetched.modmailDigest);
+		assertEquals(mSub, fetched);
+		
+		mSub.modmailDigest = false;
+		database.getMonitoredSubredditMapping().save(mSub);
+		
+		fetched = database.getMonitoredSubredditMapping().fetchByID(mSub.id);
+		assertFalse(fetched.modmailDigest);
+		assertEquals(mSub, fetched);
+	}
+	
 	/**
 	 * Tests the fetchConcatenated works for 0, 1, 2, or 3 fullnames in the database.
 	 */
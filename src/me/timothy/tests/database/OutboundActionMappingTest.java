@@ -0,0 +1,140 @@
+package me.timothy.tests.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Timestamp;
+
+import org.junit.Test;
+
+import me.timothy.bots.database.MappingDatabase;
+import me.timothy.bots.database.OutboundActionMapping;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.OutboundAction;
+import me.timothy.bots.models.Person;
+import me.timothy.tests.DBShortcuts;
+import me.timothy.tests.database.mysql.MysqlTestUtils;
+
+/**
+ * Tests focused on testing an OutboundActionMapping in a MappingDatabase
+ *
+ * @author Timothy
+ */
+public class OutboundActionMappingTest {
+	/**
+	 * The {@link me.timothy.bots.database.MappingDatabase MappingDatabase} that contains
+	 * the {@link me.timothy.bots.database.OutboundActionMapping OutboundActionMapping} to test.
+	 */
+	protected MappingDatabase database;
+	
+	/**
+	 * Verifies the test is setup correctly by ensuring the {@link #database} is not null
+	 */
+	@Test
+	public void testTest() {
+		assertNotNull(database);
+	}
+	
+	/**
+	 * Save a ban, make sure it gets an id and comes back from fetchAll, then mark it
+	 * sent and make sure that is saved too.
+	 */
+	@Test
+	public void testSave() {
+		DBShortcuts db = new DBShortcuts(database);
+		OutboundActionMapping map = database.getOutboundActionMapping();
+		Person paul = db.user1();
+		MonitoredSubreddit sub = db.sub();
+		
+		OutboundAction ban = new OutboundAction(-1, "test:ban", OutboundAction.BAN, sub.id, paul.id, null,
+				"you have been banned", "scammer", "#scammer", 0, db.now(), db.now(), null, null);
+		map.save(ban);
+		
+		assertTrue(ban.id > 0);
+		MysqlTestUtils.assertListContents(map.fetchAll(), ban);
+		
+		ban.attempts = 1;
+		ban.sentAt = db.now(1000);
+		map.save(ban);
+		MysqlTestUtils.assertListContents(map.fetchAll(), ban);
+		assertFalse(map.fetchAll().get(0).isPending());
+	}
+	
+	/**
+	 * Queue a personal message, then try to queue another with the same idempotency key. The
+	 * second one should not be saved, even after the first is sent.
+	 */
+	@Test
+	public void testEnqueueIsIdempotent() {
+		DBShortcuts db = new DBShortcuts(database);
+		OutboundActionMapping map = database.getOutboundActionMapping();
+		Person paul = db.user1();
+		
+		OutboundAction pm = new OutboundAction(-1, "test:pm", OutboundAction.USER_PM, null, paul.id, "title",
+				"body", null, null, 0, db.now(), db.now(), null, null);
+		assertTrue(map.enqueue(pm));
+		assertTrue(pm.id > 0);
+		assertEquals(pm, map.fetchByIdempotencyKey("test:pm"));
+		assertNull(map.fetchByIdempotencyKey("test:other"));
+		
+		OutboundAction dupe = new OutboundAction(-1, "test:pm", OutboundAction.USER_PM, null, paul.id, "title",
+				"body", null, null, 0, db.now(), db.now(), null, null);
+		assertFalse(map.enqueue(dupe));
+		assertEquals(-1, dupe.id);
+		MysqlTestUtils.assertListContents(map.fetchAll(), pm);
+		
+		pm.attempts = 1;
+		pm.sentAt = db.now();
+		map.save(pm);
+		assertFalse(map.enqueue(dupe));
+		MysqlTestUtils.assertListContents(map.fetchAll(), pm);
+	}
+	
+	/**
+	 * Queue actions on two subreddits and a personal message, some of which are not due yet
+	 * or have already been sent or given up on, and make sure only the due ones are fetched,
+	 * longest due first, and that the personal message lane shows up as null.
+	 */
+	@Test
+	public void testFetchDue() {
+		DBShortcuts db = new DBShortcuts(database);
+		OutboundActionMapping map = database.getOutboundActionMapping();
+		Person paul = db.user1();
+		MonitoredSubreddit sub1 = db.sub();
+		MonitoredSubreddit sub2 = db.sub2();
+		Timestamp now = db.now();
+		
+		OutboundAction sub1Later = new OutboundAction(-1, "a", OutboundAction.UNBAN, sub1.id, paul.id, null,
+				null, null, null, 0, db.now(-5000), db.now(-2000), null, null);
+		OutboundAction sub1First = new OutboundAction(-1, "b", OutboundAction.UNBAN, sub1.id, paul.id, null,
+				null, null, null, 0, db.now(-5000), db.now(-3000), null, null);
+		OutboundAction sub1NotDue = new OutboundAction(-1, "c", OutboundAction.MODMAIL, sub1.id, null, "title",
+				"body", null, null, 1, db.now(-5000), db.now(60000), null, null);
+		OutboundAction sub2Sent = new OutboundAction(-1, "d", OutboundAction.MODMAIL, sub2.id, null, "title",
+				"body", null, null, 1, db.now(-5000), db.now(-1000), db.now(-1000), null);
+		OutboundAction sub2Failed = new OutboundAction(-1, "e", OutboundAction.MODMAIL, sub2.id, null, "title",
+				"body", null, null, 5, db.now(-5000), db.now(-1000), null, db.now(-1000));
+		OutboundAction pm = new OutboundAction(-1, "f", OutboundAction.USER_PM, null, paul.id, "title",
+				"body", null, null, 0, db.now(-5000), db.now(-1000), null, null);
+		
+		for(OutboundAction a : new OutboundAction[] { sub1Later, sub1First, sub1NotDue, sub2Sent, sub2Failed, pm }) {
+			assertTrue(map.enqueue(a));
+		}
+		
+		MysqlTestUtils.assertListContents(map.fetchDueSubredditIDs(now), sub1.id, null);
+		assertEquals(4, map.countPending());
+		
+		assertEquals(2, map.fetchDue(sub1.id, now, 10).size());
+		assertEquals(sub1First, map.fetchDue(sub1.id, now, 10).get(0));
+		assertEquals(sub1Later, map.fetchDue(sub1.id, now, 10).get(1));
+		MysqlTestUtils.assertListContents(map.fetchDue(sub1.id, now, 1), sub1First);
+		MysqlTestUtils.assertListContents(map.fetchDue(sub2.id, now, 10));
+		MysqlTestUtils.assertListContents(map.fetchDue(null, now, 10), pm);
+		
+		MysqlTestUtils.assertListContents(map.fetchDueSubredditIDs(db.now(120000)), sub1.id, null);
+		assertEquals(3, map.fetchDue(sub1.id, db.now(120000), 10).size());
+	}
+}
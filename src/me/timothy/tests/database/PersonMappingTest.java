@@ -3,7 +3,9 @@ package me.timothy.tests.database;
 import static org.junit.Assert.*;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -198,6 +200,31 @@ public class PersonMappingTest {
 		assertEquals(john1, john2);
 	}
 	
+	/**
+	 * john exists. john, Paul and ringo are fetched or created together -> john is
+	 * fetched and the others are created, keyed by lowercase username. Doing it
+	 * again creates no one.
+	 */
+	@Test
+	public void testFetchOrCreateByUsernames() {
+		Person john = database.getPersonMapping().fetchOrCreateByUsername("john");
+		
+		Map<String, Person> result = database.getPersonMapping().fetchOrCreateByUsernames(Arrays.asList("john", "Paul", "ringo"));
+		assertEquals(3, result.size());
+		assertEquals(john, result.get("john"));
+		assertTrue(result.get("paul").id > 0);
+		assertTrue(result.get("ringo").id > 0);
+		assertNotEquals(result.get("paul").id, result.get("ringo").id);
+		assertEquals(result.get("paul"), database.getPersonMapping().fetchByUsername("paul"));
+		assertEquals(3, database.getPersonMapping().fetchAll().size());
+		
+		Map<String, Person> again = database.getPersonMapping().fetchOrCreateByUsernames(Arrays.asList("ringo", "paul"));
+		assertEquals(2, again.size());
+		assertEquals(result.get("paul"), again.get("paul"));
+		assertEquals(result.get("ringo"), again.get("ringo"));
+		assertEquals(3, database.getPersonMapping().fetchAll().size());
+	}
+	
 	/**
 	 * fetch or create paul, then fetch by his id, then fetch by a
 	 * different id
@@ -212,4 +239,44 @@ public class PersonMappingTest {
 		fromDB = database.getPersonMapping().fetchByID(paul.id + 1);
 		assertNull(fromDB);
 	}
+	
+	/**
+	 * fetch or create paul, modify what was returned without saving it, then
+	 * fetch paul again by id, username, and id skipping caches. None of them
+	 * see the modification. Save the modification and they all see it.
+	 */
+	@Test
+	public void testFetchDoesNotShareInstances() {
+		Person paul = database.getPersonMapping().fetchOrCreateByUsername("paul");
+		database.getPersonMapping().fetchByID(paul.id);
+		
+		Person modified = database.getPersonMapping().fetchByID(paul.id);
+		modified.email = "paul@fake-url.com";
+		
+		assertEquals(paul, database.getPersonMapping().fetchByID(paul.id));
+		assertEquals(paul, database.getPersonMapping().fetchByUsername("paul"));
+		assertEquals(paul, database.getPersonMapping().fetchByIDUncached(paul.id));
+		
+		database.getPersonMapping().save(modified);
+		assertEquals(modified, database.getPersonMapping().fetchByID(paul.id));
+		assertEquals(modified, database.getPersonMapping().fetchByUsername("paul"));
+		assertEquals(modified, database.getPersonMapping().fetchByIDUncached(paul.id));
+	}
+	
+	/**
+	 * Makes sure fetching many persons by id at once finds exactly the ones that exist
+	 */
+	@Test
+	public void testFetchByIDs() {
+		Person paul = database.getPersonMapping().fetchOrCreateByUsername("paul");
+		Person john = database.getPersonMapping().fetchOrCreateByUsername("john");
+		database.getPersonMapping().fetchOrCreateByUsername("eric");
+		
+		assertTrue(database.getPersonMapping().fetchByIDs(Arrays.asList()).isEmpty());
+		
+		List<Person> fetched = database.getPersonMapping().fetchByIDs(Arrays.asList(paul.id, john.id, john.id + 1000));
+		assertEquals(2, fetched.size());
+		assertTrue(fetched.contains(paul));
+		assertTrue(fetched.contains(john));
+	}
 }
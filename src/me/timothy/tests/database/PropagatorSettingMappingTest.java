@@ -44,5 +44,13 @@ public class PropagatorSettingMappingTest {
 		map.put(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES, "false");
 		assertEquals("false", map.get(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES));
 		assertEquals("false", map.get(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES));
+		
+		map.remove(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES);
+		assertNull(map.get(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES));
+		map.remove(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES);
+		assertNull(map.get(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES));
+		
+		map.put(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES, "true");
+		assertEquals("true", map.get(PropagatorSettingKey.SUPPRESS_NO_OP_MESSAGES));
 	}
 }
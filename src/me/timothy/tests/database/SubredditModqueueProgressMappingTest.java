@@ -1,6 +1,7 @@
 package me.timothy.tests.database;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -124,6 +125,56 @@ public class SubredditModqueueProgressMappingTest {
 		assertEquals(subBProgr, fromDB);
 	}
 	
+	/**
+	 * <ol>
+	 * 	<li>Save subreddit subA</li>
+	 * 	<li>Save progress for subA where every type starts from the same ids</li>
+	 * 	<li>Move the ban and unban pagination ids separately and save</li>
+	 * 	<li>Finish the forward search for bans only; still searching forward</li>
+	 * 	<li>Finish the forward search for unbans; no longer searching forward</li>
+	 * 	<li>Each step matches what is fetched from the database</li>
+	 * </ol>
+	 */
+	@Test
+	public void testTypedPaginationIDs() {
+		MonitoredSubreddit subA = new MonitoredSubreddit(-1, "johnssub", false, false, false);
+		database.getMonitoredSubredditMapping().save(subA);
+		
+		SubredditModqueueProgress progr = new SubredditModqueueProgress(-1, subA.id, true, "ModAction_A", "ModAction_B", null, null);
+		database.getSubredditModqueueProgressMapping().save(progr);
+		
+		SubredditModqueueProgress fromDB = database.getSubredditModqueueProgressMapping().fetchForSubreddit(subA.id);
+		assertEquals(progr, fromDB);
+		for(String type : SubredditModqueueProgress.TYPES) {
+			assertTrue(fromDB.isSearchingForward(type));
+			assertEquals("ModAction_A", fromDB.getLatestModActionID(type));
+			assertEquals("ModAction_B", fromDB.getNewestModActionID(type));
+		}
+		
+		progr.setLatestModActionID(SubredditModqueueProgress.BAN_TYPE, "ModAction_C");
+		progr.setNewestModActionID(SubredditModqueueProgress.UNBAN_TYPE, "ModAction_D");
+		progr.setSearchingForward(SubredditModqueueProgress.BAN_TYPE, false);
+		assertTrue(progr.searchForward);
+		database.getSubredditModqueueProgressMapping().save(progr);
+		
+		fromDB = database.getSubredditModqueueProgressMapping().fetchForSubreddit(subA.id);
+		assertEquals(progr, fromDB);
+		assertEquals("ModAction_C", fromDB.banLatestModActionID);
+		assertEquals("ModAction_B", fromDB.banNewestModActionID);
+		assertEquals("ModAction_A", fromDB.unbanLatestModActionID);
+		assertEquals("ModAction_D", fromDB.unbanNewestModActionID);
+		assertFalse(fromDB.banSearchForward);
+		assertTrue(fromDB.unbanSearchForward);
+		
+		progr.setSearchingForward(SubredditModqueueProgress.UNBAN_TYPE, false);
+		assertFalse(progr.searchForward);
+		database.getSubredditModqueueProgressMapping().save(progr);
+		
+		fromDB = database.getSubredditModqueueProgressMapping().fetchForSubreddit(subA.id);
+		assertEquals(progr, fromDB);
+		assertFalse(fromDB.searchForward);
+	}
+	
 	/*
 	@Test
 	public void testAnySearchingForward() {
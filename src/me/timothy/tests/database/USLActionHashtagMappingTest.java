@@ -3,6 +3,8 @@ package me.timothy.tests.database;
 import static org.junit.Assert.assertNotNull;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
 
 import org.junit.Test;
 
@@ -45,4 +47,32 @@ public class USLActionHashtagMappingTest {
 		MysqlTestUtils.assertListContents(map.fetchByUSLActionID(action.id), actionTag);
 		MysqlTestUtils.assertListContents(map.fetchByUSLActionID(action.id + 1));
 	}
+	
+	@Test
+	public void testSaveAll() {
+		final long now = System.currentTimeMillis();
+		
+		Person paul = database.getPersonMapping().fetchOrCreateByUsername("paul");
+		Person john = database.getPersonMapping().fetchOrCreateByUsername("john");
+		
+		USLAction action = database.getUSLActionMapping().create(true, john.id, new Timestamp(now));
+		USLAction action2 = database.getUSLActionMapping().create(true, john.id, new Timestamp(now));
+		
+		Hashtag tag = new Hashtag(-1, "#scammer", "the famous tag", paul.id, paul.id, new Timestamp(now), new Timestamp(now));
+		database.getHashtagMapping().save(tag);
+		Hashtag tag2 = new Hashtag(-1, "#sketchy", "the other tag", paul.id, paul.id, new Timestamp(now), new Timestamp(now));
+		database.getHashtagMapping().save(tag2);
+		
+		USLActionHashtagMapping map = database.getUSLActionHashtagMapping();
+		map.saveAll(Collections.emptyList());
+		MysqlTestUtils.assertListContents(map.fetchAll());
+		
+		USLActionHashtag a1t1 = new USLActionHashtag(action.id, tag.id);
+		USLActionHashtag a1t2 = new USLActionHashtag(action.id, tag2.id);
+		USLActionHashtag a2t1 = new USLActionHashtag(action2.id, tag.id);
+		map.saveAll(Arrays.asList(a1t1, a1t2, a2t1));
+		MysqlTestUtils.assertListContents(map.fetchAll(), a1t1, a1t2, a2t1);
+		MysqlTestUtils.assertListContents(map.fetchByUSLActionID(action.id), a1t1, a1t2);
+		MysqlTestUtils.assertListContents(map.fetchByUSLActionID(action2.id), a2t1);
+	}
 }
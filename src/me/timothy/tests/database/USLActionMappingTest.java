@@ -8,6 +8,8 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Test;
@@ -174,4 +176,23 @@ public class USLActionMappingTest {
 		assertEquals(johnMoreBanned, map.fetchLatest(john.id));
 		assertEquals(paulUnbanned, map.fetchLatest(paul.id));
 	}
+	
+	@Test
+	public void fetchLatestByPersons() {
+		Person john = database.getPersonMapping().fetchOrCreateByUsername("john");
+		Person paul = database.getPersonMapping().fetchOrCreateByUsername("paul");
+		Person eric = database.getPersonMapping().fetchOrCreateByUsername("eric");
+		
+		USLActionMapping map = database.getUSLActionMapping();
+		assertTrue(map.fetchLatestByPersons(Collections.emptyList()).isEmpty());
+		assertTrue(map.fetchLatestByPersons(Arrays.asList(john.id, paul.id)).isEmpty());
+		
+		map.create(true, john.id, new Timestamp(System.currentTimeMillis()));
+		USLAction johnMoreBanned = map.create(true, john.id, new Timestamp(System.currentTimeMillis()));
+		USLAction paulBanned = map.create(true, paul.id, new Timestamp(System.currentTimeMillis()));
+		USLAction ericBanned = map.create(true, eric.id, new Timestamp(System.currentTimeMillis()));
+		
+		MysqlTestUtils.assertListContents(map.fetchLatestByPersons(Arrays.asList(john.id, paul.id)), johnMoreBanned, paulBanned);
+		MysqlTestUtils.assertListContents(map.fetchLatestByPersons(Arrays.asList(eric.id)), ericBanned);
+	}
 }
@@ -210,4 +210,38 @@ public class UnbanRequestMappingTest {
 		assertEquals(req2, fromDB.get(0));
 	}
 	
+	@Test
+	public void testFetchLatestValidAfterPages() {
+		DBShortcuts db = new DBShortcuts(database);
+		UnbanRequestMapping map = database.getUnbanRequestMapping();
+		
+		Timestamp shared = db.now(-30000);
+		UnbanRequest req1 = db.unbanRequest(db.user1(), db.now(-60000));
+		db.handle(req1, db.now(-40000), false);
+		UnbanRequest req2 = db.unbanRequest(db.user1(), db.now(-60000));
+		db.handle(req2, shared, false);
+		UnbanRequest req3 = db.unbanRequest(db.user1(), db.now(-60000));
+		db.handle(req3, shared, true);
+		UnbanRequest req4 = db.unbanRequest(db.user1(), db.now(-60000));
+		db.handle(req4, shared, false);
+		UnbanRequest req5 = db.unbanRequest(db.user1(), db.now(-60000));
+		db.handle(req5, db.now(-20000), false);
+		
+		List<UnbanRequest> fromDB = map.fetchLatestValidAfter(db.epoch, 0, db.now(), 10);
+		MysqlTestUtils.assertListContents(fromDB, req1, req2, req4, req5);
+		
+		fromDB = map.fetchLatestValidAfter(db.epoch, 0, db.now(), 2);
+		assertEquals(2, fromDB.size());
+		assertEquals(req1, fromDB.get(0));
+		assertEquals(req2, fromDB.get(1));
+		
+		fromDB = map.fetchLatestValidAfter(req2.handledAt, req2.id, db.now(), 2);
+		assertEquals(2, fromDB.size());
+		assertEquals(req4, fromDB.get(0));
+		assertEquals(req5, fromDB.get(1));
+		
+		fromDB = map.fetchLatestValidAfter(req5.handledAt, req5.id, db.now(), 2);
+		assertTrue(fromDB.isEmpty());
+	}
+
 }
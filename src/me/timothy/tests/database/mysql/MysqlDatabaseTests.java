@@ -39,7 +39,8 @@ import org.junit.runners.Suite.SuiteClasses;
 			MysqlPropagatorSettingMappingTest.class,
 			MysqlMonitoredSubredditAltModMailMappingTest.class,
 			MysqlSubredditPersonBannedReleaseMappingTest.class,
-			MysqlHardwareSwapBanMappingTest.class
+			MysqlHardwareSwapBanMappingTest.class,
+			MysqlOutboundActionMappingTest.class
 		})
 public class MysqlDatabaseTests {
 
@@ -1,11 +1,22 @@
 package me.timothy.tests.database.mysql;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Properties;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Test;
 
 import me.timothy.bots.USLDatabase;
+import me.timothy.bots.database.mysql.MysqlSubredditModqueueProgressMapping;
+import me.timothy.bots.models.MonitoredSubreddit;
+import me.timothy.bots.models.SubredditModqueueProgress;
 import me.timothy.tests.database.SubredditModqueueProgressMappingTest;
 
 public class MysqlSubredditModqueueProgressMappingTest extends SubredditModqueueProgressMappingTest {
@@ -19,6 +30,39 @@ public class MysqlSubredditModqueueProgressMappingTest extends SubredditModqueue
 		super.database = testDb;
 	}
 	
+	/**
+	 * A table from before the mod log was filtered by type gets empty pagination ids
+	 * for each type and searches forward again, keeping the untyped ids and the last
+	 * time we had the full history.
+	 */
+	@Test
+	public void testUpgradeStartsEachTypeForward() throws SQLException {
+		USLDatabase db = (USLDatabase) super.database;
+		MonitoredSubreddit sub = new MonitoredSubreddit(-1, "johnssub", false, false, false);
+		db.getMonitoredSubredditMapping().save(sub);
+		
+		try(Statement statement = db.getConnection().createStatement()) {
+			statement.execute("ALTER TABLE subreddit_modqueue_progress "
+					+ "DROP COLUMN ban_search_forward, DROP COLUMN ban_latest_modaction_id, DROP COLUMN ban_newest_modaction_id, "
+					+ "DROP COLUMN unban_search_forward, DROP COLUMN unban_latest_modaction_id, DROP COLUMN unban_newest_modaction_id");
+			statement.execute("INSERT INTO subreddit_modqueue_progress (monitored_subreddit_id, search_forward, latest_modaction_id, "
+					+ "newest_modaction_id, last_time_had_full_history) VALUES (" + sub.id + ", 0, 'ModAction_A', 'ModAction_B', NOW())");
+		}
+		
+		((MysqlSubredditModqueueProgressMapping) db.getSubredditModqueueProgressMapping()).validateSchema();
+		
+		SubredditModqueueProgress progress = db.getSubredditModqueueProgressMapping().fetchForSubreddit(sub.id);
+		assertTrue(progress.searchForward);
+		assertEquals("ModAction_A", progress.latestModActionID);
+		assertEquals("ModAction_B", progress.newestModActionID);
+		assertNotNull(progress.lastTimeHadFullHistory);
+		for(String type : SubredditModqueueProgress.TYPES) {
+			assertTrue(progress.isSearchingForward(type));
+			assertNull(progress.getLatestModActionID(type));
+			assertNull(progress.getNewestModActionID(type));
+		}
+	}
+	
 	@After
 	public void tearDown() {
 		((USLDatabase) super.database).disconnect();